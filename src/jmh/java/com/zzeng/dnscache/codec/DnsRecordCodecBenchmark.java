@@ -0,0 +1,69 @@
+package com.zzeng.dnscache.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zzeng.dnscache.model.DnsRecord;
+import com.zzeng.dnscache.model.DnsRecordValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of stored values, for both formats and the shapes the cache holds:
+ * a single address (the common case), an RRset with per-value TTLs, and a text RRset such as MX.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DnsRecordCodecBenchmark {
+
+    @Param({"BINARY", "JSON"})
+    public DnsRecordCodec.Format format;
+
+    @Param({"address", "rrset", "mx"})
+    public String shape;
+
+    private DnsRecordCodec codec;
+    private DnsRecord record;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        JsonDnsRecordCodec json = new JsonDnsRecordCodec(new ObjectMapper());
+        codec = format == DnsRecordCodec.Format.BINARY ? new BinaryDnsRecordCodec(json) : json;
+        record = switch (shape) {
+            case "address" -> new DnsRecord("www.example.com", "93.184.216.34", 300, false);
+            case "rrset" -> new DnsRecord("www.example.com", "A", List.of(
+                    new DnsRecordValue("93.184.216.34", 300), new DnsRecordValue("93.184.216.35", 300),
+                    new DnsRecordValue("93.184.216.36", 60)), 300, false);
+            case "mx" -> new DnsRecord("example.com", "MX", List.of(
+                    new DnsRecordValue("10 mail.example.com.", 3600), new DnsRecordValue("20 backup.example.com.", 3600)),
+                    3600, false);
+            default -> throw new IllegalArgumentException(shape);
+        };
+        encoded = codec.encode(record);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(record);
+    }
+
+    @Benchmark
+    public DnsRecord decode() {
+        return codec.decode(record.getCacheKey(), encoded);
+    }
+}
@@ -0,0 +1,52 @@
+package com.zzeng.dnscache.dto;
+
+import com.zzeng.dnscache.model.DnsRecord;
+import com.zzeng.dnscache.model.DnsRecordValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversions between records and API objects, done once per answer on every read path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DnsRecordMapperBenchmark {
+
+    private DnsRecord record;
+    private DnsRecordCreateRequest request;
+
+    @Setup
+    public void setUp() {
+        record = new DnsRecord("www.example.com", "A", List.of(
+                new DnsRecordValue("93.184.216.34", 300), new DnsRecordValue("93.184.216.35", 300)), 300, false);
+        request = new DnsRecordCreateRequest();
+        request.setDomain("www.example.com");
+        request.setValues(List.of("93.184.216.34", "93.184.216.35"));
+        request.setTtl(300L);
+    }
+
+    @Benchmark
+    public DnsRecordResponse toResponse() {
+        return DnsRecordMapper.toResponse(record);
+    }
+
+    @Benchmark
+    public DnsRecord toManualDnsRecord() {
+        return DnsRecordMapper.toManualDnsRecord(request);
+    }
+}
@@ -0,0 +1,80 @@
+package com.zzeng.dnscache.override;
+
+import com.zzeng.dnscache.dto.OverrideRule;
+import com.zzeng.dnscache.model.DnsRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Override lookups, done before the cache on every resolve, against sets of rules up to 100k: one rule in ten is
+ * a wildcard ({@code *.svcN.teamM.corp}), the others exact names ({@code hostN.teamM.corp}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OverrideTrieBenchmark {
+
+    private static final int TEAMS = 100;
+
+    @Param({"1000", "100000"})
+    public int rules;
+
+    private List<OverrideRule> ruleList;
+    private OverrideTrie trie;
+    private String exactName;
+    private String wildcardName;
+    private String missName;
+
+    @Setup
+    public void setUp() {
+        ruleList = new ArrayList<>(rules);
+        for (int i = 0; i < rules; i++) {
+            String name = (i % 10 == 0 ? "*.svc" : "host") + i + ".team" + i % TEAMS + ".corp";
+            ruleList.add(new OverrideRule(name, "A", List.of("10." + i / 65536 % 256 + "." + i / 256 % 256 + "." + i % 256), 60));
+        }
+        trie = OverrideTrie.compile(ruleList);
+        int middle = rules / 2 + 1;
+        exactName = "host" + middle + ".team" + middle % TEAMS + ".corp";
+        wildcardName = "api.v2.svc" + rules / 2 + ".team" + rules / 2 % TEAMS + ".corp";
+        missName = "www.example.com";
+    }
+
+    @Benchmark
+    public DnsRecord findExact() {
+        return trie.find(exactName, "A");
+    }
+
+    @Benchmark
+    public DnsRecord findWildcard() {
+        return trie.find(wildcardName, "A");
+    }
+
+    @Benchmark
+    public DnsRecord findMiss() {
+        return trie.find(missName, "A");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 5)
+    public OverrideTrie compile() {
+        return OverrideTrie.compile(ruleList);
+    }
+}
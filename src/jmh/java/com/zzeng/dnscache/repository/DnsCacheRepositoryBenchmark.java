@@ -0,0 +1,106 @@
+package com.zzeng.dnscache.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zzeng.dnscache.codec.BinaryDnsRecordCodec;
+import com.zzeng.dnscache.codec.DnsRecordCodec;
+import com.zzeng.dnscache.codec.JsonDnsRecordCodec;
+import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.model.DnsRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The repository operations behind the resolve and batch paths, for each storage engine: Redis (a local
+ * redis-server, including the client round-trip, so the numbers are latencies of this machine's loopback,
+ * not of a deployment) and the in-memory engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DnsCacheRepositoryBenchmark {
+
+    @Param({"REDIS", "MEMORY"})
+    public DnsProperties.Storage.Engine engine;
+
+    @Param({"100"})
+    public int batchSize;
+
+    private EmbeddedRedis redis;
+    private DnsCacheRepositoryImpl redisRepository;
+    private InMemoryDnsCacheRepository memory;
+    private DnsCacheRepository repository;
+    private final List<String> domains = new ArrayList<>();
+    private final List<DnsCacheRepository.Entry> entries = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        DnsRecordCodec codec = new BinaryDnsRecordCodec(new JsonDnsRecordCodec(new ObjectMapper()));
+        if (engine == DnsProperties.Storage.Engine.REDIS) {
+            redis = new EmbeddedRedis();
+            redisRepository = new DnsCacheRepositoryImpl(redis.recordTemplate(), redis.template(), new DnsProperties(),
+                    new SimpleMeterRegistry());
+            repository = redisRepository;
+        } else {
+            memory = new InMemoryDnsCacheRepository(new DnsProperties(), codec, new SimpleMeterRegistry());
+            repository = memory;
+        }
+        for (int i = 0; i < batchSize; i++) {
+            String domain = "host" + i + ".bench.example.com";
+            domains.add(domain);
+            entries.add(new DnsCacheRepository.Entry(domain, codec.encode(new DnsRecord(domain, "10.0.0.1", 300, false)), 300));
+        }
+        repository.setAll(entries).block();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (redis != null) {
+            redisRepository.destroy();
+            redis.close();
+        }
+        if (memory != null) {
+            memory.destroy();
+        }
+    }
+
+    @Benchmark
+    public byte[] get() {
+        return repository.get(domains.get(0)).block();
+    }
+
+    @Benchmark
+    public Duration getExpire() {
+        return repository.getExpire(domains.get(0)).block();
+    }
+
+    @Benchmark
+    public Map<String, byte[]> multiGet() {
+        return repository.multiGet(domains).block();
+    }
+
+    @Benchmark
+    public Long setAll() {
+        return repository.setAll(entries).block();
+    }
+}
@@ -0,0 +1,185 @@
+package com.zzeng.dnscache.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zzeng.dnscache.cache.CacheInvalidationBus;
+import com.zzeng.dnscache.cache.DnsNearCache;
+import com.zzeng.dnscache.codec.BinaryDnsRecordCodec;
+import com.zzeng.dnscache.codec.DnsRecordCodec;
+import com.zzeng.dnscache.codec.JsonDnsRecordCodec;
+import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.dto.DnsRecordResponse;
+import com.zzeng.dnscache.model.DnsRecord;
+import com.zzeng.dnscache.override.OverrideRuleStore;
+import com.zzeng.dnscache.repository.InMemoryDnsCacheRepository;
+import com.zzeng.dnscache.resolver.UpstreamResolver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The resolve paths of {@link DnsServiceImpl} over an in-memory repository and an upstream that answers at once,
+ * so that the numbers are the service's own cost: lookups, decoding, TTL bookkeeping and write-back.
+ * Hits are measured with and without the near-cache in front of the repository.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DnsServiceBenchmark {
+
+    private static final int DOMAINS = 1024;
+    private static final int BATCH_SIZE = 100;
+    private static final DnsRecordCodec CODEC = new BinaryDnsRecordCodec(new JsonDnsRecordCodec(new ObjectMapper()));
+
+    @State(Scope.Benchmark)
+    public static class Cached {
+
+        @Param({"true", "false"})
+        public boolean nearCache;
+
+        InMemoryDnsCacheRepository repository;
+        DnsServiceImpl service;
+        final List<String> domains = new ArrayList<>(DOMAINS);
+        final AtomicLong cursor = new AtomicLong();
+
+        @Setup
+        public void setUp() {
+            repository = newRepository();
+            service = newService(nearCache, repository);
+            for (int i = 0; i < DOMAINS; i++) {
+                domains.add("host" + i + ".example.com");
+            }
+            service.resolveBatch(domains, null).blockLast();
+        }
+
+        @TearDown
+        public void tearDown() {
+            repository.destroy();
+        }
+
+        String next() {
+            return domains.get((int) (cursor.getAndIncrement() % DOMAINS));
+        }
+
+        List<String> nextBatch() {
+            int from = (int) (cursor.getAndAdd(BATCH_SIZE) % (DOMAINS - BATCH_SIZE));
+            return domains.subList(from, from + BATCH_SIZE);
+        }
+    }
+
+    /**
+     * Every lookup is for a name not seen before. Writes are kept (the write-back is part of the miss path)
+     * but the near-cache is off, so that no earlier name is ever answered from it.
+     */
+    @State(Scope.Benchmark)
+    public static class Uncached {
+
+        DnsServiceImpl service;
+        InMemoryDnsCacheRepository repository;
+        final AtomicLong counter = new AtomicLong();
+
+        @Setup
+        public void setUp() {
+            repository = newRepository();
+            service = newService(false, repository);
+        }
+
+        @TearDown
+        public void tearDown() {
+            repository.destroy();
+        }
+
+        String next() {
+            long n = counter.getAndIncrement();
+            if ((n & 0xFFFF) == 0) {
+                // Keeps the map from growing over a whole iteration; the names never repeat anyway.
+                repository.clear().blockLast();
+            }
+            return "miss" + n + ".example.com";
+        }
+
+        List<String> nextBatch() {
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                batch.add(next());
+            }
+            return batch;
+        }
+    }
+
+    @Benchmark
+    public DnsRecordResponse resolveHit(Cached state) {
+        return state.service.resolveDomain(state.next()).block();
+    }
+
+    @Benchmark
+    public DnsRecordResponse resolveMiss(Uncached state) {
+        return state.service.resolveDomain(state.next()).block();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<DnsRecordResponse> resolveBatchHit(Cached state) {
+        return state.service.resolveBatch(state.nextBatch(), null).collectList().block();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<DnsRecordResponse> resolveBatchMiss(Uncached state) {
+        return state.service.resolveBatch(state.nextBatch(), null).collectList().block();
+    }
+
+    /**
+     * The in-memory storage engine, so that what is measured is the service's own overhead, not Redis round-trips.
+     */
+    static InMemoryDnsCacheRepository newRepository() {
+        return new InMemoryDnsCacheRepository(new DnsProperties(), CODEC, new SimpleMeterRegistry());
+    }
+
+    static DnsServiceImpl newService(boolean nearCacheEnabled, InMemoryDnsCacheRepository repository) {
+        DnsProperties properties = new DnsProperties();
+        properties.getNearCache().setEnabled(nearCacheEnabled);
+        // Flushes each batch's write-back as soon as it is complete, rather than on a timer.
+        properties.getBatch().setWriteBufferSize(BATCH_SIZE);
+        // A single node: nothing to tell the others.
+        properties.getInvalidation().setEnabled(false);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        DnsNearCache nearCache = new DnsNearCache(properties, meterRegistry);
+        return new DnsServiceImpl(repository, nearCache,
+                new CacheInvalidationBus(null, List.of(nearCache), properties, meterRegistry),
+                new OverrideRuleStore(null, new ObjectMapper(), properties, meterRegistry), new InstantUpstream(properties),
+                CODEC, properties, meterRegistry);
+    }
+
+    /**
+     * Answers every name with one address, without I/O.
+     */
+    private static final class InstantUpstream extends UpstreamResolver {
+
+        InstantUpstream(DnsProperties properties) {
+            super(null, properties);
+        }
+
+        @Override
+        public Mono<List<DnsRecord>> resolve(String domain, String type) {
+            return Mono.just(List.of(new DnsRecord(domain, "93.184.216.34", 300, false)));
+        }
+    }
+}
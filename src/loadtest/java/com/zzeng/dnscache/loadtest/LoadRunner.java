@@ -0,0 +1,202 @@
+package com.zzeng.dnscache.loadtest;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replays a workload against a running server with a fixed number of requests in flight (a closed loop:
+ * a new request starts when one completes), recording each request's latency in an HdrHistogram per endpoint.
+ * Being a closed loop, a server stall holds back the requests behind it, so tail latencies under a fixed
+ * arrival rate would be higher than reported here.
+ */
+public class LoadRunner {
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final String target;
+    private final int concurrency;
+    private final Duration timeout;
+
+    public LoadRunner(String target, int concurrency, Duration timeout) {
+        this.target = target;
+        this.concurrency = concurrency;
+        this.timeout = timeout;
+    }
+
+    public Report run(List<WorkloadRequest> requests) {
+        ConnectionProvider connections = ConnectionProvider.builder("loadtest")
+                .maxConnections(concurrency)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        HttpClient client = HttpClient.create(connections)
+                .baseUrl(target)
+                .responseTimeout(timeout);
+        Map<String, EndpointStats> stats = new ConcurrentHashMap<>();
+        try {
+            long start = System.nanoTime();
+            Flux.fromIterable(requests)
+                    .flatMap(request -> send(client, request, stats.computeIfAbsent(request.reportedEndpoint(),
+                            endpoint -> new EndpointStats())), concurrency)
+                    .blockLast();
+            return new Report(Duration.ofNanos(System.nanoTime() - start), new TreeMap<>(stats));
+        } finally {
+            connections.disposeLater().block();
+        }
+    }
+
+    private Mono<Void> send(HttpClient client, WorkloadRequest request, EndpointStats stats) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            HttpClient.ResponseReceiver<?> receiver = request.body() == null
+                    ? client.request(HttpMethod.valueOf(request.method())).uri(request.path())
+                    : client.headers(headers -> headers.set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON))
+                            .request(HttpMethod.valueOf(request.method()))
+                            .uri(request.path())
+                            .send(ByteBufFlux.fromString(Mono.just(request.body())));
+            // The whole body is read, so that streamed responses are timed to their last byte.
+            return receiver.responseSingle((response, body) -> body.asByteArray()
+                            .map(bytes -> bytes.length)
+                            .defaultIfEmpty(0)
+                            .map(length -> response.status().code()))
+                    .doOnNext(status -> stats.record(status, System.nanoTime() - start))
+                    .onErrorResume(err -> {
+                        stats.failed();
+                        return Mono.empty();
+                    })
+                    .then();
+        });
+    }
+
+    /**
+     * Latencies and outcomes of one endpoint. Any response counts towards the latency histogram;
+     * 5xx responses are also counted as errors, next to requests that got no response at all. A 4xx is an
+     * answer (a 404 from the cache endpoint for a name not cached yet, say) and only shows in the statuses.
+     */
+    public static final class EndpointStats {
+
+        private final Histogram latencyMicros = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LongAdder failures = new LongAdder();
+
+        void record(int status, long nanos) {
+            latencyMicros.recordValue(Math.min(MAX_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(nanos)));
+            statuses.computeIfAbsent(status, code -> new LongAdder()).increment();
+        }
+
+        void failed() {
+            failures.increment();
+        }
+
+        public Histogram latencyMicros() {
+            return latencyMicros;
+        }
+
+        public long requests() {
+            return latencyMicros.getTotalCount() + failures.sum();
+        }
+
+        public long errors() {
+            long errors = failures.sum();
+            for (Map.Entry<Integer, LongAdder> status : statuses.entrySet()) {
+                if (status.getKey() >= 500) {
+                    errors += status.getValue().sum();
+                }
+            }
+            return errors;
+        }
+
+        public Map<Integer, Long> statuses() {
+            Map<Integer, Long> counts = new TreeMap<>();
+            statuses.forEach((status, count) -> counts.put(status, count.sum()));
+            return counts;
+        }
+    }
+
+    /**
+     * The outcome of one run.
+     *
+     * @param elapsed wall-clock time from the first request to the last response
+     * @param endpoints the statistics of each endpoint, by name
+     */
+    public record Report(Duration elapsed, Map<String, EndpointStats> endpoints) {
+
+        private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+        public long requests() {
+            return endpoints.values().stream().mapToLong(EndpointStats::requests).sum();
+        }
+
+        public double throughput(long requests) {
+            return requests / (elapsed.toNanos() / 1e9);
+        }
+
+        /**
+         * A table of throughput and latency percentiles (in milliseconds) per endpoint.
+         */
+        public String format() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format("%-16s %9s %7s %10s %9s %9s %9s %9s %9s%n",
+                    "endpoint", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+            endpoints.forEach((name, stats) -> {
+                Histogram latency = stats.latencyMicros();
+                out.append(String.format("%-16s %9d %7d %10.1f", name, stats.requests(), stats.errors(),
+                        throughput(stats.requests())));
+                for (double percentile : PERCENTILES) {
+                    out.append(String.format(" %9.3f", latency.getValueAtPercentile(percentile) / 1000.0));
+                }
+                out.append(String.format(" %9.3f%n", latency.getMaxValue() / 1000.0));
+            });
+            out.append(String.format("%d requests in %.2f s: %.1f req/s%n",
+                    requests(), elapsed.toNanos() / 1e9, throughput(requests())));
+            return out.toString();
+        }
+
+        private static String label(double percentile) {
+            return percentile == Math.rint(percentile) ? "p" + (long) percentile : "p" + percentile;
+        }
+
+        /**
+         * The report as plain maps and lists, for writing out as JSON. Latencies are in microseconds.
+         */
+        public Map<String, Object> toMap() {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            endpoints.forEach((name, stats) -> {
+                Histogram latency = stats.latencyMicros();
+                Map<String, Object> percentiles = new TreeMap<>();
+                for (double percentile : PERCENTILES) {
+                    percentiles.put(label(percentile), latency.getValueAtPercentile(percentile));
+                }
+                percentiles.put("max", latency.getMaxValue());
+                rows.add(Map.of(
+                        "endpoint", name,
+                        "requests", stats.requests(),
+                        "errors", stats.errors(),
+                        "statuses", stats.statuses(),
+                        "throughput", throughput(stats.requests()),
+                        "latencyMicros", percentiles));
+            });
+            return Map.of(
+                    "elapsedMillis", elapsed.toMillis(),
+                    "requests", requests(),
+                    "throughput", throughput(requests()),
+                    "endpoints", rows);
+        }
+    }
+}
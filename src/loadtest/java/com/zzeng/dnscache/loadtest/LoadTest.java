@@ -0,0 +1,133 @@
+package com.zzeng.dnscache.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.zzeng.dnscache.DnscacheApplication;
+import com.zzeng.dnscache.resolver.StubDnsServer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a workload against the app and reports throughput and latency percentiles per endpoint.
+ * Unless {@code loadtest.target} names a running server, the app is started in this JVM against a
+ * local Redis ({@code loadtest.redisPort}, or an embedded redis-server) and a stub upstream DNS server
+ * that answers every name, after {@code loadtest.upstreamDelayMillis}.
+ * <p>
+ * The workload is read from {@code loadtest.workload} (JSONL, see {@link WorkloadRequest}) or generated,
+ * see {@link WorkloadGenerator}; {@code loadtest.saveWorkload} keeps a generated one for replaying later.
+ * Before measuring, {@code loadtest.warmup} requests are sent: more generated ones, or the first lines of the file.
+ * Settings are system properties; the {@code loadtest} Maven profile passes them through.
+ */
+public final class LoadTest {
+
+    private LoadTest() {}
+
+    public static void main(String[] args) throws Exception {
+        String target = setting("loadtest.target", "");
+        int warmupRequests = Integer.parseInt(setting("loadtest.warmup", "10000"));
+        List<WorkloadRequest> warmup;
+        List<WorkloadRequest> workload;
+        String file = setting("loadtest.workload", "");
+        if (!file.isEmpty()) {
+            workload = WorkloadRequest.read(Path.of(file));
+            warmup = workload.subList(0, Math.min(warmupRequests, workload.size()));
+        } else {
+            // One generator for both, so that the measured run's cold names were not seen during warm-up.
+            WorkloadGenerator generator = generator();
+            warmup = generator.generate(warmupRequests);
+            workload = generator.generate(Integer.parseInt(setting("loadtest.requests", "100000")));
+            String saveTo = setting("loadtest.saveWorkload", "");
+            if (!saveTo.isEmpty()) {
+                WorkloadRequest.write(Path.of(saveTo), workload);
+            }
+        }
+
+        List<AutoCloseable> resources = new ArrayList<>();
+        try {
+            LoadRunner runner = new LoadRunner(target.isEmpty() ? startApp(resources) : target,
+                    Integer.parseInt(setting("loadtest.concurrency", "64")),
+                    Duration.ofMillis(Long.parseLong(setting("loadtest.timeoutMillis", "5000"))));
+            if (!warmup.isEmpty()) {
+                // Same traffic shape, so that the hot domains are cached and the JIT has settled before measuring.
+                System.out.printf("Warming up with %d requests...%n", warmup.size());
+                runner.run(warmup);
+            }
+            System.out.printf("Running %d requests...%n", workload.size());
+            LoadRunner.Report report = runner.run(workload);
+            System.out.print(report.format());
+
+            Path reportFile = Path.of(setting("loadtest.report", "target/loadtest-report.json"));
+            if (reportFile.getParent() != null) {
+                Files.createDirectories(reportFile.getParent());
+            }
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportFile.toFile(), report.toMap());
+            System.out.println("Report written to " + reportFile);
+        } finally {
+            for (int i = resources.size() - 1; i >= 0; i--) {
+                resources.get(i).close();
+            }
+        }
+    }
+
+    private static WorkloadGenerator generator() {
+        return new WorkloadGenerator(
+                Integer.parseInt(setting("loadtest.domains", "10000")),
+                Double.parseDouble(setting("loadtest.zipfExponent", "1.0")),
+                Double.parseDouble(setting("loadtest.missRatio", "0.05")),
+                Integer.parseInt(setting("loadtest.batchSize", "20")),
+                WorkloadGenerator.parseMix(setting("loadtest.mix", "resolve=85,cached=5,exists=5,batch=5")),
+                Long.parseLong(setting("loadtest.seed", "42")));
+    }
+
+    /**
+     * Starts Redis (unless one is given), the stub upstream and the app, registering each for shutdown.
+     *
+     * @return the base URL of the app
+     */
+    private static String startApp(List<AutoCloseable> resources) throws IOException {
+        String redisPort = setting("loadtest.redisPort", "");
+        if (redisPort.isEmpty()) {
+            int port = freePort();
+            RedisServer redis = new RedisServer(port);
+            redis.start();
+            resources.add(redis::stop);
+            redisPort = String.valueOf(port);
+        }
+
+        StubDnsServer upstream = new StubDnsServer()
+                .withDefaultA("10.0.0.1")
+                .delay(Long.parseLong(setting("loadtest.upstreamDelayMillis", "0")));
+        resources.add(upstream);
+
+        // As arguments rather than default properties, which application.yml would override.
+        ConfigurableApplicationContext app = new SpringApplicationBuilder(DnscacheApplication.class).run(
+                "--server.port=0",
+                "--spring.data.redis.host=localhost",
+                "--spring.data.redis.port=" + redisPort,
+                "--dns.fallback-servers=" + upstream.address(),
+                "--logging.level.root=WARN");
+        resources.add(app::close);
+        return "http://localhost:" + ((ReactiveWebServerApplicationContext) app).getWebServer().getPort();
+    }
+
+    private static String setting(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.zzeng.dnscache.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates a synthetic workload: names are drawn from a fixed set of hot domains with Zipfian popularity
+ * (rank k is requested in proportion to 1/k^s), and a share of single-name lookups goes to names never seen
+ * before, which always miss the cache. Cold lookups are reported under their own endpoint, "resolve (cold)".
+ */
+public class WorkloadGenerator {
+
+    static final String COLD_RESOLVE = "resolve (cold)";
+
+    private final int domains;
+    private final double missRatio;
+    private final int batchSize;
+    private final Map<String, Integer> mix;
+    private final Random random;
+    private final double[] cumulative;
+    private long coldNames;
+
+    /**
+     * @param domains the number of hot domains
+     * @param zipfExponent the Zipf exponent s; 0 requests every hot domain equally often
+     * @param missRatio the share of single-name lookups that go to a new name
+     * @param batchSize the number of names in each batch request
+     * @param mix the relative weight of each endpoint: "resolve", "cached", "exists", "batch"
+     * @param seed the random seed, so that a workload can be generated again
+     */
+    public WorkloadGenerator(int domains, double zipfExponent, double missRatio, int batchSize,
+                             Map<String, Integer> mix, long seed) {
+        this.domains = domains;
+        this.missRatio = missRatio;
+        this.batchSize = batchSize;
+        this.mix = new LinkedHashMap<>(mix);
+        this.random = new Random(seed);
+        this.cumulative = new double[domains];
+        double sum = 0;
+        for (int rank = 1; rank <= domains; rank++) {
+            sum += 1 / Math.pow(rank, zipfExponent);
+            cumulative[rank - 1] = sum;
+        }
+        for (int i = 0; i < domains; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    /**
+     * Parses a mix such as "resolve=85,cached=5,exists=5,batch=5".
+     */
+    public static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Bad mix entry: " + part);
+            }
+            weights.put(pair[0].trim(), Integer.parseInt(pair[1].trim()));
+        }
+        return weights;
+    }
+
+    public static String hotDomain(int rank) {
+        return "host-" + rank + ".load.test";
+    }
+
+    public List<WorkloadRequest> generate(int count) {
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        List<WorkloadRequest> requests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int pick = random.nextInt(total);
+            String endpoint = null;
+            for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+                pick -= entry.getValue();
+                if (pick < 0) {
+                    endpoint = entry.getKey();
+                    break;
+                }
+            }
+            requests.add(request(endpoint));
+        }
+        return requests;
+    }
+
+    private WorkloadRequest request(String endpoint) {
+        return switch (endpoint) {
+            case "resolve" -> random.nextDouble() < missRatio
+                    ? new WorkloadRequest(COLD_RESOLVE, "GET", "/api/dns/resolve?domain=cold-" + coldNames++ + ".load.test", null)
+                    : new WorkloadRequest("resolve", "GET", "/api/dns/resolve?domain=" + nextHot(), null);
+            case "cached" -> new WorkloadRequest("cached", "GET", "/api/dns/cache/" + nextHot(), null);
+            case "exists" -> new WorkloadRequest("exists", "GET", "/api/dns/cache/exists/" + nextHot(), null);
+            case "batch" -> {
+                StringBuilder body = new StringBuilder("{\"domains\":[");
+                for (int i = 0; i < batchSize; i++) {
+                    body.append(i == 0 ? "\"" : ",\"").append(nextHot()).append('"');
+                }
+                yield new WorkloadRequest("batch", "POST", "/api/dns/resolve/batch", body.append("]}").toString());
+            }
+            default -> throw new IllegalArgumentException("Unknown endpoint in mix: " + endpoint);
+        };
+    }
+
+    private String nextHot() {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = (index >= 0 ? index : -index - 1) + 1;
+        return hotDomain(Math.min(rank, domains));
+    }
+}
@@ -0,0 +1,61 @@
+package com.zzeng.dnscache.loadtest;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One HTTP request of a workload, stored one per line as JSON:
+ * <pre>{"endpoint":"resolve","method":"GET","path":"/api/dns/resolve?domain=host-1.load.test"}</pre>
+ * {@code endpoint} names the group the request is reported under; without it, requests are grouped by
+ * method and path (less the query string). {@code body} is sent as JSON when present.
+ */
+public record WorkloadRequest(String endpoint, String method, String path, String body) {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    public String reportedEndpoint() {
+        if (endpoint != null && !endpoint.isBlank()) {
+            return endpoint;
+        }
+        int query = path.indexOf('?');
+        return method + " " + (query < 0 ? path : path.substring(0, query));
+    }
+
+    public static List<WorkloadRequest> read(Path file) throws IOException {
+        List<WorkloadRequest> requests = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                WorkloadRequest request = MAPPER.readValue(line, WorkloadRequest.class);
+                if (request.method() == null || request.path() == null) {
+                    throw new IOException(file + ":" + number + ": a request needs a method and a path");
+                }
+                requests.add(request);
+            }
+        }
+        return requests;
+    }
+
+    public static void write(Path file, List<WorkloadRequest> requests) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (WorkloadRequest request : requests) {
+                writer.write(MAPPER.writeValueAsString(request));
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.zzeng.dnscache.cache;
+
+import com.zzeng.dnscache.config.DnsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tells the other nodes which records this one changed, so that they drop their {@link LocalCache} copies
+ * (the near-cache, the off-heap tier) instead of serving them until they expire. Enabled by default with the
+ * Redis engine; see {@code dns.invalidation}.
+ * <p>
+ * Changes are collected for up to {@code flush-interval} and published in one Redis pub/sub message, a line of
+ * space-separated fields: the sending node's id, its sequence number, and {@code K} followed by the cache keys,
+ * {@code A} for "everything", or {@code H} for a heartbeat, which carries the last number sent. Applying a message
+ * only drops local copies, so a repeated one does no harm; still, receivers skip numbers they have seen. Pub/sub
+ * does not redeliver messages missed while disconnected. Instead, a receiver that sees a number skipped (at the
+ * latest with the next heartbeat), or has to subscribe again, flushes its local caches altogether.
+ * <p>
+ * Nodes get a new id each time they start, so the numbers of nodes that have not been heard from for
+ * {@value #SILENT_HEARTBEATS} heartbeat intervals are forgotten. If such a node was still alive, its next message
+ * comes with a number past the first, which counts as a gap all the same.
+ */
+@Component
+public class CacheInvalidationBus implements SmartLifecycle {
+
+    static final String MESSAGES_METRIC = "dns.invalidation.messages";
+    static final String FLUSHES_METRIC = "dns.invalidation.flushes";
+
+    // Heartbeat intervals without a message after which another node is forgotten.
+    static final int SILENT_HEARTBEATS = 3;
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationBus.class);
+    private static final Invalidation ALL = new Invalidation(List.of(), true);
+    private static final Invalidation HEARTBEAT = new Invalidation(List.of(), false);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final List<LocalCache> localCaches;
+    private final DnsProperties.Invalidation settings;
+    private final boolean enabled;
+    private final String channel;
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+    private final AtomicLong sequence = new AtomicLong();
+    // The last sequence number applied from each other node, and when it was last heard from.
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    private final long silenceMillis;
+    // Since when the channel has been listened to without a break: until a silence has passed, there may be
+    // nodes alive that have not been heard from yet.
+    private volatile long listeningSinceMillis = Long.MAX_VALUE;
+    private final Sinks.Many<Invalidation> pending = Sinks.many().unicast().onBackpressureBuffer();
+    private final Counter published;
+    private final Counter received;
+    private final Counter gapFlushes;
+    private final Counter resubscribeFlushes;
+
+    private volatile Disposable publishing;
+    private volatile Disposable listening;
+    private volatile Disposable heartbeats;
+
+    @Autowired
+    public CacheInvalidationBus(ReactiveStringRedisTemplate redisTemplate, List<LocalCache> localCaches,
+                                DnsProperties dnsProperties, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.localCaches = localCaches;
+        this.settings = dnsProperties.getInvalidation();
+        this.enabled = settings.isEnabled() && dnsProperties.getStorage().getEngine() == DnsProperties.Storage.Engine.REDIS;
+        this.channel = dnsProperties.getRedis().getKeyPrefix() + "invalidations";
+        this.silenceMillis = settings.getHeartbeatInterval().toMillis() * SILENT_HEARTBEATS;
+        this.published = messageCounter(meterRegistry, "published");
+        this.received = messageCounter(meterRegistry, "received");
+        this.gapFlushes = flushCounter(meterRegistry, "gap");
+        this.resubscribeFlushes = flushCounter(meterRegistry, "resubscribe");
+    }
+
+    private static Counter messageCounter(MeterRegistry meterRegistry, String direction) {
+        return Counter.builder(MESSAGES_METRIC)
+                .description("Invalidation messages exchanged with other nodes")
+                .tag("direction", direction)
+                .register(meterRegistry);
+    }
+
+    private static Counter flushCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder(FLUSHES_METRIC)
+                .description("Local caches flushed because invalidation messages may have been missed")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Tells the other nodes to drop the given cache keys. Returns at once; the keys go out with the next batch.
+     */
+    public void publish(Collection<String> keys) {
+        if (enabled && !keys.isEmpty()) {
+            emit(new Invalidation(List.copyOf(keys), false));
+        }
+    }
+
+    /**
+     * Tells the other nodes to drop everything they cache locally.
+     */
+    public void publishAll() {
+        if (enabled) {
+            emit(ALL);
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    private synchronized void emit(Invalidation invalidation) {
+        pending.tryEmitNext(invalidation);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        publishing = pending.asFlux()
+                .bufferTimeout(Math.max(1, settings.getBatchSize()), settings.getFlushInterval())
+                .onBackpressureBuffer()
+                .concatMap(batch -> send(encode(batch))
+                        .onErrorResume(e -> {
+                            // The number is used up all the same, so the other nodes will see the gap.
+                            logger.warn("Failed to publish cache invalidations: {}", e.toString());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+        heartbeats = Flux.interval(settings.getHeartbeatInterval())
+                .subscribe(tick -> {
+                    emit(HEARTBEAT);
+                    forgetSilentPeers(System.currentTimeMillis());
+                });
+
+        AtomicBoolean subscribedBefore = new AtomicBoolean();
+        listening = Flux.defer(() -> {
+                    if (subscribedBefore.getAndSet(true)) {
+                        // Messages sent while we were not subscribed are lost.
+                        resubscribeFlushes.increment();
+                        flushLocalCaches();
+                    }
+                    listeningSince(System.currentTimeMillis());
+                    return redisTemplate.listenToChannel(channel);
+                })
+                .doOnNext(message -> apply(message.getMessage()))
+                .doOnError(e -> logger.warn("Cache invalidation subscription failed, subscribing again: {}", e.toString()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .repeat()
+                .subscribe();
+    }
+
+    @Override
+    public void stop() {
+        for (Disposable disposable : new Disposable[] {heartbeats, listening, publishing}) {
+            if (disposable != null) {
+                disposable.dispose();
+            }
+        }
+        heartbeats = null;
+        listening = null;
+        publishing = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return listening != null;
+    }
+
+    /**
+     * Encodes one batch as a message, numbering it unless it only holds heartbeats.
+     */
+    String encode(List<Invalidation> batch) {
+        boolean all = false;
+        Set<String> keys = new LinkedHashSet<>();
+        for (Invalidation invalidation : batch) {
+            all |= invalidation.all();
+            keys.addAll(invalidation.keys());
+        }
+        StringBuilder message = new StringBuilder(nodeId).append(' ');
+        if (all) {
+            return message.append(sequence.incrementAndGet()).append(" A").toString();
+        }
+        if (keys.isEmpty()) {
+            return message.append(sequence.get()).append(" H").toString();
+        }
+        message.append(sequence.incrementAndGet()).append(" K");
+        for (String key : keys) {
+            message.append(' ').append(key);
+        }
+        return message.toString();
+    }
+
+    private Mono<Long> send(String message) {
+        return redisTemplate.convertAndSend(channel, message)
+                .doOnSuccess(receivers -> published.increment());
+    }
+
+    /**
+     * Applies a message from another node; messages of this node are skipped.
+     */
+    void apply(String message) {
+        String[] fields = message.split(" ");
+        if (fields.length < 3 || fields[0].equals(nodeId)) {
+            return;
+        }
+        long number;
+        try {
+            number = Long.parseLong(fields[1]);
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring malformed cache invalidation: {}", message);
+            return;
+        }
+        received.increment();
+        long now = System.currentTimeMillis();
+        String kind = fields[2];
+        boolean heartbeat = "H".equals(kind);
+        Peer peer = peers.get(fields[0]);
+        // A heartbeat repeats the last number; anything else comes with the next one. A node not heard from
+        // while we listened long enough to know every live node starts at the beginning: 0, or 1 for a change.
+        long last = peer != null ? peer.number() : 0;
+        boolean known = peer != null || now - listeningSinceMillis >= silenceMillis;
+        if (known) {
+            long expected = heartbeat ? last : last + 1;
+            if (number < expected) {
+                return;
+            }
+            if (number > expected) {
+                peers.put(fields[0], new Peer(number, now));
+                gapFlushes.increment();
+                flushLocalCaches();
+                return;
+            }
+        }
+        peers.put(fields[0], new Peer(number, now));
+        if ("A".equals(kind)) {
+            flushLocalCaches();
+        } else if ("K".equals(kind)) {
+            List<String> keys = List.of(fields).subList(3, fields.length);
+            localCaches.forEach(cache -> cache.invalidateAll(keys));
+        }
+    }
+
+    void listeningSince(long nowMillis) {
+        listeningSinceMillis = nowMillis;
+    }
+
+    /**
+     * Forgets the nodes that have sent nothing, not even a heartbeat, for {@value #SILENT_HEARTBEATS} intervals.
+     */
+    void forgetSilentPeers(long nowMillis) {
+        peers.forEach((node, peer) -> {
+            if (nowMillis - peer.heardAtMillis() >= silenceMillis) {
+                peers.remove(node, peer);
+            }
+        });
+    }
+
+    int peerCount() {
+        return peers.size();
+    }
+
+    private void flushLocalCaches() {
+        localCaches.forEach(LocalCache::invalidateAll);
+    }
+
+    /**
+     * Keys to drop, or everything; neither for a heartbeat.
+     */
+    record Invalidation(List<String> keys, boolean all) {}
+
+    private record Peer(long number, long heardAtMillis) {}
+}
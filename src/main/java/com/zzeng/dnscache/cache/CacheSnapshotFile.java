@@ -0,0 +1,124 @@
+package com.zzeng.dnscache.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes the warm-start snapshot: a header followed by one length-prefixed entry after another.
+ * <pre>
+ * header: magic "DNSS" (4 bytes), version (short)
+ * entry:  length of the rest (int), key length (short), key (UTF-8), expiry (epoch millis, long), hits (long),
+ *         value length (int), value (the record as the codec encoded it)
+ * </pre>
+ * An entry cut short at the end of the file (a copy or disk that ran out) ends the read without failing it.
+ * Files are read memory-mapped and written to a temporary file that then replaces the old one.
+ */
+public final class CacheSnapshotFile {
+
+    private static final int MAGIC = 0x444E5353;
+    private static final short VERSION = 1;
+    private static final int HEADER_BYTES = 6;
+
+    private CacheSnapshotFile() {}
+
+    /**
+     * Writes the entries, in order, replacing the file at once.
+     */
+    public static void write(Path file, List<Entry> entries) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                for (Entry entry : entries) {
+                    byte[] key = entry.key().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(2 + key.length + 8 + 8 + 4 + entry.value().length);
+                    out.writeShort(key.length);
+                    out.write(key);
+                    out.writeLong(entry.expiresAtMillis());
+                    out.writeLong(entry.hits());
+                    out.writeInt(entry.value().length);
+                    out.write(entry.value());
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads the entries in the order they were written; a missing or empty file has none.
+     *
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static List<Entry> read(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            return List.of();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a cache snapshot: " + file);
+            }
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported cache snapshot version " + version + ": " + file);
+            }
+            List<Entry> entries = new ArrayList<>();
+            while (buffer.remaining() >= 4) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    // The last entry of an interrupted write.
+                    break;
+                }
+                ByteBuffer entry = buffer.slice(buffer.position(), length);
+                buffer.position(buffer.position() + length);
+                try {
+                    entries.add(readEntry(entry));
+                } catch (BufferUnderflowException | IllegalArgumentException e) {
+                    break;
+                }
+            }
+            return entries;
+        }
+    }
+
+    private static Entry readEntry(ByteBuffer buffer) {
+        byte[] key = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(key);
+        long expiresAtMillis = buffer.getLong();
+        long hits = buffer.getLong();
+        int valueLength = buffer.getInt();
+        if (valueLength < 0 || valueLength > buffer.remaining()) {
+            throw new IllegalArgumentException("Bad value length " + valueLength);
+        }
+        byte[] value = new byte[valueLength];
+        buffer.get(value);
+        return new Entry(new String(key, StandardCharsets.UTF_8), value, expiresAtMillis, hits);
+    }
+
+    /**
+     * One cached record.
+     *
+     * @param key the cache key ({@link com.zzeng.dnscache.model.DnsRecord#cacheKey})
+     * @param value the record as the codec encoded it
+     * @param expiresAtMillis when the cached record expires, in epoch milliseconds
+     * @param hits how often it was read before the snapshot was taken
+     */
+    public record Entry(String key, byte[] value, long expiresAtMillis, long hits) {}
+}
@@ -0,0 +1,208 @@
+package com.zzeng.dnscache.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.model.DnsRecord;
+import com.zzeng.dnscache.model.DnsRecordValue;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Bounded in-process cache for hot DNS records, consulted before Redis on the resolve path.
+ * Entries expire with the remaining TTL of the record they hold, and admission/eviction
+ * is handled by Caffeine's W-TinyLFU policy.
+ */
+@Component
+public class DnsNearCache implements LocalCache {
+
+    public static final String CACHE_NAME = "dns.near-cache";
+
+    // Rough per-entry overhead: map node, entry wrapper, DnsRecord and two String headers.
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+    // Per value: DnsRecordValue, its String header and the list slot.
+    private static final int VALUE_OVERHEAD_BYTES = 64;
+
+    private final boolean enabled;
+    private final Cache<String, Entry> cache;
+
+    @Autowired
+    public DnsNearCache(DnsProperties dnsProperties, MeterRegistry meterRegistry) {
+        DnsProperties.NearCache props = dnsProperties.getNearCache();
+        this.enabled = props.isEnabled();
+        this.cache = buildCache(props);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Returns the cached record for the cache key ({@link DnsRecord#cacheKey}), or null if absent or expired.
+     */
+    public DnsRecord getIfPresent(String key) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.hits++;
+        return entry.record();
+    }
+
+    /**
+     * Returns the cached record together with what is left of its lifetime, or null if absent or expired.
+     */
+    public Hit getHit(String key) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+        long remainingNanos = entry.expiresAtNanos() - System.nanoTime();
+        if (remainingNanos <= 0) {
+            return null;
+        }
+        entry.hits++;
+        return new Hit(entry.record(), Duration.ofNanos(remainingNanos));
+    }
+
+    /**
+     * Returns the unexpired entries read most often since they were cached, most read first.
+     *
+     * @param limit the most entries to return
+     */
+    public List<HotEntry> hottest(int limit) {
+        long now = System.nanoTime();
+        List<HotEntry> entries = new ArrayList<>();
+        for (Entry entry : cache.asMap().values()) {
+            long remainingNanos = entry.expiresAtNanos() - now;
+            if (remainingNanos > 0) {
+                entries.add(new HotEntry(entry.record(), Duration.ofNanos(remainingNanos), entry.hits));
+            }
+        }
+        entries.sort(Comparator.comparingLong(HotEntry::hits).reversed());
+        return entries.size() > limit ? new ArrayList<>(entries.subList(0, limit)) : entries;
+    }
+
+    /**
+     * Caches the record for as long as it has left to live upstream (in Redis).
+     * Non-positive durations are ignored so that we never outlive the backing entry.
+     */
+    public void put(DnsRecord record, Duration remainingTtl) {
+        if (!enabled || remainingTtl == null || remainingTtl.isNegative() || remainingTtl.isZero()) {
+            return;
+        }
+        long ttlNanos = remainingTtl.toNanos();
+        cache.put(record.getCacheKey(), new Entry(record, ttlNanos, System.nanoTime() + ttlNanos));
+    }
+
+    public void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll(Collection<String> keys) {
+        cache.invalidateAll(keys);
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static Cache<String, Entry> buildCache(DnsProperties.NearCache props) {
+        long maxSize = Math.max(1, props.getMaximumSize());
+        long maxBytes = props.getMaximumMemoryBytes();
+
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().recordStats();
+        if (maxBytes > 0) {
+            // Caffeine takes a single bound, so both caps are folded into one weight:
+            // no entry weighs less than maxBytes / maxSize, which keeps the count under maxSize too.
+            long minWeight = Math.max(1, maxBytes / maxSize);
+            builder.maximumWeight(maxBytes)
+                    .weigher((String key, Entry entry) ->
+                            (int) Math.min(Integer.MAX_VALUE, Math.max(minWeight, estimateBytes(entry.record()))));
+        } else {
+            builder.maximumSize(maxSize);
+        }
+
+        return builder
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return entry.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return entry.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    private static long estimateBytes(DnsRecord record) {
+        long chars = record.getDomain() != null ? record.getDomain().length() : 0;
+        int values = 0;
+        if (record.getValues() != null) {
+            for (DnsRecordValue value : record.getValues()) {
+                chars += value.getData() != null ? value.getData().length() : 0;
+                values++;
+            }
+        }
+        return ENTRY_OVERHEAD_BYTES + values * VALUE_OVERHEAD_BYTES + chars * 2;
+    }
+
+    /**
+     * A near-cache hit and the time it has left before it expires.
+     */
+    public record Hit(DnsRecord record, Duration remainingTtl) {}
+
+    /**
+     * A cached record, what is left of its lifetime, and how often it was read from the near-cache.
+     */
+    public record HotEntry(DnsRecord record, Duration remainingTtl, long hits) {}
+
+    private static final class Entry {
+
+        private final DnsRecord record;
+        private final long ttlNanos;
+        private final long expiresAtNanos;
+        // Bumped without synchronisation: a lost update now and then does not matter for ranking entries.
+        private int hits;
+
+        private Entry(DnsRecord record, long ttlNanos, long expiresAtNanos) {
+            this.record = record;
+            this.ttlNanos = ttlNanos;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        private DnsRecord record() {
+            return record;
+        }
+
+        private long ttlNanos() {
+            return ttlNanos;
+        }
+
+        private long expiresAtNanos() {
+            return expiresAtNanos;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.zzeng.dnscache.cache;
+
+import java.util.Collection;
+
+/**
+ * State a node keeps about cached records on its own, which has to be dropped when another node changes them;
+ * see {@link CacheInvalidationBus}.
+ */
+public interface LocalCache {
+
+    /**
+     * Drops the given cache keys ({@link com.zzeng.dnscache.model.DnsRecord#cacheKey}).
+     */
+    void invalidateAll(Collection<String> keys);
+
+    /**
+     * Drops everything.
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,298 @@
+package com.zzeng.dnscache.cache;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Fixed-size hash table of encoded records kept outside the Java heap, in direct {@link ByteBuffer}s, so that
+ * millions of cached names cost the garbage collector nothing. Values are stored as the codec wrote them.
+ * <p>
+ * The table is split into segments, each a buffer of equal-sized slots behind its own lock. A key's hash picks
+ * the segment and a home slot, and the key lives in one of the {@value #PROBES} slots from there on (open
+ * addressing with linear probing). Lookups compare the stored hash and key bytes in place and only allocate
+ * the value they return. A write takes the key's own slot, an empty or expired one, or else evicts the record
+ * closest to expiry in the probe window. Records whose key and value do not fit a slot, and keys that are not
+ * ASCII, are not stored.
+ */
+public class OffHeapRecordStore {
+
+    static final int PROBES = 8;
+
+    // Slot layout: hash (int), expiry in nanos since the store's origin (long), key length, value length, key, value.
+    private static final int HASH = 0;
+    private static final int EXPIRES_AT = 4;
+    private static final int KEY_LENGTH = 12;
+    private static final int VALUE_LENGTH = 14;
+    private static final int HEADER_BYTES = 16;
+    private static final long NEVER = Long.MAX_VALUE;
+    private static final int MAX_SEGMENTS = 64;
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final int slotBytes;
+    private final int slotsPerSegment;
+    private final int probes;
+    private final LongSupplier nanoClock;
+    private final long origin;
+    private final LongAdder entries = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public OffHeapRecordStore(long capacityBytes, int slotBytes) {
+        this(capacityBytes, slotBytes, System::nanoTime);
+    }
+
+    OffHeapRecordStore(long capacityBytes, int slotBytes, LongSupplier nanoClock) {
+        if (slotBytes <= HEADER_BYTES || slotBytes > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Slot size must be between " + (HEADER_BYTES + 1) + " and "
+                    + Short.MAX_VALUE + " bytes: " + slotBytes);
+        }
+        long totalSlots = capacityBytes / slotBytes;
+        if (totalSlots < 1) {
+            throw new IllegalArgumentException("Capacity of " + capacityBytes + " bytes holds no " + slotBytes + "-byte slot");
+        }
+        // About a thousand slots per segment, but no segment over 1 GiB, which a ByteBuffer could not address.
+        int segmentCount = Integer.highestOneBit((int) Math.max(1, Math.min(MAX_SEGMENTS, totalSlots / 1024)));
+        while ((long) segmentCount * MAX_SEGMENT_BYTES < capacityBytes) {
+            segmentCount <<= 1;
+        }
+        this.slotBytes = slotBytes;
+        this.slotsPerSegment = (int) (totalSlots / segmentCount);
+        this.probes = Math.min(PROBES, slotsPerSegment);
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(ByteBuffer.allocateDirect(slotsPerSegment * slotBytes));
+        }
+        this.nanoClock = nanoClock;
+        this.origin = nanoClock.getAsLong();
+    }
+
+    /**
+     * Returns the stored value of the key, or null if it is absent or expired.
+     */
+    public byte[] get(String key) {
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.lock.readLock();
+        try {
+            int slot = find(segment.buffer, hash, key, now());
+            if (slot < 0) {
+                return null;
+            }
+            byte[] value = new byte[segment.buffer.getShort(slot + VALUE_LENGTH)];
+            segment.buffer.get(slot + HEADER_BYTES + key.length(), value);
+            return value;
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the time the key has left, {@link Duration#ZERO} if it never expires, or null if it is absent or expired.
+     */
+    public Duration remaining(String key) {
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.lock.readLock();
+        try {
+            long now = now();
+            int slot = find(segment.buffer, hash, key, now);
+            if (slot < 0) {
+                return null;
+            }
+            long expiresAt = segment.buffer.getLong(slot + EXPIRES_AT);
+            return expiresAt == NEVER ? Duration.ZERO : Duration.ofNanos(expiresAt - now);
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Stores the value for the given time, {@link Duration#ZERO} meaning it never expires.
+     *
+     * @return false if the record cannot be stored here (too large, a non-ASCII key or a negative TTL)
+     */
+    public boolean put(String key, byte[] value, Duration ttl) {
+        if (ttl.isNegative() || !fits(key, value)) {
+            remove(key);
+            return false;
+        }
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            ByteBuffer buffer = segment.buffer;
+            long now = now();
+            int home = homeSlot(hash);
+            int target = -1;
+            int free = -1;
+            int victim = -1;
+            for (int i = 0; i < probes; i++) {
+                int slot = slotOffset(home, i);
+                short keyLength = buffer.getShort(slot + KEY_LENGTH);
+                if (keyLength == 0 || buffer.getLong(slot + EXPIRES_AT) <= now) {
+                    if (free < 0) {
+                        free = slot;
+                    }
+                } else if (matches(buffer, slot, hash, key)) {
+                    target = slot;
+                    break;
+                } else if (victim < 0 || buffer.getLong(slot + EXPIRES_AT) < buffer.getLong(victim + EXPIRES_AT)) {
+                    victim = slot;
+                }
+            }
+            if (target < 0) {
+                if (free >= 0) {
+                    target = free;
+                    if (buffer.getShort(free + KEY_LENGTH) == 0) {
+                        entries.increment();
+                    }
+                } else {
+                    target = victim;
+                    evictions.increment();
+                }
+            }
+            buffer.putInt(target + HASH, hash);
+            buffer.putLong(target + EXPIRES_AT, ttl.isZero() ? NEVER : now + ttl.toNanos());
+            buffer.putShort(target + KEY_LENGTH, (short) key.length());
+            buffer.putShort(target + VALUE_LENGTH, (short) value.length);
+            for (int i = 0; i < key.length(); i++) {
+                buffer.put(target + HEADER_BYTES + i, (byte) key.charAt(i));
+            }
+            buffer.put(target + HEADER_BYTES + key.length(), value);
+            return true;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the key, if stored.
+     */
+    public void remove(String key) {
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            int home = homeSlot(hash);
+            for (int i = 0; i < probes; i++) {
+                int slot = slotOffset(home, i);
+                if (segment.buffer.getShort(slot + KEY_LENGTH) != 0 && matches(segment.buffer, slot, hash, key)) {
+                    segment.buffer.putShort(slot + KEY_LENGTH, (short) 0);
+                    entries.decrement();
+                }
+            }
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            long stamp = segment.lock.writeLock();
+            try {
+                for (int slot = 0; slot < slotsPerSegment; slot++) {
+                    int offset = slot * slotBytes;
+                    if (segment.buffer.getShort(offset + KEY_LENGTH) != 0) {
+                        segment.buffer.putShort(offset + KEY_LENGTH, (short) 0);
+                        entries.decrement();
+                    }
+                }
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * The number of occupied slots, including expired records not yet overwritten.
+     */
+    public long size() {
+        return entries.sum();
+    }
+
+    /**
+     * The number of unexpired records overwritten to make room for others.
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public long capacityBytes() {
+        return (long) segments.length * slotsPerSegment * slotBytes;
+    }
+
+    /**
+     * Whether a record with this key and value can be stored at all.
+     */
+    public boolean fits(String key, byte[] value) {
+        if (key.isEmpty() || HEADER_BYTES + key.length() + value.length > slotBytes) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int find(ByteBuffer buffer, int hash, String key, long now) {
+        int home = homeSlot(hash);
+        for (int i = 0; i < probes; i++) {
+            int slot = slotOffset(home, i);
+            if (buffer.getShort(slot + KEY_LENGTH) != 0 && matches(buffer, slot, hash, key)) {
+                return buffer.getLong(slot + EXPIRES_AT) > now ? slot : -1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int slot, int hash, String key) {
+        if (buffer.getInt(slot + HASH) != hash || buffer.getShort(slot + KEY_LENGTH) != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (buffer.get(slot + HEADER_BYTES + i) != (byte) key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(String key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments.length == 1 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    private int homeSlot(int hash) {
+        return (hash & 0x7fffffff) % slotsPerSegment;
+    }
+
+    private int slotOffset(int home, int probe) {
+        return ((home + probe) % slotsPerSegment) * slotBytes;
+    }
+
+    private long now() {
+        // Relative to the origin, so that NEVER compares later than any expiry.
+        return nanoClock.getAsLong() - origin;
+    }
+
+    private static final class Segment {
+
+        private final ByteBuffer buffer;
+        private final StampedLock lock = new StampedLock();
+
+        private Segment(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
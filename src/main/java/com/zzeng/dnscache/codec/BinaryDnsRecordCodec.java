@@ -0,0 +1,216 @@
+package com.zzeng.dnscache.codec;
+
+import com.zzeng.dnscache.model.DnsRecord;
+import com.zzeng.dnscache.model.DnsRecordValue;
+import org.xbill.DNS.Address;
+import org.xbill.DNS.Type;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact storage format. The domain is not repeated (it is the key), and addresses are stored as raw bytes.
+ * <pre>
+ * byte 0      version: 0x01 single address, 0x02 RRset; JSON values start with '{' instead
+ * byte 1      flags: 0x01 manual, 0x02 IPv6, 0x04 values kept as text, 0x08 per-value TTLs (version 2 only),
+ *             0x10 negative answer (an empty version 2 set), 0x20 with 0x10: NXDOMAIN rather than no data
+ * varint      ttl in seconds (unsigned LEB128)
+ * version 1:  4/16 bytes address, or varint length + UTF-8 text when it is not a plain IP literal
+ * version 2:  varint type code, varint value count, then per value
+ *             [varint ttl] and 4/16 address bytes, or varint length + UTF-8 text
+ * </pre>
+ * Version 1 is still written for the common case, one A or AAAA address served with the record's own TTL,
+ * and in version 2 value TTLs are only stored when one of them differs from the record's.
+ * The TTL is kept right after the two header bytes so that server-side scripts can rewrite it in place.
+ * Reads legacy JSON values by handing them to {@link JsonDnsRecordCodec}.
+ */
+public class BinaryDnsRecordCodec implements DnsRecordCodec {
+
+    static final byte VERSION_1 = 0x01;
+    static final byte VERSION_2 = 0x02;
+
+    static final int FLAG_MANUAL = 0x01;
+    static final int FLAG_IPV6 = 0x02;
+    static final int FLAG_TEXT_ADDRESS = 0x04;
+    static final int FLAG_VALUE_TTLS = 0x08;
+    static final int FLAG_NEGATIVE = 0x10;
+    static final int FLAG_NXDOMAIN = 0x20;
+
+    private final JsonDnsRecordCodec legacyCodec;
+
+    public BinaryDnsRecordCodec(JsonDnsRecordCodec legacyCodec) {
+        this.legacyCodec = legacyCodec;
+    }
+
+    @Override
+    public byte[] encode(DnsRecord record) {
+        String type = record.getType() != null ? record.getType() : DnsRecord.TYPE_A;
+        List<DnsRecordValue> values = record.getValues() != null ? record.getValues() : List.of();
+        int addressLength = DnsRecord.TYPE_A.equals(type) ? 4 : DnsRecord.TYPE_AAAA.equals(type) ? 16 : 0;
+
+        List<byte[]> raw = new ArrayList<>(values.size());
+        boolean valueTtls = false;
+        for (DnsRecordValue value : values) {
+            byte[] address = addressLength > 0 ? rawAddress(value.getData()) : null;
+            raw.add(address != null && address.length == addressLength ? address : null);
+            valueTtls |= value.getTtl() != record.getTtl();
+        }
+        boolean allRaw = addressLength > 0 && !raw.contains(null);
+
+        int flags = record.isManual() ? FLAG_MANUAL : 0;
+        if (!allRaw) {
+            flags |= FLAG_TEXT_ADDRESS;
+        } else if (addressLength == 16) {
+            flags |= FLAG_IPV6;
+        }
+        if (record.isNegative()) {
+            flags |= DnsRecord.STATUS_NXDOMAIN.equals(record.getStatus()) ? FLAG_NEGATIVE | FLAG_NXDOMAIN : FLAG_NEGATIVE;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2 + 5 + 16);
+        if (allRaw && values.size() == 1 && !valueTtls) {
+            out.write(VERSION_1);
+            out.write(flags);
+            writeVarint(out, record.getTtl());
+            out.writeBytes(raw.get(0));
+            return out.toByteArray();
+        }
+
+        out.write(VERSION_2);
+        out.write(valueTtls ? flags | FLAG_VALUE_TTLS : flags);
+        writeVarint(out, record.getTtl());
+        writeVarint(out, typeCode(type));
+        writeVarint(out, values.size());
+        for (int i = 0; i < values.size(); i++) {
+            if (valueTtls) {
+                writeVarint(out, values.get(i).getTtl());
+            }
+            if (allRaw) {
+                out.writeBytes(raw.get(i));
+            } else {
+                String data = values.get(i).getData() != null ? values.get(i).getData() : "";
+                byte[] text = data.getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, text.length);
+                out.writeBytes(text);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public DnsRecord decode(String domain, byte[] value) {
+        if (JsonDnsRecordCodec.isJson(value)) {
+            return legacyCodec.decode(domain, value);
+        }
+        return decodeBinary(domain, value);
+    }
+
+    static DnsRecord decodeBinary(String domain, byte[] value) {
+        if (value.length < 3 || (value[0] != VERSION_1 && value[0] != VERSION_2)) {
+            throw new IllegalArgumentException("Unknown record encoding for " + domain);
+        }
+        int flags = value[1];
+        int[] pos = {2};
+        long ttl = readVarint(value, pos);
+        boolean manual = (flags & FLAG_MANUAL) != 0;
+
+        if (value[0] == VERSION_1) {
+            return new DnsRecord(DnsRecord.domainOf(domain), readValue(value, pos, flags, domain), ttl, manual);
+        }
+
+        String type = Type.string((int) readVarint(value, pos));
+        int count = (int) readVarint(value, pos);
+        checkRemaining(value, pos[0], count, domain);
+        List<DnsRecordValue> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long valueTtl = (flags & FLAG_VALUE_TTLS) != 0 ? readVarint(value, pos) : ttl;
+            values.add(new DnsRecordValue(readValue(value, pos, flags, domain), valueTtl));
+        }
+        DnsRecord record = new DnsRecord(DnsRecord.domainOf(domain), type, values, ttl, manual);
+        if ((flags & FLAG_NEGATIVE) != 0) {
+            record.setStatus((flags & FLAG_NXDOMAIN) != 0 ? DnsRecord.STATUS_NXDOMAIN : DnsRecord.STATUS_NODATA);
+        }
+        return record;
+    }
+
+    private static String readValue(byte[] value, int[] pos, int flags, String domain) {
+        int length;
+        if ((flags & FLAG_TEXT_ADDRESS) != 0) {
+            length = (int) readVarint(value, pos);
+            checkRemaining(value, pos[0], length, domain);
+            String text = new String(value, pos[0], length, StandardCharsets.UTF_8);
+            pos[0] += length;
+            return text;
+        }
+        length = (flags & FLAG_IPV6) != 0 ? 16 : 4;
+        checkRemaining(value, pos[0], length, domain);
+        byte[] raw = new byte[length];
+        System.arraycopy(value, pos[0], raw, 0, length);
+        pos[0] += length;
+        return formatAddress(raw);
+    }
+
+    private static int typeCode(String type) {
+        int code = Type.value(type);
+        if (code < 0) {
+            throw new IllegalArgumentException("Unknown record type " + type);
+        }
+        return code;
+    }
+
+    /**
+     * Returns the address as raw bytes, or null when the bytes would not render back to the exact same text
+     * (host names, zero-padded or compressed forms we cannot reproduce).
+     */
+    private static byte[] rawAddress(String ip) {
+        if (ip == null) {
+            return null;
+        }
+        byte[] raw = Address.toByteArray(ip, Address.IPv4);
+        if (raw == null) {
+            raw = Address.toByteArray(ip, Address.IPv6);
+        }
+        return raw != null && formatAddress(raw).equals(ip) ? raw : null;
+    }
+
+    private static String formatAddress(byte[] raw) {
+        try {
+            return InetAddress.getByAddress(raw).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Invalid address length " + raw.length, e);
+        }
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarint(byte[] value, int[] pos) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos[0] >= value.length) {
+                throw new IllegalArgumentException("Truncated varint");
+            }
+            byte b = value[pos[0]++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    private static void checkRemaining(byte[] value, int pos, int length, String domain) {
+        if (length < 0 || pos + length > value.length) {
+            throw new IllegalArgumentException("Truncated record for " + domain);
+        }
+    }
+}
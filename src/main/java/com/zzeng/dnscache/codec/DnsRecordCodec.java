@@ -0,0 +1,72 @@
+package com.zzeng.dnscache.codec;
+
+import com.zzeng.dnscache.model.DnsRecord;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+/**
+ * Converts {@link DnsRecord}s to and from the bytes stored in Redis.
+ * Every codec must be able to read values written by any other codec (the first byte tells them apart),
+ * so the storage format can be switched without flushing the cache.
+ */
+public interface DnsRecordCodec {
+
+    /**
+     * Values that could not be encoded or decoded, tagged with the operation. Counted by
+     * {@link MeteredDnsRecordCodec}.
+     */
+    String ERRORS_METRIC = "dns.codec.errors";
+
+    /**
+     * Encodes a record for storage.
+     *
+     * @param record the record to encode
+     * @return the stored form of the record
+     */
+    byte[] encode(DnsRecord record);
+
+    /**
+     * Decodes a stored value.
+     *
+     * @param domain the cache key the value is stored under ({@link DnsRecord#cacheKey}), which gives the domain
+     *               to formats that do not repeat it in the value
+     * @param value the stored bytes
+     * @return the decoded record
+     * @throws IllegalArgumentException if the value is not a valid encoded record
+     */
+    DnsRecord decode(String domain, byte[] value);
+
+    /**
+     * Decodes a stored value, logging and skipping values that cannot be read.
+     *
+     * @return a Mono emitting the record, or empty if the value is corrupt
+     */
+    default Mono<DnsRecord> safeDecode(String domain, byte[] value) {
+        try {
+            return Mono.just(decode(domain, value));
+        } catch (Exception e) {
+            LoggerFactory.getLogger(getClass()).warn("Failed to decode cached value for {}", domain, e);
+            return Mono.empty();
+        }
+    }
+
+    /**
+     * Encodes a record, turning failures into an error signal.
+     */
+    default Mono<byte[]> safeEncode(DnsRecord record) {
+        try {
+            return Mono.just(encode(record));
+        } catch (Exception e) {
+            LoggerFactory.getLogger(getClass()).error("Failed to encode DnsRecord for {}", record.getDomain(), e);
+            return Mono.error(e);
+        }
+    }
+
+    /**
+     * Storage formats selectable with {@code dns.redis.codec}.
+     */
+    enum Format {
+        JSON,
+        BINARY
+    }
+}
@@ -0,0 +1,56 @@
+package com.zzeng.dnscache.codec;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.zzeng.dnscache.model.DnsRecord;
+
+import java.io.IOException;
+
+/**
+ * The original storage format: the record as a JSON object.
+ * Reads binary values too, by handing them to {@link BinaryDnsRecordCodec}.
+ */
+public class JsonDnsRecordCodec implements DnsRecordCodec {
+
+    private final ObjectMapper objectMapper;
+
+    public JsonDnsRecordCodec(ObjectMapper objectMapper) {
+        // Stored values are never read by people, so skip the shared mapper's indentation.
+        this.objectMapper = objectMapper.copy()
+                .disable(SerializationFeature.INDENT_OUTPUT)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    @Override
+    public byte[] encode(DnsRecord record) {
+        try {
+            return objectMapper.writeValueAsBytes(record);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot encode record for " + record.getDomain(), e);
+        }
+    }
+
+    @Override
+    public DnsRecord decode(String domain, byte[] value) {
+        if (!isJson(value)) {
+            return BinaryDnsRecordCodec.decodeBinary(domain, value);
+        }
+        try {
+            JsonNode node = objectMapper.readTree(value);
+            if (node.has("ip") && !node.has("values")) {
+                // Written before records carried RRsets: a single address and no type.
+                return new DnsRecord(node.path("domain").asText(domain), node.path("ip").asText(),
+                        node.path("ttl").asLong(), node.path("manual").asBoolean());
+            }
+            return objectMapper.treeToValue(node, DnsRecord.class);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid JSON record for " + domain, e);
+        }
+    }
+
+    static boolean isJson(byte[] value) {
+        return value.length > 0 && (value[0] == '{' || Character.isWhitespace(value[0]));
+    }
+}
@@ -0,0 +1,53 @@
+package com.zzeng.dnscache.codec;
+
+import com.zzeng.dnscache.model.DnsRecord;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Counts the values another codec fails to encode or decode through {@link #safeEncode} and {@link #safeDecode},
+ * as {@link DnsRecordCodec#ERRORS_METRIC} in the given registry. The codec bean is wrapped in one.
+ */
+public class MeteredDnsRecordCodec implements DnsRecordCodec {
+
+    private final DnsRecordCodec codec;
+    private final Counter decodeErrors;
+    private final Counter encodeErrors;
+
+    public MeteredDnsRecordCodec(DnsRecordCodec codec, MeterRegistry meterRegistry) {
+        this.codec = codec;
+        this.decodeErrors = errorCounter(meterRegistry, "decode");
+        this.encodeErrors = errorCounter(meterRegistry, "encode");
+    }
+
+    private static Counter errorCounter(MeterRegistry meterRegistry, String operation) {
+        return Counter.builder(ERRORS_METRIC)
+                .description("Cached values that could not be encoded or decoded")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public byte[] encode(DnsRecord record) {
+        return codec.encode(record);
+    }
+
+    @Override
+    public DnsRecord decode(String domain, byte[] value) {
+        return codec.decode(domain, value);
+    }
+
+    @Override
+    public Mono<DnsRecord> safeDecode(String domain, byte[] value) {
+        // Empty only for a value that could not be read.
+        return codec.safeDecode(domain, value)
+                .switchIfEmpty(Mono.fromRunnable(decodeErrors::increment));
+    }
+
+    @Override
+    public Mono<byte[]> safeEncode(DnsRecord record) {
+        return codec.safeEncode(record)
+                .doOnError(e -> encodeErrors.increment());
+    }
+}
@@ -1,8 +1,10 @@
 package com.zzeng.dnscache.config;
 
+import com.zzeng.dnscache.codec.DnsRecordCodec;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.List;
 
 @Component
@@ -13,6 +15,28 @@ public class DnsProperties {
 
     private List<String> fallbackServers;
 
+    private TtlPolicy ttlPolicy = new TtlPolicy();
+
+    private NearCache nearCache = new NearCache();
+
+    private Coalescing coalescing = new Coalescing();
+
+    private Upstream upstream = new Upstream();
+
+    private Redis redis = new Redis();
+
+    private Storage storage = new Storage();
+
+    private Batch batch = new Batch();
+
+    private Server server = new Server();
+
+    private Snapshot snapshot = new Snapshot();
+
+    private Invalidation invalidation = new Invalidation();
+
+    private Overrides overrides = new Overrides();
+
     public long getTtl() {
         return ttl;
     }
@@ -28,4 +52,905 @@ public class DnsProperties {
     public void setFallbackServers(List<String> fallbackServers) {
         this.fallbackServers = fallbackServers;
     }
-}
\ No newline at end of file
+
+    public TtlPolicy getTtlPolicy() {
+        return ttlPolicy;
+    }
+
+    public void setTtlPolicy(TtlPolicy ttlPolicy) {
+        this.ttlPolicy = ttlPolicy;
+    }
+
+    public NearCache getNearCache() {
+        return nearCache;
+    }
+
+    public void setNearCache(NearCache nearCache) {
+        this.nearCache = nearCache;
+    }
+
+    public Coalescing getCoalescing() {
+        return coalescing;
+    }
+
+    public void setCoalescing(Coalescing coalescing) {
+        this.coalescing = coalescing;
+    }
+
+    public Upstream getUpstream() {
+        return upstream;
+    }
+
+    public void setUpstream(Upstream upstream) {
+        this.upstream = upstream;
+    }
+
+    public Redis getRedis() {
+        return redis;
+    }
+
+    public void setRedis(Redis redis) {
+        this.redis = redis;
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    public void setStorage(Storage storage) {
+        this.storage = storage;
+    }
+
+    public Batch getBatch() {
+        return batch;
+    }
+
+    public void setBatch(Batch batch) {
+        this.batch = batch;
+    }
+
+    public Server getServer() {
+        return server;
+    }
+
+    public void setServer(Server server) {
+        this.server = server;
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(Snapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public Invalidation getInvalidation() {
+        return invalidation;
+    }
+
+    public void setInvalidation(Invalidation invalidation) {
+        this.invalidation = invalidation;
+    }
+
+    public Overrides getOverrides() {
+        return overrides;
+    }
+
+    public void setOverrides(Overrides overrides) {
+        this.overrides = overrides;
+    }
+
+    /**
+     * Settings for how long resolved records are cached and what happens around their expiry.
+     * Records are cached for the TTL the upstream server answered with, clamped to {@code minTtl}..{@code maxTtl};
+     * a TTL given by the caller is used as is. With {@code respectUpstream} off, {@code dns.ttl} is used instead.
+     * <p>
+     * A record requested after {@code refreshAheadFactor} of its TTL has passed is refreshed in the background.
+     * Expired records are kept for another {@code staleWindow} and, as in RFC 8767, served with
+     * {@code staleAnswerTtl} when refreshing them fails or takes longer than {@code staleAnswerClientTimeout}
+     * (zero: answer from stale data at once and refresh in the background). A failed refresh is not retried
+     * for {@code failureRecheckInterval}. Manual entries are never refreshed or served stale.
+     * <p>
+     * Negative answers (NXDOMAIN, or no records of the requested type) are cached too, as in RFC 2308:
+     * for the SOA minimum the upstream server sent, or {@code negativeTtl} without one,
+     * clamped to {@code minTtl}..{@code maxNegativeTtl}.
+     */
+    public static class TtlPolicy {
+
+        private boolean respectUpstream = true;
+
+        private Duration minTtl = Duration.ofSeconds(5);
+
+        private Duration maxTtl = Duration.ofDays(1);
+
+        private boolean refreshAheadEnabled = true;
+
+        private double refreshAheadFactor = 0.8;
+
+        private boolean serveStaleEnabled = true;
+
+        private Duration staleWindow = Duration.ofDays(1);
+
+        private Duration staleAnswerTtl = Duration.ofSeconds(30);
+
+        private Duration staleAnswerClientTimeout = Duration.ZERO;
+
+        private Duration failureRecheckInterval = Duration.ofSeconds(30);
+
+        private boolean negativeCachingEnabled = true;
+
+        private Duration negativeTtl = Duration.ofSeconds(60);
+
+        private Duration maxNegativeTtl = Duration.ofHours(1);
+
+        public boolean isRespectUpstream() {
+            return respectUpstream;
+        }
+
+        public void setRespectUpstream(boolean respectUpstream) {
+            this.respectUpstream = respectUpstream;
+        }
+
+        public Duration getMinTtl() {
+            return minTtl;
+        }
+
+        public void setMinTtl(Duration minTtl) {
+            this.minTtl = minTtl;
+        }
+
+        public Duration getMaxTtl() {
+            return maxTtl;
+        }
+
+        public void setMaxTtl(Duration maxTtl) {
+            this.maxTtl = maxTtl;
+        }
+
+        public boolean isRefreshAheadEnabled() {
+            return refreshAheadEnabled;
+        }
+
+        public void setRefreshAheadEnabled(boolean refreshAheadEnabled) {
+            this.refreshAheadEnabled = refreshAheadEnabled;
+        }
+
+        public double getRefreshAheadFactor() {
+            return refreshAheadFactor;
+        }
+
+        public void setRefreshAheadFactor(double refreshAheadFactor) {
+            this.refreshAheadFactor = refreshAheadFactor;
+        }
+
+        public boolean isServeStaleEnabled() {
+            return serveStaleEnabled;
+        }
+
+        public void setServeStaleEnabled(boolean serveStaleEnabled) {
+            this.serveStaleEnabled = serveStaleEnabled;
+        }
+
+        public Duration getStaleWindow() {
+            return staleWindow;
+        }
+
+        public void setStaleWindow(Duration staleWindow) {
+            this.staleWindow = staleWindow;
+        }
+
+        public Duration getStaleAnswerTtl() {
+            return staleAnswerTtl;
+        }
+
+        public void setStaleAnswerTtl(Duration staleAnswerTtl) {
+            this.staleAnswerTtl = staleAnswerTtl;
+        }
+
+        public Duration getStaleAnswerClientTimeout() {
+            return staleAnswerClientTimeout;
+        }
+
+        public void setStaleAnswerClientTimeout(Duration staleAnswerClientTimeout) {
+            this.staleAnswerClientTimeout = staleAnswerClientTimeout;
+        }
+
+        public Duration getFailureRecheckInterval() {
+            return failureRecheckInterval;
+        }
+
+        public void setFailureRecheckInterval(Duration failureRecheckInterval) {
+            this.failureRecheckInterval = failureRecheckInterval;
+        }
+
+        public boolean isNegativeCachingEnabled() {
+            return negativeCachingEnabled;
+        }
+
+        public void setNegativeCachingEnabled(boolean negativeCachingEnabled) {
+            this.negativeCachingEnabled = negativeCachingEnabled;
+        }
+
+        public Duration getNegativeTtl() {
+            return negativeTtl;
+        }
+
+        public void setNegativeTtl(Duration negativeTtl) {
+            this.negativeTtl = negativeTtl;
+        }
+
+        public Duration getMaxNegativeTtl() {
+            return maxNegativeTtl;
+        }
+
+        public void setMaxNegativeTtl(Duration maxNegativeTtl) {
+            this.maxNegativeTtl = maxNegativeTtl;
+        }
+    }
+
+    /**
+     * Settings for the in-process cache that sits in front of Redis on the resolve path.
+     */
+    public static class NearCache {
+
+        private boolean enabled = true;
+
+        private long maximumSize = 10_000;
+
+        private long maximumMemoryBytes = 16 * 1024 * 1024;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public long getMaximumMemoryBytes() {
+            return maximumMemoryBytes;
+        }
+
+        public void setMaximumMemoryBytes(long maximumMemoryBytes) {
+            this.maximumMemoryBytes = maximumMemoryBytes;
+        }
+    }
+
+    /**
+     * Settings for deduplicating upstream lookups on cache misses.
+     * Lookups are always coalesced per domain within a node; the Redis lease additionally
+     * keeps several nodes from refreshing the same domain at once.
+     */
+    public static class Coalescing {
+
+        private boolean distributedLockEnabled = false;
+
+        private Duration lockLease = Duration.ofSeconds(5);
+
+        private Duration lockWait = Duration.ofSeconds(1);
+
+        private Duration lockPollInterval = Duration.ofMillis(50);
+
+        public boolean isDistributedLockEnabled() {
+            return distributedLockEnabled;
+        }
+
+        public void setDistributedLockEnabled(boolean distributedLockEnabled) {
+            this.distributedLockEnabled = distributedLockEnabled;
+        }
+
+        public Duration getLockLease() {
+            return lockLease;
+        }
+
+        public void setLockLease(Duration lockLease) {
+            this.lockLease = lockLease;
+        }
+
+        public Duration getLockWait() {
+            return lockWait;
+        }
+
+        public void setLockWait(Duration lockWait) {
+            this.lockWait = lockWait;
+        }
+
+        public Duration getLockPollInterval() {
+            return lockPollInterval;
+        }
+
+        public void setLockPollInterval(Duration lockPollInterval) {
+            this.lockPollInterval = lockPollInterval;
+        }
+    }
+
+    /**
+     * Settings for the non-blocking client used to query the fallback servers.
+     */
+    public static class Upstream {
+
+        private Duration queryTimeout = Duration.ofSeconds(2);
+
+        private int socketsPerServer = 2;
+
+        private int ednsPayloadSize = 1232;
+
+        private Strategy strategy = Strategy.HEDGED;
+
+        private int raceWidth = 2;
+
+        private Duration hedgeMinDelay = Duration.ofMillis(10);
+
+        private Duration hedgeMaxDelay = Duration.ofMillis(500);
+
+        private double ewmaAlpha = 0.2;
+
+        private double ejectErrorRate = 0.5;
+
+        private int ejectConsecutiveFailures = 3;
+
+        private Duration ejectCooldown = Duration.ofSeconds(30);
+
+        public Duration getQueryTimeout() {
+            return queryTimeout;
+        }
+
+        public void setQueryTimeout(Duration queryTimeout) {
+            this.queryTimeout = queryTimeout;
+        }
+
+        public int getSocketsPerServer() {
+            return socketsPerServer;
+        }
+
+        public void setSocketsPerServer(int socketsPerServer) {
+            this.socketsPerServer = socketsPerServer;
+        }
+
+        public int getEdnsPayloadSize() {
+            return ednsPayloadSize;
+        }
+
+        public void setEdnsPayloadSize(int ednsPayloadSize) {
+            this.ednsPayloadSize = ednsPayloadSize;
+        }
+
+        public Strategy getStrategy() {
+            return strategy;
+        }
+
+        public void setStrategy(Strategy strategy) {
+            this.strategy = strategy;
+        }
+
+        public int getRaceWidth() {
+            return raceWidth;
+        }
+
+        public void setRaceWidth(int raceWidth) {
+            this.raceWidth = raceWidth;
+        }
+
+        public Duration getHedgeMinDelay() {
+            return hedgeMinDelay;
+        }
+
+        public void setHedgeMinDelay(Duration hedgeMinDelay) {
+            this.hedgeMinDelay = hedgeMinDelay;
+        }
+
+        public Duration getHedgeMaxDelay() {
+            return hedgeMaxDelay;
+        }
+
+        public void setHedgeMaxDelay(Duration hedgeMaxDelay) {
+            this.hedgeMaxDelay = hedgeMaxDelay;
+        }
+
+        public double getEwmaAlpha() {
+            return ewmaAlpha;
+        }
+
+        public void setEwmaAlpha(double ewmaAlpha) {
+            this.ewmaAlpha = ewmaAlpha;
+        }
+
+        public double getEjectErrorRate() {
+            return ejectErrorRate;
+        }
+
+        public void setEjectErrorRate(double ejectErrorRate) {
+            this.ejectErrorRate = ejectErrorRate;
+        }
+
+        public int getEjectConsecutiveFailures() {
+            return ejectConsecutiveFailures;
+        }
+
+        public void setEjectConsecutiveFailures(int ejectConsecutiveFailures) {
+            this.ejectConsecutiveFailures = ejectConsecutiveFailures;
+        }
+
+        public Duration getEjectCooldown() {
+            return ejectCooldown;
+        }
+
+        public void setEjectCooldown(Duration ejectCooldown) {
+            this.ejectCooldown = ejectCooldown;
+        }
+
+        /**
+         * How a lookup is spread over the fallback servers.
+         * <ul>
+         *   <li>SEQUENTIAL: try the next server only after the previous one failed.</li>
+         *   <li>HEDGED: also fire the next server once the current one is slower than its p95 latency.</li>
+         *   <li>RACE: query the first {@code race-width} servers at once and take the first answer.</li>
+         * </ul>
+         */
+        public enum Strategy {
+            SEQUENTIAL,
+            HEDGED,
+            RACE
+        }
+    }
+
+    /**
+     * Settings for how the cache talks to Redis.
+     * Every key the cache writes starts with {@code keyPrefix}, so it can share a Redis with other applications.
+     */
+    public static class Redis {
+
+        private String keyPrefix = "dnscache:";
+
+        private int batchChunkSize = 500;
+
+        private DnsRecordCodec.Format codec = DnsRecordCodec.Format.BINARY;
+
+        private ReadFrom readFrom = ReadFrom.UPSTREAM;
+
+        /**
+         * How long changes to the zone index may wait before they are written, in batches, apart from the writes
+         * of the records themselves. Listing a zone or clearing the cache writes them first.
+         */
+        private Duration zoneIndexFlushInterval = Duration.ofMillis(100);
+
+        public String getKeyPrefix() {
+            return keyPrefix;
+        }
+
+        public void setKeyPrefix(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        public int getBatchChunkSize() {
+            return batchChunkSize;
+        }
+
+        public void setBatchChunkSize(int batchChunkSize) {
+            this.batchChunkSize = batchChunkSize;
+        }
+
+        public DnsRecordCodec.Format getCodec() {
+            return codec;
+        }
+
+        public void setCodec(DnsRecordCodec.Format codec) {
+            this.codec = codec;
+        }
+
+        public ReadFrom getReadFrom() {
+            return readFrom;
+        }
+
+        public void setReadFrom(ReadFrom readFrom) {
+            this.readFrom = readFrom;
+        }
+
+        public Duration getZoneIndexFlushInterval() {
+            return zoneIndexFlushInterval;
+        }
+
+        public void setZoneIndexFlushInterval(Duration zoneIndexFlushInterval) {
+            this.zoneIndexFlushInterval = zoneIndexFlushInterval;
+        }
+
+        /**
+         * The hash holding the override rules. Clearing the cache keeps it: the rules are configuration.
+         */
+        public String overridesKey() {
+            return keyPrefix + "overrides";
+        }
+
+        /**
+         * Which nodes serve reads (GET, MGET, TTL, SCAN), with Redis Cluster or a primary with replicas.
+         * Writes and scripts always go to the upstream (primary) node. Replicas lag behind it, so a record
+         * read right after it was written may still be missing there.
+         * <ul>
+         *   <li>UPSTREAM: the primary only, as with a single Redis.</li>
+         *   <li>UPSTREAM_PREFERRED: the primary, or a replica while it is unreachable.</li>
+         *   <li>REPLICA_PREFERRED: a replica, or the primary if there is none.</li>
+         *   <li>REPLICA: replicas only.</li>
+         *   <li>LOWEST_LATENCY: whichever node answered fastest lately, primary or replica.</li>
+         *   <li>ANY: any node.</li>
+         * </ul>
+         */
+        public enum ReadFrom {
+            UPSTREAM,
+            UPSTREAM_PREFERRED,
+            REPLICA_PREFERRED,
+            REPLICA,
+            LOWEST_LATENCY,
+            ANY
+        }
+    }
+
+    /**
+     * Settings for where cached records are kept. REDIS shares them between nodes; MEMORY keeps them in this
+     * process, for single-node deployments, edge nodes and tests that have no Redis to talk to.
+     */
+    public static class Storage {
+
+        private Engine engine = Engine.REDIS;
+
+        private Memory memory = new Memory();
+
+        private OffHeap offHeap = new OffHeap();
+
+        public Engine getEngine() {
+            return engine;
+        }
+
+        public void setEngine(Engine engine) {
+            this.engine = engine;
+        }
+
+        public Memory getMemory() {
+            return memory;
+        }
+
+        public void setMemory(Memory memory) {
+            this.memory = memory;
+        }
+
+        public OffHeap getOffHeap() {
+            return offHeap;
+        }
+
+        public void setOffHeap(OffHeap offHeap) {
+            this.offHeap = offHeap;
+        }
+
+        public enum Engine {
+            REDIS,
+            MEMORY
+        }
+
+        /**
+         * Settings for the in-memory engine. Expired records are reclaimed every {@code expiryTick}, and once the
+         * records take more than {@code maximumMemoryBytes}, those closest to expiry are evicted first.
+         */
+        public static class Memory {
+
+            private long maximumMemoryBytes = 256L * 1024 * 1024;
+
+            private Duration expiryTick = Duration.ofSeconds(1);
+
+            public long getMaximumMemoryBytes() {
+                return maximumMemoryBytes;
+            }
+
+            public void setMaximumMemoryBytes(long maximumMemoryBytes) {
+                this.maximumMemoryBytes = maximumMemoryBytes;
+            }
+
+            public Duration getExpiryTick() {
+                return expiryTick;
+            }
+
+            public void setExpiryTick(Duration expiryTick) {
+                this.expiryTick = expiryTick;
+            }
+        }
+
+        /**
+         * Settings for the off-heap tier between the near-cache and Redis. The tier takes {@code capacityBytes}
+         * of direct memory up front, in slots of {@code slotBytes}; records that do not fit a slot skip the tier.
+         */
+        public static class OffHeap {
+
+            private boolean enabled = false;
+
+            private long capacityBytes = 256L * 1024 * 1024;
+
+            private int slotBytes = 256;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public long getCapacityBytes() {
+                return capacityBytes;
+            }
+
+            public void setCapacityBytes(long capacityBytes) {
+                this.capacityBytes = capacityBytes;
+            }
+
+            public int getSlotBytes() {
+                return slotBytes;
+            }
+
+            public void setSlotBytes(int slotBytes) {
+                this.slotBytes = slotBytes;
+            }
+        }
+    }
+
+    /**
+     * Settings for the batch resolve endpoint.
+     */
+    public static class Batch {
+
+        private int resolveConcurrency = 64;
+
+        private int writeBufferSize = 100;
+
+        private Duration writeFlushInterval = Duration.ofMillis(50);
+
+        public int getResolveConcurrency() {
+            return resolveConcurrency;
+        }
+
+        public void setResolveConcurrency(int resolveConcurrency) {
+            this.resolveConcurrency = resolveConcurrency;
+        }
+
+        public int getWriteBufferSize() {
+            return writeBufferSize;
+        }
+
+        public void setWriteBufferSize(int writeBufferSize) {
+            this.writeBufferSize = writeBufferSize;
+        }
+
+        public Duration getWriteFlushInterval() {
+            return writeFlushInterval;
+        }
+
+        public void setWriteFlushInterval(Duration writeFlushInterval) {
+            this.writeFlushInterval = writeFlushInterval;
+        }
+    }
+
+    /**
+     * Settings for the DNS wire-protocol listener, which answers standard DNS queries from the cache.
+     * Off by default; the port defaults to 5353 because binding 53 needs elevated privileges.
+     */
+    public static class Server {
+
+        private boolean enabled = false;
+
+        private String bindAddress = "0.0.0.0";
+
+        private int port = 5353;
+
+        private boolean tcpEnabled = true;
+
+        private int maxConcurrentQueries = 1024;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getBindAddress() {
+            return bindAddress;
+        }
+
+        public void setBindAddress(String bindAddress) {
+            this.bindAddress = bindAddress;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public void setPort(int port) {
+            this.port = port;
+        }
+
+        public boolean isTcpEnabled() {
+            return tcpEnabled;
+        }
+
+        public void setTcpEnabled(boolean tcpEnabled) {
+            this.tcpEnabled = tcpEnabled;
+        }
+
+        public int getMaxConcurrentQueries() {
+            return maxConcurrentQueries;
+        }
+
+        public void setMaxConcurrentQueries(int maxConcurrentQueries) {
+            this.maxConcurrentQueries = maxConcurrentQueries;
+        }
+    }
+
+    /**
+     * Settings for the warm-start snapshot: every {@code interval} (and on shutdown) the {@code maxEntries}
+     * most read near-cache entries are written to {@code path}, and on startup they are loaded back before
+     * the readiness probe reports the node ready, for at most {@code warmUpTimeout}.
+     */
+    public static class Snapshot {
+
+        private boolean enabled = false;
+
+        private String path = "dnscache-snapshot.bin";
+
+        private Duration interval = Duration.ofMinutes(5);
+
+        private int maxEntries = 10_000;
+
+        private int warmUpConcurrency = 16;
+
+        private Duration warmUpTimeout = Duration.ofSeconds(30);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public int getWarmUpConcurrency() {
+            return warmUpConcurrency;
+        }
+
+        public void setWarmUpConcurrency(int warmUpConcurrency) {
+            this.warmUpConcurrency = warmUpConcurrency;
+        }
+
+        public Duration getWarmUpTimeout() {
+            return warmUpTimeout;
+        }
+
+        public void setWarmUpTimeout(Duration warmUpTimeout) {
+            this.warmUpTimeout = warmUpTimeout;
+        }
+    }
+
+    /**
+     * Settings for telling other nodes about changed records over Redis pub/sub, on the channel
+     * {@code <key-prefix>invalidations}. Changes are sent in batches of up to {@code batchSize} keys, at most
+     * {@code flushInterval} after they were made, and a heartbeat every {@code heartbeatInterval} lets the other
+     * nodes notice lost messages. Only used with the Redis engine.
+     */
+    public static class Invalidation {
+
+        private boolean enabled = true;
+
+        private int batchSize = 500;
+
+        private Duration flushInterval = Duration.ofMillis(10);
+
+        private Duration heartbeatInterval = Duration.ofSeconds(5);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public Duration getHeartbeatInterval() {
+            return heartbeatInterval;
+        }
+
+        public void setHeartbeatInterval(Duration heartbeatInterval) {
+            this.heartbeatInterval = heartbeatInterval;
+        }
+    }
+
+    /**
+     * Settings for the override rules, answers given for names (or, as {@code *.example.com}, every name below one)
+     * without looking at the cache or upstream. Rules are kept in memory and replaced as a whole, each replacement
+     * numbered with the next version. With REDIS, they are stored in Redis and every node loads a newer version
+     * within {@code refreshInterval}; with the MEMORY engine, they stay in this process. With FILE, they are read
+     * from {@code file} and reloaded when it changes, and cannot be replaced through the API.
+     */
+    public static class Overrides {
+
+        private Source source = Source.REDIS;
+
+        private String file = "dns-overrides.json";
+
+        private Duration refreshInterval = Duration.ofSeconds(5);
+
+        public Source getSource() {
+            return source;
+        }
+
+        public void setSource(Source source) {
+            this.source = source;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public void setFile(String file) {
+            this.file = file;
+        }
+
+        public Duration getRefreshInterval() {
+            return refreshInterval;
+        }
+
+        public void setRefreshInterval(Duration refreshInterval) {
+            this.refreshInterval = refreshInterval;
+        }
+
+        public enum Source {
+            REDIS,
+            FILE
+        }
+    }
+}
@@ -2,9 +2,19 @@ package com.zzeng.dnscache.config;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.web.codec.CodecCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.lang.Nullable;
+import org.springframework.util.MimeType;
+
+import java.util.Map;
 
 @Configuration
 public class JacksonConfig {
@@ -16,4 +26,22 @@ public class JacksonConfig {
         mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
         return mapper;
     }
+
+    /**
+     * Keeps streamed (NDJSON) responses one object per line, whatever the indentation of the shared mapper.
+     * Runs after Boot's own Jackson codec customizer so that this encoder is the one registered.
+     */
+    @Bean
+    @Order(1)
+    public CodecCustomizer streamingJsonCodecCustomizer(ObjectMapper objectMapper) {
+        return configurer -> configurer.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper) {
+            @Override
+            protected ObjectWriter customizeWriter(ObjectWriter writer, @Nullable MimeType mimeType,
+                                                   ResolvableType elementType, @Nullable Map<String, Object> hints) {
+                return mimeType != null && MediaType.APPLICATION_NDJSON.isCompatibleWith(mimeType)
+                        ? writer.without(SerializationFeature.INDENT_OUTPUT)
+                        : writer;
+            }
+        });
+    }
 }
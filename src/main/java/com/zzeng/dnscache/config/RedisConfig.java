@@ -0,0 +1,65 @@
+package com.zzeng.dnscache.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zzeng.dnscache.codec.BinaryDnsRecordCodec;
+import com.zzeng.dnscache.codec.DnsRecordCodec;
+import com.zzeng.dnscache.codec.JsonDnsRecordCodec;
+import com.zzeng.dnscache.codec.MeteredDnsRecordCodec;
+import io.lettuce.core.ReadFrom;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.data.redis.LettuceClientConfigurationBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+@Configuration
+public class RedisConfig {
+
+    /**
+     * Template for record values: String keys, raw byte values as produced by the {@link DnsRecordCodec}.
+     */
+    @Bean
+    public ReactiveRedisTemplate<String, byte[]> dnsRecordRedisTemplate(ReactiveRedisConnectionFactory connectionFactory) {
+        RedisSerializationContext<String, byte[]> context = RedisSerializationContext
+                .<String, byte[]>newSerializationContext(RedisSerializer.string())
+                .value(RedisSerializer.byteArray())
+                .hashValue(RedisSerializer.byteArray())
+                .build();
+        return new ReactiveRedisTemplate<>(connectionFactory, context);
+    }
+
+    /**
+     * Routes reads as {@code dns.redis.read-from} asks. Left unset for UPSTREAM, which keeps a plain connection
+     * to a single Redis rather than one that discovers replicas.
+     */
+    @Bean
+    public LettuceClientConfigurationBuilderCustomizer readFromCustomizer(DnsProperties dnsProperties) {
+        return builder -> {
+            ReadFrom readFrom = switch (dnsProperties.getRedis().getReadFrom()) {
+                case UPSTREAM -> null;
+                case UPSTREAM_PREFERRED -> ReadFrom.UPSTREAM_PREFERRED;
+                case REPLICA_PREFERRED -> ReadFrom.REPLICA_PREFERRED;
+                case REPLICA -> ReadFrom.REPLICA;
+                case LOWEST_LATENCY -> ReadFrom.LOWEST_LATENCY;
+                case ANY -> ReadFrom.ANY;
+            };
+            if (readFrom != null) {
+                builder.readFrom(readFrom);
+            }
+        };
+    }
+
+    @Bean
+    public DnsRecordCodec dnsRecordCodec(DnsProperties dnsProperties, ObjectMapper objectMapper,
+                                         MeterRegistry meterRegistry) {
+        JsonDnsRecordCodec jsonCodec = new JsonDnsRecordCodec(objectMapper);
+        DnsRecordCodec codec = switch (dnsProperties.getRedis().getCodec()) {
+            case JSON -> jsonCodec;
+            case BINARY -> new BinaryDnsRecordCodec(jsonCodec);
+        };
+        return new MeteredDnsRecordCodec(codec, meterRegistry);
+    }
+}
@@ -5,6 +5,9 @@ import com.zzeng.dnscache.dto.*;
 import com.zzeng.dnscache.service.DnsService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -13,6 +16,9 @@ import reactor.core.publisher.Mono;
 @RequestMapping("/api/dns")
 public class DnsCacheController {
 
+    // Where the next page of the cache listing starts; absent on the last page.
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final DnsService dnsService;
 
     @Autowired
@@ -24,8 +30,15 @@ public class DnsCacheController {
     // --- Resolution ---
     @GetMapping("/resolve")
     public Mono<DnsRecordResponse> resolveDomain(@RequestParam String domain,
+                                                 @RequestParam(defaultValue = "A") String type,
                                                  @RequestParam(required = false) Long ttl) {
-        return dnsService.resolveDomain(domain, ttl);
+        return dnsService.resolveDomain(domain, type, ttl);
+    }
+
+    @PostMapping(value = "/resolve/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<DnsRecordResponse> resolveBatch(@Valid @RequestBody DnsBatchRequest request,
+                                                @RequestParam(required = false) Long ttl) {
+        return dnsService.resolveBatch(request.getDomains(), request.getType(), ttl);
     }
 
 
@@ -39,38 +52,73 @@ public class DnsCacheController {
 
     // --- Read ---
     @GetMapping("/cache/{domain}")
-    public Mono<DnsRecordResponse> getCachedRecord(@PathVariable String domain) {
-        return dnsService.getCachedRecord(domain);
+    public Mono<DnsRecordResponse> getCachedRecord(@PathVariable String domain,
+                                                   @RequestParam(defaultValue = "A") String type) {
+        return dnsService.getCachedRecord(domain, type);
     }
 
-    @GetMapping("/cache")
-    public Flux<DnsRecordResponse> getAllCachedRecords() {
-        return dnsService.getAllCachedRecords();
+    @GetMapping(value = "/cache", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+            MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Mono<ResponseEntity<Flux<DnsRecordResponse>>> listCachedRecords(@Valid CacheListRequest request) {
+        return dnsService.listCachedRecords(request)
+                .map(page -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                    if (page.nextCursor() != null) {
+                        response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+                    }
+                    return response.body(page.records());
+                });
+    }
+
+    @GetMapping("/cache/manual")
+    public Flux<DnsRecordResponse> getAllManualEntries() {
+        return dnsService.getAllManualEntries();
+    }
+
+    @GetMapping(value = "/cache/zones/{zone}", produces = {MediaType.APPLICATION_JSON_VALUE,
+            MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Flux<DnsRecordResponse> getZoneRecords(@PathVariable String zone) {
+        return dnsService.getZoneRecords(zone);
     }
 
     @GetMapping("/cache/exists/{domain}")
-    public Mono<Boolean> exists(@PathVariable String domain) {
-        return dnsService.exists(domain);
+    public Mono<Boolean> exists(@PathVariable String domain,
+                                @RequestParam(defaultValue = "A") String type) {
+        return dnsService.exists(domain, type);
     }
 
     @PostMapping("/cache/batch")
     public Flux<DnsRecordResponse> getBatchRecords(@Valid @RequestBody DnsBatchRequest request) {
-        return dnsService.getBatch(request.getDomains());
+        return dnsService.getBatch(request.getDomains(), request.getType());
     }
 
 
     // --- Update ---
     @PatchMapping("/cache/{domain}/ttl")
-    public Mono<Boolean> updateTTL(@PathVariable String domain,
-                                   @Valid @RequestBody TtlUpdateRequest request) {
-        return dnsService.updateTTL(domain, request.getTtl());
+    public Mono<TtlUpdateResponse> updateTTL(@PathVariable String domain,
+                                             @RequestParam(defaultValue = "A") String type,
+                                             @Valid @RequestBody TtlUpdateRequest request) {
+        return dnsService.updateTTL(domain, type, request.getTtl());
+    }
+
+    @PatchMapping("/cache/batch/ttl")
+    public Flux<TtlUpdateResponse> updateTTLBatch(@Valid @RequestBody DnsBatchTtlUpdateRequest request) {
+        return dnsService.updateTTLBatch(request.getDomains(), request.getType(), request.getTtl());
+    }
+
+
+    @PatchMapping("/cache/zones/{zone}/ttl")
+    public Flux<TtlUpdateResponse> updateZoneTTL(@PathVariable String zone,
+                                                 @Valid @RequestBody TtlUpdateRequest request) {
+        return dnsService.updateZoneTTL(zone, request.getTtl());
     }
 
 
     // --- Delete ---
     @DeleteMapping("/cache/{domain}")
-    public Mono<Boolean> deleteCachedRecord(@PathVariable String domain) {
-        return dnsService.deleteCachedRecord(domain);
+    public Mono<Boolean> deleteCachedRecord(@PathVariable String domain,
+                                            @RequestParam(defaultValue = "A") String type) {
+        return dnsService.deleteCachedRecord(domain, type);
     }
 
     @DeleteMapping("/cache")
@@ -78,6 +126,17 @@ public class DnsCacheController {
         return dnsService.clearCache();
     }
 
+    @PostMapping("/cache/clear-jobs")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public Mono<ClearJobResponse> startClearJob() {
+        return dnsService.startClearJob();
+    }
+
+    @GetMapping("/cache/clear-jobs/{jobId}")
+    public Mono<ClearJobResponse> getClearJob(@PathVariable String jobId) {
+        return dnsService.getClearJob(jobId);
+    }
+
     @DeleteMapping("/cache/manual")
     public Mono<String> deleteAllManualEntries() {
         return dnsService.deleteAllManualEntries();
@@ -85,6 +144,21 @@ public class DnsCacheController {
 
     @DeleteMapping("/cache/batch")
     public Mono<String> deleteBatch(@Valid @RequestBody DnsBatchRequest request) {
-        return dnsService.deleteBatch(request.getDomains());
+        return dnsService.deleteBatch(request.getDomains(), request.getType());
+    }
+
+    @DeleteMapping("/cache/zones/{zone}")
+    public Mono<String> deleteZone(@PathVariable String zone) {
+        return dnsService.deleteZone(zone);
+    }
+
+    @GetMapping("/overrides")
+    public Mono<OverrideRuleSet> getOverrideRules() {
+        return dnsService.getOverrideRules();
+    }
+
+    @PutMapping("/overrides")
+    public Mono<OverrideRuleSet> replaceOverrideRules(@Valid @RequestBody OverrideRuleSet rules) {
+        return dnsService.replaceOverrideRules(rules);
     }
 }
@@ -0,0 +1,80 @@
+package com.zzeng.dnscache.dto;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+
+/**
+ * One page of the cache listing, with its filters. Bound from the query parameters.
+ */
+public class CacheListRequest {
+
+    // The X-Next-Cursor of the previous page; none for the first.
+    private String cursor;
+
+    @Min(value = 1, message = "Limit must be at least 1")
+    @Max(value = 1000, message = "Limit must be at most 1000")
+    private int limit = 100;
+
+    private boolean manual;
+
+    // A glob over the domain name: * for any run of characters, ? for one.
+    @Size(max = 253, message = "Domain filter is too long")
+    @Pattern(regexp = "[A-Za-z0-9._*?-]+", message = "Domain filter may only hold name characters, * and ?")
+    private String domain;
+
+    @Min(value = 0, message = "Minimum TTL must not be negative")
+    private Long minTtl;
+
+    @Min(value = 0, message = "Maximum TTL must not be negative")
+    private Long maxTtl;
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public boolean isManual() {
+        return manual;
+    }
+
+    public void setManual(boolean manual) {
+        this.manual = manual;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    public Long getMinTtl() {
+        return minTtl;
+    }
+
+    public void setMinTtl(Long minTtl) {
+        this.minTtl = minTtl;
+    }
+
+    public Long getMaxTtl() {
+        return maxTtl;
+    }
+
+    public void setMaxTtl(Long maxTtl) {
+        this.maxTtl = maxTtl;
+    }
+}
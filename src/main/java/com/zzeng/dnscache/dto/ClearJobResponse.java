@@ -0,0 +1,73 @@
+package com.zzeng.dnscache.dto;
+
+/**
+ * Progress of an asynchronous cache clear.
+ */
+public class ClearJobResponse {
+
+    private String id;
+    private String status;
+    private long deleted;
+    private String startedAt;
+    private String finishedAt;
+    private String error;
+
+    public ClearJobResponse() {}
+
+    public ClearJobResponse(String id, String status, long deleted, String startedAt, String finishedAt, String error) {
+        this.id = id;
+        this.status = status;
+        this.deleted = deleted;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+        this.error = error;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public long getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(long deleted) {
+        this.deleted = deleted;
+    }
+
+    public String getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(String startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public String getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(String finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -9,6 +9,8 @@ public class DnsBatchRequest {
     @NotEmpty(message = "Domain list cannot be empty")
     private List<@NotBlank(message = "Each domain must not be blank") String> domains;
 
+    private String type = "A";
+
     public List<String> getDomains() {
         return domains;
     }
@@ -16,4 +18,12 @@ public class DnsBatchRequest {
     public void setDomains(List<String> domains) {
         this.domains = domains;
     }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
 }
@@ -0,0 +1,41 @@
+package com.zzeng.dnscache.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import java.util.List;
+
+public class DnsBatchTtlUpdateRequest {
+
+    @NotEmpty(message = "Domain list cannot be empty")
+    private List<@NotBlank(message = "Each domain must not be blank") String> domains;
+
+    private String type = "A";
+
+    @Min(value = 1, message = "TTL must be at least 1 second")
+    private long ttl;
+
+    public List<String> getDomains() {
+        return domains;
+    }
+
+    public void setDomains(List<String> domains) {
+        this.domains = domains;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+}
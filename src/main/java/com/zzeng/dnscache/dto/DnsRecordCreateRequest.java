@@ -1,16 +1,24 @@
 package com.zzeng.dnscache.dto;
 
+import jakarta.validation.constraints.AssertTrue;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 
+import java.util.List;
+
 public class DnsRecordCreateRequest {
 
     @NotBlank(message = "Domain must not be blank")
     private String domain;
 
-    @NotBlank(message = "IP address must not be blank")
     private String ip;
 
+    // Defaults to A or AAAA depending on the first value.
+    private String type;
+
+    // For RRsets with several records; takes precedence over ip.
+    private List<@NotBlank(message = "Each value must not be blank") String> values;
+
     @Min(value = 1, message = "TTL must be at least 1 second")
     private long ttl;
 
@@ -37,4 +45,25 @@ public class DnsRecordCreateRequest {
     public void setTtl(long ttl) {
         this.ttl = ttl;
     }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public List<String> getValues() {
+        return values;
+    }
+
+    public void setValues(List<String> values) {
+        this.values = values;
+    }
+
+    @AssertTrue(message = "IP address must not be blank")
+    boolean isValueGiven() {
+        return (values != null && !values.isEmpty()) || (ip != null && !ip.isBlank());
+    }
 }
@@ -1,21 +1,36 @@
 package com.zzeng.dnscache.dto;
 
 import com.zzeng.dnscache.model.DnsRecord;
+import com.zzeng.dnscache.model.DnsRecordValue;
+
+import java.util.List;
+import java.util.Locale;
 
 public class DnsRecordMapper {
 
     public static DnsRecordResponse toResponse(DnsRecord record) {
-        return new DnsRecordResponse(
+        DnsRecordResponse response = new DnsRecordResponse(
                 record.getDomain(),
-                record.getIp(),
-                record.getTtl()
+                record.getType(),
+                record.getValues(),
+                record.getTtl(),
+                null
         );
+        response.setStatus(record.getStatus());
+        return response;
     }
 
     public static DnsRecord toManualDnsRecord(DnsRecordCreateRequest request) {
+        List<String> data = request.getValues() != null && !request.getValues().isEmpty()
+                ? request.getValues()
+                : List.of(request.getIp());
+        String type = request.getType() != null
+                ? request.getType().toUpperCase(Locale.ROOT)
+                : DnsRecord.addressType(data.get(0));
         return new DnsRecord(
                 request.getDomain(),
-                request.getIp(),
+                type,
+                data.stream().map(value -> new DnsRecordValue(value, request.getTtl())).toList(),
                 request.getTtl(),
                 true
         );
@@ -1,19 +1,34 @@
 package com.zzeng.dnscache.dto;
 
+import com.zzeng.dnscache.model.DnsRecord;
+import com.zzeng.dnscache.model.DnsRecordValue;
+
+import java.util.List;
 import java.util.Objects;
 
 public class DnsRecordResponse {
 
     private String domain;
+    private String type;
     private String ip;
     private long ttl;
+    private List<DnsRecordValue> values;
+    private List<String> cnames;
+    private String status;
 
     public DnsRecordResponse() {}
 
     public DnsRecordResponse(String domain, String ip, long ttl) {
+        this(domain, DnsRecord.addressType(ip), List.of(new DnsRecordValue(ip, ttl)), ttl, null);
+    }
+
+    public DnsRecordResponse(String domain, String type, List<DnsRecordValue> values, long ttl, List<String> cnames) {
         this.domain = domain;
-        this.ip = ip;
+        this.type = type;
+        this.ip = values == null || values.isEmpty() ? null : values.get(0).getData();
         this.ttl = ttl;
+        this.values = values;
+        this.cnames = cnames;
     }
 
     public String getDomain() {
@@ -24,6 +39,17 @@ public class DnsRecordResponse {
         this.domain = domain;
     }
 
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * @return the first value of the RRset, kept for clients written before records carried several values
+     */
     public String getIp() {
         return ip;
     }
@@ -40,18 +66,53 @@ public class DnsRecordResponse {
         this.ttl = ttl;
     }
 
+    public List<DnsRecordValue> getValues() {
+        return values;
+    }
+
+    public void setValues(List<DnsRecordValue> values) {
+        this.values = values;
+    }
+
+    /**
+     * @return the alias targets followed to reach the records, in order, or null if the domain is not an alias
+     */
+    public List<String> getCnames() {
+        return cnames;
+    }
+
+    public void setCnames(List<String> cnames) {
+        this.cnames = cnames;
+    }
+
+    /**
+     * @return "NXDOMAIN" if the domain does not exist, "NODATA" if it has no records of the type
+     *         (both answers are cached like any other), or null if records were found
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof DnsRecordResponse that)) return false;
         return ttl == that.ttl &&
                 Objects.equals(domain, that.domain) &&
-                Objects.equals(ip, that.ip);
+                Objects.equals(type, that.type) &&
+                Objects.equals(ip, that.ip) &&
+                Objects.equals(values, that.values) &&
+                Objects.equals(cnames, that.cnames) &&
+                Objects.equals(status, that.status);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(domain, ip, ttl);
+        return Objects.hash(domain, type, ip, ttl, values, cnames, status);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package com.zzeng.dnscache.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Pattern;
+
+import java.util.List;
+
+/**
+ * An answer given for a name, or with a leading {@code *.} for every name below one, instead of resolving it.
+ */
+public class OverrideRule {
+
+    @NotBlank(message = "Name must not be blank")
+    @Pattern(regexp = "(\\*\\.)?[A-Za-z0-9_-]+(\\.[A-Za-z0-9_-]+)*\\.?",
+            message = "Name must be a domain name, optionally starting with *.")
+    private String name;
+
+    private String type = "A";
+
+    @NotEmpty(message = "Values cannot be empty")
+    private List<@NotBlank(message = "Each value must not be blank") String> values;
+
+    @Min(value = 1, message = "TTL must be at least 1 second")
+    private long ttl = 300;
+
+    public OverrideRule() {}
+
+    public OverrideRule(String name, String type, List<String> values, long ttl) {
+        this.name = name;
+        this.type = type;
+        this.values = values;
+        this.ttl = ttl;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public List<String> getValues() {
+        return values;
+    }
+
+    public void setValues(List<String> values) {
+        this.values = values;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+    }
+}
@@ -0,0 +1,43 @@
+package com.zzeng.dnscache.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+
+/**
+ * The override rules, replaced as a whole. When replacing them, {@code version} is the version being replaced,
+ * so that a concurrent replacement is not overwritten unseen; the new rules get the next one.
+ */
+public class OverrideRuleSet {
+
+    @Min(value = 0, message = "Version must not be negative")
+    private long version;
+
+    @NotNull(message = "Rules must be given, empty to remove them all")
+    private List<@Valid OverrideRule> rules;
+
+    public OverrideRuleSet() {}
+
+    public OverrideRuleSet(long version, List<OverrideRule> rules) {
+        this.version = version;
+        this.rules = rules;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public List<OverrideRule> getRules() {
+        return rules;
+    }
+
+    public void setRules(List<OverrideRule> rules) {
+        this.rules = rules;
+    }
+}
@@ -0,0 +1,54 @@
+package com.zzeng.dnscache.dto;
+
+import java.util.Objects;
+
+public class TtlUpdateResponse {
+
+    private String domain;
+    private String type;
+    private long ttl;
+
+    public TtlUpdateResponse() {}
+
+    public TtlUpdateResponse(String domain, String type, long ttl) {
+        this.domain = domain;
+        this.type = type;
+        this.ttl = ttl;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TtlUpdateResponse that)) return false;
+        return ttl == that.ttl && Objects.equals(domain, that.domain) && Objects.equals(type, that.type);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(domain, type, ttl);
+    }
+}
@@ -1,24 +1,100 @@
 package com.zzeng.dnscache.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.List;
+
+/**
+ * A cached RRset: every record of one type for one name.
+ * {@code ttl} is how long the set is cached for; each value keeps the TTL it was served with.
+ * A negative answer is cached as an empty set with a {@code status} saying why it is empty.
+ */
 public class DnsRecord {
 
+    public static final String TYPE_A = "A";
+    public static final String TYPE_AAAA = "AAAA";
+    public static final String TYPE_CNAME = "CNAME";
+
+    // The name does not exist.
+    public static final String STATUS_NXDOMAIN = "NXDOMAIN";
+    // The name exists, but has no records of the type.
+    public static final String STATUS_NODATA = "NODATA";
+
     private String domain;
 
-    private String ip;
+    private String type = TYPE_A;
+
+    private List<DnsRecordValue> values = List.of();
 
     private long ttl;
 
     private boolean isManual;
 
+    private String status;
+
     public DnsRecord() {}
 
+    /**
+     * A single-address record, typed A or AAAA from the shape of the address.
+     */
     public DnsRecord(String domain, String ip, long ttl, boolean isManual) {
+        this(domain, addressType(ip), List.of(new DnsRecordValue(ip, ttl)), ttl, isManual);
+    }
+
+    public DnsRecord(String domain, String type, List<DnsRecordValue> values, long ttl, boolean isManual) {
         this.domain = domain;
-        this.ip = ip;
+        this.type = type;
+        this.values = values;
         this.ttl = ttl;
         this.isManual = isManual;
     }
 
+    /**
+     * A negative answer for a name and type.
+     *
+     * @param status {@link #STATUS_NXDOMAIN} or {@link #STATUS_NODATA}
+     */
+    public static DnsRecord negative(String domain, String type, String status, long ttl) {
+        DnsRecord record = new DnsRecord(domain, type, List.of(), ttl, false);
+        record.setStatus(status);
+        return record;
+    }
+
+    /**
+     * The key a record is cached under. A records keep the bare domain (the layout used before records were typed),
+     * other types are suffixed with "/TYPE", e.g. "example.com/AAAA".
+     */
+    public static String cacheKey(String domain, String type) {
+        return TYPE_A.equals(type) ? domain : domain + "/" + type;
+    }
+
+    public static String domainOf(String cacheKey) {
+        int slash = cacheKey.lastIndexOf('/');
+        return slash < 0 ? cacheKey : cacheKey.substring(0, slash);
+    }
+
+    public static String typeOf(String cacheKey) {
+        int slash = cacheKey.lastIndexOf('/');
+        return slash < 0 ? TYPE_A : cacheKey.substring(slash + 1);
+    }
+
+    public static String addressType(String ip) {
+        return ip != null && ip.indexOf(':') >= 0 ? TYPE_AAAA : TYPE_A;
+    }
+
+    @JsonIgnore
+    public String getCacheKey() {
+        return cacheKey(domain, type);
+    }
+
+    /**
+     * @return the data of the first value (the address, for A and AAAA records), or null if the set is empty
+     */
+    @JsonIgnore
+    public String getIp() {
+        return values == null || values.isEmpty() ? null : values.get(0).getData();
+    }
+
     public String getDomain() {
         return domain;
     }
@@ -27,12 +103,20 @@ public class DnsRecord {
         this.domain = domain;
     }
 
-    public String getIp() {
-        return ip;
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
     }
 
-    public void setIp(String ip) {
-        this.ip = ip;
+    public List<DnsRecordValue> getValues() {
+        return values;
+    }
+
+    public void setValues(List<DnsRecordValue> values) {
+        this.values = values;
     }
 
     public long getTtl() {
@@ -50,4 +134,20 @@ public class DnsRecord {
     public void setManual(boolean Manual) {
         isManual = Manual;
     }
+
+    /**
+     * @return why the set is empty, {@link #STATUS_NXDOMAIN} or {@link #STATUS_NODATA}; null for a set of records
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    @JsonIgnore
+    public boolean isNegative() {
+        return status != null;
+    }
 }
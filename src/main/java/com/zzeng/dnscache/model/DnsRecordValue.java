@@ -0,0 +1,49 @@
+package com.zzeng.dnscache.model;
+
+import java.util.Objects;
+
+/**
+ * One record of an RRset: its data in presentation form (an address, a target name, "10 mail.example.com.", ...)
+ * and the TTL it was served with.
+ */
+public class DnsRecordValue {
+
+    private String data;
+
+    private long ttl;
+
+    public DnsRecordValue() {}
+
+    public DnsRecordValue(String data, long ttl) {
+        this.data = data;
+        this.ttl = ttl;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    public void setData(String data) {
+        this.data = data;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DnsRecordValue that)) return false;
+        return ttl == that.ttl && Objects.equals(data, that.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(data, ttl);
+    }
+}
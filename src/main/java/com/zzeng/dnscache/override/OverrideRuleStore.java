@@ -0,0 +1,236 @@
+package com.zzeng.dnscache.override;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.dto.OverrideRule;
+import com.zzeng.dnscache.dto.OverrideRuleSet;
+import com.zzeng.dnscache.model.DnsRecord;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Holds the override rules, compiled into an {@link OverrideTrie} that the resolve path reads without any I/O,
+ * and keeps them up to date with their source (see {@code dns.overrides}): every {@code refresh-interval}, it
+ * reads the version in Redis, or the file's modification time, and loads the rules only when there is a newer
+ * version. Versions only go up, so a node never goes back to older rules it sees late.
+ * <p>
+ * In Redis, the rules are a hash of {@code version} and {@code rules} (a JSON array), written together by a script
+ * that first checks the version being replaced.
+ */
+@Component
+public class OverrideRuleStore implements SmartLifecycle {
+
+    static final String RULES_METRIC = "dns.overrides.rules";
+    static final String VERSION_METRIC = "dns.overrides.version";
+
+    private static final Logger logger = LoggerFactory.getLogger(OverrideRuleStore.class);
+    private static final TypeReference<List<OverrideRule>> RULE_LIST = new TypeReference<>() {};
+
+    // ARGV: the version being replaced, the new rules. Returns the new version, or -1 if another one is stored.
+    private static final RedisScript<Long> REPLACE_SCRIPT = RedisScript.of(
+            "local stored = tonumber(redis.call('HGET', KEYS[1], 'version') or '0') "
+                    + "if stored ~= tonumber(ARGV[1]) then return -1 end "
+                    + "redis.call('HSET', KEYS[1], 'version', stored + 1, 'rules', ARGV[2]) "
+                    + "return stored + 1",
+            Long.class);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final DnsProperties.Overrides settings;
+    private final boolean shared;
+    private final String redisKey;
+    private volatile Loaded loaded = new Loaded(0, List.of(), OverrideTrie.EMPTY);
+    // The modification time of the file last read, with the FILE source.
+    private volatile FileTime fileModified;
+    private volatile Disposable refreshing;
+
+    @Autowired
+    public OverrideRuleStore(ReactiveStringRedisTemplate redisTemplate, ObjectMapper objectMapper,
+                             DnsProperties dnsProperties, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.settings = dnsProperties.getOverrides();
+        this.shared = settings.getSource() == DnsProperties.Overrides.Source.REDIS
+                && dnsProperties.getStorage().getEngine() == DnsProperties.Storage.Engine.REDIS;
+        this.redisKey = dnsProperties.getRedis().overridesKey();
+        Gauge.builder(RULES_METRIC, this, store -> store.loaded.trie().size())
+                .description("Override rules in effect")
+                .register(meterRegistry);
+        Gauge.builder(VERSION_METRIC, this, store -> store.loaded.version())
+                .description("Version of the override rules in effect")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the answer the rules give for the name, or null if none covers it
+     */
+    public DnsRecord find(String domain, String type) {
+        return loaded.trie().find(domain, type);
+    }
+
+    /**
+     * @return the rules in effect on this node, with their version
+     */
+    public OverrideRuleSet current() {
+        Loaded current = loaded;
+        return new OverrideRuleSet(current.version(), current.rules());
+    }
+
+    /**
+     * Replaces the rules, if {@code version} is still the one in effect (or, shared, the one stored in Redis).
+     *
+     * @return a Mono emitting the new rules with their version; an IllegalArgumentException if the rules do not
+     * compile, or an IllegalStateException if another version was stored first or the rules are read from a file
+     */
+    public Mono<OverrideRuleSet> replace(OverrideRuleSet replacement) {
+        if (settings.getSource() == DnsProperties.Overrides.Source.FILE) {
+            return Mono.error(new IllegalStateException("Override rules are read from " + settings.getFile()));
+        }
+        List<OverrideRule> rules = List.copyOf(replacement.getRules());
+        OverrideTrie trie;
+        try {
+            trie = OverrideTrie.compile(rules);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(e);
+        }
+        if (!shared) {
+            return Mono.fromCallable(() -> {
+                synchronized (this) {
+                    if (loaded.version() != replacement.getVersion()) {
+                        throw conflict(replacement.getVersion(), loaded.version());
+                    }
+                    apply(new Loaded(replacement.getVersion() + 1, rules, trie));
+                }
+                return current();
+            });
+        }
+        return Mono.fromCallable(() -> objectMapper.writeValueAsString(rules))
+                .flatMap(json -> redisTemplate.execute(REPLACE_SCRIPT, List.of(redisKey),
+                        List.of(Long.toString(replacement.getVersion()), json)).next())
+                .flatMap(version -> version < 0
+                        ? Mono.error(conflict(replacement.getVersion(), -1))
+                        : Mono.fromSupplier(() -> {
+                            apply(new Loaded(version, rules, trie));
+                            return new OverrideRuleSet(version, rules);
+                        }));
+    }
+
+    private static IllegalStateException conflict(long expected, long found) {
+        return new IllegalStateException("Override rules are no longer at version " + expected
+                + (found >= 0 ? " but at " + found : ""));
+    }
+
+    /**
+     * Loads the rules from their source if it holds a newer version.
+     *
+     * @return a Mono emitting whether newer rules were loaded
+     */
+    Mono<Boolean> refresh() {
+        if (settings.getSource() == DnsProperties.Overrides.Source.FILE) {
+            return Mono.fromCallable(this::refreshFromFile).subscribeOn(Schedulers.boundedElastic());
+        }
+        if (!shared) {
+            return Mono.just(false);
+        }
+        return redisTemplate.<String, String>opsForHash().get(redisKey, "version")
+                .map(Long::parseLong)
+                .filter(version -> version > loaded.version())
+                .flatMap(newer -> redisTemplate.<String, String>opsForHash().multiGet(redisKey, List.of("version", "rules")))
+                .map(fields -> load(Long.parseLong(fields.get(0)), parse(fields.get(1))))
+                .defaultIfEmpty(false);
+    }
+
+    private boolean refreshFromFile() throws IOException {
+        Path path = Path.of(settings.getFile());
+        FileTime modified;
+        try {
+            modified = Files.getLastModifiedTime(path);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        if (modified.equals(fileModified)) {
+            return false;
+        }
+        fileModified = modified;
+        OverrideRuleSet rules = objectMapper.readValue(path.toFile(), OverrideRuleSet.class);
+        if (rules.getVersion() <= loaded.version()) {
+            logger.warn("Ignoring override rules in {}: version {} is not newer than {}",
+                    path, rules.getVersion(), loaded.version());
+            return false;
+        }
+        return load(rules.getVersion(), rules.getRules() == null ? List.of() : List.copyOf(rules.getRules()));
+    }
+
+    private List<OverrideRule> parse(String json) {
+        try {
+            return json == null ? List.of() : List.copyOf(objectMapper.readValue(json, RULE_LIST));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean load(long version, List<OverrideRule> rules) {
+        return apply(new Loaded(version, rules, OverrideTrie.compileValid(rules)));
+    }
+
+    private synchronized boolean apply(Loaded newer) {
+        if (newer.version() <= loaded.version()) {
+            return false;
+        }
+        loaded = newer;
+        logger.info("Override rules at version {}: {} rules", newer.version(), newer.trie().size());
+        return true;
+    }
+
+    @Override
+    public void start() {
+        if (!shared && settings.getSource() != DnsProperties.Overrides.Source.FILE) {
+            return;
+        }
+        refreshing = Flux.interval(Duration.ZERO, settings.getRefreshInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> refresh()
+                        .onErrorResume(e -> {
+                            logger.warn("Failed to refresh override rules: {}", e.toString());
+                            return Mono.empty();
+                        }), 1)
+                .subscribe();
+    }
+
+    @Override
+    public void stop() {
+        Disposable disposable = refreshing;
+        if (disposable != null) {
+            disposable.dispose();
+        }
+        refreshing = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return refreshing != null;
+    }
+
+    private record Loaded(long version, List<OverrideRule> rules, OverrideTrie trie) {}
+}
@@ -0,0 +1,206 @@
+package com.zzeng.dnscache.override;
+
+import com.zzeng.dnscache.dto.OverrideRule;
+import com.zzeng.dnscache.model.DnsRecord;
+import com.zzeng.dnscache.model.DnsRecordValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Override rules compiled into a trie of labels, read from the last one ({@code com}, then {@code example}, ...).
+ * A lookup walks down as far as the name goes, so it costs one map step per label however many rules there are,
+ * and takes no lock: a trie is never modified, a new set of rules is compiled into a new one.
+ * <p>
+ * A name gets the answer of the rule for exactly that name and type if there is one, and otherwise that of the
+ * closest wildcard above it: {@code *.internal.corp} answers for {@code a.internal.corp} and
+ * {@code a.b.internal.corp}, but not for {@code internal.corp}. Names are matched without regard to case or a
+ * trailing dot.
+ */
+public final class OverrideTrie {
+
+    private static final Logger logger = LoggerFactory.getLogger(OverrideTrie.class);
+
+    public static final OverrideTrie EMPTY = compile(List.of());
+
+    private final Node root;
+    private final int size;
+
+    private OverrideTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a rule has no name, an unknown type, no values or one that is not valid
+     * for its type, or two rules have the same name and type
+     */
+    public static OverrideTrie compile(List<OverrideRule> rules) {
+        return compile(rules, invalid -> {
+            throw new IllegalArgumentException(invalid);
+        });
+    }
+
+    /**
+     * Compiles the rules that are valid and skips the others with a warning, for rules read from a file or Redis:
+     * one bad rule there does not keep the rest from taking effect. Of two rules with the same name and type, the
+     * first one is kept.
+     */
+    public static OverrideTrie compileValid(List<OverrideRule> rules) {
+        return compile(rules, invalid -> logger.warn("Skipping override rule: {}", invalid));
+    }
+
+    private static OverrideTrie compile(List<OverrideRule> rules, Consumer<String> invalid) {
+        Node root = new Node();
+        int size = 0;
+        for (OverrideRule rule : rules) {
+            String type = rule.getType() == null ? DnsRecord.TYPE_A : rule.getType().toUpperCase(Locale.ROOT);
+            String problem = check(rule, type);
+            if (problem != null) {
+                invalid.accept(problem);
+                continue;
+            }
+            String name = normalize(rule.getName());
+            boolean wildcard = name.startsWith("*.");
+            Node node = root;
+            int end = name.length();
+            int stop = wildcard ? 2 : 0;
+            while (end > stop) {
+                int dot = name.lastIndexOf('.', end - 1);
+                int start = Math.max(dot + 1, stop);
+                node = node.children.computeIfAbsent(name.substring(start, end), label -> new Node());
+                end = start - 1;
+            }
+            Map<String, Answer> answers = wildcard ? node.wildcard : node.exact;
+            Answer answer = new Answer(type, rule.getValues().stream()
+                    .map(value -> new DnsRecordValue(value, rule.getTtl()))
+                    .toList(), rule.getTtl());
+            if (answers.putIfAbsent(type, answer) != null) {
+                invalid.accept("More than one rule for " + rule.getName() + " " + type);
+                continue;
+            }
+            size++;
+        }
+        return new OverrideTrie(root.freeze(), size);
+    }
+
+    /**
+     * @return why the rule cannot be compiled, or null if it can
+     */
+    private static String check(OverrideRule rule, String type) {
+        if (rule.getName() == null || rule.getName().isBlank()) {
+            return "Rule without a name";
+        }
+        int code = Type.value(type);
+        if (code < 0) {
+            return "Unknown record type " + rule.getType() + " for " + rule.getName();
+        }
+        if (rule.getValues() == null || rule.getValues().isEmpty()) {
+            return "No values for " + rule.getName() + " " + type;
+        }
+        for (String value : rule.getValues()) {
+            if (!isValid(code, value)) {
+                return "Not a valid " + type + " value for " + rule.getName() + ": " + value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether the value reads as the data of a record of the type, as answers are written from it: an IPv4 address
+     * for A, an IPv6 one for AAAA, a name for CNAME, ...
+     */
+    private static boolean isValid(int type, String value) {
+        if (value == null || value.isBlank()) {
+            return false;
+        }
+        try {
+            Record.fromString(Name.root, type, DClass.IN, 0, value, Name.root);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the answer for the name, as a manual record of that name, or null if no rule covers it
+     */
+    public DnsRecord find(String domain, String type) {
+        String name = normalize(domain);
+        Node node = root;
+        Answer closestWildcard = null;
+        int end = name.length();
+        while (end > 0) {
+            // Names with a label left to match are below this node, which is what its wildcards cover.
+            Answer wildcard = node.wildcard.get(type);
+            if (wildcard != null) {
+                closestWildcard = wildcard;
+            }
+            int dot = name.lastIndexOf('.', end - 1);
+            node = node.children.get(name.substring(dot + 1, end));
+            if (node == null) {
+                return record(domain, closestWildcard);
+            }
+            end = dot;
+        }
+        Answer exact = node.exact.get(type);
+        return record(domain, exact != null ? exact : closestWildcard);
+    }
+
+    /**
+     * @return the number of rules compiled in
+     */
+    public int size() {
+        return size;
+    }
+
+    private static DnsRecord record(String domain, Answer answer) {
+        return answer == null ? null : new DnsRecord(domain, answer.type(), answer.values(), answer.ttl(), true);
+    }
+
+    /**
+     * Lower-cases the name and drops a trailing dot, without copying names that need neither.
+     */
+    private static String normalize(String name) {
+        int length = name.endsWith(".") ? name.length() - 1 : name.length();
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if (c >= 'A' && c <= 'Z' || c > 0x7f) {
+                return name.substring(0, length).toLowerCase(Locale.ROOT);
+            }
+        }
+        return length == name.length() ? name : name.substring(0, length);
+    }
+
+    private record Answer(String type, List<DnsRecordValue> values, long ttl) {}
+
+    private static final class Node {
+
+        Map<String, Node> children = new HashMap<>();
+        // The answers by type for this node's name, and for the names below it.
+        Map<String, Answer> exact = new HashMap<>();
+        Map<String, Answer> wildcard = new HashMap<>();
+
+        /**
+         * Replaces the maps, built as the rules came, by immutable copies sized for what they hold.
+         */
+        Node freeze() {
+            Map<String, Node> frozen = new HashMap<>(children.size() * 2);
+            children.forEach((label, child) -> frozen.put(label, child.freeze()));
+            children = Map.copyOf(frozen);
+            exact = Map.copyOf(exact);
+            wildcard = Map.copyOf(wildcard);
+            return this;
+        }
+    }
+}
@@ -3,9 +3,21 @@ package com.zzeng.dnscache.repository;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Flux;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Repository interface for interacting with Redis DNS cache.
  * Provides basic key-value operations with TTL support.
+ * Callers pass record cache keys ({@link com.zzeng.dnscache.model.DnsRecord#cacheKey}), which are the plain
+ * domain name for A records; every key the repository touches lives under the configured
+ * {@code dns.redis.key-prefix}, and manual entries are additionally tracked in an index set.
+ * <p>
+ * This is also the storage engine SPI, selected with {@code dns.storage.engine}: {@link DnsCacheRepositoryImpl}
+ * for Redis and {@link InMemoryDnsCacheRepository} for a cache kept in this process. The Redis commands named
+ * below describe the semantics other engines match; the conformance tests hold every engine to them.
  */
 public interface DnsCacheRepository {
 
@@ -13,22 +25,71 @@ public interface DnsCacheRepository {
      * Retrieves a cached value for the given domain.
      *
      * @param domain the domain name (used as Redis key)
-     * @return a Mono emitting the cached JSON string, or empty if not found
+     * @return a Mono emitting the encoded record, or empty if not found
+     */
+    Mono<byte[]> get(String domain);
+
+    /**
+     * Returns the remaining time-to-live of a domain key.
+     *
+     * @param domain the domain name (used as Redis key)
+     * @return a Mono emitting the remaining TTL, {@link Duration#ZERO} if the key never expires,
+     *         or empty if the key does not exist
      */
-    Mono<String> get(String domain);
+    Mono<Duration> getExpire(String domain);
+
+    /**
+     * Retrieves a cached value together with its remaining time-to-live, as {@link #get} and {@link #getExpire}.
+     *
+     * @param domain the domain name (used as Redis key)
+     * @return a Mono emitting the value with its expiry, or empty if not found
+     */
+    Mono<Stored> getWithExpire(String domain);
 
     /**
      * Stores a value in Redis with the given TTL (in seconds).
      *
      * @param domain the domain name (used as key)
-     * @param value the JSON string to store
+     * @param value the encoded record to store
      * @param ttlSeconds time-to-live duration in seconds
      * @return a Mono emitting true when completed
      */
-    Mono<Boolean> set(String domain, String value, long ttlSeconds);
+    Mono<Boolean> set(String domain, byte[] value, long ttlSeconds);
+
+    /**
+     * Stores a manual entry with the given TTL (in seconds) and adds it to the manual index.
+     *
+     * @param domain the domain name (used as key)
+     * @param value the encoded record to store
+     * @param ttlSeconds time-to-live duration in seconds
+     * @return a Mono emitting true when completed
+     */
+    Mono<Boolean> setManual(String domain, byte[] value, long ttlSeconds);
+
+    /**
+     * Sets a new TTL on a stored record in one atomic server-side step: the TTL stored inside the value
+     * is rewritten and the key's expiry re-armed, without the value travelling to the client.
+     *
+     * @param domain the domain name (used as key)
+     * @param ttlSeconds the new time-to-live in seconds
+     * @param staleSeconds how long to keep a resolved (non-manual) record past its TTL, for serving it stale
+     * @return a Mono emitting the remaining TTL in seconds as reported by Redis, less the stale retention,
+     *         or empty if the key does not exist
+     */
+    Mono<Long> updateTtl(String domain, long ttlSeconds, long staleSeconds);
 
     /**
-     * Deletes a domain key from Redis.
+     * Sets the same new TTL on many stored records, as {@link #updateTtl} does for one, in one script call per chunk.
+     *
+     * @param domains the domain names (used as keys)
+     * @param ttlSeconds the new time-to-live in seconds
+     * @param staleSeconds how long to keep resolved (non-manual) records past their TTL
+     * @return a Mono emitting a map of domain to remaining TTL in seconds, holding only the domains that were found
+     */
+    Mono<Map<String, Long>> updateTtlAll(Collection<String> domains, long ttlSeconds, long staleSeconds);
+
+    /**
+     * Deletes a domain key from Redis, along with its manual index entry.
      *
      * @param domain the domain name to delete
      * @return a Mono emitting true if deletion was successful, false otherwise
@@ -36,9 +97,145 @@ public interface DnsCacheRepository {
     Mono<Boolean> delete(String domain);
 
     /**
-     * Scans and returns all keys currently stored in Redis.
+     * Retrieves the cached values of many domains using MGET, split into chunks for very large batches.
+     *
+     * @param domains the domain names (used as Redis keys)
+     * @return a Mono emitting a map of domain to encoded record, holding only the domains that were found
+     */
+    Mono<Map<String, byte[]>> multiGet(Collection<String> domains);
+
+    /**
+     * Retrieves the cached values of many domains with their remaining time-to-live, in one call per chunk
+     * (with Redis, a script reading GET and PTTL of each key, run on the primary).
+     *
+     * @param domains the domain names (used as Redis keys)
+     * @return a Mono emitting a map of domain to value and expiry, holding only the domains that were found
+     */
+    Mono<Map<String, Stored>> multiGetWithExpire(Collection<String> domains);
+
+    /**
+     * Stores many values, each with its own TTL, in one server-side batch per chunk.
+     *
+     * @param entries the values to store
+     * @return a Mono emitting the number of values stored
+     */
+    Mono<Long> setAll(List<Entry> entries);
+
+    /**
+     * Deletes many domain keys using UNLINK, split into chunks for very large batches,
+     * along with their manual index entries.
      *
-     * @return a Flux emitting each Redis key as a string
+     * @param domains the domain names to delete
+     * @return a Mono emitting the number of keys that existed and were removed
+     */
+    Mono<Long> deleteAll(Collection<String> domains);
+
+    /**
+     * Deletes every key under the configured prefix (records, the indexes and leases) but the override rules.
+     * Works a page at a time: with Redis, one SCAN page, then an UNLINK of the keys it found.
+     *
+     * @return a Flux emitting the number of keys removed by each step, completing once the scan is done
+     */
+    Flux<Long> clear();
+
+    /**
+     * Acquires a short-lived lease on a key (SET NX PX), used to keep several nodes
+     * from refreshing the same domain at once.
+     *
+     * @param lockKey the lock key
+     * @param token a unique value identifying the holder
+     * @param lease how long the lease is held before it expires on its own
+     * @return a Mono emitting true if the lease was acquired, false if someone else holds it
+     */
+    Mono<Boolean> tryLock(String lockKey, String token, Duration lease);
+
+    /**
+     * Releases a lease acquired with {@link #tryLock}, only if it is still held by the given token.
+     *
+     * @param lockKey the lock key
+     * @param token the value passed to {@link #tryLock}
+     * @return a Mono emitting true if the lease was released by this call
+     */
+    Mono<Boolean> unlock(String lockKey, String token);
+
+    /**
+     * Scans the record keys under the configured prefix. Other keys in a shared Redis are not visited.
+     *
+     * @return a Flux emitting the domain name of each cached record
      */
     Flux<String> scanKeys();
+
+    /**
+     * Scans the manual index. The index may still name domains whose entry has since expired
+     * or been replaced by a resolved one; callers check the records themselves.
+     *
+     * @return a Flux emitting each domain in the manual index
+     */
+    Flux<String> scanManualDomains();
+
+    /**
+     * One step of a resumable scan, for paging through the cache: the record keys (or, with {@code manualOnly},
+     * the manual index) matching a glob pattern of {@code *} and {@code ?}, like SCAN / SSCAN with MATCH.
+     * A step looks at about {@code count} keys, so it may find fewer, or none, without the scan being over.
+     * Keys present for the whole scan are found at least once; others may or may not be.
+     *
+     * @param cursor where the previous step stopped, or null to start
+     * @param pattern the glob the keys have to match
+     * @param manualOnly whether to scan the manual index rather than every record
+     * @param count about how many keys to look at
+     * @return a Mono emitting the keys found and the cursor to go on from, null once the scan is complete
+     * @throws IllegalArgumentException (signalled) if the cursor was not returned by this engine
+     */
+    Mono<KeyPage> scanKeys(String cursor, String pattern, boolean manualOnly, int count);
+
+    /**
+     * Removes domains from the manual index without touching their records.
+     *
+     * @param domains the domain names to remove
+     * @return a Mono emitting the number of domains that were in the index
+     */
+    Mono<Long> removeFromManualIndex(Collection<String> domains);
+
+    /**
+     * The keys of the records of a zone: the zone's own name and every name below it, of every type. Read from an
+     * index of the names with their labels reversed, so it costs as much as the zone holds, not the whole cache.
+     * The index may still hold keys whose record has since expired; reading them tells.
+     *
+     * @param zone the zone's name, without a trailing dot
+     * @return a Flux emitting the record cache keys of the zone, in the index's order
+     */
+    Flux<String> scanZone(String zone);
+
+    /**
+     * Removes keys from the zone index without touching their records.
+     *
+     * @param domains the record cache keys to remove
+     * @return a Mono emitting the number of keys that were in the index
+     */
+    Mono<Long> removeFromZoneIndex(Collection<String> domains);
+
+    /**
+     * A value to store under a domain key, used by batch writes.
+     *
+     * @param domain the domain name (used as key)
+     * @param value the encoded record to store
+     * @param ttlSeconds time-to-live duration in seconds
+     */
+    record Entry(String domain, byte[] value, long ttlSeconds) {}
+
+    /**
+     * A stored value with the time it has left.
+     *
+     * @param value the encoded record
+     * @param expire the remaining TTL, {@link Duration#ZERO} if the key never expires
+     */
+    record Stored(byte[] value, Duration expire) {}
+
+    /**
+     * One step of {@link #scanKeys(String, String, boolean, int)}.
+     *
+     * @param keys the record cache keys found
+     * @param cursor where the next step starts, or null if the scan is complete
+     */
+    record KeyPage(List<String> keys, String cursor) {}
 }
@@ -1,45 +1,680 @@
 package com.zzeng.dnscache.repository;
 
+import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.util.Glob;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Repository;
+import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.function.Tuple2;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
+/**
+ * The Redis storage engine, shared by every node using the same Redis. The default {@code dns.storage.engine}.
+ * <p>
+ * Works with a single Redis and with Redis Cluster ({@code spring.data.redis.cluster.nodes}). With a cluster,
+ * batches are split by slot, as scripts and MGET need all their keys on one, and listing and clearing scan every
+ * upstream node in parallel through {@link RedisClusterNodes}.
+ * <p>
+ * Every record is also in a sorted set of {@link ZoneIndex} members, read by ZRANGEBYLEX. Redis expires records
+ * but not set members, so a second sorted set scores each member with the time its record expires at the latest,
+ * and every write to the index drops some of the members past that time. Both sets are single keys, so the index is
+ * not written along with each record: changes are queued and written in chunks, in order, by one script call each,
+ * every {@code zone-index-flush-interval} or as soon as a chunk is full. Listing a zone and clearing the cache
+ * write the queue first, so they see this node's changes.
+ */
 @Repository
-public class DnsCacheRepositoryImpl implements DnsCacheRepository {
+@ConditionalOnProperty(prefix = "dns.storage", name = "engine", havingValue = "REDIS", matchIfMissing = true)
+public class DnsCacheRepositoryImpl implements DnsCacheRepository, DisposableBean {
 
+    private static final RedisScript<Long> UNLOCK_SCRIPT = RedisScript.of(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) else return 0 end",
+            Long.class);
+
+    // SET with EX for every KEYS[i] / (ARGV[2i-1], ARGV[2i]) pair: one round-trip per chunk.
+    private static final RedisScript<Long> SET_ALL_SCRIPT = RedisScript.of(
+            "for i = 1, #KEYS do redis.call('SET', KEYS[i], ARGV[2 * i - 1], 'EX', ARGV[2 * i]) end return #KEYS",
+            Long.class);
+
+    // GET and PTTL of every KEYS[i], as the pairs {value, pttl}; a missing key gives {'', -2}. Scripts run on the
+    // primary, so these batch reads do not use replicas.
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> GET_WITH_EXPIRE_ALL_SCRIPT = RedisScript.of(
+            "local found = {} for i = 1, #KEYS do local value = redis.call('GET', KEYS[i]) "
+                    + "if value then found[2 * i - 1] = value found[2 * i] = redis.call('PTTL', KEYS[i]) "
+                    + "else found[2 * i - 1] = '' found[2 * i] = -2 end end return found",
+            List.class);
+
+    // Applies ARGV[3..] (member, expire-at pairs, in order; an expire-at of "-" removes the member) to the zone
+    // index KEYS[1] and its expiry KEYS[2], after dropping up to ARGV[2] members due by ARGV[1] (now, in epoch
+    // seconds) from both. Returns how many were dropped.
+    private static final RedisScript<Long> ZONE_INDEX_UPDATE_SCRIPT = RedisScript.of(
+            "local due = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) "
+                    + "for i = 1, #due, 1000 do local part = {unpack(due, i, math.min(i + 999, #due))} "
+                    + "redis.call('ZREM', KEYS[1], unpack(part)) redis.call('ZREM', KEYS[2], unpack(part)) end "
+                    + "for i = 3, #ARGV, 2 do "
+                    + "if ARGV[i + 1] == '-' then redis.call('ZREM', KEYS[1], ARGV[i]) redis.call('ZREM', KEYS[2], ARGV[i]) "
+                    + "else redis.call('ZADD', KEYS[1], 0, ARGV[i]) redis.call('ZADD', KEYS[2], ARGV[i + 1], ARGV[i]) end end "
+                    + "return #due",
+            Long.class);
+
+    private static final RedisScript<Long> ZONE_INDEX_REMOVE_SCRIPT = RedisScript.of(
+            "redis.call('ZREM', KEYS[2], unpack(ARGV)) return redis.call('ZREM', KEYS[1], unpack(ARGV))",
+            Long.class);
+
+    // Rewrites the ttl field of a stored record (binary varint or JSON property) and re-arms its expiry in the
+    // same step; resolved records are kept for another `stale` seconds past the TTL, manual ones are not.
+    // Returns the remaining TTL in seconds without that retention, or -2 if the key does not exist.
+    // JSON records are edited as text, not decoded and re-encoded: cjson writes an empty array as {}, which would
+    // break the values of negative answers. json_field finds where the value of a top-level property starts.
+    private static final String UPDATE_TTL_FUNCTION = """
+            local function json_field(v, name)
+              local depth, i, n = 0, 1, #v
+              while i <= n do
+                local c = string.sub(v, i, i)
+                if c == '"' then
+                  local j = i + 1
+                  while j <= n and string.sub(v, j, j) ~= '"' do
+                    if string.sub(v, j, j) == '\\\\' then j = j + 1 end
+                    j = j + 1
+                  end
+                  if depth == 1 and string.sub(v, i + 1, j - 1) == name then
+                    local _, e = string.find(v, '^%s*:%s*', j + 1)
+                    if e then return e + 1 end
+                  end
+                  i = j
+                elseif c == '{' or c == '[' then depth = depth + 1
+                elseif c == '}' or c == ']' then depth = depth - 1 end
+                i = i + 1
+              end
+            end
+            local function update_ttl(key, ttl, stale)
+              local v = redis.call('GET', key)
+              if not v then return -2 end
+              local first = string.byte(v, 1)
+              local manual = false
+              if first == 1 or first == 2 then
+                manual = string.byte(v, 2) % 2 == 1
+                local i = 3
+                while i <= #v and string.byte(v, i) >= 128 do i = i + 1 end
+                local out, n = {}, ttl
+                repeat
+                  local b = n % 128
+                  n = math.floor(n / 128)
+                  if n > 0 then b = b + 128 end
+                  out[#out + 1] = string.char(b)
+                until n == 0
+                v = string.sub(v, 1, 2) .. table.concat(out) .. string.sub(v, i + 1)
+              elseif first == 123 then
+                local at = json_field(v, 'manual')
+                manual = at ~= nil and string.sub(v, at, at + 3) == 'true'
+                at = json_field(v, 'ttl')
+                local s, e = string.find(v, '^%-?%d+', at or #v + 1)
+                if s then v = string.sub(v, 1, s - 1) .. string.format('%d', ttl) .. string.sub(v, e + 1) end
+              end
+              local keep = manual and 0 or stale
+              redis.call('SET', key, v, 'EX', ttl + keep)
+              return redis.call('TTL', key) - keep
+            end
+            """;
+
+    private static final RedisScript<Long> UPDATE_TTL_SCRIPT = RedisScript.of(
+            UPDATE_TTL_FUNCTION + "return update_ttl(KEYS[1], tonumber(ARGV[1]), tonumber(ARGV[2]))",
+            Long.class);
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> UPDATE_TTL_ALL_SCRIPT = RedisScript.of(
+            UPDATE_TTL_FUNCTION + "local ttls = {} "
+                    + "for i = 1, #KEYS do ttls[i] = update_ttl(KEYS[i], tonumber(ARGV[1]), tonumber(ARGV[2])) end return ttls",
+            List.class);
+
+    // Chunks of one batch in flight at the same time on the shared connection.
+    private static final int CHUNK_CONCURRENCY = 4;
+
+    // With a cluster, a batch of random names splits into about one chunk per key: many more in flight, which
+    // the client pipelines on its connection to each node.
+    private static final int CLUSTER_CHUNK_CONCURRENCY = 64;
+
+    // Zone index changes queued beyond this many chunks are dropped rather than held while Redis is not keeping up.
+    private static final int ZONE_INDEX_BACKLOG_CHUNKS = 100;
+
+    // Latency of each repository operation (which may be several Redis commands), tagged with its name and outcome.
+    static final String OPERATIONS_METRIC = "dns.redis.operations";
+    static final String ZONE_INDEX_DROPPED_METRIC = "dns.redis.zone-index.dropped";
+
+    private static final Logger logger = LoggerFactory.getLogger(DnsCacheRepositoryImpl.class);
+
+    private final ReactiveRedisTemplate<String, byte[]> recordTemplate;
     private final ReactiveStringRedisTemplate redisTemplate;
+    private final int batchChunkSize;
+    private final String keyPrefix;
+    private final String recordPrefix;
+    private final String manualIndexKey;
+    private final List<String> zoneIndexKeys;
+    // Under the prefix, but kept by clear().
+    private final String overridesKey;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    // Only with Redis Cluster.
+    private final RedisClusterNodes clusterNodes;
+    // Only without.
+    private final RedisNode node;
+    private final int chunkConcurrency;
+    // Zone index changes not written yet, in the order they were made, and how many.
+    private final Queue<ZoneIndexChange> zoneIndexChanges = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingZoneIndexChanges = new AtomicInteger();
+    // Requests to write them, taken one at a time; each completes its sink once all changes queued before are written.
+    private final Sinks.Many<Sinks.Empty<Void>> zoneIndexFlushes = Sinks.many().unicast().onBackpressureBuffer();
+    private final Counter droppedZoneIndexChanges;
+    private final Disposable zoneIndexWriter;
+    private final Disposable zoneIndexTimer;
 
     @Autowired
-    public DnsCacheRepositoryImpl(ReactiveStringRedisTemplate redisTemplate) {
+    public DnsCacheRepositoryImpl(ReactiveRedisTemplate<String, byte[]> recordTemplate,
+                                  ReactiveStringRedisTemplate redisTemplate,
+                                  DnsProperties dnsProperties,
+                                  MeterRegistry meterRegistry) {
+        this.recordTemplate = recordTemplate;
         this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.batchChunkSize = Math.max(1, dnsProperties.getRedis().getBatchChunkSize());
+        this.keyPrefix = dnsProperties.getRedis().getKeyPrefix();
+        this.recordPrefix = keyPrefix + "record:";
+        this.manualIndexKey = keyPrefix + "manual";
+        // The index and its expiry are updated together by scripts: the hash tag keeps them on one cluster slot,
+        // unless the prefix holds a tag of its own, which then does.
+        this.overridesKey = dnsProperties.getRedis().overridesKey();
+        this.zoneIndexKeys = List.of(keyPrefix + "{zones}", keyPrefix + "{zones}:expiry");
+        this.clusterNodes = RedisClusterNodes.isCluster(recordTemplate.getConnectionFactory())
+                ? new RedisClusterNodes((LettuceConnectionFactory) recordTemplate.getConnectionFactory())
+                : null;
+        this.node = clusterNodes == null ? new RedisNode((LettuceConnectionFactory) recordTemplate.getConnectionFactory()) : null;
+        this.chunkConcurrency = clusterNodes != null ? CLUSTER_CHUNK_CONCURRENCY : CHUNK_CONCURRENCY;
+        this.droppedZoneIndexChanges = Counter.builder(ZONE_INDEX_DROPPED_METRIC)
+                .description("Zone index changes dropped because too many were waiting to be written")
+                .register(meterRegistry);
+        this.zoneIndexWriter = zoneIndexFlushes.asFlux()
+                .concatMap(done -> writeZoneIndex().doFinally(signal -> done.tryEmitEmpty()))
+                .subscribe();
+        this.zoneIndexTimer = Flux.interval(dnsProperties.getRedis().getZoneIndexFlushInterval())
+                .filter(tick -> pendingZoneIndexChanges.get() > 0)
+                .subscribe(tick -> requestZoneIndexFlush(Sinks.empty()));
     }
 
     @Override
-    public Mono<String> get(String domain) {
-        return redisTemplate.opsForValue()
-                .get(domain)
-                .filter(Objects::nonNull);
+    public Mono<byte[]> get(String domain) {
+        return timed("get", recordTemplate.opsForValue()
+                .get(recordKey(domain))
+                .filter(Objects::nonNull));
     }
 
     @Override
-    public Mono<Boolean> set(String domain, String value, long ttlSeconds) {
-        return redisTemplate.opsForValue()
-                .set(domain, value, Duration.ofSeconds(ttlSeconds))
+    public Mono<Duration> getExpire(String domain) {
+        return timed("getExpire", redisTemplate.getExpire(recordKey(domain)));
+    }
+
+    @Override
+    public Mono<Stored> getWithExpire(String domain) {
+        String key = recordKey(domain);
+        // Two commands on the shared connection, the second sent without waiting for the first answer.
+        return timed("getWithExpire", Mono.zip(
+                recordTemplate.opsForValue().get(key).filter(Objects::nonNull),
+                redisTemplate.getExpire(key))
+                .map(found -> new Stored(found.getT1(), found.getT2())));
+    }
+
+    @Override
+    public Mono<Boolean> set(String domain, byte[] value, long ttlSeconds) {
+        return timed("set", setRecord(domain, value, ttlSeconds));
+    }
+
+    @Override
+    public Mono<Boolean> setManual(String domain, byte[] value, long ttlSeconds) {
+        return timed("setManual", setRecord(domain, value, ttlSeconds)
+                .then(redisTemplate.opsForSet().add(manualIndexKey, domain))
+                .thenReturn(true));
+    }
+
+    private Mono<Boolean> setRecord(String domain, byte[] value, long ttlSeconds) {
+        return recordTemplate.opsForValue().set(recordKey(domain), value, Duration.ofSeconds(ttlSeconds))
+                .doOnSuccess(stored -> addToZoneIndex(Map.of(domain, ttlSeconds)))
                 .thenReturn(true);
     }
 
     @Override
     public Mono<Boolean> delete(String domain) {
-        return redisTemplate.delete(domain).map(count -> count > 0);
+        return timed("delete", Mono.zip(redisTemplate.delete(recordKey(domain)),
+                        redisTemplate.opsForSet().remove(manualIndexKey, domain))
+                .doOnSuccess(counts -> queueZoneIndexRemoval(List.of(domain)))
+                .map(counts -> counts.getT1() > 0));
+    }
+
+    @Override
+    public Mono<Map<String, byte[]>> multiGet(Collection<String> domains) {
+        return timed("multiGet", Flux.fromIterable(chunk(List.copyOf(domains), Function.identity()))
+                .flatMap(keys -> recordTemplate.opsForValue().multiGet(keys.stream().map(this::recordKey).toList())
+                        .map(values -> {
+                            Map<String, byte[]> found = new HashMap<>();
+                            for (int i = 0; i < keys.size(); i++) {
+                                if (values.get(i) != null) {
+                                    found.put(keys.get(i), values.get(i));
+                                }
+                            }
+                            return found;
+                        }), chunkConcurrency)
+                .reduceWith(HashMap::new, (all, found) -> {
+                    all.putAll(found);
+                    return all;
+                }));
+    }
+
+    @Override
+    public Mono<Map<String, Stored>> multiGetWithExpire(Collection<String> domains) {
+        return timed("multiGetWithExpire", Flux.fromIterable(chunk(List.copyOf(domains), Function.identity()))
+                .flatMap(keys -> recordTemplate.execute(GET_WITH_EXPIRE_ALL_SCRIPT, keys.stream().map(this::recordKey).toList(),
+                                List.of())
+                        .next()
+                        .map(pairs -> {
+                            Map<String, Stored> found = new HashMap<>();
+                            for (int i = 0; i < keys.size(); i++) {
+                                long pttl = ((Number) pairs.get(2 * i + 1)).longValue();
+                                if (pttl == -1) {
+                                    found.put(keys.get(i), new Stored((byte[]) pairs.get(2 * i), Duration.ZERO));
+                                } else if (pttl >= 0) {
+                                    found.put(keys.get(i), new Stored((byte[]) pairs.get(2 * i), Duration.ofMillis(pttl)));
+                                }
+                            }
+                            return found;
+                        }), chunkConcurrency)
+                .<Map<String, Stored>>reduceWith(HashMap::new, (all, found) -> {
+                    all.putAll(found);
+                    return all;
+                }));
+    }
+
+    @Override
+    public Mono<Long> setAll(List<Entry> entries) {
+        return timed("setAll", Flux.fromIterable(chunk(entries, Entry::domain))
+                .flatMap(batch -> {
+                    List<String> keys = new ArrayList<>(batch.size());
+                    List<byte[]> args = new ArrayList<>(batch.size() * 2);
+                    for (Entry entry : batch) {
+                        keys.add(recordKey(entry.domain()));
+                        args.add(entry.value());
+                        args.add(Long.toString(entry.ttlSeconds()).getBytes(StandardCharsets.US_ASCII));
+                    }
+                    return recordTemplate.execute(SET_ALL_SCRIPT, keys, args).next();
+                }, chunkConcurrency)
+                .reduce(0L, Long::sum)
+                .doOnSuccess(stored -> {
+                    Map<String, Long> ttls = new HashMap<>();
+                    entries.forEach(entry -> ttls.put(entry.domain(), entry.ttlSeconds()));
+                    addToZoneIndex(ttls);
+                }));
+    }
+
+    @Override
+    public Mono<Long> deleteAll(Collection<String> domains) {
+        List<String> all = List.copyOf(domains);
+        return timed("deleteAll", Mono.zip(
+                        Flux.fromIterable(chunk(all, Function.identity()))
+                                .flatMap(keys -> redisTemplate.unlink(keys.stream().map(this::recordKey).toArray(String[]::new)),
+                                        chunkConcurrency)
+                                .reduce(0L, Long::sum),
+                        // The index is one key: a command per chunk, however the records are spread.
+                        Flux.fromIterable(chunk(all))
+                                .flatMap(keys -> redisTemplate.opsForSet().remove(manualIndexKey, keys.toArray()), CHUNK_CONCURRENCY)
+                                .reduce(0L, Long::sum))
+                .doOnSuccess(counts -> queueZoneIndexRemoval(all))
+                .map(counts -> counts.getT1()));
+    }
+
+    @Override
+    public Mono<Long> updateTtl(String domain, long ttlSeconds, long staleSeconds) {
+        return timed("updateTtl", redisTemplate.execute(UPDATE_TTL_SCRIPT, List.of(recordKey(domain)),
+                        List.of(Long.toString(ttlSeconds), Long.toString(staleSeconds)))
+                .next()
+                .filter(remaining -> remaining >= 0)
+                .doOnNext(remaining -> addToZoneIndex(Map.of(domain, ttlSeconds + staleSeconds))));
+    }
+
+    @Override
+    public Mono<Map<String, Long>> updateTtlAll(Collection<String> domains, long ttlSeconds, long staleSeconds) {
+        List<String> args = List.of(Long.toString(ttlSeconds), Long.toString(staleSeconds));
+        return timed("updateTtlAll", Flux.fromIterable(chunk(List.copyOf(domains), Function.identity()))
+                .flatMap(keys -> redisTemplate.execute(UPDATE_TTL_ALL_SCRIPT, keys.stream().map(this::recordKey).toList(), args)
+                        .next()
+                        .map(ttls -> {
+                            Map<String, Long> updated = new HashMap<>();
+                            for (int i = 0; i < keys.size(); i++) {
+                                long remaining = ((Number) ttls.get(i)).longValue();
+                                if (remaining >= 0) {
+                                    updated.put(keys.get(i), remaining);
+                                }
+                            }
+                            return updated;
+                        }), chunkConcurrency)
+                .<Map<String, Long>>reduceWith(HashMap::new, (all, updated) -> {
+                    all.putAll(updated);
+                    return all;
+                })
+                .doOnNext(updated -> {
+                    Map<String, Long> ttls = new HashMap<>();
+                    updated.keySet().forEach(key -> ttls.put(key, ttlSeconds + staleSeconds));
+                    addToZoneIndex(ttls);
+                }));
+    }
+
+    @Override
+    public Flux<Long> clear() {
+        // Changes queued before the clear would otherwise index records it removed.
+        return flushZoneIndex().thenMany(clearKeys(escapeGlob(keyPrefix) + "*"));
+    }
+
+    /**
+     * Scans the keys a page at a time and UNLINKs each page but the override rules: no script, as it would touch
+     * keys it cannot declare, and the server is never blocked for more than one command.
+     */
+    private Flux<Long> clearKeys(String pattern) {
+        Flux<List<String>> pages = clusterNodes != null
+                ? clusterNodes.scan(pattern, batchChunkSize)
+                : redisTemplate.scan(ScanOptions.scanOptions().match(pattern).count(batchChunkSize).build())
+                        .buffer(batchChunkSize);
+        // With a cluster, UNLINK of keys from several slots is split by slot in the client.
+        return pages
+                .map(keys -> keys.stream().filter(key -> !key.equals(overridesKey)).toArray(String[]::new))
+                .filter(keys -> keys.length > 0)
+                .flatMap(keys -> redisTemplate.unlink(keys), CHUNK_CONCURRENCY);
+    }
+
+    @Override
+    public Mono<Boolean> tryLock(String lockKey, String token, Duration lease) {
+        return timed("tryLock", redisTemplate.opsForValue()
+                .setIfAbsent(keyPrefix + lockKey, token, lease)
+                .defaultIfEmpty(false));
+    }
+
+    @Override
+    public Mono<Boolean> unlock(String lockKey, String token) {
+        return timed("unlock", redisTemplate.execute(UNLOCK_SCRIPT, List.of(keyPrefix + lockKey), List.of(token))
+                .next()
+                .map(released -> released > 0)
+                .defaultIfEmpty(false));
     }
 
     @Override
     public Flux<String> scanKeys() {
-        return redisTemplate.scan();
+        if (clusterNodes != null) {
+            return clusterNodes.scan(escapeGlob(recordPrefix) + "*", batchChunkSize)
+                    .flatMapIterable(keys -> keys)
+                    .map(key -> key.substring(recordPrefix.length()));
+        }
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(escapeGlob(recordPrefix) + "*")
+                .count(batchChunkSize)
+                .build();
+        return redisTemplate.scan(options)
+                .map(key -> key.substring(recordPrefix.length()));
+    }
+
+    @Override
+    public Flux<String> scanManualDomains() {
+        return redisTemplate.opsForSet()
+                .scan(manualIndexKey, ScanOptions.scanOptions().count(batchChunkSize).build());
+    }
+
+    @Override
+    public Mono<KeyPage> scanKeys(String cursor, String pattern, boolean manualOnly, int count) {
+        String match = Glob.toRedis(pattern);
+        if (manualOnly) {
+            ScanArgs args = ScanArgs.Builder.matches(match).limit(Math.max(1, count));
+            return timed("scanKeys", scanCursor(cursor)
+                    .flatMap(resume -> clusterNodes != null
+                            ? clusterNodes.sscan(manualIndexKey, resume, args)
+                            : node.sscan(manualIndexKey, resume, args))
+                    .map(page -> new KeyPage(page.getValues(), nextCursor(page))));
+        }
+        String recordMatch = escapeGlob(recordPrefix) + match;
+        ScanArgs args = ScanArgs.Builder.matches(recordMatch).limit(Math.max(1, count));
+        Mono<KeyPage> step = clusterNodes != null
+                ? clusterNodes.scanStep(cursor, recordMatch, Math.max(1, count))
+                : scanCursor(cursor)
+                        .flatMap(resume -> node.scan(resume, args))
+                        .map(page -> new KeyPage(page.getKeys(), nextCursor(page)));
+        return timed("scanKeys", step.map(page -> new KeyPage(
+                page.keys().stream().map(key -> key.substring(recordPrefix.length())).toList(), page.cursor())));
+    }
+
+    /**
+     * The SCAN cursor to resume from: the initial one without a cursor, else the one handed out with the last page.
+     */
+    private static Mono<ScanCursor> scanCursor(String cursor) {
+        if (cursor == null) {
+            return Mono.just(ScanCursor.INITIAL);
+        }
+        return cursor.matches("[1-9][0-9]*")
+                ? Mono.just(ScanCursor.of(cursor))
+                : Mono.error(new IllegalArgumentException("Not a scan cursor: " + cursor));
+    }
+
+    private static String nextCursor(ScanCursor page) {
+        return page.isFinished() ? null : page.getCursor();
+    }
+
+    @Override
+    public Mono<Long> removeFromManualIndex(Collection<String> domains) {
+        return domains.isEmpty()
+                ? Mono.just(0L)
+                : timed("removeFromManualIndex", redisTemplate.opsForSet().remove(manualIndexKey, domains.toArray()));
+    }
+
+    /**
+     * Reads the zone's range of the index a chunk at a time, each ZRANGEBYLEX starting past the last member read.
+     */
+    @Override
+    public Flux<String> scanZone(String zone) {
+        String until = ZoneIndex.until(zone);
+        return flushZoneIndex().thenMany(zonePage(Range.Bound.inclusive(ZoneIndex.from(zone)), until)
+                .expand(members -> members.size() < batchChunkSize
+                        ? Mono.empty()
+                        : zonePage(Range.Bound.exclusive(members.get(members.size() - 1)), until))
+                .flatMapIterable(members -> members)
+                .map(ZoneIndex::key));
+    }
+
+    private Mono<List<String>> zonePage(Range.Bound<String> from, String until) {
+        return redisTemplate.opsForZSet()
+                .rangeByLex(zoneIndexKeys.get(0), Range.of(from, Range.Bound.exclusive(until)),
+                        Limit.limit().count(batchChunkSize))
+                .collectList();
+    }
+
+    @Override
+    public Mono<Long> removeFromZoneIndex(Collection<String> domains) {
+        return timed("removeFromZoneIndex", Flux.fromIterable(chunk(List.copyOf(domains)))
+                .flatMap(keys -> redisTemplate.execute(ZONE_INDEX_REMOVE_SCRIPT, zoneIndexKeys,
+                        keys.stream().map(ZoneIndex::member).toList()).next(), CHUNK_CONCURRENCY)
+                .reduce(0L, Long::sum));
+    }
+
+    /**
+     * Queues records to be indexed by zone, with when they expire at the latest.
+     */
+    private void addToZoneIndex(Map<String, Long> ttlSeconds) {
+        long now = System.currentTimeMillis() / 1000;
+        List<ZoneIndexChange> changes = new ArrayList<>(ttlSeconds.size());
+        ttlSeconds.forEach((domain, ttl) -> changes.add(
+                new ZoneIndexChange(ZoneIndex.member(domain), ttl > 0 ? Long.toString(now + ttl) : "+inf")));
+        queueZoneIndexChanges(changes);
+    }
+
+    private void queueZoneIndexRemoval(Collection<String> domains) {
+        queueZoneIndexChanges(domains.stream()
+                .map(domain -> new ZoneIndexChange(ZoneIndex.member(domain), ZoneIndexChange.REMOVE))
+                .toList());
+    }
+
+    private void queueZoneIndexChanges(List<ZoneIndexChange> changes) {
+        int before = pendingZoneIndexChanges.get();
+        if (before >= batchChunkSize * ZONE_INDEX_BACKLOG_CHUNKS) {
+            // The records are written all the same: they join the index with their next write, and members
+            // left behind are dropped as their records expire, or by a zone listing that finds them gone.
+            droppedZoneIndexChanges.increment(changes.size());
+            return;
+        }
+        zoneIndexChanges.addAll(changes);
+        int after = pendingZoneIndexChanges.addAndGet(changes.size());
+        if (after / batchChunkSize > (after - changes.size()) / batchChunkSize) {
+            requestZoneIndexFlush(Sinks.empty());
+        }
+    }
+
+    /**
+     * @return a Mono completing once the zone index changes queued so far are written (or failed to be)
+     */
+    private Mono<Void> flushZoneIndex() {
+        return Mono.defer(() -> {
+            Sinks.Empty<Void> done = Sinks.empty();
+            requestZoneIndexFlush(done);
+            return done.asMono();
+        });
+    }
+
+    private synchronized void requestZoneIndexFlush(Sinks.Empty<Void> done) {
+        zoneIndexFlushes.tryEmitNext(done);
+    }
+
+    /**
+     * Writes the queued zone index changes a chunk at a time, in order, each chunk also dropping members that have
+     * expired: about twice as many as it adds, so the index keeps up with the records Redis expires by itself.
+     */
+    private Mono<Void> writeZoneIndex() {
+        return Mono.defer(() -> {
+            List<ZoneIndexChange> changes = new ArrayList<>();
+            for (ZoneIndexChange change; (change = zoneIndexChanges.poll()) != null; ) {
+                changes.add(change);
+            }
+            if (changes.isEmpty()) {
+                return Mono.empty();
+            }
+            pendingZoneIndexChanges.addAndGet(-changes.size());
+            long now = System.currentTimeMillis() / 1000;
+            return timed("zoneIndex", Flux.fromIterable(chunk(changes))
+                    .concatMap(part -> {
+                        List<String> args = new ArrayList<>(2 + part.size() * 2);
+                        args.add(Long.toString(now));
+                        args.add(Integer.toString(Math.max(16, part.size() * 2)));
+                        for (ZoneIndexChange change : part) {
+                            args.add(change.member());
+                            args.add(change.expireAt());
+                        }
+                        return redisTemplate.execute(ZONE_INDEX_UPDATE_SCRIPT, zoneIndexKeys, args).next();
+                    })
+                    .then())
+                    .onErrorResume(e -> {
+                        logger.warn("Failed to write {} zone index changes: {}", changes.size(), e.toString());
+                        return Mono.empty();
+                    });
+        });
+    }
+
+    /**
+     * Times an operation from subscription to its result. Cancelled operations are not recorded.
+     */
+    private <T> Mono<T> timed(String operation, Mono<T> command) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return command
+                    .doOnSuccess(result -> timer(operation, "success").record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .doOnError(err -> timer(operation, "error").record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private Timer timer(String operation, String outcome) {
+        return timers.computeIfAbsent(operation + ' ' + outcome, key -> Timer.builder(OPERATIONS_METRIC)
+                .description("Cache repository operations against Redis")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+    }
+
+    private String recordKey(String domain) {
+        return recordPrefix + domain;
+    }
+
+    private static String escapeGlob(String literal) {
+        return literal.replaceAll("([*?\\[\\]\\\\])", "\\\\$1");
+    }
+
+    /**
+     * Splits a batch by slot as well with Redis Cluster: scripts and MGET must keep to one.
+     */
+    private <T> List<List<T>> chunk(List<T> items, Function<T, String> domain) {
+        return clusterNodes != null
+                ? RedisClusterNodes.chunkBySlot(items, item -> recordKey(domain.apply(item)), batchChunkSize)
+                : chunk(items);
+    }
+
+    private <T> List<List<T>> chunk(List<T> items) {
+        List<List<T>> chunks = new ArrayList<>((items.size() + batchChunkSize - 1) / batchChunkSize);
+        for (int from = 0; from < items.size(); from += batchChunkSize) {
+            chunks.add(items.subList(from, Math.min(items.size(), from + batchChunkSize)));
+        }
+        return chunks;
+    }
+
+    @Override
+    public void destroy() {
+        zoneIndexTimer.dispose();
+        try {
+            flushZoneIndex().block(Duration.ofSeconds(5));
+        } catch (RuntimeException e) {
+            logger.warn("Failed to write the last zone index changes: {}", e.toString());
+        }
+        zoneIndexWriter.dispose();
+        if (clusterNodes != null) {
+            clusterNodes.close();
+        }
+        if (node != null) {
+            node.close();
+        }
+    }
+
+    // expireAt is the epoch second the member's record expires at the latest, "+inf", or REMOVE.
+    private record ZoneIndexChange(String member, String expireAt) {
+
+        static final String REMOVE = "-";
     }
 }
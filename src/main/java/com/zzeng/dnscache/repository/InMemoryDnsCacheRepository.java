@@ -0,0 +1,584 @@
+package com.zzeng.dnscache.repository;
+
+import com.zzeng.dnscache.codec.DnsRecordCodec;
+import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.model.DnsRecord;
+import com.zzeng.dnscache.util.Glob;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the cache in this process, for nodes that do not share it. Enabled with {@code dns.storage.engine=MEMORY}.
+ * <p>
+ * Records live in a {@link ConcurrentHashMap} (lock-free reads, per-bin locking for writes) as immutable slots,
+ * so every operation is a single map step. Expiry is checked on every read; for reclaiming memory, each slot
+ * is also linked into the bucket of a timer wheel for the tick it expires in, and one sweeper thread empties
+ * the buckets as their ticks pass, instead of a scheduled task per record. Slots more than a turn of the wheel
+ * away stay in their bucket until the turn they are due.
+ * <p>
+ * Once the records take more than {@code dns.storage.memory.maximum-memory-bytes}, the wheel is walked from the
+ * current tick on and records are evicted closest to expiry first. Records in use are refreshed ahead of their
+ * expiry, which moves them to the back of the wheel, so this approximates evicting the least recently used.
+ * Manual entries are never evicted.
+ * <p>
+ * Zones are listed from a sorted set of the keys with their labels reversed ({@link ZoneIndex}), which follows
+ * every change to the map.
+ */
+@Repository
+@ConditionalOnProperty(prefix = "dns.storage", name = "engine", havingValue = "MEMORY")
+public class InMemoryDnsCacheRepository implements DnsCacheRepository, DisposableBean {
+
+    static final String MEMORY_METRIC = "dns.storage.memory.used";
+    static final String ENTRIES_METRIC = "dns.storage.memory.entries";
+    static final String EVICTIONS_METRIC = "dns.storage.memory.evictions";
+
+    private static final int WHEEL_SIZE = 1024;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    // Rough per-record overhead: map node, slot, key String, the wheel bucket's set node and the zone index node;
+    // the key's characters are counted twice, as the zone index holds them again, reversed.
+    private static final int SLOT_OVERHEAD_BYTES = 160;
+
+    private final ConcurrentHashMap<String, Slot> slots = new ConcurrentHashMap<>();
+    private final Set<String> manualIndex = ConcurrentHashMap.newKeySet();
+    // The keys in the map as ZoneIndex members, sorted so that a zone is a sub-set.
+    private final ConcurrentSkipListSet<String> zoneIndex = new ConcurrentSkipListSet<>();
+    private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+    private final List<Set<Slot>> wheel;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final DnsRecordCodec codec;
+    private final LongSupplier nanoClock;
+    private final long origin;
+    private final long tickNanos;
+    private final long maximumBytes;
+    private final Counter evictions;
+    private final ScheduledExecutorService sweeper;
+    // Last tick whose bucket has been swept; only touched by sweep().
+    private long sweptTick;
+
+    @Autowired
+    public InMemoryDnsCacheRepository(DnsProperties dnsProperties, DnsRecordCodec codec, MeterRegistry meterRegistry) {
+        this(dnsProperties, codec, meterRegistry, System::nanoTime);
+    }
+
+    InMemoryDnsCacheRepository(DnsProperties dnsProperties, DnsRecordCodec codec, MeterRegistry meterRegistry,
+                               LongSupplier nanoClock) {
+        DnsProperties.Storage.Memory memory = dnsProperties.getStorage().getMemory();
+        this.codec = codec;
+        this.nanoClock = nanoClock;
+        this.origin = nanoClock.getAsLong();
+        this.tickNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), memory.getExpiryTick().toNanos());
+        this.maximumBytes = memory.getMaximumMemoryBytes();
+        this.wheel = new ArrayList<>(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(ConcurrentHashMap.newKeySet());
+        }
+
+        Gauge.builder(MEMORY_METRIC, usedBytes, AtomicLong::get)
+                .description("Estimated memory taken by cached records")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder(ENTRIES_METRIC, slots, Map::size)
+                .description("Cached records, including expired ones not yet swept")
+                .register(meterRegistry);
+        this.evictions = Counter.builder(EVICTIONS_METRIC)
+                .description("Records evicted to stay within the memory bound")
+                .register(meterRegistry);
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dns-memory-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Mono<byte[]> get(String domain) {
+        return Mono.fromSupplier(() -> {
+            Slot slot = live(domain, nanoClock.getAsLong());
+            return slot != null ? slot.value : null;
+        });
+    }
+
+    @Override
+    public Mono<Duration> getExpire(String domain) {
+        return Mono.fromSupplier(() -> {
+            long now = nanoClock.getAsLong();
+            Slot slot = live(domain, now);
+            return slot != null ? remaining(slot, now) : null;
+        });
+    }
+
+    @Override
+    public Mono<Stored> getWithExpire(String domain) {
+        return Mono.fromSupplier(() -> {
+            long now = nanoClock.getAsLong();
+            Slot slot = live(domain, now);
+            return slot != null ? new Stored(slot.value, remaining(slot, now)) : null;
+        });
+    }
+
+    private static Duration remaining(Slot slot, long now) {
+        return slot.expiresAt == 0 ? Duration.ZERO : Duration.ofNanos(slot.expiresAt - now);
+    }
+
+    @Override
+    public Mono<Boolean> set(String domain, byte[] value, long ttlSeconds) {
+        return Mono.fromSupplier(() -> {
+            put(new Slot(domain, value, expiry(ttlSeconds, nanoClock.getAsLong())));
+            return true;
+        });
+    }
+
+    @Override
+    public Mono<Boolean> setManual(String domain, byte[] value, long ttlSeconds) {
+        return Mono.fromSupplier(() -> {
+            manualIndex.add(domain);
+            put(new Slot(domain, value, expiry(ttlSeconds, nanoClock.getAsLong())));
+            return true;
+        });
+    }
+
+    /**
+     * Rewrites the TTL inside the stored record, as the Redis engine's script does, and re-arms its expiry.
+     * A value the codec cannot read keeps its bytes and is treated as a resolved record.
+     */
+    @Override
+    public Mono<Long> updateTtl(String domain, long ttlSeconds, long staleSeconds) {
+        return Mono.fromSupplier(() -> rewriteTtl(domain, ttlSeconds, staleSeconds, nanoClock.getAsLong()) ? ttlSeconds : null);
+    }
+
+    @Override
+    public Mono<Map<String, Long>> updateTtlAll(Collection<String> domains, long ttlSeconds, long staleSeconds) {
+        return Mono.fromSupplier(() -> {
+            long now = nanoClock.getAsLong();
+            Map<String, Long> updated = new HashMap<>();
+            for (String domain : domains) {
+                if (rewriteTtl(domain, ttlSeconds, staleSeconds, now)) {
+                    updated.put(domain, ttlSeconds);
+                }
+            }
+            return updated;
+        });
+    }
+
+    private boolean rewriteTtl(String domain, long ttlSeconds, long staleSeconds, long now) {
+        Slot[] replaced = new Slot[1];
+        Slot updated = slots.computeIfPresent(domain, (key, slot) -> {
+            replaced[0] = slot;
+            if (slot.expired(now)) {
+                return null;
+            }
+            byte[] value = slot.value;
+            boolean manual = false;
+            try {
+                DnsRecord record = codec.decode(key, value);
+                manual = record.isManual();
+                record.setTtl(ttlSeconds);
+                value = codec.encode(record);
+            } catch (IllegalArgumentException e) {
+                // Kept as is, like the script does with values it cannot parse.
+            }
+            return new Slot(key, value, expiry(ttlSeconds + (manual ? 0 : staleSeconds), now));
+        });
+        if (replaced[0] != null) {
+            replaced(replaced[0], updated);
+        }
+        return updated != null;
+    }
+
+    @Override
+    public Mono<Boolean> delete(String domain) {
+        return Mono.fromSupplier(() -> {
+            manualIndex.remove(domain);
+            return remove(domain, nanoClock.getAsLong());
+        });
+    }
+
+    @Override
+    public Mono<Map<String, byte[]>> multiGet(Collection<String> domains) {
+        return Mono.fromSupplier(() -> {
+            long now = nanoClock.getAsLong();
+            Map<String, byte[]> found = new HashMap<>();
+            for (String domain : domains) {
+                Slot slot = live(domain, now);
+                if (slot != null) {
+                    found.put(domain, slot.value);
+                }
+            }
+            return found;
+        });
+    }
+
+    @Override
+    public Mono<Map<String, Stored>> multiGetWithExpire(Collection<String> domains) {
+        return Mono.fromSupplier(() -> {
+            long now = nanoClock.getAsLong();
+            Map<String, Stored> found = new HashMap<>();
+            for (String domain : domains) {
+                Slot slot = live(domain, now);
+                if (slot != null) {
+                    found.put(domain, new Stored(slot.value, remaining(slot, now)));
+                }
+            }
+            return found;
+        });
+    }
+
+    @Override
+    public Mono<Long> setAll(List<Entry> entries) {
+        return Mono.fromSupplier(() -> {
+            long now = nanoClock.getAsLong();
+            for (Entry entry : entries) {
+                put(new Slot(entry.domain(), entry.value(), expiry(entry.ttlSeconds(), now)));
+            }
+            return (long) entries.size();
+        });
+    }
+
+    @Override
+    public Mono<Long> deleteAll(Collection<String> domains) {
+        return Mono.fromSupplier(() -> {
+            long now = nanoClock.getAsLong();
+            long removed = 0;
+            for (String domain : domains) {
+                manualIndex.remove(domain);
+                if (remove(domain, now)) {
+                    removed++;
+                }
+            }
+            return removed;
+        });
+    }
+
+    /**
+     * Removes every record, the manual index and the leases, counting them the way the Redis engine counts keys.
+     */
+    @Override
+    public Flux<Long> clear() {
+        return Flux.defer(() -> {
+            long now = nanoClock.getAsLong();
+            long removed = 0;
+            for (Slot slot : slots.values()) {
+                if (slots.remove(slot.key, slot)) {
+                    replaced(slot, null);
+                    if (!slot.expired(now)) {
+                        removed++;
+                    }
+                }
+            }
+            if (!manualIndex.isEmpty()) {
+                manualIndex.clear();
+                removed++;
+            }
+            removed += leases.size();
+            leases.clear();
+            return Flux.just(removed);
+        });
+    }
+
+    @Override
+    public Mono<Boolean> tryLock(String lockKey, String token, Duration lease) {
+        return Mono.fromSupplier(() -> {
+            long now = nanoClock.getAsLong();
+            Lease acquired = new Lease(token, now + lease.toNanos());
+            return leases.merge(lockKey, acquired, (held, wanted) -> held.expiresAt - now <= 0 ? wanted : held) == acquired;
+        });
+    }
+
+    @Override
+    public Mono<Boolean> unlock(String lockKey, String token) {
+        return Mono.fromSupplier(() -> {
+            long now = nanoClock.getAsLong();
+            boolean[] released = new boolean[1];
+            leases.computeIfPresent(lockKey, (key, held) -> {
+                if (held.expiresAt - now <= 0) {
+                    return null;
+                }
+                released[0] = held.token.equals(token);
+                return released[0] ? null : held;
+            });
+            return released[0];
+        });
+    }
+
+    @Override
+    public Flux<String> scanKeys() {
+        return Flux.defer(() -> {
+            long now = nanoClock.getAsLong();
+            return Flux.fromIterable(slots.values())
+                    .filter(slot -> !slot.expired(now))
+                    .map(slot -> slot.key);
+        });
+    }
+
+    @Override
+    public Flux<String> scanManualDomains() {
+        return Flux.defer(() -> Flux.fromIterable(manualIndex));
+    }
+
+    /**
+     * Goes through the keys in lexical order, the cursor being the last key returned: each step takes the
+     * {@code count} smallest matching keys after it. That costs a pass over the map per step, but unlike a
+     * position in the map it stays valid however the map changes in between.
+     */
+    @Override
+    public Mono<KeyPage> scanKeys(String cursor, String pattern, boolean manualOnly, int count) {
+        return Mono.fromSupplier(() -> {
+            Predicate<String> matches = Glob.compile(pattern);
+            long now = nanoClock.getAsLong();
+            int limit = Math.max(1, count);
+            // The largest key taken so far on top, to make room for smaller ones.
+            PriorityQueue<String> page = new PriorityQueue<>(limit, Comparator.reverseOrder());
+            Iterable<String> candidates = manualOnly
+                    ? manualIndex
+                    : () -> slots.values().stream().filter(slot -> !slot.expired(now)).map(slot -> slot.key).iterator();
+            for (String key : candidates) {
+                if ((cursor != null && key.compareTo(cursor) <= 0) || !matches.test(key)) {
+                    continue;
+                }
+                if (page.size() < limit) {
+                    page.add(key);
+                } else if (key.compareTo(page.peek()) < 0) {
+                    page.poll();
+                    page.add(key);
+                }
+            }
+            List<String> keys = new ArrayList<>(page);
+            keys.sort(null);
+            return new KeyPage(keys, keys.size() < limit ? null : keys.get(keys.size() - 1));
+        });
+    }
+
+    @Override
+    public Mono<Long> removeFromManualIndex(Collection<String> domains) {
+        return Mono.fromSupplier(() -> domains.stream().filter(manualIndex::remove).count());
+    }
+
+    @Override
+    public Flux<String> scanZone(String zone) {
+        return Flux.defer(() -> Flux.fromIterable(zoneIndex.subSet(ZoneIndex.from(zone), ZoneIndex.until(zone)))
+                .map(ZoneIndex::key));
+    }
+
+    /**
+     * The index follows the map here, so only keys no longer in it are removed.
+     */
+    @Override
+    public Mono<Long> removeFromZoneIndex(Collection<String> domains) {
+        return Mono.fromSupplier(() -> domains.stream().filter(this::unindex).count());
+    }
+
+    /**
+     * @return the estimated memory taken by the stored records, in bytes
+     */
+    public long usedBytes() {
+        return usedBytes.get();
+    }
+
+    @Override
+    public void destroy() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Reclaims the records that expired in the ticks passed since the last sweep, and drops wheel links to
+     * slots that have since been replaced.
+     */
+    synchronized void sweep() {
+        long now = nanoClock.getAsLong();
+        long current = tick(now);
+        for (long tick = Math.max(sweptTick + 1, current - WHEEL_MASK); tick <= current; tick++) {
+            Iterator<Slot> bucket = wheel.get((int) (tick & WHEEL_MASK)).iterator();
+            while (bucket.hasNext()) {
+                Slot slot = bucket.next();
+                if (slot.expired(now)) {
+                    bucket.remove();
+                    if (slots.remove(slot.key, slot)) {
+                        replaced(slot, null);
+                    }
+                } else if (slots.get(slot.key) != slot) {
+                    bucket.remove();
+                }
+            }
+        }
+        sweptTick = current;
+    }
+
+    private void put(Slot slot) {
+        replaced(slots.put(slot.key, slot), slot);
+    }
+
+    private boolean remove(String domain, long now) {
+        Slot slot = slots.remove(domain);
+        if (slot == null) {
+            return false;
+        }
+        replaced(slot, null);
+        return !slot.expired(now);
+    }
+
+    /**
+     * Reads a slot, removing it if it has expired.
+     */
+    private Slot live(String domain, long now) {
+        Slot slot = slots.get(domain);
+        if (slot != null && slot.expired(now)) {
+            if (slots.remove(domain, slot)) {
+                replaced(slot, null);
+            }
+            return null;
+        }
+        return slot;
+    }
+
+    /**
+     * Accounts for a map change: {@code previous} (if any) left the map and {@code current} (if any) entered it.
+     * Under concurrent writes to one key a slot can be linked into the wheel after it was already replaced;
+     * the sweep drops such links when it reaches their bucket.
+     */
+    private void replaced(Slot previous, Slot current) {
+        long delta = 0;
+        if (previous != null) {
+            delta -= previous.bytes;
+            if (previous.expiresAt != 0) {
+                wheel.get(bucket(previous.expiresAt)).remove(previous);
+            }
+        }
+        if (current != null) {
+            delta += current.bytes;
+            if (current.expiresAt != 0) {
+                wheel.get(bucket(current.expiresAt)).add(current);
+            }
+            zoneIndex.add(ZoneIndex.member(current.key));
+        } else if (previous != null) {
+            unindex(previous.key);
+        }
+        if (usedBytes.addAndGet(delta) > maximumBytes && delta > 0) {
+            evict();
+        }
+    }
+
+    /**
+     * Evicts records closest to expiry until the memory bound is met. One thread evicts at a time;
+     * writers that find the lock taken carry on, since the thread holding it is already bringing the total down.
+     */
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            long start = tick(nanoClock.getAsLong());
+            for (int i = 0; i < WHEEL_SIZE && usedBytes.get() > maximumBytes; i++) {
+                Iterator<Slot> bucket = wheel.get((int) ((start + i) & WHEEL_MASK)).iterator();
+                while (bucket.hasNext() && usedBytes.get() > maximumBytes) {
+                    Slot slot = bucket.next();
+                    if (manualIndex.contains(slot.key)) {
+                        continue;
+                    }
+                    bucket.remove();
+                    if (slots.remove(slot.key, slot)) {
+                        unindex(slot.key);
+                        usedBytes.addAndGet(-slot.bytes);
+                        evictions.increment();
+                    }
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Takes a key out of the zone index, unless it is back in the map: a put racing with the removal has either
+     * indexed the key again after this, or stored its slot before the check.
+     *
+     * @return whether the key left the index
+     */
+    private boolean unindex(String key) {
+        String member = ZoneIndex.member(key);
+        if (!zoneIndex.remove(member)) {
+            return false;
+        }
+        if (slots.containsKey(key)) {
+            zoneIndex.add(member);
+            return false;
+        }
+        return true;
+    }
+
+    private long tick(long nanos) {
+        return (nanos - origin) / tickNanos;
+    }
+
+    /**
+     * The bucket swept in the tick after the one a slot expires in, so that it is due when swept.
+     */
+    private int bucket(long expiresAt) {
+        return (int) ((tick(expiresAt) + 1) & WHEEL_MASK);
+    }
+
+    /**
+     * @return the expiry as a {@link System#nanoTime()} value, or 0 for a record that does not expire
+     */
+    private static long expiry(long ttlSeconds, long now) {
+        if (ttlSeconds <= 0) {
+            return 0;
+        }
+        long expiresAt = now + TimeUnit.SECONDS.toNanos(ttlSeconds);
+        return expiresAt == 0 ? 1 : expiresAt;
+    }
+
+    /**
+     * A stored record. Slots are never modified, and compared by identity: an update replaces the slot.
+     */
+    private static final class Slot {
+
+        final String key;
+        final byte[] value;
+        // System.nanoTime() at which the record expires, 0 if it does not.
+        final long expiresAt;
+        final int bytes;
+
+        Slot(String key, byte[] value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.bytes = SLOT_OVERHEAD_BYTES + 2 * key.length() + value.length;
+        }
+
+        boolean expired(long now) {
+            return expiresAt != 0 && expiresAt - now <= 0;
+        }
+    }
+
+    private record Lease(String token, long expiresAt) {}
+}
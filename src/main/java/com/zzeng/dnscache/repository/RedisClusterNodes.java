@@ -0,0 +1,163 @@
+package com.zzeng.dnscache.repository;
+
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.ValueScanCursor;
+import io.lettuce.core.api.reactive.RedisReactiveCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import io.lettuce.core.codec.StringCodec;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The upstream nodes of a Redis Cluster, for what cannot be routed by key: SCAN only walks the keys of the node
+ * it runs on, so listing and clearing the cache go through every node. Also runs single SSCAN steps, which the
+ * templates do not expose. Uses a connection of its own, opened on first use and following the topology the client
+ * keeps up to date.
+ */
+final class RedisClusterNodes implements AutoCloseable {
+
+    private final Mono<StatefulRedisClusterConnection<String, String>> connection;
+    private volatile StatefulRedisClusterConnection<String, String> opened;
+
+    RedisClusterNodes(LettuceConnectionFactory connectionFactory) {
+        this.connection = Mono.defer(() -> Mono.fromFuture(
+                        ((RedisClusterClient) connectionFactory.getRequiredNativeClient()).connectAsync(StringCodec.UTF8)))
+                .doOnNext(connected -> opened = connected)
+                .cache();
+    }
+
+    /**
+     * Whether the factory connects to a Redis Cluster rather than a single Redis (or one with replicas).
+     */
+    static boolean isCluster(Object connectionFactory) {
+        return connectionFactory instanceof LettuceConnectionFactory lettuce && lettuce.isClusterAware();
+    }
+
+    /**
+     * Scans every upstream node at once, emitting the keys matching the pattern one SCAN page at a time.
+     */
+    Flux<List<String>> scan(String pattern, long count) {
+        ScanArgs args = ScanArgs.Builder.matches(pattern).limit(count);
+        return connection.flatMapMany(cluster -> Flux.fromIterable(cluster.getPartitions())
+                .filter(node -> node.is(RedisClusterNode.NodeFlag.UPSTREAM))
+                .flatMap(node -> Mono.fromFuture(cluster.getConnectionAsync(node.getNodeId()))
+                        .flatMapMany(nodeConnection -> scanNode(nodeConnection.reactive(), args))));
+    }
+
+    /**
+     * One step of a scan of the whole cluster, which goes through the primaries one after the other, in the order
+     * of the first slot each serves. The cursor is that slot and the node's own SCAN cursor, {@code slot:cursor};
+     * naming the node by a slot keeps the cursor valid when a replica takes over from its primary.
+     */
+    Mono<DnsCacheRepository.KeyPage> scanStep(String cursor, String pattern, long count) {
+        int slot = -1;
+        String nodeCursor = ScanCursor.INITIAL.getCursor();
+        if (cursor != null) {
+            int colon = cursor.indexOf(':');
+            try {
+                slot = Integer.parseInt(cursor.substring(0, Math.max(0, colon)));
+            } catch (NumberFormatException e) {
+                slot = -1;
+            }
+            nodeCursor = cursor.substring(colon + 1);
+            if (slot < 0 || slot >= SlotHash.SLOT_COUNT || !nodeCursor.matches("[0-9]+")) {
+                return Mono.error(new IllegalArgumentException("Not a cluster scan cursor: " + cursor));
+            }
+        }
+        int start = slot;
+        ScanCursor resume = ScanCursor.of(nodeCursor);
+        ScanArgs args = ScanArgs.Builder.matches(pattern).limit(count);
+        return connection.flatMap(cluster -> {
+            int from = start >= 0 ? start : nextFirstSlot(cluster, -1);
+            RedisClusterNode node = from >= 0 ? cluster.getPartitions().getPartitionBySlot(from) : null;
+            if (node == null) {
+                return Mono.error(new IllegalStateException("No node serves slot " + from));
+            }
+            return Mono.fromFuture(cluster.getConnectionAsync(node.getNodeId()))
+                    .flatMap(nodeConnection -> nodeConnection.reactive().scan(resume, args))
+                    .map(page -> {
+                        if (!page.isFinished()) {
+                            return new DnsCacheRepository.KeyPage(page.getKeys(), from + ":" + page.getCursor());
+                        }
+                        int next = nextFirstSlot(cluster, firstSlot(node));
+                        return new DnsCacheRepository.KeyPage(page.getKeys(), next < 0 ? null : next + ":0");
+                    });
+        });
+    }
+
+    /**
+     * One SSCAN step over the members of a set, on the node serving its key.
+     */
+    Mono<ValueScanCursor<String>> sscan(String key, ScanCursor cursor, ScanArgs args) {
+        return connection.flatMap(cluster -> cluster.reactive().sscan(key, cursor, args));
+    }
+
+    /**
+     * The smallest first slot of a primary above the given one, or -1 if none is.
+     */
+    private static int nextFirstSlot(StatefulRedisClusterConnection<String, String> cluster, int after) {
+        int next = -1;
+        for (RedisClusterNode node : cluster.getPartitions()) {
+            int first = node.is(RedisClusterNode.NodeFlag.UPSTREAM) ? firstSlot(node) : -1;
+            if (first > after && (next < 0 || first < next)) {
+                next = first;
+            }
+        }
+        return next;
+    }
+
+    private static int firstSlot(RedisClusterNode node) {
+        for (int slot = 0; slot < SlotHash.SLOT_COUNT; slot++) {
+            if (node.hasSlot(slot)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private static Flux<List<String>> scanNode(RedisReactiveCommands<String, String> node, ScanArgs args) {
+        return node.scan(ScanCursor.INITIAL, args)
+                .expand(page -> page.isFinished() ? Mono.empty() : node.scan(page, args))
+                .map(KeyScanCursor::getKeys)
+                .filter(keys -> !keys.isEmpty());
+    }
+
+    /**
+     * Splits the items into groups whose keys all hash to the same slot, in chunks of at most {@code chunkSize},
+     * as multi-key commands and scripts need them. Keys with a hash tag ({@code {...}}) hash by the tag only, so a
+     * key prefix with one keeps whole batches together.
+     */
+    static <T> List<List<T>> chunkBySlot(List<T> items, Function<T, String> key, int chunkSize) {
+        Map<Integer, List<T>> bySlot = new LinkedHashMap<>();
+        for (T item : items) {
+            bySlot.computeIfAbsent(SlotHash.getSlot(key.apply(item)), slot -> new ArrayList<>()).add(item);
+        }
+        List<List<T>> chunks = new ArrayList<>();
+        for (List<T> slotItems : bySlot.values()) {
+            for (int from = 0; from < slotItems.size(); from += chunkSize) {
+                chunks.add(slotItems.subList(from, Math.min(slotItems.size(), from + chunkSize)));
+            }
+        }
+        return chunks;
+    }
+
+    @Override
+    public void close() {
+        StatefulRedisClusterConnection<String, String> cluster = opened;
+        if (cluster != null) {
+            cluster.close();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.zzeng.dnscache.repository;
+
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.ValueScanCursor;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.StringCodec;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * A single Redis (the primary, behind Sentinel), for the steps of SCAN and SSCAN: the templates only walk a cursor
+ * to its end, while a page of the cache listing resumes from the one it was handed. Uses a connection of its own,
+ * opened on first use.
+ */
+final class RedisNode implements AutoCloseable {
+
+    private final Mono<StatefulRedisConnection<String, String>> connection;
+    private volatile StatefulRedisConnection<String, String> opened;
+
+    RedisNode(LettuceConnectionFactory connectionFactory) {
+        // The client only connects asynchronously to a URI given along, so this waits off the event loop instead.
+        this.connection = Mono.fromCallable(() -> ((RedisClient) connectionFactory.getRequiredNativeClient())
+                        .connect(StringCodec.UTF8))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnNext(connected -> opened = connected)
+                .cache();
+    }
+
+    /**
+     * One SCAN step from the given cursor.
+     */
+    Mono<KeyScanCursor<String>> scan(ScanCursor cursor, ScanArgs args) {
+        return connection.flatMap(node -> node.reactive().scan(cursor, args));
+    }
+
+    /**
+     * One SSCAN step over the members of a set from the given cursor.
+     */
+    Mono<ValueScanCursor<String>> sscan(String key, ScanCursor cursor, ScanArgs args) {
+        return connection.flatMap(node -> node.reactive().sscan(key, cursor, args));
+    }
+
+    @Override
+    public void close() {
+        StatefulRedisConnection<String, String> node = opened;
+        if (node != null) {
+            node.close();
+        }
+    }
+}
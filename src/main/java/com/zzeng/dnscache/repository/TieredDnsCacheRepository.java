@@ -0,0 +1,260 @@
+package com.zzeng.dnscache.repository;
+
+import com.zzeng.dnscache.cache.LocalCache;
+import com.zzeng.dnscache.cache.OffHeapRecordStore;
+import com.zzeng.dnscache.config.DnsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Puts an {@link OffHeapRecordStore} in front of the Redis engine, for nodes that serve more names than the
+ * near-cache can hold on the heap. Enabled with {@code dns.storage.off-heap.enabled=true}.
+ * <p>
+ * Reads are answered from the off-heap tier when they can be; a record read from Redis is kept there together
+ * with its remaining TTL, fetched alongside it. Writes go to Redis first and then to the tier, and everything
+ * else that changes a record (deletes, TTL updates, clearing) drops it from the tier, so it is read back from
+ * Redis next time. Changes made by other nodes reach it through
+ * the {@link com.zzeng.dnscache.cache.CacheInvalidationBus}, as a {@link LocalCache}.
+ */
+@Repository
+@Primary
+@ConditionalOnExpression("${dns.storage.off-heap.enabled:false} and '${dns.storage.engine:REDIS}'.equalsIgnoreCase('REDIS')")
+public class TieredDnsCacheRepository implements DnsCacheRepository, LocalCache {
+
+    static final String LOOKUPS_METRIC = "dns.storage.off-heap.lookups";
+    static final String ENTRIES_METRIC = "dns.storage.off-heap.entries";
+    static final String CAPACITY_METRIC = "dns.storage.off-heap.capacity";
+    static final String EVICTIONS_METRIC = "dns.storage.off-heap.evictions";
+
+    private final DnsCacheRepository redis;
+    private final OffHeapRecordStore store;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public TieredDnsCacheRepository(DnsCacheRepositoryImpl redis, DnsProperties dnsProperties, MeterRegistry meterRegistry) {
+        this(redis, new OffHeapRecordStore(dnsProperties.getStorage().getOffHeap().getCapacityBytes(),
+                dnsProperties.getStorage().getOffHeap().getSlotBytes()), meterRegistry);
+    }
+
+    TieredDnsCacheRepository(DnsCacheRepository redis, OffHeapRecordStore store, MeterRegistry meterRegistry) {
+        this.redis = redis;
+        this.store = store;
+        this.hits = Counter.builder(LOOKUPS_METRIC)
+                .description("Reads of the off-heap tier")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder(LOOKUPS_METRIC)
+                .description("Reads of the off-heap tier")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder(ENTRIES_METRIC, store, OffHeapRecordStore::size)
+                .description("Occupied slots of the off-heap tier")
+                .register(meterRegistry);
+        Gauge.builder(CAPACITY_METRIC, store, OffHeapRecordStore::capacityBytes)
+                .description("Direct memory taken by the off-heap tier")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        FunctionCounter.builder(EVICTIONS_METRIC, store, OffHeapRecordStore::evictions)
+                .description("Unexpired records overwritten in the off-heap tier")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<byte[]> get(String domain) {
+        return Mono.defer(() -> {
+            byte[] value = store.get(domain);
+            if (value != null) {
+                hits.increment();
+                return Mono.just(value);
+            }
+            misses.increment();
+            return fill(domain).map(Stored::value);
+        });
+    }
+
+    @Override
+    public Mono<Stored> getWithExpire(String domain) {
+        return Mono.defer(() -> {
+            byte[] value = store.get(domain);
+            Duration remaining = value != null ? store.remaining(domain) : null;
+            if (remaining != null) {
+                hits.increment();
+                return Mono.just(new Stored(value, remaining));
+            }
+            misses.increment();
+            return fill(domain);
+        });
+    }
+
+    /** Reads a record missing here from Redis with its expiry, which is needed to keep it here. */
+    private Mono<Stored> fill(String domain) {
+        return redis.getWithExpire(domain)
+                .doOnNext(found -> store.put(domain, found.value(), found.expire()));
+    }
+
+    @Override
+    public Mono<Duration> getExpire(String domain) {
+        return Mono.defer(() -> {
+            Duration remaining = store.remaining(domain);
+            return remaining != null ? Mono.just(remaining) : redis.getExpire(domain);
+        });
+    }
+
+    @Override
+    public Mono<Boolean> set(String domain, byte[] value, long ttlSeconds) {
+        return redis.set(domain, value, ttlSeconds)
+                .doOnSuccess(ok -> store.put(domain, value, Duration.ofSeconds(ttlSeconds)));
+    }
+
+    @Override
+    public Mono<Boolean> setManual(String domain, byte[] value, long ttlSeconds) {
+        return redis.setManual(domain, value, ttlSeconds)
+                .doOnSuccess(ok -> store.put(domain, value, Duration.ofSeconds(ttlSeconds)));
+    }
+
+    @Override
+    public Mono<Long> updateTtl(String domain, long ttlSeconds, long staleSeconds) {
+        return redis.updateTtl(domain, ttlSeconds, staleSeconds)
+                .doFinally(signal -> store.remove(domain));
+    }
+
+    @Override
+    public Mono<Map<String, Long>> updateTtlAll(Collection<String> domains, long ttlSeconds, long staleSeconds) {
+        return redis.updateTtlAll(domains, ttlSeconds, staleSeconds)
+                .doFinally(signal -> domains.forEach(store::remove));
+    }
+
+    @Override
+    public Mono<Boolean> delete(String domain) {
+        return Mono.defer(() -> {
+            store.remove(domain);
+            return redis.delete(domain);
+        });
+    }
+
+    @Override
+    public Mono<Map<String, byte[]>> multiGet(Collection<String> domains) {
+        return multiGetWithExpire(domains).map(found -> {
+            Map<String, byte[]> values = new HashMap<>(found.size());
+            found.forEach((domain, stored) -> values.put(domain, stored.value()));
+            return values;
+        });
+    }
+
+    @Override
+    public Mono<Map<String, Stored>> multiGetWithExpire(Collection<String> domains) {
+        return Mono.defer(() -> {
+            Map<String, Stored> found = new HashMap<>();
+            List<String> missing = new ArrayList<>();
+            for (String domain : domains) {
+                byte[] value = store.get(domain);
+                Duration remaining = value != null ? store.remaining(domain) : null;
+                if (remaining != null) {
+                    found.put(domain, new Stored(value, remaining));
+                } else {
+                    missing.add(domain);
+                }
+            }
+            hits.increment(found.size());
+            misses.increment(missing.size());
+            if (missing.isEmpty()) {
+                return Mono.just(found);
+            }
+            // Values and expiries of the misses come back together, one script per slot.
+            return redis.multiGetWithExpire(missing).map(fromRedis -> {
+                fromRedis.forEach((domain, stored) -> store.put(domain, stored.value(), stored.expire()));
+                found.putAll(fromRedis);
+                return found;
+            });
+        });
+    }
+
+    @Override
+    public Mono<Long> setAll(List<Entry> entries) {
+        return redis.setAll(entries)
+                .doOnSuccess(count -> entries.forEach(entry ->
+                        store.put(entry.domain(), entry.value(), Duration.ofSeconds(entry.ttlSeconds()))));
+    }
+
+    @Override
+    public Mono<Long> deleteAll(Collection<String> domains) {
+        return Mono.defer(() -> {
+            domains.forEach(store::remove);
+            return redis.deleteAll(domains);
+        });
+    }
+
+    @Override
+    public Flux<Long> clear() {
+        return Flux.defer(() -> {
+            store.clear();
+            return redis.clear().doOnComplete(store::clear);
+        });
+    }
+
+    @Override
+    public Mono<Boolean> tryLock(String lockKey, String token, Duration lease) {
+        return redis.tryLock(lockKey, token, lease);
+    }
+
+    @Override
+    public Mono<Boolean> unlock(String lockKey, String token) {
+        return redis.unlock(lockKey, token);
+    }
+
+    @Override
+    public Flux<String> scanKeys() {
+        return redis.scanKeys();
+    }
+
+    @Override
+    public Flux<String> scanManualDomains() {
+        return redis.scanManualDomains();
+    }
+
+    @Override
+    public Mono<KeyPage> scanKeys(String cursor, String pattern, boolean manualOnly, int count) {
+        return redis.scanKeys(cursor, pattern, manualOnly, count);
+    }
+
+    @Override
+    public Mono<Long> removeFromManualIndex(Collection<String> domains) {
+        return redis.removeFromManualIndex(domains);
+    }
+
+    @Override
+    public Flux<String> scanZone(String zone) {
+        return redis.scanZone(zone);
+    }
+
+    @Override
+    public Mono<Long> removeFromZoneIndex(Collection<String> domains) {
+        return redis.removeFromZoneIndex(domains);
+    }
+
+    @Override
+    public void invalidateAll(Collection<String> keys) {
+        keys.forEach(store::remove);
+    }
+
+    @Override
+    public void invalidateAll() {
+        store.clear();
+    }
+}
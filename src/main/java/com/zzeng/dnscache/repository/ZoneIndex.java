@@ -0,0 +1,60 @@
+package com.zzeng.dnscache.repository;
+
+/**
+ * The form cache keys take in the zone index: the labels of the name in reverse, each followed by a dot, then
+ * the type suffix if any ({@code www.example.com/AAAA} becomes {@code com.example.www./AAAA}). The names of a
+ * zone then share a prefix ({@code com.example.}) and sort next to each other, so a zone is one range of the
+ * index, read in time proportional to its size.
+ */
+final class ZoneIndex {
+
+    private ZoneIndex() {}
+
+    static String member(String key) {
+        int slash = key.lastIndexOf('/');
+        String domain = slash < 0 ? key : key.substring(0, slash);
+        StringBuilder member = new StringBuilder(key.length() + 1);
+        int end = domain.length();
+        for (int dot = domain.lastIndexOf('.', end - 1); end > 0; dot = domain.lastIndexOf('.', end - 1)) {
+            member.append(domain, dot + 1, end).append('.');
+            end = dot;
+        }
+        if (slash >= 0) {
+            member.append(key, slash, key.length());
+        }
+        return member.toString();
+    }
+
+    static String key(String member) {
+        int slash = member.indexOf('/');
+        String labels = slash < 0 ? member : member.substring(0, slash);
+        StringBuilder key = new StringBuilder(member.length());
+        int end = labels.length() - 1;
+        for (int dot = labels.lastIndexOf('.', end - 1); end > 0; dot = labels.lastIndexOf('.', end - 1)) {
+            if (!key.isEmpty()) {
+                key.append('.');
+            }
+            key.append(labels, dot + 1, end);
+            end = dot;
+        }
+        if (slash >= 0) {
+            key.append(member, slash, member.length());
+        }
+        return key.toString();
+    }
+
+    /**
+     * The first member of the zone's range: the zone itself, without type.
+     */
+    static String from(String zone) {
+        return member(zone);
+    }
+
+    /**
+     * The member just past the zone's range: its prefix with the last dot raised to the next character.
+     */
+    static String until(String zone) {
+        String from = from(zone);
+        return from.substring(0, from.length() - 1) + (char) ('.' + 1);
+    }
+}
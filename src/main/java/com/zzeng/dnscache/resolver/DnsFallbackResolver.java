@@ -0,0 +1,197 @@
+package com.zzeng.dnscache.resolver;
+
+import com.zzeng.dnscache.model.DnsRecord;
+import com.zzeng.dnscache.model.DnsRecordValue;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.xbill.DNS.AAAARecord;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.CNAMERecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+import reactor.core.publisher.Mono;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Resolves a domain against a specific upstream DNS server using the non-blocking {@link UpstreamDnsClient}.
+ * Each query is timed per server and outcome; queries cancelled before they finish (hedges that lost) are not.
+ */
+@Component
+public class DnsFallbackResolver {
+
+    // Longest CNAME chain followed within one answer.
+    static final int MAX_CNAME_HOPS = 8;
+    // Query latency, tagged with the server and the outcome: answer, negative, timeout or failure.
+    static final String QUERIES_METRIC = "dns.upstream.queries";
+
+    private final UpstreamDnsClient upstreamDnsClient;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DnsFallbackResolver(UpstreamDnsClient upstreamDnsClient, MeterRegistry meterRegistry) {
+        this.upstreamDnsClient = upstreamDnsClient;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Asks the given DNS server (e.g., "8.8.8.8") for the records of one type of a domain.
+     * If the domain is an alias, the answer is the chain the server returned: one CNAME record per hop,
+     * followed by the RRset of the requested type at the end of the chain.
+     *
+     * @param domain the domain to resolve
+     * @param type the record type, e.g. "A", "AAAA", "MX"
+     * @param dnsServer the DNS server to query, optionally with a port ("127.0.0.1:5353")
+     * @return a Mono emitting the CNAME hops (if any) and the final RRset, each with the TTLs the server sent;
+     *         a {@link NegativeAnswerException} if the server answered without such records (carrying the SOA-derived
+     *         negative TTL, if any),
+     *         or an {@link UnknownHostException} if the server failed
+     */
+    public Mono<List<DnsRecord>> resolve(String domain, String type, String dnsServer) {
+        Name name;
+        try {
+            name = Name.fromString(domain, Name.root);
+        } catch (TextParseException e) {
+            return Mono.error(new UnknownHostException("Invalid domain name " + domain));
+        }
+        int typeCode = Type.value(type);
+        if (typeCode < 0) {
+            return Mono.error(new UnknownHostException("Unknown record type " + type));
+        }
+        Message query = Message.newQuery(Record.newRecord(name, typeCode, DClass.IN));
+
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return query(query, name, typeCode, domain, type, dnsServer)
+                    .doOnSuccess(chain -> timer(dnsServer, "answer").record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .doOnError(err -> timer(dnsServer, outcome(err)).record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        }).onErrorMap(err -> !(err instanceof UnknownHostException),
+                err -> new UnknownHostException("Failed to resolve domain " + domain + " with server " + dnsServer));
+    }
+
+    private Mono<List<DnsRecord>> query(Message query, Name name, int typeCode, String domain, String type, String dnsServer) {
+        return upstreamDnsClient.query(dnsServer, query)
+                .<List<DnsRecord>>handle((response, sink) -> {
+                    int rcode = response.getRcode();
+                    if (rcode == Rcode.NOERROR) {
+                        List<DnsRecord> chain = readChain(name, typeCode, response.getSection(Section.ANSWER));
+                        if (chain != null) {
+                            sink.next(chain);
+                            return;
+                        }
+                    }
+                    if (rcode == Rcode.NOERROR || rcode == Rcode.NXDOMAIN) {
+                        sink.error(new NegativeAnswerException("No " + type + " record found for " + domain + " using " + dnsServer,
+                                rcode, negativeTtl(response.getSection(Section.AUTHORITY))));
+                    } else {
+                        sink.error(new UnknownHostException("Server " + dnsServer + " answered " + Rcode.string(rcode) + " for " + domain));
+                    }
+                });
+    }
+
+    private static String outcome(Throwable err) {
+        if (err instanceof NegativeAnswerException) {
+            return "negative";
+        }
+        return err instanceof TimeoutException ? "timeout" : "failure";
+    }
+
+    private Timer timer(String server, String outcome) {
+        return timers.computeIfAbsent(server + ' ' + outcome, key -> Timer.builder(QUERIES_METRIC)
+                .description("Queries to one upstream DNS server")
+                .tag("server", server)
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+    }
+
+    /**
+     * Follows the answer section from the question name through any CNAMEs to the requested RRset.
+     *
+     * @return the hops and the RRset, or null if the chain does not end in a record of the requested type
+     */
+    static List<DnsRecord> readChain(Name qname, int type, List<Record> answers) {
+        List<DnsRecord> chain = new ArrayList<>();
+        Name current = qname;
+        for (int hop = 0; hop <= MAX_CNAME_HOPS; hop++) {
+            List<DnsRecordValue> values = new ArrayList<>();
+            long minTtl = Long.MAX_VALUE;
+            Name alias = null;
+            long aliasTtl = 0;
+            for (Record record : answers) {
+                if (!record.getName().equals(current)) {
+                    continue;
+                }
+                if (record.getType() == type) {
+                    values.add(new DnsRecordValue(presentation(record), record.getTTL()));
+                    minTtl = Math.min(minTtl, record.getTTL());
+                } else if (record instanceof CNAMERecord cname && alias == null) {
+                    alias = cname.getTarget();
+                    aliasTtl = cname.getTTL();
+                }
+            }
+            if (!values.isEmpty()) {
+                chain.add(new DnsRecord(domainName(current), Type.string(type), values, minTtl, false));
+                return chain;
+            }
+            if (alias == null) {
+                return null;
+            }
+            chain.add(new DnsRecord(domainName(current), DnsRecord.TYPE_CNAME,
+                    List.of(new DnsRecordValue(domainName(alias), aliasTtl)), aliasTtl, false));
+            current = alias;
+        }
+        return null;
+    }
+
+    /**
+     * The TTL of a negative answer (RFC 2308 section 5): the lower of the SOA record's own TTL and its minimum field.
+     *
+     * @return the TTL in seconds, or -1 if the authority section holds no SOA record
+     */
+    static long negativeTtl(List<Record> authority) {
+        for (Record record : authority) {
+            if (record instanceof SOARecord soa) {
+                return Math.min(soa.getTTL(), soa.getMinimum());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Record data in presentation form. Addresses use {@link java.net.InetAddress#getHostAddress()} like the rest
+     * of the cache, and alias targets are plain domain names so they can be looked up as cache keys.
+     */
+    private static String presentation(Record record) {
+        if (record instanceof ARecord a) {
+            return a.getAddress().getHostAddress();
+        }
+        if (record instanceof AAAARecord aaaa) {
+            return aaaa.getAddress().getHostAddress();
+        }
+        if (record instanceof CNAMERecord cname) {
+            return domainName(cname.getTarget());
+        }
+        return record.rdataToString();
+    }
+
+    static String domainName(Name name) {
+        return name.toString(true).toLowerCase(Locale.ROOT);
+    }
+}
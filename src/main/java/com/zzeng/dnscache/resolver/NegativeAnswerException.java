@@ -0,0 +1,39 @@
+package com.zzeng.dnscache.resolver;
+
+import java.net.UnknownHostException;
+
+/**
+ * Signals that an upstream server answered, but the answer holds no usable record
+ * (NXDOMAIN, or NOERROR without a matching record). Unlike a plain {@link UnknownHostException},
+ * this is a valid response: the server is healthy and asking another one will not help.
+ */
+public class NegativeAnswerException extends UnknownHostException {
+
+    private final int rcode;
+    private final long negativeTtl;
+
+    public NegativeAnswerException(String message, int rcode) {
+        this(message, rcode, -1);
+    }
+
+    public NegativeAnswerException(String message, int rcode, long negativeTtl) {
+        super(message);
+        this.rcode = rcode;
+        this.negativeTtl = negativeTtl;
+    }
+
+    /**
+     * @return the DNS response code of the answer (see {@link org.xbill.DNS.Rcode})
+     */
+    public int getRcode() {
+        return rcode;
+    }
+
+    /**
+     * @return how long the answer may be cached, in seconds, taken from the SOA record in the authority section
+     *         (RFC 2308); -1 if the server sent none
+     */
+    public long getNegativeTtl() {
+        return negativeTtl;
+    }
+}
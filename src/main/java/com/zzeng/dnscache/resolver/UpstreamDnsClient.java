@@ -0,0 +1,255 @@
+package com.zzeng.dnscache.resolver;
+
+import com.zzeng.dnscache.config.DnsProperties;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.OPTRecord;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.Connection;
+import reactor.netty.tcp.TcpClient;
+import reactor.netty.udp.UdpClient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Non-blocking DNS client for the upstream (fallback) servers, built on Reactor Netty.
+ * Queries to a server are multiplexed over a few long-lived UDP sockets and matched to
+ * their responses by transaction ID. Truncated UDP answers are retried over TCP.
+ * No thread is held while a query is outstanding.
+ */
+@Component
+public class UpstreamDnsClient implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamDnsClient.class);
+
+    private static final int DNS_PORT = 53;
+    private static final int MAX_TCP_MESSAGE = 65535;
+
+    private final Duration queryTimeout;
+    private final int socketsPerServer;
+    private final int ednsPayloadSize;
+    private final Map<InetSocketAddress, ServerSockets> sockets = new ConcurrentHashMap<>();
+
+    @Autowired
+    public UpstreamDnsClient(DnsProperties dnsProperties) {
+        DnsProperties.Upstream upstream = dnsProperties.getUpstream();
+        this.queryTimeout = upstream.getQueryTimeout();
+        this.socketsPerServer = Math.max(1, upstream.getSocketsPerServer());
+        this.ednsPayloadSize = upstream.getEdnsPayloadSize();
+    }
+
+    /**
+     * Sends a query to the given server and returns its response.
+     *
+     * @param server the server as "host" or "host:port" (e.g., "8.8.8.8", "127.0.0.1:5353")
+     * @param query the query message; its ID is replaced with one allocated for the socket
+     * @return a Mono emitting the response, or an error on timeout or I/O failure
+     */
+    public Mono<Message> query(String server, Message query) {
+        return Mono.defer(() -> query(parseServer(server), query));
+    }
+
+    public Mono<Message> query(InetSocketAddress server, Message query) {
+        Message udpQuery = query.clone();
+        if (ednsPayloadSize > 512 && udpQuery.getOPT() == null) {
+            udpQuery.addRecord(new OPTRecord(ednsPayloadSize, 0, 0), Section.ADDITIONAL);
+        }
+        return sockets.computeIfAbsent(server, ServerSockets::new)
+                .next()
+                .exchange(udpQuery)
+                .flatMap(response -> response.getHeader().getFlag(Flags.TC)
+                        ? exchangeTcp(server, query)
+                        : Mono.just(response));
+    }
+
+    private Mono<Message> exchangeTcp(InetSocketAddress server, Message query) {
+        byte[] wire = query.toWire();
+        ByteBuffer framed = ByteBuffer.allocate(wire.length + 2)
+                .putShort((short) wire.length)
+                .put(wire);
+
+        return TcpClient.create()
+                .remoteAddress(() -> server)
+                .doOnConnected(conn -> conn.addHandlerLast(new LengthFieldBasedFrameDecoder(MAX_TCP_MESSAGE + 2, 0, 2, 0, 2)))
+                .connect()
+                .flatMap(conn -> conn.outbound().sendByteArray(Mono.just(framed.array())).then()
+                        .then(conn.inbound().receive().asByteArray().next())
+                        .doFinally(signal -> conn.dispose()))
+                .<Message>handle((bytes, sink) -> {
+                    try {
+                        Message response = new Message(bytes);
+                        if (response.getHeader().getID() == query.getHeader().getID()) {
+                            sink.next(response);
+                        } else {
+                            sink.error(new IOException("Mismatched TCP response ID from " + server));
+                        }
+                    } catch (IOException e) {
+                        sink.error(e);
+                    }
+                })
+                .timeout(queryTimeout);
+    }
+
+    static InetSocketAddress parseServer(String server) {
+        String host = server;
+        int port = DNS_PORT;
+        int colon = server.lastIndexOf(':');
+        if (server.startsWith("[")) {
+            int close = server.indexOf(']');
+            host = server.substring(1, close);
+            if (close + 1 < server.length() && server.charAt(close + 1) == ':') {
+                port = Integer.parseInt(server.substring(close + 2));
+            }
+        } else if (colon > 0 && server.indexOf(':') == colon) {
+            host = server.substring(0, colon);
+            port = Integer.parseInt(server.substring(colon + 1));
+        }
+        return new InetSocketAddress(host, port);
+    }
+
+    @Override
+    public void destroy() {
+        sockets.values().forEach(ServerSockets::dispose);
+        sockets.clear();
+    }
+
+    /**
+     * The long-lived sockets kept open to one server, used round-robin.
+     */
+    private final class ServerSockets {
+
+        private final List<UdpSocket> members = new ArrayList<>();
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        ServerSockets(InetSocketAddress server) {
+            for (int i = 0; i < socketsPerServer; i++) {
+                members.add(new UdpSocket(server));
+            }
+        }
+
+        UdpSocket next() {
+            return members.get(Math.floorMod(cursor.getAndIncrement(), members.size()));
+        }
+
+        void dispose() {
+            members.forEach(UdpSocket::dispose);
+        }
+    }
+
+    /**
+     * One connected UDP socket and the queries outstanding on it, keyed by transaction ID.
+     * The connection is opened lazily and re-opened on the next query if it is closed.
+     */
+    private final class UdpSocket {
+
+        private final InetSocketAddress server;
+        private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+        private final AtomicReference<Connection> current = new AtomicReference<>();
+        private final Mono<? extends Connection> connection;
+
+        UdpSocket(InetSocketAddress server) {
+            this.server = server;
+            this.connection = UdpClient.create()
+                    .remoteAddress(() -> server)
+                    .connect()
+                    .doOnNext(conn -> {
+                        current.set(conn);
+                        conn.inbound().receive().asByteArray().subscribe(this::onDatagram);
+                        conn.onDispose(this::failPending);
+                    })
+                    .cacheInvalidateIf(Connection::isDisposed);
+        }
+
+        Mono<Message> exchange(Message query) {
+            return connection.flatMap(conn -> {
+                Sinks.One<Message> sink = Sinks.one();
+                Pending entry = new Pending(sink, query.getQuestion());
+                int id = reserveId(entry);
+                query.getHeader().setID(id);
+
+                conn.channel()
+                        .writeAndFlush(Unpooled.wrappedBuffer(query.toWire()))
+                        .addListener(future -> {
+                            if (!future.isSuccess()) {
+                                sink.tryEmitError(new IOException("Failed to send query to " + server, future.cause()));
+                            }
+                        });
+
+                return sink.asMono()
+                        .timeout(queryTimeout)
+                        .doFinally(signal -> pending.remove(id, entry));
+            });
+        }
+
+        private int reserveId(Pending entry) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (true) {
+                int id = random.nextInt(0x10000);
+                if (pending.putIfAbsent(id, entry) == null) {
+                    return id;
+                }
+            }
+        }
+
+        private void onDatagram(byte[] bytes) {
+            Message response;
+            try {
+                response = new Message(bytes);
+            } catch (IOException e) {
+                logger.debug("Dropping malformed DNS response from {}", server, e);
+                return;
+            }
+            int id = response.getHeader().getID();
+            Pending entry = pending.get(id);
+            if (entry == null || !entry.matches(response)) {
+                logger.debug("Dropping unsolicited DNS response {} from {}", id, server);
+                return;
+            }
+            if (pending.remove(id, entry)) {
+                entry.sink().tryEmitValue(response);
+            }
+        }
+
+        private void failPending() {
+            IOException closed = new IOException("Connection to " + server + " closed");
+            pending.values().forEach(entry -> entry.sink().tryEmitError(closed));
+            pending.clear();
+        }
+
+        void dispose() {
+            Connection conn = current.getAndSet(null);
+            if (conn != null) {
+                conn.dispose();
+            }
+        }
+    }
+
+    private record Pending(Sinks.One<Message> sink, Record question) {
+
+        boolean matches(Message response) {
+            Record answered = response.getQuestion();
+            return question == null || answered == null
+                    || (question.getName().equals(answered.getName()) && question.getType() == answered.getType());
+        }
+    }
+}
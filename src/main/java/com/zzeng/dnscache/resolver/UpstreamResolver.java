@@ -0,0 +1,176 @@
+package com.zzeng.dnscache.resolver;
+
+import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.model.DnsRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Spreads a lookup over the configured fallback servers.
+ * Servers are ordered by their latency/error EWMA, unhealthy ones are ejected for a cool-down,
+ * and depending on {@link DnsProperties.Upstream.Strategy} the next server is tried after a failure,
+ * hedged after a p95-based delay, or raced from the start. Losing attempts are cancelled.
+ */
+@Component
+public class UpstreamResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamResolver.class);
+
+    private final DnsFallbackResolver dnsFallbackResolver;
+    private final DnsProperties.Upstream upstream;
+    private final List<UpstreamServerStats> servers = new ArrayList<>();
+
+    @Autowired
+    public UpstreamResolver(DnsFallbackResolver dnsFallbackResolver, DnsProperties dnsProperties) {
+        this.dnsFallbackResolver = dnsFallbackResolver;
+        this.upstream = dnsProperties.getUpstream();
+        if (dnsProperties.getFallbackServers() != null) {
+            for (String server : dnsProperties.getFallbackServers()) {
+                servers.add(new UpstreamServerStats(server, upstream.getEwmaAlpha()));
+            }
+        }
+    }
+
+    /**
+     * Resolves the records of one type of a domain using the configured strategy.
+     *
+     * @param domain the domain to resolve
+     * @param type the record type, e.g. "A"
+     * @return a Mono emitting the CNAME hops (if any) and the final RRset, as described in
+     *         {@link DnsFallbackResolver#resolve}; a {@link NegativeAnswerException} if a server answered
+     *         without such records, or an {@link UnknownHostException} if no server answered
+     */
+    public Mono<List<DnsRecord>> resolve(String domain, String type) {
+        if (servers.isEmpty()) {
+            return Mono.error(new UnknownHostException("No fallback servers configured"));
+        }
+        return Mono.defer(() -> {
+                    List<UpstreamServerStats> ordered = orderedServers();
+                    return switch (upstream.getStrategy()) {
+                        case SEQUENTIAL -> sequential(domain, type, ordered, 0);
+                        case HEDGED -> hedged(domain, type, ordered, 0);
+                        case RACE -> race(domain, type, ordered);
+                    };
+                })
+                .onErrorMap(err -> !(err instanceof UnknownHostException),
+                        err -> new UnknownHostException("All upstream servers failed for domain " + domain))
+                .flatMap(Answer::unwrap);
+    }
+
+    /**
+     * @return the per-server statistics, in configuration order
+     */
+    public List<UpstreamServerStats> getServerStats() {
+        return List.copyOf(servers);
+    }
+
+    /**
+     * Healthy servers by ascending score, then ejected ones as a last resort.
+     */
+    List<UpstreamServerStats> orderedServers() {
+        long now = System.nanoTime();
+        List<Ranked> ranked = new ArrayList<>(servers.size());
+        for (int i = 0; i < servers.size(); i++) {
+            UpstreamServerStats stats = servers.get(i);
+            ranked.add(new Ranked(stats, stats.isEjected(now), stats.score(), i));
+        }
+        ranked.sort(Comparator.comparing(Ranked::ejected)
+                .thenComparingDouble(Ranked::score)
+                .thenComparingInt(Ranked::position));
+        return ranked.stream().map(Ranked::stats).toList();
+    }
+
+    private Mono<Answer> sequential(String domain, String type, List<UpstreamServerStats> ordered, int index) {
+        if (index >= ordered.size()) {
+            return Mono.error(new UnknownHostException("All upstream servers failed for domain " + domain));
+        }
+        return attempt(domain, type, ordered.get(index))
+                .onErrorResume(err -> sequential(domain, type, ordered, index + 1));
+    }
+
+    /**
+     * Starts the next server when the current one fails or runs past its p95 latency, whichever comes first.
+     * Both triggers share one subscription to the rest of the chain, and the first answer cancels the rest.
+     */
+    private Mono<Answer> hedged(String domain, String type, List<UpstreamServerStats> ordered, int index) {
+        if (index >= ordered.size()) {
+            return Mono.error(new UnknownHostException("All upstream servers failed for domain " + domain));
+        }
+        UpstreamServerStats current = ordered.get(index);
+        if (index == ordered.size() - 1) {
+            return attempt(domain, type, current);
+        }
+        Mono<Answer> rest = Mono.defer(() -> hedged(domain, type, ordered, index + 1)).share();
+        return Mono.firstWithValue(
+                attempt(domain, type, current).onErrorResume(err -> rest),
+                Mono.delay(hedgeDelay(current)).then(rest));
+    }
+
+    private Mono<Answer> race(String domain, String type, List<UpstreamServerStats> ordered) {
+        int width = Math.max(1, Math.min(upstream.getRaceWidth(), ordered.size()));
+        List<Mono<Answer>> racers = ordered.subList(0, width).stream()
+                .map(stats -> attempt(domain, type, stats))
+                .toList();
+        return Mono.firstWithValue(racers)
+                .onErrorResume(err -> sequential(domain, type, ordered, width));
+    }
+
+    Duration hedgeDelay(UpstreamServerStats stats) {
+        long p95 = stats.p95Micros();
+        Duration min = upstream.getHedgeMinDelay();
+        Duration max = upstream.getHedgeMaxDelay();
+        if (p95 < 0) {
+            return max;
+        }
+        Duration delay = Duration.ofNanos(p95 * 1_000);
+        return delay.compareTo(min) < 0 ? min : (delay.compareTo(max) > 0 ? max : delay);
+    }
+
+    /**
+     * One query against one server. Negative answers are turned into values so that they win races
+     * like any other answer; only transport failures count against the server.
+     */
+    private Mono<Answer> attempt(String domain, String type, UpstreamServerStats stats) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return dnsFallbackResolver.resolve(domain, type, stats.getServer())
+                    .map(Answer::positive)
+                    .onErrorResume(NegativeAnswerException.class, err -> Mono.just(Answer.negative(err)))
+                    .doOnNext(answer -> stats.recordSuccess(System.nanoTime() - start))
+                    .doOnError(err -> {
+                        long now = System.nanoTime();
+                        boolean ejected = stats.recordFailure(now, upstream.getEjectErrorRate(),
+                                upstream.getEjectConsecutiveFailures(), upstream.getEjectCooldown().toNanos());
+                        if (ejected) {
+                            logger.warn("Ejecting upstream DNS server {} for {}", stats.getServer(), upstream.getEjectCooldown());
+                        }
+                    });
+        });
+    }
+
+    private record Ranked(UpstreamServerStats stats, boolean ejected, double score, int position) {}
+
+    private record Answer(List<DnsRecord> records, NegativeAnswerException negative) {
+
+        static Answer positive(List<DnsRecord> records) {
+            return new Answer(records, null);
+        }
+
+        static Answer negative(NegativeAnswerException negative) {
+            return new Answer(null, negative);
+        }
+
+        Mono<List<DnsRecord>> unwrap() {
+            return negative == null ? Mono.just(records) : Mono.error(negative);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.zzeng.dnscache.resolver;
+
+import java.util.Arrays;
+
+/**
+ * Health and latency tracking for one upstream server.
+ * Keeps exponentially weighted moving averages of latency and error rate, a small window of
+ * recent latencies for a p95 estimate, and the time until which the server is ejected.
+ */
+public class UpstreamServerStats {
+
+    private static final int WINDOW = 64;
+
+    private final String server;
+    private final double alpha;
+
+    private final long[] window = new long[WINDOW];
+    private int windowSize;
+    private int windowNext;
+
+    private double latencyEwmaMicros;
+    private double errorEwma;
+    private int consecutiveFailures;
+    private long ejectedUntilNanos;
+    private long p95Micros = -1;
+
+    public UpstreamServerStats(String server, double alpha) {
+        this.server = server;
+        this.alpha = alpha;
+    }
+
+    public String getServer() {
+        return server;
+    }
+
+    /**
+     * Records an answered query (positive or negative), which also counts as a successful health probe.
+     */
+    public synchronized void recordSuccess(long latencyNanos) {
+        long micros = Math.max(1, latencyNanos / 1_000);
+        latencyEwmaMicros = latencyEwmaMicros == 0 ? micros : latencyEwmaMicros + alpha * (micros - latencyEwmaMicros);
+        errorEwma = errorEwma * (1 - alpha);
+        consecutiveFailures = 0;
+
+        window[windowNext] = micros;
+        windowNext = (windowNext + 1) % WINDOW;
+        windowSize = Math.min(WINDOW, windowSize + 1);
+        p95Micros = -1;
+    }
+
+    /**
+     * Records a failed query and ejects the server if it has become unhealthy.
+     *
+     * @return true if this failure ejected the server
+     */
+    public synchronized boolean recordFailure(long nowNanos, double ejectErrorRate, int ejectConsecutiveFailures,
+                                              long cooldownNanos) {
+        errorEwma = errorEwma + alpha * (1 - errorEwma);
+        consecutiveFailures++;
+        if (!isEjected(nowNanos) && (consecutiveFailures >= ejectConsecutiveFailures || errorEwma >= ejectErrorRate)) {
+            ejectedUntilNanos = nowNanos + cooldownNanos;
+            consecutiveFailures = 0;
+            // Come back half-trusted, so a single failure after the cool-down does not re-eject straight away.
+            errorEwma = ejectErrorRate / 2;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized boolean isEjected(long nowNanos) {
+        return ejectedUntilNanos != 0 && nowNanos - ejectedUntilNanos < 0;
+    }
+
+    /**
+     * @return the 95th percentile of recent latencies in microseconds, or -1 without samples
+     */
+    public synchronized long p95Micros() {
+        if (windowSize == 0) {
+            return -1;
+        }
+        if (p95Micros < 0) {
+            long[] sorted = Arrays.copyOf(window, windowSize);
+            Arrays.sort(sorted);
+            p95Micros = sorted[(int) Math.ceil(0.95 * windowSize) - 1];
+        }
+        return p95Micros;
+    }
+
+    /**
+     * Ordering score, lower is better: latency inflated by the error rate.
+     * Servers without samples score 0 so that they get probed early.
+     */
+    public synchronized double score() {
+        return latencyEwmaMicros * (1 + 4 * errorEwma);
+    }
+
+    public synchronized double getLatencyEwmaMicros() {
+        return latencyEwmaMicros;
+    }
+
+    public synchronized double getErrorEwma() {
+        return errorEwma;
+    }
+}
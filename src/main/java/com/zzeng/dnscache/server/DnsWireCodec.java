@@ -0,0 +1,252 @@
+package com.zzeng.dnscache.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Minimal DNS message handling for the wire frontend, working directly on Netty buffers.
+ * Only what answering a single-question query needs is parsed: the header, and the question's name,
+ * type and class. Responses copy the question bytes from the query (preserving the client's letter case)
+ * and point the answer's owner name at it. Only record data other than IPv4 addresses goes through dnsjava.
+ */
+final class DnsWireCodec {
+
+    static final int HEADER_LENGTH = 12;
+
+    static final int TYPE_A = 1;
+    static final int TYPE_CNAME = 5;
+    static final int CLASS_IN = 1;
+
+    static final int RCODE_NOERROR = 0;
+    static final int RCODE_FORMERR = 1;
+    static final int RCODE_SERVFAIL = 2;
+    static final int RCODE_NXDOMAIN = 3;
+    static final int RCODE_NOTIMP = 4;
+    static final int RCODE_REFUSED = 5;
+
+    static final long NO_ADDRESS = -1;
+
+    // Largest response sent over UDP; larger answers are truncated so that the client retries over TCP.
+    static final int MAX_UDP_MESSAGE = 512;
+    static final int MAX_TCP_MESSAGE = 65535;
+
+    private static final int FLAG_QR = 0x8000;
+    private static final int OPCODE_MASK = 0x7800;
+    private static final int FLAG_TC = 0x0200;
+    private static final int FLAG_RD = 0x0100;
+    private static final int FLAG_RA = 0x0080;
+    private static final int MAX_NAME_LENGTH = 255;
+    // Owner name of the answer: a compression pointer to the question name right after the header.
+    private static final int POINTER_TO_QUESTION = 0xC000 | HEADER_LENGTH;
+    private static final int MAX_POINTER_OFFSET = 0x3FFF;
+    // Owner pointer, type, class, TTL and data length.
+    private static final int RR_FIXED_LENGTH = 12;
+    private static final long MAX_TTL = Integer.MAX_VALUE;
+
+    private DnsWireCodec() {}
+
+    /**
+     * The parts of a query needed to answer it.
+     *
+     * @param id the transaction ID
+     * @param flags the header flags of the query
+     * @param name the lower-cased question name without the trailing dot, or null if it could not be read
+     * @param type the question type
+     * @param dnsClass the question class
+     * @param questionLength the length of the question section in the query, or 0 if it is not echoed
+     * @param rcode {@link #RCODE_NOERROR} if the query can be answered, or the error to reply with
+     */
+    record Question(int id, int flags, String name, int type, int dnsClass, int questionLength, int rcode) {}
+
+    /**
+     * One answer record. Owner names are not stored: the first record is owned by the question name, and every
+     * record after a CNAME by that CNAME's target.
+     *
+     * @param type the record type
+     * @param rdata the record data in wire format, see {@link #rdata}
+     */
+    record Answer(int type, byte[] rdata) {}
+
+    /**
+     * Reads the header and the question of a query, without moving the buffer's reader index.
+     *
+     * @return the question, or null if the datagram is too short to be a query or is itself a response
+     */
+    static Question parse(ByteBuf query) {
+        int start = query.readerIndex();
+        if (query.readableBytes() < HEADER_LENGTH) {
+            return null;
+        }
+        int id = query.getUnsignedShort(start);
+        int flags = query.getUnsignedShort(start + 2);
+        if ((flags & FLAG_QR) != 0) {
+            return null;
+        }
+        if ((flags & OPCODE_MASK) != 0) {
+            return new Question(id, flags, null, 0, 0, 0, RCODE_NOTIMP);
+        }
+        if (query.getUnsignedShort(start + 4) != 1) {
+            return new Question(id, flags, null, 0, 0, 0, RCODE_FORMERR);
+        }
+
+        int end = start + query.readableBytes();
+        int pos = start + HEADER_LENGTH;
+        StringBuilder name = new StringBuilder(64);
+        boolean representable = true;
+        while (true) {
+            if (pos >= end) {
+                return new Question(id, flags, null, 0, 0, 0, RCODE_FORMERR);
+            }
+            int length = query.getUnsignedByte(pos++);
+            if (length == 0) {
+                break;
+            }
+            // Compression pointers and extended label types have no business in the question of a query.
+            if (length > 63 || pos + length > end || pos - start - HEADER_LENGTH + length > MAX_NAME_LENGTH) {
+                return new Question(id, flags, null, 0, 0, 0, RCODE_FORMERR);
+            }
+            if (!name.isEmpty()) {
+                name.append('.');
+            }
+            for (int i = 0; i < length; i++) {
+                int c = query.getUnsignedByte(pos + i);
+                if (c == '.' || c <= 0x20 || c >= 0x7F) {
+                    representable = false;
+                } else if (c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                }
+                name.append((char) c);
+            }
+            pos += length;
+        }
+        if (pos + 4 > end) {
+            return new Question(id, flags, null, 0, 0, 0, RCODE_FORMERR);
+        }
+        int type = query.getUnsignedShort(pos);
+        int dnsClass = query.getUnsignedShort(pos + 2);
+        int questionLength = pos + 4 - start - HEADER_LENGTH;
+        // Names we cannot use as a cache key (the root, escaped dots, binary labels) are refused outright.
+        int rcode = representable && !name.isEmpty() && dnsClass == CLASS_IN ? RCODE_NOERROR : RCODE_REFUSED;
+        return new Question(id, flags, name.toString(), type, dnsClass, questionLength, rcode);
+    }
+
+    /**
+     * Writes the response to a query into a new buffer from the allocator.
+     * Answers that do not fit in {@code maxLength} are left out and the response is flagged as truncated.
+     *
+     * @param query the query the question is copied from
+     * @param question the parsed question
+     * @param rcode the response code
+     * @param answers the answer records, CNAME hops first; ignored unless the response code is NOERROR
+     * @param ttlSeconds the TTL of every answer record
+     * @param lengthPrefixed whether to prepend the two-byte length used over TCP
+     * @param maxLength the largest message the transport can carry
+     */
+    static ByteBuf encodeResponse(ByteBufAllocator alloc, ByteBuf query, Question question, int rcode,
+                                  List<Answer> answers, long ttlSeconds, boolean lengthPrefixed, int maxLength) {
+        int length = HEADER_LENGTH + question.questionLength();
+        int count = 0;
+        boolean truncated = false;
+        if (rcode == RCODE_NOERROR) {
+            for (Answer answer : answers) {
+                int next = length + RR_FIXED_LENGTH + answer.rdata().length;
+                // Records after a CNAME point at its target, which has to be within reach of a pointer.
+                boolean unreachable = answer.type() == TYPE_CNAME && length + RR_FIXED_LENGTH > MAX_POINTER_OFFSET;
+                if (next > maxLength || unreachable) {
+                    truncated = true;
+                    break;
+                }
+                length = next;
+                count++;
+            }
+        }
+
+        ByteBuf out = alloc.buffer(length + (lengthPrefixed ? 2 : 0));
+        if (lengthPrefixed) {
+            out.writeShort(length);
+        }
+        int start = out.writerIndex();
+        out.writeShort(question.id());
+        out.writeShort(FLAG_QR | (question.flags() & (OPCODE_MASK | FLAG_RD)) | FLAG_RA | (truncated ? FLAG_TC : 0) | rcode);
+        out.writeShort(question.questionLength() > 0 ? 1 : 0);
+        out.writeShort(count);
+        out.writeShort(0);
+        out.writeShort(0);
+        if (question.questionLength() > 0) {
+            out.writeBytes(query, query.readerIndex() + HEADER_LENGTH, question.questionLength());
+        }
+        int owner = POINTER_TO_QUESTION;
+        int ttl = (int) Math.max(0, Math.min(MAX_TTL, ttlSeconds));
+        for (int i = 0; i < count; i++) {
+            Answer answer = answers.get(i);
+            out.writeShort(owner);
+            out.writeShort(answer.type());
+            out.writeShort(CLASS_IN);
+            out.writeInt(ttl);
+            out.writeShort(answer.rdata().length);
+            if (answer.type() == TYPE_CNAME) {
+                owner = 0xC000 | (out.writerIndex() - start);
+            }
+            out.writeBytes(answer.rdata());
+        }
+        return out;
+    }
+
+    /**
+     * Converts record data from the presentation form it is cached in to wire format.
+     * Names in the data (CNAME targets, MX exchanges, ...) are written uncompressed.
+     *
+     * @return the data, or null if it cannot be read as a record of the given type
+     */
+    static byte[] rdata(int type, String data) {
+        if (type == TYPE_A) {
+            long ipv4 = parseIpv4(data);
+            return ipv4 == NO_ADDRESS ? null
+                    : new byte[] {(byte) (ipv4 >>> 24), (byte) (ipv4 >>> 16), (byte) (ipv4 >>> 8), (byte) ipv4};
+        }
+        if (data == null) {
+            return null;
+        }
+        try {
+            return Record.fromString(Name.root, type, DClass.IN, 0, data, Name.root).rdataToWireCanonical();
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses a dotted-quad IPv4 literal without allocating.
+     *
+     * @return the address as an unsigned 32-bit value, or {@link #NO_ADDRESS} if the text is not an IPv4 literal
+     */
+    static long parseIpv4(String ip) {
+        if (ip == null) {
+            return NO_ADDRESS;
+        }
+        long address = 0;
+        int octets = 0;
+        int value = -1;
+        for (int i = 0; i <= ip.length(); i++) {
+            char c = i < ip.length() ? ip.charAt(i) : '.';
+            if (c >= '0' && c <= '9') {
+                value = value < 0 ? c - '0' : value * 10 + (c - '0');
+                if (value > 255) {
+                    return NO_ADDRESS;
+                }
+            } else if (c == '.' && value >= 0 && octets < 4) {
+                address = (address << 8) | value;
+                octets++;
+                value = -1;
+            } else {
+                return NO_ADDRESS;
+            }
+        }
+        return octets == 4 ? address : NO_ADDRESS;
+    }
+}
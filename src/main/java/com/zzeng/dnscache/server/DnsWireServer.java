@@ -0,0 +1,175 @@
+package com.zzeng.dnscache.server;
+
+import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.dto.DnsRecordResponse;
+import com.zzeng.dnscache.model.DnsRecord;
+import com.zzeng.dnscache.model.DnsRecordValue;
+import com.zzeng.dnscache.resolver.NegativeAnswerException;
+import com.zzeng.dnscache.service.DnsService;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.xbill.DNS.Type;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.DisposableServer;
+import reactor.netty.tcp.TcpServer;
+import reactor.netty.udp.UdpServer;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DNS wire-protocol frontend: answers standard queries over UDP and TCP from the same cache as the REST API,
+ * with the TTL the cached entry has left. Aliases are answered with their CNAME chain followed by the records
+ * at its end, and UDP answers larger than 512 bytes are truncated so the client retries over TCP.
+ * Buffers come from Netty's pooled allocator, and each query is answered from the bytes it arrived in;
+ * see {@link DnsWireCodec}.
+ * Enabled with {@code dns.server.enabled=true}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "dns.server", name = "enabled", havingValue = "true")
+public class DnsWireServer implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(DnsWireServer.class);
+
+    private final DnsService dnsService;
+    private final DnsProperties.Server server;
+
+    private volatile Connection udp;
+    private volatile DisposableServer tcp;
+
+    @Autowired
+    public DnsWireServer(DnsService dnsService, DnsProperties dnsProperties) {
+        this.dnsService = dnsService;
+        this.server = dnsProperties.getServer();
+    }
+
+    @Override
+    public void start() {
+        int concurrency = Math.max(1, server.getMaxConcurrentQueries());
+        udp = UdpServer.create()
+                .host(server.getBindAddress())
+                .port(server.getPort())
+                .handle((in, out) -> out.sendObject(in.receiveObject()
+                        .ofType(DatagramPacket.class)
+                        .flatMap(packet -> answer(packet.content(), out.alloc(), false)
+                                .map(response -> new DatagramPacket(response, packet.sender())), concurrency)))
+                .bindNow();
+        logger.info("DNS server listening on udp/{}", udp.address());
+
+        if (server.isTcpEnabled()) {
+            tcp = TcpServer.create()
+                    .host(server.getBindAddress())
+                    .port(server.getPort())
+                    .doOnConnection(conn -> conn.addHandlerLast(
+                            new LengthFieldBasedFrameDecoder(DnsWireCodec.MAX_TCP_MESSAGE + 2, 0, 2, 0, 2)))
+                    .handle((in, out) -> out.send(in.receive()
+                            .flatMap(frame -> answer(frame, out.alloc(), true), concurrency)))
+                    .bindNow();
+            logger.info("DNS server listening on tcp/{}", tcp.address());
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (tcp != null) {
+            tcp.disposeNow();
+            tcp = null;
+        }
+        if (udp != null) {
+            udp.disposeNow();
+            udp = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return udp != null;
+    }
+
+    /**
+     * @return the bound UDP address, e.g. to find the port when configured with port 0
+     */
+    public InetSocketAddress getUdpAddress() {
+        return (InetSocketAddress) udp.address();
+    }
+
+    /**
+     * @return the bound TCP address, or null if TCP is disabled
+     */
+    public InetSocketAddress getTcpAddress() {
+        return tcp != null ? (InetSocketAddress) tcp.address() : null;
+    }
+
+    /**
+     * Answers one query. Anything that can be answered without a lookup is encoded right away;
+     * otherwise the query buffer is retained until the lookup completes, since Netty releases it
+     * as soon as this method returns.
+     */
+    private Mono<ByteBuf> answer(ByteBuf query, ByteBufAllocator alloc, boolean tcp) {
+        DnsWireCodec.Question question = DnsWireCodec.parse(query);
+        if (question == null) {
+            return Mono.empty();
+        }
+        int maxLength = tcp ? DnsWireCodec.MAX_TCP_MESSAGE : DnsWireCodec.MAX_UDP_MESSAGE;
+        if (question.rcode() != DnsWireCodec.RCODE_NOERROR || !Type.isRR(question.type())) {
+            // Meta types (ANY, AXFR, ...) are not answered from a cache.
+            int rcode = question.rcode() != DnsWireCodec.RCODE_NOERROR ? question.rcode() : DnsWireCodec.RCODE_NOTIMP;
+            return Mono.just(DnsWireCodec.encodeResponse(alloc, query, question, rcode, List.of(), 0, tcp, maxLength));
+        }
+
+        ByteBuf retained = query.retain();
+        return dnsService.resolveWithRemainingTtl(question.name(), Type.string(question.type()))
+                .map(response -> DnsWireCodec.encodeResponse(alloc, retained, question, rcodeFor(response),
+                        answers(question.type(), response), response.getTtl(), tcp, maxLength))
+                .onErrorResume(err -> Mono.just(DnsWireCodec.encodeResponse(alloc, retained, question, rcodeFor(err),
+                        List.of(), 0, tcp, maxLength)))
+                .doFinally(signal -> retained.release());
+    }
+
+    private static List<DnsWireCodec.Answer> answers(int type, DnsRecordResponse response) {
+        List<DnsWireCodec.Answer> answers = new ArrayList<>();
+        if (response.getCnames() != null) {
+            for (String target : response.getCnames()) {
+                answers.add(new DnsWireCodec.Answer(DnsWireCodec.TYPE_CNAME, DnsWireCodec.rdata(DnsWireCodec.TYPE_CNAME, target)));
+            }
+        }
+        if (response.getValues() != null) {
+            for (DnsRecordValue value : response.getValues()) {
+                byte[] rdata = DnsWireCodec.rdata(type, value.getData());
+                if (rdata != null) {
+                    answers.add(new DnsWireCodec.Answer(type, rdata));
+                } else {
+                    logger.debug("Skipping unreadable {} value for {}: {}", Type.string(type), response.getDomain(), value.getData());
+                }
+            }
+        }
+        return answers;
+    }
+
+    /**
+     * A cached NXDOMAIN keeps its rcode; a cached no-data answer is a NOERROR with no records of the type.
+     */
+    private static int rcodeFor(DnsRecordResponse response) {
+        return DnsRecord.STATUS_NXDOMAIN.equals(response.getStatus()) ? DnsWireCodec.RCODE_NXDOMAIN : DnsWireCodec.RCODE_NOERROR;
+    }
+
+    private static int rcodeFor(Throwable err) {
+        for (Throwable cause = err; cause != null; cause = cause.getCause()) {
+            if (cause instanceof NegativeAnswerException negative) {
+                return negative.getRcode();
+            }
+        }
+        logger.debug("Answering SERVFAIL: {}", err.getMessage());
+        return DnsWireCodec.RCODE_SERVFAIL;
+    }
+}
@@ -0,0 +1,13 @@
+package com.zzeng.dnscache.service;
+
+import com.zzeng.dnscache.dto.DnsRecordResponse;
+import reactor.core.publisher.Flux;
+
+/**
+ * One page of the cache listing. The keys are known up front; the records are read as {@code records} is
+ * consumed, a chunk at a time.
+ *
+ * @param records the records of the page, which may be fewer than the limit asked for, or none
+ * @param nextCursor where the next page starts, or null if this is the last one
+ */
+public record CachePage(Flux<DnsRecordResponse> records, String nextCursor) {}
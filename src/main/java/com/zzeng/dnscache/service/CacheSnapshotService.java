@@ -0,0 +1,201 @@
+package com.zzeng.dnscache.service;
+
+import com.zzeng.dnscache.cache.CacheSnapshotFile;
+import com.zzeng.dnscache.cache.DnsNearCache;
+import com.zzeng.dnscache.codec.DnsRecordCodec;
+import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.repository.DnsCacheRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps a snapshot of the hottest near-cache entries on local disk and loads it back on startup, so that a node
+ * starting after a deploy or a Redis failover does not send all its traffic upstream until the cache fills up.
+ * Enabled with {@code dns.snapshot.enabled=true}; see {@link CacheSnapshotFile} for the format.
+ * <p>
+ * On startup, snapshot entries that have not expired yet and are missing from the repository are written back
+ * to it, and every entry is then resolved through {@link DnsService} in order of hits: that moves it into the
+ * near-cache, refreshes those past their TTL and re-resolves those that expired while the node was down.
+ * {@link WarmStartHealthIndicator} keeps the node out of the readiness group until this is done, or until
+ * {@code warm-up-timeout} has passed.
+ */
+@Component
+public class CacheSnapshotService implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheSnapshotService.class);
+
+    private final DnsNearCache nearCache;
+    private final DnsCacheRepository dnsCacheRepository;
+    private final DnsService dnsService;
+    private final DnsRecordCodec codec;
+    private final DnsProperties.Snapshot settings;
+    private final Clock clock;
+
+    private volatile boolean running;
+    private volatile boolean warm;
+    private volatile Disposable warmUp;
+    private volatile Disposable saving;
+
+    @Autowired
+    public CacheSnapshotService(DnsNearCache nearCache, DnsCacheRepository dnsCacheRepository, DnsService dnsService,
+                                DnsRecordCodec codec, DnsProperties dnsProperties) {
+        this(nearCache, dnsCacheRepository, dnsService, codec, dnsProperties, Clock.systemUTC());
+    }
+
+    CacheSnapshotService(DnsNearCache nearCache, DnsCacheRepository dnsCacheRepository, DnsService dnsService,
+                         DnsRecordCodec codec, DnsProperties dnsProperties, Clock clock) {
+        this.nearCache = nearCache;
+        this.dnsCacheRepository = dnsCacheRepository;
+        this.dnsService = dnsService;
+        this.codec = codec;
+        this.settings = dnsProperties.getSnapshot();
+        this.clock = clock;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (!settings.isEnabled()) {
+            warm = true;
+            return;
+        }
+        warmUp = warmUp()
+                .timeout(settings.getWarmUpTimeout())
+                .doOnError(e -> logger.warn("Warm start from {} did not complete: {}", settings.getPath(), e.toString()))
+                .onErrorResume(e -> Mono.empty())
+                .doFinally(signal -> warm = true)
+                .subscribe();
+        saving = Flux.interval(settings.getInterval(), settings.getInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> save()
+                        .onErrorResume(e -> {
+                            logger.warn("Failed to write the cache snapshot to {}", settings.getPath(), e);
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (saving != null) {
+            saving.dispose();
+            saving = null;
+        }
+        if (warmUp != null) {
+            warmUp.dispose();
+            warmUp = null;
+        }
+        if (settings.isEnabled()) {
+            try {
+                save().block(settings.getWarmUpTimeout());
+            } catch (RuntimeException e) {
+                logger.warn("Failed to write the cache snapshot to {} on shutdown", settings.getPath(), e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Whether the warm start is over: done, failed, timed out, or not enabled.
+     */
+    public boolean isWarm() {
+        return warm;
+    }
+
+    /**
+     * Writes the hottest near-cache entries to the snapshot file.
+     *
+     * @return a Mono emitting the number of entries written
+     */
+    Mono<Integer> save() {
+        long now = clock.millis();
+        return Flux.fromIterable(nearCache.hottest(Math.max(0, settings.getMaxEntries())))
+                .concatMap(hot -> codec.safeEncode(hot.record())
+                        .onErrorResume(e -> Mono.empty())
+                        .map(value -> new CacheSnapshotFile.Entry(hot.record().getCacheKey(), value,
+                                now + hot.remainingTtl().toMillis(), hot.hits())))
+                .collectList()
+                .flatMap(entries -> Mono.fromCallable(() -> {
+                            CacheSnapshotFile.write(Path.of(settings.getPath()), entries);
+                            return entries.size();
+                        })
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .doOnNext(count -> logger.debug("Wrote {} entries to the cache snapshot {}", count, settings.getPath()));
+    }
+
+    /**
+     * Loads the snapshot file back, as described in the class comment.
+     *
+     * @return a Mono emitting the number of entries resolved
+     */
+    Mono<Long> warmUp() {
+        Path file = Path.of(settings.getPath());
+        return Mono.fromCallable(() -> CacheSnapshotFile.read(file))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(entries -> {
+                    long now = clock.millis();
+                    List<CacheSnapshotFile.Entry> live = entries.stream()
+                            .filter(entry -> entry.expiresAtMillis() > now)
+                            .toList();
+                    return restoreMissing(live, now)
+                            .then(revalidate(entries))
+                            .doOnNext(resolved -> logger.info("Warm start: {} of {} snapshot entries cached again, "
+                                    + "{} still live", resolved, entries.size(), live.size()));
+                });
+    }
+
+    /**
+     * Writes back the live entries the repository no longer holds, e.g. after a Redis failover.
+     * Entries the repository still has are left alone, as they may have been updated since.
+     */
+    private Mono<Void> restoreMissing(List<CacheSnapshotFile.Entry> live, long now) {
+        if (live.isEmpty()) {
+            return Mono.empty();
+        }
+        return dnsCacheRepository.multiGet(live.stream().map(CacheSnapshotFile.Entry::key).toList())
+                .flatMapMany(present -> Flux.fromIterable(live).filter(entry -> !present.containsKey(entry.key())))
+                .concatMap(entry -> codec.safeDecode(entry.key(), entry.value())
+                        .flatMap(record -> {
+                            long ttlSeconds = Math.max(1, (entry.expiresAtMillis() - now + 999) / 1000);
+                            // Manual entries go back into the manual index; resolved ones are written in one batch.
+                            return record.isManual()
+                                    ? dnsCacheRepository.setManual(entry.key(), entry.value(), ttlSeconds)
+                                            .then(Mono.<DnsCacheRepository.Entry>empty())
+                                    : Mono.just(new DnsCacheRepository.Entry(entry.key(), entry.value(), ttlSeconds));
+                        }))
+                .collectList()
+                .flatMap(resolved -> resolved.isEmpty() ? Mono.empty() : dnsCacheRepository.setAll(resolved))
+                .then();
+    }
+
+    /**
+     * Resolves every entry through the service, hottest first, which loads it into the near-cache.
+     */
+    private Mono<Long> revalidate(List<CacheSnapshotFile.Entry> entries) {
+        Set<String> seen = new HashSet<>();
+        return Flux.fromIterable(entries)
+                .filter(entry -> seen.add(entry.key()))
+                .concatMap(entry -> codec.safeDecode(entry.key(), entry.value()))
+                .flatMap(record -> dnsService.resolveDomain(record.getDomain(), record.getType(), null)
+                        .onErrorResume(e -> Mono.empty()), Math.max(1, settings.getWarmUpConcurrency()))
+                .count();
+    }
+}
@@ -0,0 +1,63 @@
+package com.zzeng.dnscache.service;
+
+import com.zzeng.dnscache.dto.ClearJobResponse;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks one asynchronous cache clear: how many keys it has removed so far and how it ended.
+ */
+class ClearJob {
+
+    enum Status {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final Instant startedAt = Instant.now();
+    private final AtomicLong deleted = new AtomicLong();
+    private volatile Status status = Status.RUNNING;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    String getId() {
+        return id;
+    }
+
+    Status getStatus() {
+        return status;
+    }
+
+    long getDeleted() {
+        return deleted.get();
+    }
+
+    Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    void addDeleted(long count) {
+        deleted.addAndGet(count);
+    }
+
+    void complete() {
+        finishedAt = Instant.now();
+        status = Status.COMPLETED;
+    }
+
+    void fail(Throwable err) {
+        error = err.getMessage();
+        finishedAt = Instant.now();
+        status = Status.FAILED;
+    }
+
+    ClearJobResponse toResponse() {
+        Instant finished = finishedAt;
+        return new ClearJobResponse(id, status.name(), deleted.get(), startedAt.toString(),
+                finished != null ? finished.toString() : null, error);
+    }
+}
@@ -1,7 +1,11 @@
 package com.zzeng.dnscache.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.zzeng.dnscache.dto.CacheListRequest;
+import com.zzeng.dnscache.dto.ClearJobResponse;
 import com.zzeng.dnscache.dto.DnsRecordResponse;
+import com.zzeng.dnscache.dto.OverrideRuleSet;
+import com.zzeng.dnscache.dto.TtlUpdateResponse;
 import com.zzeng.dnscache.model.DnsRecord;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -17,9 +21,12 @@ public interface DnsService {
 
     // --- Resolution ---
     /**
-     * Resolves a domain name using the default TTL configured in the application.
+     * Resolves a domain name, caching the result for the TTL upstream served it with
+     * (within the bounds of {@code dns.ttl-policy}).
      * If the domain exists in Redis cache, the cached result is returned.
      * Otherwise, a DNS lookup is performed and the result is cached.
+     * Cached records requested late in their TTL are refreshed in the background; expired records are refreshed
+     * and, if upstream cannot be reached, served stale with a short TTL for as long as the stale window allows.
      *
      * @param domain the domain name to resolve (e.g., "example.com")
      * @return a Mono emitting the resolved {@link DnsRecord}
@@ -27,12 +34,12 @@ public interface DnsService {
     Mono<DnsRecordResponse> resolveDomain(String domain);
 
     /**
-     * Resolves a domain name using either the default TTL or a custom one if provided.
+     * Resolves a domain name using either the upstream TTL or a custom one if provided.
      * If the domain exists in Redis cache, the cached result is returned.
      * Otherwise, a DNS lookup is performed and the result is cached with the appropriate TTL.
      *
      * @param domain the domain name to resolve
-     * @param optionalTtl the optional TTL to use; if null, the default TTL is applied
+     * @param optionalTtl the optional TTL to use; if null, the upstream TTL is applied
      * @return a Mono emitting the resolved {@link DnsRecordResponse}
      */
     Mono<DnsRecordResponse> resolveDomain(String domain, Long optionalTtl);
@@ -48,6 +55,64 @@ public interface DnsService {
      */
     Mono<DnsRecordResponse> resolveDomain(String domain, long ttlSeconds);
 
+    /**
+     * Resolves the records of one type for a domain, e.g. its AAAA or MX records.
+     * If the domain is an alias, the CNAME chain is followed and each hop is cached under its own name,
+     * so other aliases of the same target share the cached records.
+     *
+     * @param domain the domain name to resolve
+     * @param type the record type (case-insensitive), e.g. "A", "AAAA", "CNAME", "MX", "TXT"
+     * @param optionalTtl the optional TTL to use; if null, the upstream TTL is applied
+     * @return a Mono emitting the records, with the alias targets followed in {@link DnsRecordResponse#getCnames()};
+     *         if the domain does not exist or has no such records, an empty response with
+     *         {@link DnsRecordResponse#getStatus()} set, cached for the negative TTL;
+     *         a 400 {@link org.springframework.web.server.ResponseStatusException} if the type is unknown
+     */
+    Mono<DnsRecordResponse> resolveDomain(String domain, String type, Long optionalTtl);
+
+    /**
+     * Resolves a domain like {@link #resolveDomain(String)}, but reports the time the
+     * cached entry has left to live instead of the TTL it was stored with. This is what DNS clients expect.
+     *
+     * @param domain the domain name to resolve
+     * @return a Mono emitting the resolved record with its remaining TTL; a failed upstream lookup is reported
+     *         as a {@link org.springframework.web.server.ResponseStatusException} caused by the resolver error
+     */
+    Mono<DnsRecordResponse> resolveWithRemainingTtl(String domain);
+
+    /**
+     * Resolves the records of one type like {@link #resolveDomain(String, String, Long)},
+     * reporting the time the answer has left to live: that of the shortest-lived record in its CNAME chain.
+     *
+     * @param domain the domain name to resolve
+     * @param type the record type, e.g. "AAAA"
+     * @return a Mono emitting the resolved records with their remaining TTL
+     */
+    Mono<DnsRecordResponse> resolveWithRemainingTtl(String domain, String type);
+
+    /**
+     * Resolves many domains at once, for warming the cache.
+     * Cached domains are read with a single multi-key lookup; only the misses are resolved upstream,
+     * with bounded concurrency, and written back to Redis in batches.
+     * Results are emitted as soon as they are available, in no particular order.
+     * Domains that cannot be resolved are left out.
+     *
+     * @param domains the domain names to resolve
+     * @param optionalTtl the optional TTL to use for newly resolved domains; if null, the upstream TTL is applied
+     * @return a Flux emitting a {@link DnsRecordResponse} per resolved domain
+     */
+    Flux<DnsRecordResponse> resolveBatch(List<String> domains, Long optionalTtl);
+
+    /**
+     * Resolves the records of one type for many domains at once, like {@link #resolveBatch(List, Long)}.
+     *
+     * @param domains the domain names to resolve
+     * @param type the record type, e.g. "AAAA"
+     * @param optionalTtl the optional TTL to use for newly resolved domains; if null, the upstream TTL is applied
+     * @return a Flux emitting a {@link DnsRecordResponse} per resolved domain
+     */
+    Flux<DnsRecordResponse> resolveBatch(List<String> domains, String type, Long optionalTtl);
+
 
     // --- Create ---
     /**
@@ -63,68 +128,133 @@ public interface DnsService {
 
     // --- Read ---
     /**
-     * Retrieves a cached DNS record for a specific domain.
+     * Retrieves the cached records of one type for a specific domain.
      *
      * @param domain the domain name to retrieve
+     * @param type the record type, e.g. "A"
      * @return a Mono emitting the {@link DnsRecord}, or empty if not found
      */
-    Mono<DnsRecordResponse> getCachedRecord(String domain);
+    Mono<DnsRecordResponse> getCachedRecord(String domain, String type);
+
+    /**
+     * Lists one page of the cache, filtered on the server. Pass each page's {@link CachePage#nextCursor()} back
+     * for the next one, until it is null. Every page looks at about {@code limit} keys, so with filters a page
+     * may hold fewer records, or none, and still not be the last.
+     *
+     * @param request the cursor, the page size and the filters
+     * @return a Mono emitting the page, or an error with status 400 for a cursor not handed out by this service
+     */
+    Mono<CachePage> listCachedRecords(CacheListRequest request);
+
+    /**
+     * Retrieves all manually created DNS records.
+     * Only the manual index is read, so the cost does not depend on how many resolved entries are cached.
+     *
+     * @return a Flux stream of manual {@link DnsRecord} objects
+     */
+    Flux<DnsRecordResponse> getAllManualEntries();
 
     /**
-     * Retrieves all cached DNS records from Redis.
+     * Retrieves the cached records of a zone, of every type: the zone's own name and every name below it, or
+     * only the names below it for a zone given as {@code *.example.com}. Read through the zone index, so the cost
+     * follows the size of the zone rather than of the cache.
      *
-     * @return a Flux stream of {@link DnsRecord} objects
+     * @param zone the zone's name, optionally with a leading {@code *.} and a trailing dot
+     * @return a Flux stream of the zone's records, or an error with status 400 for an invalid zone
      */
-    Flux<DnsRecordResponse> getAllCachedRecords();
+    Flux<DnsRecordResponse> getZoneRecords(String zone);
 
     /**
-     * Checks whether a domain exists in the Redis cache.
+     * Checks whether records of one type for a domain exist in the Redis cache.
      *
      * @param domain the domain name to check
+     * @param type the record type, e.g. "A"
      * @return a Mono emitting true if the domain exists in cache, false otherwise
      */
-    Mono<Boolean> exists(String domain);
+    Mono<Boolean> exists(String domain, String type);
 
     /**
      * Performs a batch read of multiple domain names.
      * Returns only records that are currently in the Redis cache.
      *
      * @param domains list of domain names to retrieve
+     * @param type the record type, e.g. "A"
      * @return a Flux stream of found {@link DnsRecord} entries
      */
-    Flux<DnsRecordResponse> getBatch(List<String> domains); // for batch reads
+    Flux<DnsRecordResponse> getBatch(List<String> domains, String type); // for batch reads
 
 
     // --- Update ---
     /**
      * Updates the TTL (time-to-live) for an existing DNS record in the cache.
+     * The update is a single atomic operation in Redis, so concurrent updates cannot interleave.
      *
      * @param domain the domain whose TTL should be updated
+     * @param type the record type, e.g. "A"
      * @param newTTL the new TTL value in seconds
-     * @return a Mono emitting true if the update was successful, false if the record was not found
+     * @return a Mono emitting the domain with its remaining TTL as reported by Redis,
+     *         or an error if the record was not found
      */
-    Mono<Boolean> updateTTL(String domain, long newTTL);
+    Mono<TtlUpdateResponse> updateTTL(String domain, String type, long newTTL);
+
+    /**
+     * Updates the TTL of many cached DNS records at once. Domains that are not cached are skipped.
+     *
+     * @param domains list of domain names to update
+     * @param type the record type, e.g. "A"
+     * @param newTTL the new TTL value in seconds
+     * @return a Flux emitting each updated domain with its remaining TTL as reported by Redis
+     */
+    Flux<TtlUpdateResponse> updateTTLBatch(List<String> domains, String type, long newTTL);
+
+    /**
+     * Updates the TTL of every cached record of a zone, as {@link #getZoneRecords(String)} selects them.
+     *
+     * @param zone the zone's name, optionally with a leading {@code *.} and a trailing dot
+     * @param newTTL the new TTL value in seconds
+     * @return a Flux emitting each updated record's domain and type with its remaining TTL
+     */
+    Flux<TtlUpdateResponse> updateZoneTTL(String zone, long newTTL);
 
 
     // --- Delete ---
     /**
-     * Deletes a specific domain from the Redis cache.
+     * Deletes the cached records of one type for a specific domain from the Redis cache.
      *
      * @param domain the domain name to delete
+     * @param type the record type, e.g. "A"
      * @return a Mono emitting true if deletion succeeded, false if not found
      */
-    Mono<Boolean> deleteCachedRecord(String domain);
+    Mono<Boolean> deleteCachedRecord(String domain, String type);
 
     /**
-     * Clears all cached DNS entries from Redis.
+     * Clears all cached DNS entries from Redis. Keys outside the configured prefix are left alone.
+     * The deletion runs server-side in SCAN/UNLINK steps.
      *
-     * @return a Mono emitting a status message
+     * @return a Mono emitting a summary of how many keys were deleted
      */
     Mono<String> clearCache();
 
+    /**
+     * Starts clearing the cache in the background, for caches too large to clear within one request.
+     * Only one clear runs at a time; while one is running, its progress is returned instead.
+     *
+     * @return a Mono emitting the job with its ID and progress so far
+     */
+    Mono<ClearJobResponse> startClearJob();
+
+    /**
+     * Reports the progress of a background clear started with {@link #startClearJob()}.
+     * Finished jobs are kept for an hour.
+     *
+     * @param jobId the job ID
+     * @return a Mono emitting the job's progress
+     */
+    Mono<ClearJobResponse> getClearJob(String jobId);
+
     /**
      * Deletes all DNS entries that were manually created (isManual = true).
-     * This does not affect automatically resolved entries.
+     * This does not affect automatically resolved entries, and only the manual index is scanned.
      *
      * @return a Mono emitting a summary of how many entries were deleted
      */
@@ -134,7 +264,32 @@ public interface DnsService {
      * Deletes a batch of specific domains from the Redis cache.
      *
      * @param domains list of domain names to delete
+     * @param type the record type, e.g. "A"
+     * @return a Mono emitting a summary of how many entries were deleted
+     */
+    Mono<String> deleteBatch(List<String> domains, String type);
+
+    /**
+     * Deletes every cached record of a zone, manual entries included, as {@link #getZoneRecords(String)} selects them.
+     *
+     * @param zone the zone's name, optionally with a leading {@code *.} and a trailing dot
      * @return a Mono emitting a summary of how many entries were deleted
      */
-    Mono<String> deleteBatch(List<String> domains);
+    Mono<String> deleteZone(String zone);
+
+    /**
+     * Returns the override rules in effect on this node, which answer before the cache is read.
+     *
+     * @return a Mono emitting the rules with their version
+     */
+    Mono<OverrideRuleSet> getOverrideRules();
+
+    /**
+     * Replaces all the override rules, if their version is still the one given.
+     *
+     * @param rules the new rules, with the version they replace
+     * @return a Mono emitting the new rules with their version; 400 if they do not compile, 409 if another version
+     * was stored first or the rules are read from a file
+     */
+    Mono<OverrideRuleSet> replaceOverrideRules(OverrideRuleSet rules);
 }
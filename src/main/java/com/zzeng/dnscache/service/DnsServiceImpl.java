@@ -1,13 +1,24 @@
 package com.zzeng.dnscache.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zzeng.dnscache.cache.CacheInvalidationBus;
+import com.zzeng.dnscache.cache.DnsNearCache;
+import com.zzeng.dnscache.codec.DnsRecordCodec;
 import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.dto.CacheListRequest;
+import com.zzeng.dnscache.dto.ClearJobResponse;
 import com.zzeng.dnscache.dto.DnsRecordMapper;
 import com.zzeng.dnscache.dto.DnsRecordResponse;
+import com.zzeng.dnscache.dto.OverrideRuleSet;
+import com.zzeng.dnscache.dto.TtlUpdateResponse;
 import com.zzeng.dnscache.model.DnsRecord;
+import com.zzeng.dnscache.override.OverrideRuleStore;
 import com.zzeng.dnscache.repository.DnsCacheRepository;
-import com.zzeng.dnscache.util.DnsFallbackResolver;
-import com.zzeng.dnscache.util.JsonUtil;
+import com.zzeng.dnscache.resolver.NegativeAnswerException;
+import com.zzeng.dnscache.resolver.UpstreamResolver;
+import com.zzeng.dnscache.util.Glob;
+import com.zzeng.dnscache.util.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,29 +28,98 @@ import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.HttpStatus;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Type;
 
-import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 @Service
 public class DnsServiceImpl implements DnsService {
 
     private final DnsCacheRepository dnsCacheRepository;
-    private final ObjectMapper objectMapper;
+    private final DnsNearCache nearCache;
+    private final CacheInvalidationBus invalidationBus;
+    private final OverrideRuleStore overrideRules;
+    private final UpstreamResolver upstreamResolver;
+    private final DnsRecordCodec codec;
+    private final MeterRegistry meterRegistry;
     private final long defaultTtl;
     private static final Logger logger = LoggerFactory.getLogger(DnsServiceImpl.class);
-    private final List<String> fallbackServers;
+    private static final Duration CLEAR_JOB_RETENTION = Duration.ofHours(1);
+    // Longest CNAME chain followed through the cache before going upstream.
+    private static final int MAX_CNAME_HOPS = 8;
+    private static final int MAX_SCAN_STEPS_PER_PAGE = 16;
+    // Negative answers served, tagged with their status and whether they came from the cache or upstream.
+    static final String NEGATIVE_ANSWERS_METRIC = "dns.negative.answers";
+    // Lookups by result: hit (fresh cached answer), stale (cached answer past its TTL), miss (resolved upstream)
+    // or override (answered by an override rule).
+    static final String LOOKUPS_METRIC = "dns.cache.lookups";
+    private final Counter cacheHits;
+    private final Counter staleCacheHits;
+    private final Counter cacheMisses;
+    private final Counter overrideAnswers;
+    private final DnsProperties.Coalescing coalescing;
+    private final DnsProperties.TtlPolicy ttlPolicy;
+    // How long resolved records are kept past their TTL; zero when serving stale answers is off.
+    private final Duration staleWindow;
+    private final DnsProperties.Batch batch;
+    private final int redisChunkSize;
+    private final SingleFlight<String, List<DnsNearCache.Hit>> inFlightLookups = new SingleFlight<>();
+    private final SingleFlight<String, List<DnsNearCache.Hit>> inFlightBatchLookups = new SingleFlight<>();
+    private final Map<String, ClearJob> clearJobs = new ConcurrentHashMap<>();
+    private final AtomicReference<ClearJob> runningClearJob = new AtomicReference<>();
+    // Records whose refresh failed, with the System.nanoTime() after which they may be refreshed again.
+    private final Map<String, Long> refreshRetryAt = new ConcurrentHashMap<>();
 
     @Autowired
     public DnsServiceImpl(DnsCacheRepository dnsCacheRepository,
-                          ObjectMapper objectMapper,
-                          DnsProperties dnsProperties) {
+                          DnsNearCache nearCache,
+                          CacheInvalidationBus invalidationBus,
+                          OverrideRuleStore overrideRules,
+                          UpstreamResolver upstreamResolver,
+                          DnsRecordCodec codec,
+                          DnsProperties dnsProperties,
+                          MeterRegistry meterRegistry) {
         this.dnsCacheRepository = dnsCacheRepository;
-        this.objectMapper = objectMapper;
+        this.nearCache = nearCache;
+        this.invalidationBus = invalidationBus;
+        this.overrideRules = overrideRules;
+        this.upstreamResolver = upstreamResolver;
+        this.codec = codec;
+        this.meterRegistry = meterRegistry;
         this.defaultTtl = dnsProperties.getTtl();
+        this.coalescing = dnsProperties.getCoalescing();
+        this.ttlPolicy = dnsProperties.getTtlPolicy();
+        this.staleWindow = ttlPolicy.isServeStaleEnabled() ? ttlPolicy.getStaleWindow() : Duration.ZERO;
+        this.batch = dnsProperties.getBatch();
+        this.redisChunkSize = Math.max(1, dnsProperties.getRedis().getBatchChunkSize());
+        this.cacheHits = lookupCounter(meterRegistry, "hit");
+        this.staleCacheHits = lookupCounter(meterRegistry, "stale");
+        this.cacheMisses = lookupCounter(meterRegistry, "miss");
+        this.overrideAnswers = lookupCounter(meterRegistry, "override");
+    }
 
-        this.fallbackServers = dnsProperties.getFallbackServers();
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder(LOOKUPS_METRIC)
+                .description("Lookups by whether the cache could answer them")
+                .tag("result", result)
+                .register(meterRegistry);
     }
 
     @PostConstruct
@@ -51,51 +131,555 @@ public class DnsServiceImpl implements DnsService {
     // --- Resolution ---
     @Override
     public Mono<DnsRecordResponse> resolveDomain(String domain) {
-        return resolveDomain(domain, defaultTtl);
+        return resolveDomain(domain, DnsRecord.TYPE_A, null);
     }
 
     @Override
     public Mono<DnsRecordResponse> resolveDomain(String domain, Long optionalTtl) {
-        return (optionalTtl == null)
-                ? resolveDomain(domain)
-                : resolveDomain(domain, optionalTtl);
+        return resolveDomain(domain, DnsRecord.TYPE_A, optionalTtl);
     }
 
     @Override
     public Mono<DnsRecordResponse> resolveDomain(String domain, long ttlSeconds) {
-        return dnsCacheRepository.get(domain)
-                .flatMap(json -> JsonUtil.safeDeserialize(json, objectMapper))
-                .switchIfEmpty(Mono.defer(() -> resolveAndCache(domain, ttlSeconds)))
-                .map(DnsRecordMapper::toResponse);
+        return resolveDomain(domain, DnsRecord.TYPE_A, Long.valueOf(ttlSeconds));
+    }
+
+    @Override
+    public Mono<DnsRecordResponse> resolveDomain(String domain, String type, Long optionalTtl) {
+        String recordType = recordType(type);
+        DnsRecordResponse override = overrideAnswer(domain, recordType);
+        if (override != null) {
+            return Mono.just(override);
+        }
+        return resolveChain(domain, recordType, optionalTtl)
+                .map(chain -> toResponse(domain, chain, false));
+    }
+
+    @Override
+    public Mono<DnsRecordResponse> resolveWithRemainingTtl(String domain) {
+        return resolveWithRemainingTtl(domain, DnsRecord.TYPE_A);
+    }
+
+    @Override
+    public Mono<DnsRecordResponse> resolveWithRemainingTtl(String domain, String type) {
+        String recordType = recordType(type);
+        DnsRecordResponse override = overrideAnswer(domain, recordType);
+        if (override != null) {
+            return Mono.just(override);
+        }
+        return resolveChain(domain, recordType, null)
+                .map(chain -> toResponse(domain, chain, true));
+    }
+
+    /**
+     * The answer of the override rules for the name, if one covers it. Read from memory: no cache lookup, no I/O.
+     */
+    private DnsRecordResponse overrideAnswer(String domain, String type) {
+        DnsRecord record = overrideRules.find(domain, type);
+        if (record == null) {
+            return null;
+        }
+        overrideAnswers.increment();
+        return DnsRecordMapper.toResponse(record);
+    }
+
+    /**
+     * Answers from the cache if the domain is cached, see {@link #serveCached}, and resolves it upstream otherwise.
+     *
+     * @param requestedTtl the TTL to cache newly resolved records for, or null to derive it from the upstream answer
+     */
+    private Mono<List<DnsNearCache.Hit>> resolveChain(String domain, String type, Long requestedTtl) {
+        return lookupChain(domain, type)
+                .flatMap(chain -> serveCached(chain, type, requestedTtl, ttlPolicy.getStaleAnswerClientTimeout()))
+                .doOnNext(this::countCached)
+                .switchIfEmpty(Mono.defer(() -> {
+                    cacheMisses.increment();
+                    return resolveAndCache(domain, type, requestedTtl);
+                }));
+    }
+
+    /**
+     * Serves a cached chain while it is fresh, starting a background refresh once it is past the refresh-ahead point.
+     * An expired chain is refreshed; if that fails or takes longer than {@code clientTimeout}, it is served stale
+     * (RFC 8767) and the refresh carries on in the background. Manual hops are never refreshed: only the part of
+     * the chain after the last manual hop is resolved again.
+     */
+    private Mono<List<DnsNearCache.Hit>> serveCached(List<DnsNearCache.Hit> chain, String type, Long requestedTtl,
+                                                     Duration clientTimeout) {
+        int from = firstResolvedHop(chain);
+        if (from == chain.size()) {
+            return Mono.just(chain);
+        }
+        List<Duration> fresh = chain.subList(from, chain.size()).stream().map(this::freshRemaining).toList();
+        if (fresh.stream().allMatch(remaining -> remaining.compareTo(Duration.ZERO) > 0)) {
+            if (ttlPolicy.isRefreshAheadEnabled() && pastRefreshAhead(chain.subList(from, chain.size()), fresh)) {
+                refreshInBackground(chain, from, type, requestedTtl);
+            }
+            return Mono.just(chain);
+        }
+
+        String key = DnsRecord.cacheKey(chain.get(from).record().getDomain(), type);
+        if (!mayRefresh(key)) {
+            return Mono.just(chain);
+        }
+        Mono<List<DnsNearCache.Hit>> refresh = refresh(chain, from, type, requestedTtl).cache();
+        // Subscribed here so that the refresh completes even when the caller is answered from stale data.
+        refresh.subscribe(null, err -> logger.debug("Refresh of stale {} failed: {}", key, err.getMessage()));
+        if (clientTimeout.isZero() || clientTimeout.isNegative()) {
+            return Mono.just(chain);
+        }
+        return refresh.timeout(clientTimeout)
+                .onErrorResume(err -> Mono.just(chain));
+    }
+
+    private void refreshInBackground(List<DnsNearCache.Hit> chain, int from, String type, Long requestedTtl) {
+        String key = DnsRecord.cacheKey(chain.get(from).record().getDomain(), type);
+        if (mayRefresh(key)) {
+            refresh(chain, from, type, requestedTtl)
+                    .subscribe(null, err -> logger.debug("Refresh-ahead of {} failed: {}", key, err.getMessage()));
+        }
+    }
+
+    /**
+     * Resolves the chain again from hop {@code from} on, keeping the hops before it. Concurrent refreshes of the
+     * same record share one lookup, and after a failure the record is not refreshed again for a while.
+     */
+    private Mono<List<DnsNearCache.Hit>> refresh(List<DnsNearCache.Hit> chain, int from, String type, Long requestedTtl) {
+        String domain = chain.get(from).record().getDomain();
+        String key = DnsRecord.cacheKey(domain, type);
+        List<DnsNearCache.Hit> kept = chain.subList(0, from);
+        return resolveAndCache(domain, type, requestedTtl)
+                .doOnSuccess(resolved -> refreshRetryAt.remove(key))
+                .doOnError(err -> refreshRetryAt.put(key, System.nanoTime() + ttlPolicy.getFailureRecheckInterval().toNanos()))
+                .map(resolved -> {
+                    if (kept.isEmpty()) {
+                        return resolved;
+                    }
+                    List<DnsNearCache.Hit> refreshed = new ArrayList<>(kept);
+                    refreshed.addAll(resolved);
+                    return refreshed;
+                });
+    }
+
+    private boolean mayRefresh(String key) {
+        Long retryAt = refreshRetryAt.get(key);
+        return retryAt == null || System.nanoTime() - retryAt >= 0;
+    }
+
+    private static int firstResolvedHop(List<DnsNearCache.Hit> chain) {
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            if (chain.get(i).record().isManual()) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private boolean pastRefreshAhead(List<DnsNearCache.Hit> hops, List<Duration> fresh) {
+        double remainingShare = 1 - ttlPolicy.getRefreshAheadFactor();
+        for (int i = 0; i < hops.size(); i++) {
+            if (fresh.get(i).toMillis() <= hops.get(i).record().getTtl() * 1000 * remainingShare) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * How long a cached record has left before it goes stale. Resolved records are kept in the cache
+     * for the stale window past their TTL, manual ones are not.
+     */
+    private Duration freshRemaining(DnsNearCache.Hit hit) {
+        // A zero expiry means the key does not expire in Redis; fall back to the stored TTL.
+        if (hit.remainingTtl().isZero()) {
+            return Duration.ofSeconds(hit.record().getTtl());
+        }
+        return hit.record().isManual() ? hit.remainingTtl() : hit.remainingTtl().minus(staleWindow);
+    }
+
+    /**
+     * A cache entry for a record that was just written (or read without its expiry).
+     */
+    private DnsNearCache.Hit assumeFresh(DnsRecord record) {
+        Duration ttl = Duration.ofSeconds(record.getTtl());
+        return new DnsNearCache.Hit(record, record.isManual() ? ttl : ttl.plus(staleWindow));
+    }
+
+    /**
+     * The TTL to cache a resolved record for: the caller's if given, otherwise the upstream TTL within bounds.
+     * Negative answers always follow the negative TTL policy.
+     */
+    private long cacheTtl(DnsRecord record, Long requestedTtl) {
+        long min = Math.max(1, ttlPolicy.getMinTtl().getSeconds());
+        if (record.isNegative()) {
+            long ttl = record.getTtl() >= 0 ? record.getTtl() : ttlPolicy.getNegativeTtl().getSeconds();
+            return Math.min(Math.max(min, ttlPolicy.getMaxNegativeTtl().getSeconds()), Math.max(min, ttl));
+        }
+        if (requestedTtl != null) {
+            return requestedTtl;
+        }
+        if (!ttlPolicy.isRespectUpstream()) {
+            return defaultTtl;
+        }
+        long max = Math.max(min, ttlPolicy.getMaxTtl().getSeconds());
+        return Math.min(max, Math.max(min, record.getTtl()));
+    }
+
+    /**
+     * Builds the response for a lookup that ended at the last record of {@code chain}; the records before it
+     * are the CNAME hops that led there. The answer can only be cached as long as its shortest-lived hop,
+     * and an answer served from stale data carries the stale answer TTL.
+     *
+     * @param remainingTtl whether to report the time the records have left to live instead of their stored TTL
+     */
+    private DnsRecordResponse toResponse(String domain, List<DnsNearCache.Hit> chain, boolean remainingTtl) {
+        DnsRecord answer = chain.get(chain.size() - 1).record();
+        long ttl = Long.MAX_VALUE;
+        boolean stale = false;
+        for (DnsNearCache.Hit hit : chain) {
+            Duration fresh = freshRemaining(hit);
+            stale |= fresh.compareTo(Duration.ZERO) <= 0;
+            ttl = Math.min(ttl, remainingTtl ? fresh.getSeconds() : hit.record().getTtl());
+        }
+        if (stale) {
+            ttl = ttlPolicy.getStaleAnswerTtl().getSeconds();
+        }
+        List<String> cnames = chain.size() == 1 ? null : chain.subList(0, chain.size() - 1).stream()
+                .map(hit -> hit.record().getIp())
+                .toList();
+        DnsRecordResponse response = new DnsRecordResponse(domain, answer.getType(), answer.getValues(), ttl, cnames);
+        response.setStatus(answer.getStatus());
+        return response;
+    }
+
+    private static String recordType(String type) {
+        String normalized = type == null ? DnsRecord.TYPE_A : type.trim().toUpperCase(Locale.ROOT);
+        if (Type.value(normalized) < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown record type: " + type);
+        }
+        return normalized;
+    }
+
+    @Override
+    public Flux<DnsRecordResponse> resolveBatch(List<String> domains, Long optionalTtl) {
+        return resolveBatch(domains, DnsRecord.TYPE_A, optionalTtl);
+    }
+
+    @Override
+    public Flux<DnsRecordResponse> resolveBatch(List<String> domains, String type, Long optionalTtl) {
+        String recordType = recordType(type);
+        List<String> unique = domains.stream().distinct().toList();
+
+        List<DnsRecordResponse> overrides = new ArrayList<>();
+        List<BatchAnswer> nearHits = new ArrayList<>();
+        List<String> remaining = new ArrayList<>();
+        for (String domain : unique) {
+            DnsRecordResponse override = overrideAnswer(domain, recordType);
+            if (override != null) {
+                overrides.add(override);
+                continue;
+            }
+            DnsNearCache.Hit nearHit = nearCache.getHit(DnsRecord.cacheKey(domain, recordType));
+            if (nearHit != null) {
+                nearHits.add(new BatchAnswer(domain, List.of(nearHit), false));
+            } else {
+                remaining.add(domain);
+            }
+        }
+
+        // Aliases are looked up in the same MGET, so that cached CNAME chains need no upstream lookup.
+        List<String> keys = new ArrayList<>(cacheKeys(remaining, recordType));
+        if (!DnsRecord.TYPE_CNAME.equals(recordType)) {
+            keys.addAll(cacheKeys(remaining, DnsRecord.TYPE_CNAME));
+        }
+        Flux<DnsRecordResponse> fromRedisOrUpstream = remaining.isEmpty()
+                ? Flux.empty()
+                : readBatch(keys).flatMapMany(found -> readOrResolve(remaining, found, recordType, optionalTtl));
+
+        return Flux.concat(Flux.fromIterable(overrides),
+                Flux.fromIterable(nearHits).concatMap(hit -> serveBatchHit(hit, recordType, optionalTtl)),
+                fromRedisOrUpstream);
+    }
+
+    /**
+     * Reads a batch of keys, with the expiry of each one only if it is needed ({@link #expiryKnown()}): the values
+     * then come back with their expiries in one script per chunk instead of a PTTL per hit. Without it, the
+     * expiries are left null.
+     */
+    private Mono<Map<String, DnsCacheRepository.Stored>> readBatch(List<String> keys) {
+        if (expiryKnown()) {
+            return dnsCacheRepository.multiGetWithExpire(keys);
+        }
+        return dnsCacheRepository.multiGet(keys).map(values -> {
+            Map<String, DnsCacheRepository.Stored> found = new HashMap<>(values.size());
+            values.forEach((key, value) -> found.put(key, new DnsCacheRepository.Stored(value, null)));
+            return found;
+        });
+    }
+
+    private Flux<DnsRecordResponse> readOrResolve(List<String> domains, Map<String, DnsCacheRepository.Stored> found,
+                                                  String type, Long requestedTtl) {
+        Map<Boolean, List<String>> cached = domains.stream()
+                .collect(Collectors.partitioningBy(domain -> found.containsKey(DnsRecord.cacheKey(domain, type))));
+        Flux<DnsRecordResponse> hits = Flux.fromIterable(cached.get(true))
+                .flatMap(domain -> {
+                    String key = DnsRecord.cacheKey(domain, type);
+                    DnsCacheRepository.Stored stored = found.get(key);
+                    return codec.safeDecode(key, stored.value())
+                            .map(record -> stored.expire() != null
+                                    ? new DnsNearCache.Hit(record, stored.expire())
+                                    : assumeFresh(record))
+                            .flatMapMany(hit -> serveBatchHit(new BatchAnswer(domain, List.of(hit), false), type, requestedTtl));
+                }, redisChunkSize);
+        return Flux.merge(hits, resolveMissesAndStore(cached.get(false), found, type, requestedTtl));
+    }
+
+    /**
+     * Whether batch reads need the expiry of each hit, to refresh it ahead of time or to tell that it is stale.
+     */
+    private boolean expiryKnown() {
+        return ttlPolicy.isRefreshAheadEnabled() || !staleWindow.isZero();
+    }
+
+    /**
+     * Serves a batch hit like {@link #serveCached}, but never waits for a refresh: batches answer stale
+     * records at once and refresh them in the background.
+     */
+    private Mono<DnsRecordResponse> serveBatchHit(BatchAnswer hit, String type, Long requestedTtl) {
+        return serveCached(hit.chain(), type, requestedTtl, Duration.ZERO)
+                .doOnNext(this::countCached)
+                .map(chain -> toResponse(hit.domain(), chain, false));
+    }
+
+    /**
+     * Resolves batch misses with bounded concurrency: first through aliases found in the batch read, then upstream
+     * (deduplicated against other batches in flight). Upstream results are written back to Redis in buffered
+     * multi-key writes, and each answer is emitted once its write is done.
+     */
+    private Flux<DnsRecordResponse> resolveMissesAndStore(List<String> misses, Map<String, DnsCacheRepository.Stored> found,
+                                                          String type, Long requestedTtl) {
+        return Flux.fromIterable(misses)
+                .flatMap(domain -> cachedAlias(domain, found)
+                                .flatMap(alias -> followAlias(alias, type, 0))
+                                .map(chain -> new BatchAnswer(domain, chain, false))
+                                .doOnNext(answer -> countCached(answer.chain()))
+                                .switchIfEmpty(Mono.defer(() -> {
+                                    cacheMisses.increment();
+                                    return inFlightBatchLookups.execute(DnsRecord.cacheKey(domain, type),
+                                                    () -> resolveUpstream(domain, type)
+                                                            .map(records -> toChain(records, requestedTtl)))
+                                            .map(chain -> new BatchAnswer(domain, chain, true));
+                                }))
+                                .onErrorResume(err -> {
+                                    logger.warn("Batch resolution failed for domain: {} ({})", domain, err.getMessage());
+                                    return Mono.empty();
+                                }),
+                        batch.getResolveConcurrency())
+                .bufferTimeout(batch.getWriteBufferSize(), batch.getWriteFlushInterval())
+                .concatMap(answers -> {
+                    List<DnsRecord> records = answers.stream()
+                            .filter(BatchAnswer::resolved)
+                            .flatMap(answer -> answer.chain().stream())
+                            .map(DnsNearCache.Hit::record)
+                            .toList();
+                    return store(records)
+                            .onErrorResume(err -> {
+                                logger.error("Failed to store {} batch-resolved records", records.size(), err);
+                                return Mono.empty();
+                            })
+                            .thenMany(Flux.fromIterable(answers))
+                            .map(answer -> toResponse(answer.domain(), answer.chain(), false));
+                });
+    }
+
+    private Mono<DnsNearCache.Hit> cachedAlias(String domain, Map<String, DnsCacheRepository.Stored> found) {
+        String key = DnsRecord.cacheKey(domain, DnsRecord.TYPE_CNAME);
+        DnsCacheRepository.Stored stored = found.get(key);
+        return stored == null ? Mono.empty() : codec.safeDecode(key, stored.value()).map(this::assumeFresh);
+    }
+
+    private record BatchAnswer(String domain, List<DnsNearCache.Hit> chain, boolean resolved) {}
+
+    private static List<String> cacheKeys(List<String> domains, String type) {
+        return domains.stream().map(domain -> DnsRecord.cacheKey(domain, type)).toList();
+    }
+
+    /**
+     * Looks a domain up in the near-cache and Redis. If the requested type is not cached but the domain is a cached
+     * alias, the chain is followed through the cache, one hop per key.
+     *
+     * @return a Mono emitting the CNAME hops followed by the answer, or empty if the chain is not fully cached
+     */
+    private Mono<List<DnsNearCache.Hit>> lookupChain(String domain, String type) {
+        return Mono.defer(() -> lookupCached(DnsRecord.cacheKey(domain, type)))
+                .<List<DnsNearCache.Hit>>map(List::of)
+                .switchIfEmpty(Mono.defer(() -> lookupAlias(domain, type, 0)));
+    }
+
+    private Mono<List<DnsNearCache.Hit>> lookupAlias(String domain, String type, int hops) {
+        if (DnsRecord.TYPE_CNAME.equals(type) || hops >= MAX_CNAME_HOPS) {
+            return Mono.empty();
+        }
+        return lookupCached(DnsRecord.cacheKey(domain, DnsRecord.TYPE_CNAME))
+                .flatMap(alias -> followAlias(alias, type, hops));
     }
 
-    private Mono<DnsRecord> resolveAndCache(String domain, long ttlSeconds) {
-        return resolveWithFallback(domain)
-                .flatMap(ip -> {
-                    DnsRecord record = new DnsRecord(domain, ip, ttlSeconds, false);
-                    return JsonUtil.safeSerialize(record, objectMapper)
-                            .flatMap(json -> dnsCacheRepository.set(domain, json, ttlSeconds)
-                                    .thenReturn(record));
+    private Mono<List<DnsNearCache.Hit>> followAlias(DnsNearCache.Hit alias, String type, int hops) {
+        String target = alias.record().getIp();
+        if (target == null) {
+            return Mono.empty();
+        }
+        return lookupCached(DnsRecord.cacheKey(target, type))
+                .<List<DnsNearCache.Hit>>map(List::of)
+                .switchIfEmpty(Mono.defer(() -> lookupAlias(target, type, hops + 1)))
+                .map(rest -> {
+                    List<DnsNearCache.Hit> chain = new ArrayList<>(rest.size() + 1);
+                    chain.add(alias);
+                    chain.addAll(rest);
+                    return chain;
+                });
+    }
+
+    private Mono<DnsNearCache.Hit> lookupCached(String key) {
+        DnsNearCache.Hit nearHit = nearCache.getHit(key);
+        return nearHit != null ? Mono.just(nearHit) : getFromRedis(key);
+    }
+
+    /**
+     * Reads a record from the cache together with its remaining TTL and promotes it into the near-cache. With Redis
+     * these are two commands (GET and PTTL) on the shared connection, the second sent without waiting for the first.
+     */
+    private Mono<DnsNearCache.Hit> getFromRedis(String key) {
+        return dnsCacheRepository.getWithExpire(key)
+                .flatMap(stored -> codec.safeDecode(key, stored.value())
+                        .map(record -> new DnsNearCache.Hit(record, stored.expire())))
+                .doOnNext(hit -> nearCache.put(hit.record(), hit.remainingTtl()));
+    }
+
+    /**
+     * Resolves a cache miss (or refresh) upstream and stores the result. Concurrent lookups for the same domain
+     * and type share a single one; the TTL of whichever caller started it is the one applied.
+     */
+    private Mono<List<DnsNearCache.Hit>> resolveAndCache(String domain, String type, Long requestedTtl) {
+        return inFlightLookups.execute(DnsRecord.cacheKey(domain, type), () -> coalescing.isDistributedLockEnabled()
+                ? resolveUnderLease(domain, type, requestedTtl)
+                : resolveUpstreamAndStore(domain, type, requestedTtl));
+    }
+
+    /**
+     * Takes a Redis lease before going upstream so only one node refreshes a domain at a time.
+     * Nodes that lose the race poll Redis for the winner's result, and resolve on their own
+     * only if it has not shown up within the configured wait.
+     */
+    private Mono<List<DnsNearCache.Hit>> resolveUnderLease(String domain, String type, Long requestedTtl) {
+        String lockKey = "lock:" + DnsRecord.cacheKey(domain, type);
+        String token = UUID.randomUUID().toString();
+        return dnsCacheRepository.tryLock(lockKey, token, coalescing.getLockLease())
+                .onErrorReturn(false)
+                .flatMap(acquired -> acquired
+                        ? resolveUpstreamAndStore(domain, type, requestedTtl)
+                                .flatMap(chain -> releaseLease(lockKey, token).thenReturn(chain))
+                                .onErrorResume(err -> releaseLease(lockKey, token).then(Mono.error(err)))
+                        : awaitPeerRefresh(domain, type)
+                                .switchIfEmpty(Mono.defer(() -> resolveUpstreamAndStore(domain, type, requestedTtl))));
+    }
+
+    private Mono<Boolean> releaseLease(String lockKey, String token) {
+        return dnsCacheRepository.unlock(lockKey, token)
+                .onErrorResume(err -> {
+                    logger.warn("Failed to release lease {}", lockKey, err);
+                    return Mono.just(false);
+                });
+    }
+
+    private Mono<List<DnsNearCache.Hit>> awaitPeerRefresh(String domain, String type) {
+        long maxPolls = Math.max(1, coalescing.getLockWait().toMillis()
+                / Math.max(1, coalescing.getLockPollInterval().toMillis()));
+        // A peer's refresh shows up as a chain that is fresh again.
+        return lookupChain(domain, type)
+                .filter(chain -> chain.stream().allMatch(hit -> freshRemaining(hit).compareTo(Duration.ZERO) > 0))
+                .repeatWhenEmpty(repeats -> repeats.take(maxPolls).delayElements(coalescing.getLockPollInterval()));
+    }
+
+    private Mono<List<DnsNearCache.Hit>> resolveUpstreamAndStore(String domain, String type, Long requestedTtl) {
+        return resolveUpstream(domain, type)
+                .flatMap(records -> {
+                    List<DnsNearCache.Hit> chain = toChain(records, requestedTtl);
+                    return store(chain.stream().map(DnsNearCache.Hit::record).toList()).thenReturn(chain);
                 })
                 .onErrorResume(err -> {
-                    logger.error("DNS resolution failed for domain: {}", domain, err);
-                    return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unable to resolve domain: " + domain));
+                    logger.error("DNS resolution failed for domain: {} ({})", domain, type, err);
+                    return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unable to resolve domain: " + domain, err));
                 });
     }
 
-    private Mono<String> resolveWithFallback(String domain) {
-        if (fallbackServers == null || fallbackServers.isEmpty()) {
-            return Mono.error(new UnknownHostException("No fallback servers configured"));
-        }
-        Mono<String> chain = Mono.error(new UnknownHostException("No DNS servers tried yet"));
-        for (String server : fallbackServers) {
-            final Mono<String> attempt = Mono.fromCallable(() -> DnsFallbackResolver.resolve(domain, server))
-                    .subscribeOn(Schedulers.boundedElastic());
+    /**
+     * Asks upstream for the records of one type. A negative answer becomes an empty record with the reason
+     * in its status, so that it is cached like any other (RFC 2308) unless negative caching is off.
+     */
+    private Mono<List<DnsRecord>> resolveUpstream(String domain, String type) {
+        return upstreamResolver.resolve(domain, type)
+                .onErrorResume(NegativeAnswerException.class, negative -> {
+                    if (!ttlPolicy.isNegativeCachingEnabled()) {
+                        return Mono.error(negative);
+                    }
+                    String status = negative.getRcode() == Rcode.NXDOMAIN ? DnsRecord.STATUS_NXDOMAIN : DnsRecord.STATUS_NODATA;
+                    countNegative(status, "upstream");
+                    return Mono.just(List.of(DnsRecord.negative(domain, type, status, negative.getNegativeTtl())));
+                });
+    }
 
-            chain = chain.onErrorResume(err -> attempt);
+    /**
+     * Counts a lookup answered from the cache: stale if any hop of the chain is past its TTL.
+     */
+    private void countCached(List<DnsNearCache.Hit> chain) {
+        boolean stale = false;
+        for (DnsNearCache.Hit hit : chain) {
+            stale |= freshRemaining(hit).compareTo(Duration.ZERO) <= 0;
+        }
+        (stale ? staleCacheHits : cacheHits).increment();
+        DnsRecord answer = chain.get(chain.size() - 1).record();
+        if (answer.isNegative()) {
+            countNegative(answer.getStatus(), "cache");
         }
+    }
+
+    private void countNegative(String status, String source) {
+        meterRegistry.counter(NEGATIVE_ANSWERS_METRIC, "status", status, "source", source).increment();
+    }
 
-        return chain;
+    /**
+     * Caches the hops and answer of an upstream lookup, each under its own upstream TTL (see {@link #cacheTtl})
+     * or under the caller's; the values keep the TTLs they were served with.
+     */
+    private List<DnsNearCache.Hit> toChain(List<DnsRecord> records, Long requestedTtl) {
+        return records.stream()
+                .map(record -> {
+                    DnsRecord cached = new DnsRecord(record.getDomain(), record.getType(), record.getValues(),
+                            cacheTtl(record, requestedTtl), false);
+                    cached.setStatus(record.getStatus());
+                    return cached;
+                })
+                .map(this::assumeFresh)
+                .toList();
+    }
+
+    /**
+     * Writes records to Redis in one multi-key write, then to the near-cache. Resolved records are kept
+     * for the stale window past their TTL so they can still be served if upstream fails.
+     */
+    private Mono<Long> store(List<DnsRecord> records) {
+        if (records.isEmpty()) {
+            return Mono.just(0L);
+        }
+        return Flux.fromIterable(records)
+                .concatMap(record -> codec.safeEncode(record)
+                        .map(value -> new DnsCacheRepository.Entry(record.getCacheKey(), value,
+                                assumeFresh(record).remainingTtl().getSeconds())))
+                .collectList()
+                .flatMap(dnsCacheRepository::setAll)
+                .doOnSuccess(stored -> records.forEach(record ->
+                        nearCache.put(record, assumeFresh(record).remainingTtl())));
     }
 
 
@@ -103,8 +687,9 @@ public class DnsServiceImpl implements DnsService {
     @Override
     public Mono<DnsRecordResponse> createManualEntry(DnsRecord record) {
         record.setManual(true);
-        return JsonUtil.safeSerialize(record, objectMapper)
-                .flatMap(json -> dnsCacheRepository.set(record.getDomain(), json, record.getTtl())
+        return codec.safeEncode(record)
+                .flatMap(value -> dnsCacheRepository.setManual(record.getCacheKey(), value, record.getTtl())
+                        .doOnSuccess(ok -> invalidate(List.of(record.getCacheKey())))
                         .thenReturn(record))
                 .map(DnsRecordMapper::toResponse);
     }
@@ -112,56 +697,205 @@ public class DnsServiceImpl implements DnsService {
 
     // --- Read ---
     @Override
-    public Mono<DnsRecordResponse> getCachedRecord(String domain) {
-        return dnsCacheRepository.get(domain)
-                .flatMap(json -> JsonUtil.safeDeserialize(json, objectMapper))
+    public Mono<DnsRecordResponse> getCachedRecord(String domain, String type) {
+        String key = DnsRecord.cacheKey(domain, recordType(type));
+        return dnsCacheRepository.get(key)
+                .flatMap(value -> codec.safeDecode(key, value))
                 .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Record not found")))
                 .map(DnsRecordMapper::toResponse);
     }
 
     @Override
-    public Flux<DnsRecordResponse> getAllCachedRecords() {
-        return dnsCacheRepository.scanKeys()
-                .flatMap(key -> dnsCacheRepository.get(key)
-                        .flatMap(json -> JsonUtil.safeDeserialize(json, objectMapper)))
+    public Mono<CachePage> listCachedRecords(CacheListRequest request) {
+        String cursor;
+        try {
+            cursor = request.getCursor() == null || request.getCursor().isBlank()
+                    ? null
+                    : new String(Base64.getUrlDecoder().decode(request.getCursor()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor"));
+        }
+        String domain = request.getDomain();
+        Predicate<String> domainMatches = domain == null ? name -> true : Glob.compile(domain);
+        // Keys of other types than A end in "/TYPE": the pattern lets them through, the domain is matched here.
+        String pattern = domain == null ? "*" : domain + "*";
+        long minTtl = request.getMinTtl() != null ? request.getMinTtl() : 0;
+        long maxTtl = request.getMaxTtl() != null ? request.getMaxTtl() : Long.MAX_VALUE;
+        boolean manual = request.isManual();
+        return scanPage(cursor, pattern, manual, request.getLimit(), key -> domainMatches.test(DnsRecord.domainOf(key)), 1)
+                .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor"))
+                .map(page -> new CachePage(
+                        // Read a chunk at a time, as the response is written: MGET by MGET, never ahead of the client.
+                        Flux.fromIterable(page.keys())
+                                .buffer(redisChunkSize)
+                                .concatMap(keys -> manual ? fetchManualRecords(keys) : fetchRecords(keys))
+                                .filter(record -> record.getTtl() >= minTtl && record.getTtl() <= maxTtl)
+                                .map(DnsRecordMapper::toResponse),
+                        page.cursor() == null ? null : Base64.getUrlEncoder().withoutPadding()
+                                .encodeToString(page.cursor().getBytes(StandardCharsets.UTF_8))));
+    }
+
+    /**
+     * Scans on while the steps find no key passing the filter, up to {@link #MAX_SCAN_STEPS_PER_PAGE} steps,
+     * so that a selective filter does not hand out a run of empty pages.
+     */
+    private Mono<DnsCacheRepository.KeyPage> scanPage(String cursor, String pattern, boolean manual, int limit,
+                                                      Predicate<String> keyFilter, int steps) {
+        return dnsCacheRepository.scanKeys(cursor, pattern, manual, limit)
+                .flatMap(step -> {
+                    // SCAN may return a key twice; a page lists it once.
+                    List<String> keys = step.keys().stream().filter(keyFilter).distinct().toList();
+                    if (!keys.isEmpty() || step.cursor() == null || steps >= MAX_SCAN_STEPS_PER_PAGE) {
+                        return Mono.just(new DnsCacheRepository.KeyPage(keys, step.cursor()));
+                    }
+                    return scanPage(step.cursor(), pattern, manual, limit, keyFilter, steps + 1);
+                });
+    }
+
+    @Override
+    public Flux<DnsRecordResponse> getAllManualEntries() {
+        return dnsCacheRepository.scanManualDomains()
+                .buffer(redisChunkSize)
+                .concatMap(this::fetchManualRecords)
+                .map(DnsRecordMapper::toResponse);
+    }
+
+    /**
+     * Fetches the records of a chunk of the manual index, dropping (and pruning) the ones no longer manual.
+     */
+    private Flux<DnsRecord> fetchManualRecords(List<String> indexed) {
+        return fetchRecords(indexed)
+                .collectList()
+                .flatMapMany(records -> pruneManualIndex(indexed, records)
+                        .thenMany(Flux.fromIterable(records)))
+                .filter(DnsRecord::isManual);
+    }
+
+    /**
+     * Fetches the records of one chunk of cache keys with a single MGET, skipping keys that are gone.
+     */
+    private Flux<DnsRecord> fetchRecords(List<String> keys) {
+        return dnsCacheRepository.multiGet(keys)
+                .flatMapMany(found -> Flux.fromIterable(keys)
+                        .filter(found::containsKey)
+                        .concatMap(key -> codec.safeDecode(key, found.get(key))));
+    }
+
+    /**
+     * Drops index entries whose record expired or was replaced by a resolved one.
+     */
+    private Mono<Long> pruneManualIndex(List<String> indexed, List<DnsRecord> records) {
+        Set<String> stillManual = records.stream()
+                .filter(DnsRecord::isManual)
+                .map(DnsRecord::getCacheKey)
+                .collect(Collectors.toSet());
+        List<String> stale = indexed.stream().filter(key -> !stillManual.contains(key)).toList();
+        return dnsCacheRepository.removeFromManualIndex(stale)
+                .onErrorResume(err -> {
+                    logger.warn("Failed to prune {} stale manual index entries", stale.size(), err);
+                    return Mono.just(0L);
+                });
+    }
+
+    @Override
+    public Flux<DnsRecordResponse> getZoneRecords(String zone) {
+        return zoneKeys(zone)
+                .buffer(redisChunkSize)
+                .concatMap(keys -> dnsCacheRepository.multiGet(keys)
+                        .flatMapMany(found -> pruneZoneIndex(keys.stream().filter(key -> !found.containsKey(key)).toList())
+                                .thenMany(Flux.fromIterable(keys)
+                                        .filter(found::containsKey)
+                                        .concatMap(key -> codec.safeDecode(key, found.get(key))))))
                 .map(DnsRecordMapper::toResponse);
     }
 
+    /**
+     * The cache keys of a zone from the index; for {@code *.example.com}, without those of example.com itself.
+     */
+    private Flux<String> zoneKeys(String zone) {
+        String name = zone.endsWith(".") ? zone.substring(0, zone.length() - 1) : zone;
+        boolean belowOnly = name.startsWith("*.");
+        String apex = belowOnly ? name.substring(2) : name;
+        if (apex.isEmpty() || apex.startsWith(".") || apex.contains("..") || apex.contains("*") || apex.contains("/")) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid zone: " + zone));
+        }
+        return dnsCacheRepository.scanZone(apex)
+                .filter(key -> !belowOnly || !DnsRecord.domainOf(key).equals(apex));
+    }
+
+    /**
+     * Drops zone index entries whose record expired.
+     */
+    private Mono<Long> pruneZoneIndex(List<String> gone) {
+        if (gone.isEmpty()) {
+            return Mono.just(0L);
+        }
+        return dnsCacheRepository.removeFromZoneIndex(gone)
+                .onErrorResume(err -> {
+                    logger.warn("Failed to prune {} stale zone index entries", gone.size(), err);
+                    return Mono.just(0L);
+                });
+    }
+
     @Override
-    public Mono<Boolean> exists(String domain) {
-        return dnsCacheRepository.get(domain)
+    public Mono<Boolean> exists(String domain, String type) {
+        return dnsCacheRepository.get(DnsRecord.cacheKey(domain, recordType(type)))
                 .map(val -> true)
                 .defaultIfEmpty(false);
     }
 
     @Override
-    public Flux<DnsRecordResponse> getBatch(List<String> domains) {
-        return Flux.fromIterable(domains)
-                .flatMap(domain -> dnsCacheRepository.get(domain)
-                        .flatMap(json -> JsonUtil.safeDeserialize(json, objectMapper)))
+    public Flux<DnsRecordResponse> getBatch(List<String> domains, String type) {
+        List<String> keys = cacheKeys(domains.stream().distinct().toList(), recordType(type));
+        return fetchRecords(keys)
                 .map(DnsRecordMapper::toResponse);
     }
 
 
     // --- Update ---
     @Override
-    public Mono<Boolean> updateTTL(String domain, long newTTL) {
-        return dnsCacheRepository.get(domain)
-                .flatMap(json -> JsonUtil.safeDeserialize(json, objectMapper))
-                .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Record not found for TTL update")))
-                .flatMap(record -> {
-                    record.setTtl(newTTL);
-                    return JsonUtil.safeSerialize(record, objectMapper)
-                            .flatMap(serialized -> dnsCacheRepository.set(domain, serialized, newTTL))
-                            .thenReturn(true);
-                });
+    public Mono<TtlUpdateResponse> updateTTL(String domain, String type, long newTTL) {
+        String recordType = recordType(type);
+        String key = DnsRecord.cacheKey(domain, recordType);
+        return dnsCacheRepository.updateTtl(key, newTTL, staleWindow.getSeconds())
+                .doOnSuccess(remaining -> invalidate(List.of(key)))
+                .map(remaining -> new TtlUpdateResponse(domain, recordType, remaining))
+                .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Record not found for TTL update")));
+    }
+
+    @Override
+    public Flux<TtlUpdateResponse> updateTTLBatch(List<String> domains, String type, long newTTL) {
+        String recordType = recordType(type);
+        List<String> unique = domains.stream().distinct().toList();
+        List<String> keys = cacheKeys(unique, recordType);
+        return dnsCacheRepository.updateTtlAll(keys, newTTL, staleWindow.getSeconds())
+                .doOnSuccess(updated -> invalidate(keys))
+                .flatMapMany(updated -> Flux.fromIterable(unique)
+                        .filter(domain -> updated.containsKey(DnsRecord.cacheKey(domain, recordType)))
+                        .map(domain -> new TtlUpdateResponse(domain, recordType, updated.get(DnsRecord.cacheKey(domain, recordType)))));
+    }
+
+
+    @Override
+    public Flux<TtlUpdateResponse> updateZoneTTL(String zone, long newTTL) {
+        return zoneKeys(zone)
+                .buffer(redisChunkSize)
+                .concatMap(keys -> dnsCacheRepository.updateTtlAll(keys, newTTL, staleWindow.getSeconds())
+                        .doOnSuccess(updated -> invalidate(keys))
+                        .flatMapMany(updated -> pruneZoneIndex(keys.stream().filter(key -> !updated.containsKey(key)).toList())
+                                .thenMany(Flux.fromIterable(keys)
+                                        .filter(updated::containsKey)
+                                        .map(key -> new TtlUpdateResponse(DnsRecord.domainOf(key), DnsRecord.typeOf(key),
+                                                updated.get(key))))));
     }
 
 
     // --- Delete ---
     @Override
-    public Mono<Boolean> deleteCachedRecord(String domain) {
-        return dnsCacheRepository.delete(domain)
+    public Mono<Boolean> deleteCachedRecord(String domain, String type) {
+        String key = DnsRecord.cacheKey(domain, recordType(type));
+        return dnsCacheRepository.delete(key)
+                .doOnSuccess(deleted -> invalidate(List.of(key)))
                 .flatMap(deleted -> deleted
                         ? Mono.just(true)
                         : Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "No such domain to delete")));
@@ -169,36 +903,114 @@ public class DnsServiceImpl implements DnsService {
 
     @Override
     public Mono<String> clearCache() {
-        return dnsCacheRepository.scanKeys()
-                .flatMap(dnsCacheRepository::delete)
-                .then(Mono.just("Cache cleared"));
+        return dnsCacheRepository.clear()
+                .reduce(0L, Long::sum)
+                .doOnSuccess(deleted -> invalidateAll())
+                .map(deleted -> "Deleted " + deleted + " entries.");
+    }
+
+    @Override
+    public Mono<ClearJobResponse> startClearJob() {
+        return Mono.fromSupplier(() -> {
+            pruneClearJobs();
+            ClearJob running = runningClearJob.get();
+            if (running != null) {
+                return running.toResponse();
+            }
+            ClearJob job = new ClearJob();
+            if (!runningClearJob.compareAndSet(null, job)) {
+                return runningClearJob.get().toResponse();
+            }
+            clearJobs.put(job.getId(), job);
+            dnsCacheRepository.clear()
+                    .doOnNext(job::addDeleted)
+                    .doFinally(signal -> {
+                        invalidateAll();
+                        runningClearJob.compareAndSet(job, null);
+                    })
+                    .subscribe(null, err -> {
+                        job.fail(err);
+                        logger.error("Cache clear job {} failed", job.getId(), err);
+                    }, () -> {
+                        job.complete();
+                        logger.info("Cache clear job {} removed {} keys", job.getId(), job.getDeleted());
+                    });
+            return job.toResponse();
+        });
+    }
+
+    @Override
+    public Mono<ClearJobResponse> getClearJob(String jobId) {
+        return Mono.justOrEmpty(clearJobs.get(jobId))
+                .map(ClearJob::toResponse)
+                .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "No such clear job")));
+    }
+
+    private void pruneClearJobs() {
+        Instant cutoff = Instant.now().minus(CLEAR_JOB_RETENTION);
+        clearJobs.values().removeIf(job -> job.getFinishedAt() != null && job.getFinishedAt().isBefore(cutoff));
     }
 
     @Override
     public Mono<String> deleteAllManualEntries() {
-        return dnsCacheRepository.scanKeys()
-                .flatMap(key -> dnsCacheRepository.get(key)
-                        .flatMap(json -> JsonUtil.safeDeserialize(json, objectMapper))
-                        .flatMap(record -> {
-                            if (record.isManual()) {
-                                return dnsCacheRepository.delete(key)
-                                        .filter(Boolean::booleanValue)
-                                        .map(deleted -> 1L);
-                            } else {
-                                return Mono.just(0L);
-                            }
-                        })
-                )
+        return dnsCacheRepository.scanManualDomains()
+                .buffer(redisChunkSize)
+                .concatMap(domains -> fetchRecords(domains)
+                        .collectList()
+                        .flatMap(records -> {
+                            List<String> manual = records.stream()
+                                    .filter(DnsRecord::isManual)
+                                    .map(DnsRecord::getCacheKey)
+                                    .toList();
+                            return Mono.zip(dnsCacheRepository.deleteAll(manual), pruneManualIndex(domains, records))
+                                    .doOnSuccess(counts -> invalidate(manual))
+                                    .map(Tuple2::getT1);
+                        }))
                 .reduce(0L, Long::sum)
                 .map(count -> "Deleted " + count + " manual entries.");
     }
 
     @Override
-    public Mono<String> deleteBatch(List<String> domains) {
-        return Flux.fromIterable(domains)
-                .flatMap(dnsCacheRepository::delete)
-                .filter(Boolean::booleanValue)
-                .count()
+    public Mono<String> deleteBatch(List<String> domains, String type) {
+        List<String> keys = cacheKeys(domains, recordType(type));
+        return dnsCacheRepository.deleteAll(keys)
+                .doOnSuccess(count -> invalidate(keys))
+                .map(deletedCount -> "Deleted " + deletedCount + " entries.");
+    }
+
+    @Override
+    public Mono<String> deleteZone(String zone) {
+        return zoneKeys(zone)
+                .buffer(redisChunkSize)
+                .concatMap(keys -> dnsCacheRepository.deleteAll(keys)
+                        .doOnSuccess(count -> invalidate(keys)))
+                .reduce(0L, Long::sum)
                 .map(deletedCount -> "Deleted " + deletedCount + " entries.");
     }
+
+    // --- Overrides ---
+    @Override
+    public Mono<OverrideRuleSet> getOverrideRules() {
+        return Mono.fromSupplier(overrideRules::current);
+    }
+
+    @Override
+    public Mono<OverrideRuleSet> replaceOverrideRules(OverrideRuleSet rules) {
+        return overrideRules.replace(rules)
+                .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()))
+                .onErrorMap(IllegalStateException.class, e -> new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage()));
+    }
+
+    /**
+     * Drops changed records from the near-cache, and from the local caches of the other nodes.
+     */
+    private void invalidate(Collection<String> keys) {
+        nearCache.invalidateAll(keys);
+        invalidationBus.publish(keys);
+    }
+
+    private void invalidateAll() {
+        nearCache.invalidateAll();
+        invalidationBus.publishAll();
+    }
 }
@@ -0,0 +1,27 @@
+package com.zzeng.dnscache.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports {@code OUT_OF_SERVICE} until {@link CacheSnapshotService} has finished its warm start. It is part of the
+ * readiness group (see {@code management.endpoint.health.group.readiness}), so that a load balancer only sends
+ * traffic once the cache is warm; liveness is not affected.
+ */
+@Component
+public class WarmStartHealthIndicator implements HealthIndicator {
+
+    private final CacheSnapshotService snapshotService;
+
+    @Autowired
+    public WarmStartHealthIndicator(CacheSnapshotService snapshotService) {
+        this.snapshotService = snapshotService;
+    }
+
+    @Override
+    public Health health() {
+        return snapshotService.isWarm() ? Health.up().build() : Health.outOfService().build();
+    }
+}
@@ -0,0 +1,43 @@
+package com.zzeng.dnscache.util;
+
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Glob patterns as far as Redis {@code MATCH} and the cache filters agree on them: {@code *} matches any run of
+ * characters, {@code ?} any one character, and every other character itself.
+ */
+public final class Glob {
+
+    private Glob() {}
+
+    /**
+     * @return a predicate telling whether a whole string matches the pattern
+     */
+    public static Predicate<String> compile(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 8);
+        int literalStart = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literalStart) {
+                    regex.append(Pattern.quote(glob.substring(literalStart, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literalStart = i + 1;
+            }
+        }
+        if (literalStart < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literalStart)));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL).asMatchPredicate();
+    }
+
+    /**
+     * Escapes the characters Redis {@code MATCH} gives a meaning that this subset does not: {@code [}, {@code ]}
+     * and {@code \}.
+     */
+    public static String toRedis(String glob) {
+        return glob.replaceAll("([\\[\\]\\\\])", "\\\\$1");
+    }
+}
@@ -0,0 +1,48 @@
+package com.zzeng.dnscache.util;
+
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent executions of the same keyed operation.
+ * While a call for a key is in flight, every other caller for that key shares its result
+ * instead of starting a new one. The entry is dropped as soon as the call terminates,
+ * so results and errors are never cached beyond the in-flight window.
+ *
+ * @param <K> the key type
+ * @param <V> the result type
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Returns a Mono sharing the in-flight call for the key, starting one with the loader if none is running.
+     *
+     * @param key the deduplication key
+     * @param loader supplies the operation to run when no call for the key is in flight
+     * @return a Mono emitting the shared result
+     */
+    public Mono<V> execute(K key, Supplier<Mono<V>> loader) {
+        return Mono.defer(() -> inFlight.computeIfAbsent(key, k -> share(k, loader)));
+    }
+
+    /**
+     * @return the number of keys currently being loaded
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private Mono<V> share(K key, Supplier<Mono<V>> loader) {
+        AtomicReference<Mono<V>> self = new AtomicReference<>();
+        self.set(Mono.defer(loader)
+                .doFinally(signal -> inFlight.remove(key, self.get()))
+                .cache());
+        return self.get();
+    }
+}
@@ -0,0 +1,113 @@
+package com.zzeng.dnscache.cache;
+
+import com.zzeng.dnscache.config.DnsProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheInvalidationBusTest {
+
+    private final RecordingCache cache = new RecordingCache();
+    private SimpleMeterRegistry meterRegistry;
+    private CacheInvalidationBus bus;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        bus = new CacheInvalidationBus(null, List.of(cache), new DnsProperties(), meterRegistry);
+    }
+
+    @Test
+    void testBatchesAreEncodedAsOneNumberedLine() {
+        String id = bus.getNodeId();
+
+        assertEquals(id + " 1 K a.com b.com", bus.encode(List.of(keys("a.com", "b.com"), keys("a.com"))));
+        assertEquals(id + " 2 A", bus.encode(List.of(keys("c.com"), new CacheInvalidationBus.Invalidation(List.of(), true))));
+        // Heartbeats repeat the last number rather than taking a new one.
+        assertEquals(id + " 2 H", bus.encode(List.of(new CacheInvalidationBus.Invalidation(List.of(), false))));
+    }
+
+    @Test
+    void testMessagesFromOtherNodesDropKeysOnce() {
+        bus.apply("peer 1 K a.com b.com");
+        bus.apply("peer 1 K a.com b.com");
+        bus.apply("peer 2 A");
+        bus.apply(bus.getNodeId() + " 1 K own.com");
+
+        assertEquals(List.of(List.of("a.com", "b.com")), cache.invalidated);
+        assertEquals(1, cache.flushes);
+        assertEquals(3.0, meterRegistry.get(CacheInvalidationBus.MESSAGES_METRIC)
+                .tag("direction", "received").counter().count());
+    }
+
+    @Test
+    void testSkippedNumbersFlushTheLocalCaches() {
+        bus.apply("peer 5 K a.com");
+        bus.apply("peer 5 H");
+        assertEquals(0, cache.flushes);
+
+        // Number 6 was lost: the heartbeat gives it away.
+        bus.apply("peer 6 H");
+        assertEquals(1, cache.flushes);
+        bus.apply("peer 8 K b.com");
+        assertEquals(2, cache.flushes);
+        assertTrue(cache.invalidated.stream().noneMatch(keys -> keys.contains("b.com")));
+
+        bus.apply("peer 9 K c.com");
+        assertEquals(List.of("c.com"), cache.invalidated.get(cache.invalidated.size() - 1));
+        assertEquals(2.0, meterRegistry.get(CacheInvalidationBus.FLUSHES_METRIC)
+                .tag("reason", "gap").counter().count());
+    }
+
+    @Test
+    void testSilentPeersAreForgottenAndTheirReturnCountsAsAGap() {
+        long now = System.currentTimeMillis();
+        long silence = new DnsProperties().getInvalidation().getHeartbeatInterval().toMillis()
+                * CacheInvalidationBus.SILENT_HEARTBEATS;
+        // Just subscribed: nodes already running are first heard of in the middle of their numbers.
+        bus.listeningSince(now);
+        bus.apply("restarted 0 H");
+        bus.apply("alive 3 K a.com");
+        assertEquals(2, bus.peerCount());
+
+        bus.forgetSilentPeers(now + silence - 1);
+        assertEquals(2, bus.peerCount());
+        bus.forgetSilentPeers(now + silence);
+        assertEquals(0, bus.peerCount());
+
+        // Listening for long enough to know every live node: a node starting now begins at the first number,
+        // one that was only silent has moved on.
+        bus.listeningSince(now - silence);
+        bus.apply("new 1 K b.com");
+        assertEquals(0, cache.flushes);
+        bus.apply("alive 4 K c.com");
+        assertEquals(1, cache.flushes);
+    }
+
+    private static CacheInvalidationBus.Invalidation keys(String... keys) {
+        return new CacheInvalidationBus.Invalidation(List.of(keys), false);
+    }
+
+    private static final class RecordingCache implements LocalCache {
+
+        final List<List<String>> invalidated = new ArrayList<>();
+        int flushes;
+
+        @Override
+        public void invalidateAll(Collection<String> keys) {
+            invalidated.add(List.copyOf(keys));
+        }
+
+        @Override
+        public void invalidateAll() {
+            flushes++;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.zzeng.dnscache.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CacheSnapshotFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testWriteAndReadBack() throws IOException {
+        Path file = dir.resolve("snapshot.bin");
+        CacheSnapshotFile.write(file, List.of(
+                new CacheSnapshotFile.Entry("a.com", bytes("a"), 1_000L, 42),
+                new CacheSnapshotFile.Entry("b.com/AAAA", bytes("bb"), 2_000L, 7)));
+
+        List<CacheSnapshotFile.Entry> entries = CacheSnapshotFile.read(file);
+
+        assertEquals(2, entries.size());
+        assertEquals("a.com", entries.get(0).key());
+        assertArrayEquals(bytes("a"), entries.get(0).value());
+        assertEquals(1_000L, entries.get(0).expiresAtMillis());
+        assertEquals(42, entries.get(0).hits());
+        assertEquals("b.com/AAAA", entries.get(1).key());
+        assertEquals(7, entries.get(1).hits());
+    }
+
+    @Test
+    void testEntryCutShortEndsTheRead() throws IOException {
+        Path file = dir.resolve("snapshot.bin");
+        CacheSnapshotFile.write(file, List.of(
+                new CacheSnapshotFile.Entry("a.com", bytes("a"), 1_000L, 1),
+                new CacheSnapshotFile.Entry("b.com", bytes("b"), 1_000L, 1)));
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 3));
+
+        List<CacheSnapshotFile.Entry> entries = CacheSnapshotFile.read(file);
+
+        assertEquals(1, entries.size());
+        assertEquals("a.com", entries.get(0).key());
+    }
+
+    @Test
+    void testMissingAndForeignFiles() throws IOException {
+        assertEquals(List.of(), CacheSnapshotFile.read(dir.resolve("missing.bin")));
+
+        Path foreign = dir.resolve("foreign.bin");
+        Files.write(foreign, bytes("not a snapshot"));
+        assertThrows(IOException.class, () -> CacheSnapshotFile.read(foreign));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,83 @@
+package com.zzeng.dnscache.cache;
+
+import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.model.DnsRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DnsNearCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private DnsNearCache nearCache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        nearCache = new DnsNearCache(new DnsProperties(), meterRegistry);
+    }
+
+    @Test
+    void testPutAndGet() {
+        nearCache.put(new DnsRecord("example.com", "93.184.216.34", 300L, false), Duration.ofSeconds(60));
+
+        DnsRecord hit = nearCache.getIfPresent("example.com");
+        assertNotNull(hit);
+        assertEquals("93.184.216.34", hit.getIp());
+    }
+
+    @Test
+    void testExpiredOrPersistentTtlIsNotCached() {
+        nearCache.put(new DnsRecord("zero.com", "1.1.1.1", 300L, false), Duration.ZERO);
+        nearCache.put(new DnsRecord("negative.com", "1.1.1.1", 300L, false), Duration.ofSeconds(-1));
+
+        assertNull(nearCache.getIfPresent("zero.com"));
+        assertNull(nearCache.getIfPresent("negative.com"));
+    }
+
+    @Test
+    void testInvalidate() {
+        nearCache.put(new DnsRecord("a.com", "1.1.1.1", 300L, false), Duration.ofSeconds(60));
+        nearCache.put(new DnsRecord("b.com", "2.2.2.2", 300L, false), Duration.ofSeconds(60));
+        nearCache.put(new DnsRecord("c.com", "3.3.3.3", 300L, false), Duration.ofSeconds(60));
+
+        nearCache.invalidate("a.com");
+        assertNull(nearCache.getIfPresent("a.com"));
+
+        nearCache.invalidateAll(List.of("b.com"));
+        assertNull(nearCache.getIfPresent("b.com"));
+        assertNotNull(nearCache.getIfPresent("c.com"));
+
+        nearCache.invalidateAll();
+        assertNull(nearCache.getIfPresent("c.com"));
+    }
+
+    @Test
+    void testDisabledCacheNeverHits() {
+        DnsProperties properties = new DnsProperties();
+        properties.getNearCache().setEnabled(false);
+        DnsNearCache disabled = new DnsNearCache(properties, meterRegistry);
+
+        disabled.put(new DnsRecord("example.com", "93.184.216.34", 300L, false), Duration.ofSeconds(60));
+        assertNull(disabled.getIfPresent("example.com"));
+    }
+
+    @Test
+    void testHitAndMissMetricsAreExposed() {
+        nearCache.put(new DnsRecord("example.com", "93.184.216.34", 300L, false), Duration.ofSeconds(60));
+        nearCache.getIfPresent("example.com");
+        nearCache.getIfPresent("missing.com");
+
+        assertEquals(1.0, meterRegistry.get("cache.gets")
+                .tag("cache", DnsNearCache.CACHE_NAME).tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets")
+                .tag("cache", DnsNearCache.CACHE_NAME).tag("result", "miss").functionCounter().count());
+    }
+}
@@ -0,0 +1,118 @@
+package com.zzeng.dnscache.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapRecordStoreTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void testPutGetAndOverwrite() {
+        OffHeapRecordStore store = new OffHeapRecordStore(64 * 1024, 128, now::get);
+
+        assertTrue(store.put("example.com", bytes("v1"), Duration.ofSeconds(60)));
+        assertTrue(store.put("example.com/AAAA", bytes("v2"), Duration.ZERO));
+        assertTrue(store.put("example.com", bytes("v3-longer"), Duration.ofSeconds(30)));
+
+        assertArrayEquals(bytes("v3-longer"), store.get("example.com"));
+        assertArrayEquals(bytes("v2"), store.get("example.com/AAAA"));
+        assertEquals(Duration.ofSeconds(30), store.remaining("example.com"));
+        assertEquals(Duration.ZERO, store.remaining("example.com/AAAA"));
+        assertNull(store.get("example.org"));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void testExpiredRecordsAreNotReturnedAndTheirSlotsReused() {
+        OffHeapRecordStore store = new OffHeapRecordStore(64 * 1024, 128, now::get);
+        store.put("short.com", bytes("v"), Duration.ofSeconds(5));
+
+        now.addAndGet(Duration.ofSeconds(6).toNanos());
+
+        assertNull(store.get("short.com"));
+        assertNull(store.remaining("short.com"));
+        store.put("short.com", bytes("again"), Duration.ofSeconds(5));
+        assertArrayEquals(bytes("again"), store.get("short.com"));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void testRemoveAndClear() {
+        OffHeapRecordStore store = new OffHeapRecordStore(64 * 1024, 128, now::get);
+        store.put("a.com", bytes("a"), Duration.ofSeconds(60));
+        store.put("b.com", bytes("b"), Duration.ofSeconds(60));
+
+        store.remove("a.com");
+        assertNull(store.get("a.com"));
+        assertEquals(1, store.size());
+
+        store.clear();
+        assertNull(store.get("b.com"));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testRecordsThatDoNotFitAreNotStored() {
+        OffHeapRecordStore store = new OffHeapRecordStore(64 * 1024, 64, now::get);
+        store.put("big.com", bytes("small"), Duration.ofSeconds(60));
+
+        // A larger value for the same key must not leave the old one behind.
+        assertFalse(store.put("big.com", new byte[64], Duration.ofSeconds(60)));
+        assertNull(store.get("big.com"));
+        assertFalse(store.put("bücher.de", bytes("v"), Duration.ofSeconds(60)));
+        assertFalse(store.put("neg.com", bytes("v"), Duration.ofSeconds(-1)));
+    }
+
+    @Test
+    void testFullProbeWindowEvictsTheRecordClosestToExpiry() {
+        // Eight slots in one segment: every key shares the same probe window.
+        OffHeapRecordStore store = new OffHeapRecordStore(8 * 64, 64, now::get);
+        for (int i = 0; i < OffHeapRecordStore.PROBES; i++) {
+            store.put("host" + i + ".com", bytes("v"), Duration.ofSeconds(100 + i));
+        }
+
+        store.put("new.com", bytes("v"), Duration.ofSeconds(50));
+
+        assertNull(store.get("host0.com"));
+        assertArrayEquals(bytes("v"), store.get("new.com"));
+        for (int i = 1; i < OffHeapRecordStore.PROBES; i++) {
+            assertArrayEquals(bytes("v"), store.get("host" + i + ".com"));
+        }
+        assertEquals(1, store.evictions());
+        assertEquals(OffHeapRecordStore.PROBES, store.size());
+    }
+
+    @Test
+    void testLargeCapacitiesAreSplitIntoSegments() {
+        OffHeapRecordStore store = new OffHeapRecordStore(8L * 1024 * 1024, 256);
+        for (int i = 0; i < 10_000; i++) {
+            store.put("host" + i + ".com", bytes("v" + i), Duration.ofSeconds(60));
+        }
+
+        assertEquals(8L * 1024 * 1024, store.capacityBytes());
+        int found = 0;
+        for (int i = 0; i < 10_000; i++) {
+            byte[] value = store.get("host" + i + ".com");
+            if (value != null) {
+                assertArrayEquals(bytes("v" + i), value);
+                found++;
+            }
+        }
+        // 32k slots for 10k records: collisions beyond the probe window are rare.
+        assertTrue(found > 9_900, "found " + found);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
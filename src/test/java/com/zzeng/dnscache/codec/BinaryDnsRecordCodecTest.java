@@ -0,0 +1,155 @@
+package com.zzeng.dnscache.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.zzeng.dnscache.model.DnsRecord;
+import com.zzeng.dnscache.model.DnsRecordValue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryDnsRecordCodecTest {
+
+    private final JsonDnsRecordCodec jsonCodec = new JsonDnsRecordCodec(new ObjectMapper());
+    private final BinaryDnsRecordCodec binaryCodec = new BinaryDnsRecordCodec(jsonCodec);
+
+    private static void assertSameRecord(DnsRecord expected, DnsRecord actual) {
+        assertEquals(expected.getDomain(), actual.getDomain());
+        assertEquals(expected.getIp(), actual.getIp());
+        assertEquals(expected.getTtl(), actual.getTtl());
+        assertEquals(expected.isManual(), actual.isManual());
+    }
+
+    @Test
+    void testIpv4RoundTripIsCompact() {
+        DnsRecord record = new DnsRecord("example.com", "93.184.216.34", 300, false);
+
+        byte[] encoded = binaryCodec.encode(record);
+
+        // version + flags + 2-byte varint + 4 address bytes
+        assertEquals(8, encoded.length);
+        assertSameRecord(record, binaryCodec.decode("example.com", encoded));
+    }
+
+    @Test
+    void testIpv6AndManualRoundTrip() {
+        DnsRecord record = new DnsRecord("v6.example.com", "2001:db8:0:0:0:0:0:1", 86400, true);
+
+        byte[] encoded = binaryCodec.encode(record);
+
+        assertEquals(2 + 3 + 16, encoded.length);
+        assertSameRecord(record, binaryCodec.decode("v6.example.com", encoded));
+    }
+
+    @Test
+    void testNonCanonicalAddressIsKeptAsText() {
+        DnsRecord compressed = new DnsRecord("v6.example.com", "2001:db8::1", 60, true);
+        DnsRecord hostname = new DnsRecord("alias.example.com", "target.example.net", 60, true);
+
+        assertSameRecord(compressed, binaryCodec.decode("v6.example.com", binaryCodec.encode(compressed)));
+        assertSameRecord(hostname, binaryCodec.decode("alias.example.com", binaryCodec.encode(hostname)));
+    }
+
+    @Test
+    void testReadsLegacyPrettyPrintedJson() throws Exception {
+        DnsRecord record = new DnsRecord("example.com", "93.184.216.34", 300, true);
+        byte[] legacy = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsBytes(record);
+
+        assertSameRecord(record, binaryCodec.decode("example.com", legacy));
+    }
+
+    @Test
+    void testJsonCodecReadsBinaryValues() {
+        DnsRecord record = new DnsRecord("example.com", "93.184.216.34", 300, false);
+
+        byte[] json = jsonCodec.encode(record);
+        assertFalse(new String(json, StandardCharsets.UTF_8).contains("\n"));
+        assertSameRecord(record, jsonCodec.decode("example.com", binaryCodec.encode(record)));
+    }
+
+    @Test
+    void testRecordSetRoundTripKeepsValueTtls() {
+        DnsRecord record = new DnsRecord("example.com", "A",
+                List.of(new DnsRecordValue("10.0.0.1", 300), new DnsRecordValue("10.0.0.2", 60)), 300, false);
+
+        byte[] encoded = binaryCodec.encode(record);
+        DnsRecord decoded = binaryCodec.decode("example.com", encoded);
+
+        // header + ttl + type + count, then per value a ttl varint and 4 address bytes
+        assertEquals(2 + 2 + 1 + 1 + (2 + 4) + (1 + 4), encoded.length);
+        assertEquals("A", decoded.getType());
+        assertEquals(record.getValues(), decoded.getValues());
+    }
+
+    @Test
+    void testOtherTypesRoundTripAsText() {
+        DnsRecord record = new DnsRecord("example.com", "MX",
+                List.of(new DnsRecordValue("10 mail.example.com.", 3600), new DnsRecordValue("20 backup.example.com.", 3600)),
+                3600, true);
+
+        for (DnsRecordCodec codec : List.of(binaryCodec, jsonCodec)) {
+            DnsRecord decoded = codec.decode(record.getCacheKey(), codec.encode(record));
+
+            assertEquals("example.com", decoded.getDomain());
+            assertEquals("MX", decoded.getType());
+            assertEquals("example.com/MX", decoded.getCacheKey());
+            assertEquals(record.getValues(), decoded.getValues());
+            assertTrue(decoded.isManual());
+        }
+    }
+
+    @Test
+    void testNegativeAnswersRoundTrip() {
+        for (String status : List.of(DnsRecord.STATUS_NXDOMAIN, DnsRecord.STATUS_NODATA)) {
+            DnsRecord record = DnsRecord.negative("example.com", "AAAA", status, 300);
+            for (DnsRecordCodec codec : List.of(binaryCodec, jsonCodec)) {
+                DnsRecord decoded = codec.decode(record.getCacheKey(), codec.encode(record));
+
+                assertEquals(status, decoded.getStatus());
+                assertEquals("AAAA", decoded.getType());
+                assertTrue(decoded.getValues().isEmpty());
+                assertEquals(300, decoded.getTtl());
+            }
+        }
+        assertNull(binaryCodec.decode("example.com", binaryCodec.encode(new DnsRecord("example.com", "10.0.0.1", 60, false))).getStatus());
+    }
+
+    @Test
+    void testReadsJsonWrittenBeforeRecordSets() {
+        byte[] legacy = "{\"domain\":\"example.com\",\"ip\":\"2001:db8:0:0:0:0:0:1\",\"ttl\":300,\"manual\":true}"
+                .getBytes(StandardCharsets.UTF_8);
+
+        DnsRecord decoded = binaryCodec.decode("example.com", legacy);
+
+        assertEquals("AAAA", decoded.getType());
+        assertEquals("2001:db8:0:0:0:0:0:1", decoded.getIp());
+        assertEquals(300, decoded.getValues().get(0).getTtl());
+        assertTrue(decoded.isManual());
+    }
+
+    @Test
+    void testCorruptValueIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> binaryCodec.decode("example.com", new byte[]{0x01, 0x00}));
+        assertThrows(IllegalArgumentException.class, () -> binaryCodec.decode("example.com", new byte[]{0x7F, 0x00, 0x01}));
+    }
+
+    @Test
+    void testSafeDecodeSkipsAndCountsCorruptValues() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        DnsRecordCodec metered = new MeteredDnsRecordCodec(binaryCodec, meterRegistry);
+
+        assertTrue(metered.safeDecode("example.com", new byte[]{0x01, 0x00, (byte) 0x80}).blockOptional().isEmpty());
+        assertEquals("1.2.3.4", metered.safeDecode("example.com",
+                binaryCodec.encode(new DnsRecord("example.com", "1.2.3.4", 60, false))).block().getIp());
+        assertEquals(1, meterRegistry.get(DnsRecordCodec.ERRORS_METRIC).tag("operation", "decode").counter().count());
+        assertEquals(0, meterRegistry.get(DnsRecordCodec.ERRORS_METRIC).tag("operation", "encode").counter().count());
+    }
+}
@@ -1,8 +1,11 @@
 package com.zzeng.dnscache.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.zzeng.dnscache.config.JacksonConfig;
+import com.zzeng.dnscache.dto.DnsBatchRequest;
 import com.zzeng.dnscache.dto.DnsRecordCreateRequest;
 import com.zzeng.dnscache.dto.DnsRecordResponse;
+import com.zzeng.dnscache.service.CachePage;
 import com.zzeng.dnscache.service.DnsService;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -12,13 +15,21 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.when;
 
 @WebFluxTest(controllers = DnsCacheController.class)
-@Import(DnsCacheControllerTest.MockConfig.class)
+@Import({DnsCacheControllerTest.MockConfig.class, JacksonConfig.class})
 class DnsCacheControllerTest {
 
     @Autowired
@@ -67,5 +78,58 @@ class DnsCacheControllerTest {
                 .isEqualTo(mockResponse);
     }
 
+    @Test
+    void testResolveBatchStreamsNdjson() {
+        DnsBatchRequest request = new DnsBatchRequest();
+        request.setDomains(List.of("a.com", "b.com"));
+
+        when(dnsService.resolveBatch(eq(List.of("a.com", "b.com")), eq("A"), isNull()))
+                .thenReturn(Flux.just(new DnsRecordResponse("a.com", "1.1.1.1", 300L),
+                        new DnsRecordResponse("b.com", "2.2.2.2", 300L)));
+
+        String body = webTestClient.post()
+                .uri("/api/dns/resolve/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(request)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        List<String> lines = body.lines().filter(line -> !line.isBlank()).toList();
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).contains("\"domain\":\"a.com\""));
+        assertTrue(lines.get(1).contains("\"ip\":\"2.2.2.2\""));
+    }
+
+    @Test
+    void testCacheListingStreamsPageWithNextCursor() {
+        when(dnsService.listCachedRecords(argThat(request -> request.getLimit() == 2 && request.isManual()
+                && "*.com".equals(request.getDomain()) && request.getCursor() == null)))
+                .thenReturn(Mono.just(new CachePage(Flux.just(new DnsRecordResponse("a.com", "1.1.1.1", 300L)), "MTI")));
+
+        String body = webTestClient.get()
+                .uri("/api/dns/cache?limit=2&manual=true&domain=*.com")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectHeader().valueEquals("X-Next-Cursor", "MTI")
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertEquals(1, body.lines().filter(line -> !line.isBlank()).count());
+        assertTrue(body.contains("\"domain\":\"a.com\""));
+
+        webTestClient.get()
+                .uri("/api/dns/cache?limit=5000")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
     // Add more tests for GET, PATCH, DELETE, etc.
 }
\ No newline at end of file
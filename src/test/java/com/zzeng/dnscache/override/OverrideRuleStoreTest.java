@@ -0,0 +1,94 @@
+package com.zzeng.dnscache.override;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.dto.OverrideRule;
+import com.zzeng.dnscache.dto.OverrideRuleSet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class OverrideRuleStoreTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testReplaceChecksTheVersionBeingReplaced() {
+        DnsProperties properties = new DnsProperties();
+        properties.getStorage().setEngine(DnsProperties.Storage.Engine.MEMORY);
+        OverrideRuleStore store = new OverrideRuleStore(null, objectMapper, properties, meterRegistry);
+
+        StepVerifier.create(store.replace(new OverrideRuleSet(0, List.of(rule("*.corp", "10.0.0.1")))))
+                .expectNextMatches(rules -> rules.getVersion() == 1)
+                .verifyComplete();
+        StepVerifier.create(store.replace(new OverrideRuleSet(0, List.of(rule("*.corp", "10.0.0.2")))))
+                .expectError(IllegalStateException.class)
+                .verify();
+        StepVerifier.create(store.replace(new OverrideRuleSet(1, List.of(rule("a.corp", "1.1.1.1"), rule("A.corp", "2.2.2.2")))))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+
+        assertEquals("10.0.0.1", store.find("app.corp", "A").getIp());
+        assertEquals(1L, store.current().getVersion());
+        assertEquals(1.0, meterRegistry.get(OverrideRuleStore.RULES_METRIC).gauge().value());
+        assertEquals(1.0, meterRegistry.get(OverrideRuleStore.VERSION_METRIC).gauge().value());
+    }
+
+    @Test
+    void testFileIsReloadedOnlyForNewerVersions() throws IOException {
+        Path file = dir.resolve("overrides.json");
+        DnsProperties properties = new DnsProperties();
+        properties.getOverrides().setSource(DnsProperties.Overrides.Source.FILE);
+        properties.getOverrides().setFile(file.toString());
+        OverrideRuleStore store = new OverrideRuleStore(null, objectMapper, properties, meterRegistry);
+
+        // No file yet: no rules.
+        StepVerifier.create(store.refresh()).expectNext(false).verifyComplete();
+
+        write(file, new OverrideRuleSet(2, List.of(rule("*.corp", "10.0.0.1"))), 1);
+        StepVerifier.create(store.refresh()).expectNext(true).verifyComplete();
+        // Unchanged since it was read.
+        StepVerifier.create(store.refresh()).expectNext(false).verifyComplete();
+
+        write(file, new OverrideRuleSet(1, List.of(rule("*.corp", "10.0.0.9"))), 2);
+        StepVerifier.create(store.refresh()).expectNext(false).verifyComplete();
+        assertEquals("10.0.0.1", store.find("app.corp", "A").getIp());
+
+        // A rule without values is skipped; the others still load.
+        write(file, new OverrideRuleSet(3, List.of(rule("db.corp", "10.0.0.2"),
+                new OverrideRule("broken.corp", "A", null, 60))), 3);
+        StepVerifier.create(store.refresh()).expectNext(true).verifyComplete();
+        assertEquals("10.0.0.2", store.find("db.corp", "A").getIp());
+        assertNull(store.find("app.corp", "A"));
+        assertEquals(1.0, meterRegistry.get(OverrideRuleStore.RULES_METRIC).gauge().value());
+
+        StepVerifier.create(store.replace(new OverrideRuleSet(3, List.of())))
+                .expectError(IllegalStateException.class)
+                .verify();
+    }
+
+    private void write(Path file, OverrideRuleSet rules, long second) throws IOException {
+        objectMapper.writeValue(file.toFile(), rules);
+        // Distinct modification times, whatever the file system's resolution.
+        Files.setLastModifiedTime(file, FileTime.from(Instant.ofEpochSecond(1_700_000_000L + second)));
+    }
+
+    private static OverrideRule rule(String name, String ip) {
+        return new OverrideRule(name, "A", List.of(ip), 60);
+    }
+}
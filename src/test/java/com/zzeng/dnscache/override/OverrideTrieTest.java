@@ -0,0 +1,85 @@
+package com.zzeng.dnscache.override;
+
+import com.zzeng.dnscache.dto.OverrideRule;
+import com.zzeng.dnscache.model.DnsRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OverrideTrieTest {
+
+    private final OverrideTrie trie = OverrideTrie.compile(List.of(
+            new OverrideRule("*.internal.corp", "A", List.of("10.0.0.1"), 60),
+            new OverrideRule("db.internal.corp", "A", List.of("10.0.0.2"), 30),
+            new OverrideRule("*.eu.internal.corp", "A", List.of("10.0.1.1", "10.0.1.2"), 60),
+            new OverrideRule("internal.corp", "AAAA", List.of("fd00::1"), 60)));
+
+    @Test
+    void testExactRuleWinsOverWildcard() {
+        DnsRecord record = trie.find("db.internal.corp", "A");
+
+        assertEquals("10.0.0.2", record.getIp());
+        assertEquals(30L, record.getTtl());
+        assertEquals("db.internal.corp", record.getDomain());
+        assertTrue(record.isManual());
+    }
+
+    @Test
+    void testClosestWildcardCoversEveryNameBelowIt() {
+        assertEquals("10.0.0.1", trie.find("app.internal.corp", "A").getIp());
+        assertEquals("10.0.0.1", trie.find("a.b.internal.corp", "A").getIp());
+        assertEquals(2, trie.find("x.eu.internal.corp", "A").getValues().size());
+        // A wildcard does not cover the name it hangs from.
+        assertNull(trie.find("internal.corp", "A"));
+        assertEquals("10.0.0.1", trie.find("eu.internal.corp", "A").getIp());
+    }
+
+    @Test
+    void testMatchesByTypeIgnoringCaseAndTrailingDot() {
+        assertEquals("fd00::1", trie.find("Internal.CORP.", "AAAA").getIp());
+        assertEquals("Internal.CORP.", trie.find("Internal.CORP.", "AAAA").getDomain());
+        assertNull(trie.find("app.internal.corp", "AAAA"));
+        assertNull(trie.find("example.com", "A"));
+        assertNull(trie.find("corp", "A"));
+    }
+
+    @Test
+    void testInvalidRulesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> OverrideTrie.compile(List.of(
+                new OverrideRule("a.corp", "A", List.of("10.0.0.1"), 60),
+                new OverrideRule("A.corp.", "a", List.of("10.0.0.2"), 60))));
+        assertThrows(IllegalArgumentException.class, () -> OverrideTrie.compile(List.of(
+                new OverrideRule("a.corp", "NOPE", List.of("10.0.0.1"), 60))));
+        assertThrows(IllegalArgumentException.class, () -> OverrideTrie.compile(List.of(
+                new OverrideRule("a.corp", "A", null, 60))));
+        assertThrows(IllegalArgumentException.class, () -> OverrideTrie.compile(List.of(
+                new OverrideRule("a.corp", "A", List.of("fd00::1"), 60))));
+        assertThrows(IllegalArgumentException.class, () -> OverrideTrie.compile(List.of(
+                new OverrideRule("a.corp", "AAAA", List.of("10.0.0.1"), 60))));
+        assertEquals(0, OverrideTrie.EMPTY.size());
+        assertEquals(4, trie.size());
+    }
+
+    @Test
+    void testInvalidRulesAreSkippedWhenLoaded() {
+        OverrideTrie loaded = OverrideTrie.compileValid(List.of(
+                new OverrideRule(null, "A", List.of("10.0.0.1"), 60),
+                new OverrideRule("a.corp", "A", null, 60),
+                new OverrideRule("b.corp", "A", List.of("10.0.0.2", "not-an-address"), 60),
+                new OverrideRule("c.corp", "NOPE", List.of("10.0.0.3"), 60),
+                new OverrideRule("d.corp", "A", List.of("10.0.0.4"), 60),
+                new OverrideRule("D.corp", "A", List.of("10.0.0.5"), 60),
+                new OverrideRule("d.corp", "CNAME", List.of("target.corp."), 60)));
+
+        assertEquals(2, loaded.size());
+        assertEquals("10.0.0.4", loaded.find("d.corp", "A").getIp());
+        assertEquals("target.corp.", loaded.find("d.corp", "CNAME").getIp());
+        assertNull(loaded.find("a.corp", "A"));
+        assertNull(loaded.find("b.corp", "A"));
+    }
+}
@@ -0,0 +1,264 @@
+package com.zzeng.dnscache.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zzeng.dnscache.codec.BinaryDnsRecordCodec;
+import com.zzeng.dnscache.codec.DnsRecordCodec;
+import com.zzeng.dnscache.codec.JsonDnsRecordCodec;
+import com.zzeng.dnscache.model.DnsRecord;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The contract of {@link DnsCacheRepository} that every storage engine has to meet.
+ * Each engine's test extends this and hands it a fresh, empty repository before every test.
+ */
+abstract class DnsCacheRepositoryConformanceTest {
+
+    static final DnsRecordCodec CODEC = new BinaryDnsRecordCodec(new JsonDnsRecordCodec(new ObjectMapper()));
+
+    abstract DnsCacheRepository repository();
+
+    @Test
+    void testContractSetGetAndExpire() {
+        DnsCacheRepository repository = repository();
+        repository.set("example.com", bytes("v1"), 120).block();
+
+        StepVerifier.create(repository.get("example.com"))
+                .assertNext(value -> assertArrayEquals(bytes("v1"), value))
+                .verifyComplete();
+        StepVerifier.create(repository.getExpire("example.com"))
+                .expectNextMatches(ttl -> ttl.compareTo(Duration.ofSeconds(110)) > 0 && ttl.compareTo(Duration.ofSeconds(120)) <= 0)
+                .verifyComplete();
+        StepVerifier.create(repository.get("missing.com")).verifyComplete();
+        StepVerifier.create(repository.getExpire("missing.com")).verifyComplete();
+    }
+
+    @Test
+    void testContractExpiry() throws InterruptedException {
+        DnsCacheRepository repository = repository();
+        repository.set("short.com", bytes("v"), 1).block();
+        repository.set("long.com", bytes("v"), 60).block();
+
+        Thread.sleep(1_100);
+
+        StepVerifier.create(repository.get("short.com")).verifyComplete();
+        StepVerifier.create(repository.multiGet(List.of("short.com", "long.com")).map(Map::keySet))
+                .expectNext(Set.of("long.com"))
+                .verifyComplete();
+        StepVerifier.create(repository.scanKeys().collectList())
+                .expectNext(List.of("long.com"))
+                .verifyComplete();
+    }
+
+    @Test
+    void testContractBatchWritesAndReads() {
+        DnsCacheRepository repository = repository();
+        StepVerifier.create(repository.setAll(List.of(
+                        new DnsCacheRepository.Entry("a.com", bytes("a"), 60),
+                        new DnsCacheRepository.Entry("b.com/AAAA", bytes("b"), 120))))
+                .expectNext(2L)
+                .verifyComplete();
+
+        StepVerifier.create(repository.multiGet(List.of("a.com", "b.com/AAAA", "c.com")))
+                .assertNext(found -> {
+                    assertEquals(Set.of("a.com", "b.com/AAAA"), found.keySet());
+                    assertArrayEquals(bytes("b"), found.get("b.com/AAAA"));
+                })
+                .verifyComplete();
+        StepVerifier.create(repository.getExpire("b.com/AAAA"))
+                .expectNextMatches(ttl -> ttl.compareTo(Duration.ofSeconds(60)) > 0)
+                .verifyComplete();
+        StepVerifier.create(repository.scanKeys().collectList().map(Set::copyOf))
+                .expectNext(Set.of("a.com", "b.com/AAAA"))
+                .verifyComplete();
+    }
+
+    @Test
+    void testContractReadsWithExpire() {
+        DnsCacheRepository repository = repository();
+        repository.set("a.com", bytes("a"), 60).block();
+        repository.set("b.com/AAAA", bytes("b"), 120).block();
+
+        StepVerifier.create(repository.getWithExpire("b.com/AAAA"))
+                .assertNext(stored -> {
+                    assertArrayEquals(bytes("b"), stored.value());
+                    assertTrue(stored.expire().compareTo(Duration.ofSeconds(110)) > 0);
+                })
+                .verifyComplete();
+        StepVerifier.create(repository.getWithExpire("missing.com")).verifyComplete();
+        StepVerifier.create(repository.multiGetWithExpire(List.of("a.com", "b.com/AAAA", "c.com")))
+                .assertNext(found -> {
+                    assertEquals(Set.of("a.com", "b.com/AAAA"), found.keySet());
+                    assertArrayEquals(bytes("a"), found.get("a.com").value());
+                    assertTrue(found.get("a.com").expire().compareTo(Duration.ofSeconds(50)) > 0);
+                    assertTrue(found.get("a.com").expire().compareTo(Duration.ofSeconds(60)) <= 0);
+                    assertTrue(found.get("b.com/AAAA").expire().compareTo(Duration.ofSeconds(110)) > 0);
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testContractDeletes() {
+        DnsCacheRepository repository = repository();
+        repository.set("a.com", bytes("a"), 60).block();
+        repository.set("b.com", bytes("b"), 60).block();
+        repository.set("c.com", bytes("c"), 60).block();
+
+        StepVerifier.create(repository.delete("a.com")).expectNext(true).verifyComplete();
+        StepVerifier.create(repository.delete("a.com")).expectNext(false).verifyComplete();
+        StepVerifier.create(repository.deleteAll(List.of("b.com", "c.com", "missing.com"))).expectNext(2L).verifyComplete();
+        StepVerifier.create(repository.scanKeys().count()).expectNext(0L).verifyComplete();
+    }
+
+    @Test
+    void testContractManualIndex() {
+        DnsCacheRepository repository = repository();
+        repository.setManual("a.com", bytes("a"), 60).block();
+        repository.setManual("b.com", bytes("b"), 60).block();
+        repository.set("resolved.com", bytes("r"), 60).block();
+
+        StepVerifier.create(repository.scanManualDomains().collectList().map(Set::copyOf))
+                .expectNext(Set.of("a.com", "b.com"))
+                .verifyComplete();
+
+        repository.delete("a.com").block();
+        StepVerifier.create(repository.removeFromManualIndex(List.of("b.com", "c.com"))).expectNext(1L).verifyComplete();
+        StepVerifier.create(repository.scanManualDomains().count()).expectNext(0L).verifyComplete();
+        // Leaving the index does not touch the record.
+        StepVerifier.create(repository.get("b.com")).expectNextCount(1).verifyComplete();
+    }
+
+    @Test
+    void testContractTtlUpdates() {
+        DnsCacheRepository repository = repository();
+        repository.set("resolved.com", CODEC.encode(new DnsRecord("resolved.com", "10.0.0.1", 300, false)), 400).block();
+        repository.setManual("manual.com", CODEC.encode(new DnsRecord("manual.com", "10.0.0.2", 300, true)), 300).block();
+
+        StepVerifier.create(repository.updateTtl("resolved.com", 60, 100)).expectNext(60L).verifyComplete();
+        StepVerifier.create(repository.updateTtlAll(List.of("manual.com", "missing.com"), 60, 100))
+                .expectNext(Map.of("manual.com", 60L))
+                .verifyComplete();
+        StepVerifier.create(repository.updateTtl("missing.com", 60, 100)).verifyComplete();
+
+        // Resolved records stay for the stale retention past their TTL, manual ones do not.
+        assertEquals(60, CODEC.decode("resolved.com", repository.get("resolved.com").block()).getTtl());
+        assertExpiresIn(repository, "resolved.com", 160);
+        assertEquals(60, CODEC.decode("manual.com", repository.get("manual.com").block()).getTtl());
+        assertExpiresIn(repository, "manual.com", 60);
+    }
+
+    @Test
+    void testContractLeases() {
+        DnsCacheRepository repository = repository();
+        StepVerifier.create(repository.tryLock("lock:a.com", "node-1", Duration.ofSeconds(5))).expectNext(true).verifyComplete();
+        StepVerifier.create(repository.tryLock("lock:a.com", "node-2", Duration.ofSeconds(5))).expectNext(false).verifyComplete();
+        StepVerifier.create(repository.unlock("lock:a.com", "node-2")).expectNext(false).verifyComplete();
+        StepVerifier.create(repository.unlock("lock:a.com", "node-1")).expectNext(true).verifyComplete();
+        StepVerifier.create(repository.tryLock("lock:a.com", "node-2", Duration.ofSeconds(5))).expectNext(true).verifyComplete();
+    }
+
+    @Test
+    void testContractClear() {
+        DnsCacheRepository repository = repository();
+        repository.set("a.com", bytes("a"), 60).block();
+        repository.setManual("b.com", bytes("b"), 60).block();
+        repository.tryLock("lock:a.com", "node-1", Duration.ofSeconds(5)).block();
+
+        StepVerifier.create(repository.clear().reduce(0L, Long::sum))
+                .expectNextMatches(removed -> removed >= 3)
+                .verifyComplete();
+
+        StepVerifier.create(repository.scanKeys().count()).expectNext(0L).verifyComplete();
+        StepVerifier.create(repository.scanManualDomains().count()).expectNext(0L).verifyComplete();
+        StepVerifier.create(repository.tryLock("lock:a.com", "node-2", Duration.ofSeconds(5))).expectNext(true).verifyComplete();
+    }
+
+    @Test
+    void testContractPagedScan() {
+        DnsCacheRepository repository = repository();
+        Set<String> all = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            repository.set("host" + i + ".com", bytes("v"), 60).block();
+            all.add("host" + i + ".com");
+        }
+        repository.set("host0.com/AAAA", bytes("v"), 60).block();
+        repository.setManual("a.manual.com", bytes("m"), 60).block();
+        repository.setManual("b.manual.com", bytes("m"), 60).block();
+        all.addAll(List.of("host0.com/AAAA", "a.manual.com", "b.manual.com"));
+
+        assertEquals(all, scanAll(repository, "*", false));
+        assertEquals(Set.of("host0.com", "host0.com/AAAA"), scanAll(repository, "host0.*", false));
+        assertEquals(Set.of("host0.com", "host1.com", "host2.com", "host3.com", "host4.com", "host5.com", "host6.com", "host7.com",
+                "host8.com", "host9.com"), scanAll(repository, "host?.com", false));
+        assertEquals(Set.of("a.manual.com", "b.manual.com"), scanAll(repository, "*", true));
+        assertEquals(Set.of("a.manual.com"), scanAll(repository, "a.*", true));
+    }
+
+    @Test
+    void testContractZoneIndex() {
+        DnsCacheRepository repository = repository();
+        repository.set("example.com", bytes("v"), 60).block();
+        repository.setManual("mail.example.com", bytes("m"), 60).block();
+        repository.setAll(List.of(
+                new DnsCacheRepository.Entry("example.com/AAAA", bytes("v"), 60),
+                new DnsCacheRepository.Entry("www.example.com", bytes("v"), 60),
+                new DnsCacheRepository.Entry("a.b.example.com", bytes("v"), 60),
+                new DnsCacheRepository.Entry("badexample.com", bytes("v"), 60),
+                new DnsCacheRepository.Entry("example.org", bytes("v"), 60))).block();
+
+        StepVerifier.create(repository.scanZone("example.com").collectList().map(Set::copyOf))
+                .expectNext(Set.of("example.com", "example.com/AAAA", "mail.example.com", "www.example.com", "a.b.example.com"))
+                .verifyComplete();
+        StepVerifier.create(repository.scanZone("b.example.com")).expectNext("a.b.example.com").verifyComplete();
+
+        repository.delete("www.example.com").block();
+        repository.deleteAll(List.of("a.b.example.com", "example.org")).block();
+        repository.updateTtlAll(List.of("example.com"), 120, 0).block();
+
+        StepVerifier.create(repository.scanZone("example.com").collectList().map(Set::copyOf))
+                .expectNext(Set.of("example.com", "example.com/AAAA", "mail.example.com"))
+                .verifyComplete();
+        StepVerifier.create(repository.scanZone("org").count()).expectNext(0L).verifyComplete();
+
+        repository.clear().blockLast();
+        StepVerifier.create(repository.scanZone("com").count()).expectNext(0L).verifyComplete();
+    }
+
+    /**
+     * Pages through a scan to the end, failing if it does not end.
+     */
+    private static Set<String> scanAll(DnsCacheRepository repository, String pattern, boolean manualOnly) {
+        Set<String> keys = new HashSet<>();
+        String cursor = null;
+        for (int steps = 0; steps < 1_000; steps++) {
+            DnsCacheRepository.KeyPage page = repository.scanKeys(cursor, pattern, manualOnly, 10).block();
+            keys.addAll(page.keys());
+            cursor = page.cursor();
+            if (cursor == null) {
+                return keys;
+            }
+        }
+        throw new AssertionError("scan did not end");
+    }
+
+    private static void assertExpiresIn(DnsCacheRepository repository, String domain, long seconds) {
+        Duration expire = repository.getExpire(domain).block();
+        assertTrue(expire != null && expire.compareTo(Duration.ofSeconds(seconds - 2)) >= 0
+                && expire.compareTo(Duration.ofSeconds(seconds)) <= 0, domain + " expires in " + expire);
+    }
+
+    static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
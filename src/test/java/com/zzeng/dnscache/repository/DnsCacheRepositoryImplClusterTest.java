@@ -0,0 +1,143 @@
+package com.zzeng.dnscache.repository;
+
+import com.zzeng.dnscache.config.DnsProperties;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The Redis engine against a three-shard Redis Cluster, each shard with a replica that serves the reads.
+ */
+class DnsCacheRepositoryImplClusterTest extends DnsCacheRepositoryConformanceTest {
+
+    private static EmbeddedRedisCluster cluster;
+    private DnsCacheRepositoryImpl repository;
+
+    @BeforeAll
+    static void startCluster() throws Exception {
+        cluster = new EmbeddedRedisCluster(3, ReadFrom.REPLICA_PREFERRED);
+    }
+
+    @AfterAll
+    static void stopCluster() throws Exception {
+        cluster.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        cluster.flushAll();
+        repository = newRepository(new DnsProperties());
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.destroy();
+    }
+
+    @Override
+    DnsCacheRepository repository() {
+        return repository;
+    }
+
+    private static DnsCacheRepositoryImpl newRepository(DnsProperties properties) {
+        properties.getRedis().setBatchChunkSize(50);
+        return new DnsCacheRepositoryImpl(cluster.recordTemplate(), cluster.template(), properties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testBatchesListingAndClearingSpanEveryShard() {
+        List<DnsCacheRepository.Entry> entries = IntStream.range(0, 300)
+                .mapToObj(i -> new DnsCacheRepository.Entry("host" + i + ".com", bytes("v" + i), 600))
+                .toList();
+        List<String> domains = entries.stream().map(DnsCacheRepository.Entry::domain).toList();
+
+        StepVerifier.create(repository.setAll(entries)).expectNext(300L).verifyComplete();
+
+        for (RedisCommands<String, String> primary : cluster.primaries()) {
+            assertTrue(primary.dbsize() > 50, "every shard holds a share of the records");
+        }
+        StepVerifier.create(repository.updateTtlAll(domains, 120, 0))
+                .expectNextMatches(updated -> updated.size() == 300)
+                .verifyComplete();
+        awaitReplicas();
+        StepVerifier.create(repository.multiGet(domains))
+                .expectNextMatches(found -> found.size() == 300)
+                .verifyComplete();
+        StepVerifier.create(repository.scanKeys().collect(HashSet::new, Set::add))
+                .expectNext(new HashSet<>(domains))
+                .verifyComplete();
+
+        StepVerifier.create(repository.deleteAll(domains.subList(0, 100))).expectNext(100L).verifyComplete();
+        // The records left, and the zone index with its expiry.
+        StepVerifier.create(repository.clear().reduce(0L, Long::sum)).expectNext(202L).verifyComplete();
+        for (RedisCommands<String, String> primary : cluster.primaries()) {
+            assertEquals(0, primary.dbsize());
+        }
+    }
+
+    @Test
+    void testHashTaggedPrefixKeepsBatchesOnOneShard() {
+        DnsProperties properties = new DnsProperties();
+        properties.getRedis().setKeyPrefix("{dns}:");
+        DnsCacheRepositoryImpl tagged = newRepository(properties);
+        List<DnsCacheRepository.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            entries.add(new DnsCacheRepository.Entry("host" + i + ".com", bytes("v"), 600));
+        }
+        try {
+            assertEquals(3, RedisClusterNodes.chunkBySlot(entries, entry -> "{dns}:record:" + entry.domain(), 50).size());
+            StepVerifier.create(tagged.setAll(entries)).expectNext(120L).verifyComplete();
+
+            assertEquals(1, cluster.primaries().stream().filter(primary -> primary.dbsize() > 0).count());
+            StepVerifier.create(tagged.scanKeys().count()).expectNext(120L).verifyComplete();
+        } finally {
+            tagged.destroy();
+        }
+    }
+
+    @Test
+    void testReadsAreServedByReplicas() {
+        long hitsBefore = replicaKeyspaceHits();
+        repository.set("example.com", bytes("v1"), 120).block();
+        awaitReplicas();
+
+        StepVerifier.create(repository.get("example.com")).expectNextCount(1).verifyComplete();
+
+        assertEquals(hitsBefore + 1, replicaKeyspaceHits());
+    }
+
+    /**
+     * Waits until each replica has caught up with its primary.
+     */
+    private static void awaitReplicas() {
+        for (RedisCommands<String, String> primary : cluster.primaries()) {
+            primary.waitForReplication(1, 2_000);
+        }
+    }
+
+    private static long replicaKeyspaceHits() {
+        long hits = 0;
+        for (RedisCommands<String, String> replica : cluster.replicas()) {
+            hits += replica.info("stats").lines()
+                    .filter(line -> line.startsWith("keyspace_hits:"))
+                    .mapToLong(line -> Long.parseLong(line.substring("keyspace_hits:".length()).trim()))
+                    .sum();
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,299 @@
+package com.zzeng.dnscache.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zzeng.dnscache.codec.BinaryDnsRecordCodec;
+import com.zzeng.dnscache.codec.JsonDnsRecordCodec;
+import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.model.DnsRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DnsCacheRepositoryImplTest extends DnsCacheRepositoryConformanceTest {
+
+    private static EmbeddedRedis redis;
+    private DnsCacheRepositoryImpl repository;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeAll
+    static void startRedis() throws Exception {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() throws Exception {
+        redis.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        DnsProperties properties = new DnsProperties();
+        // Small chunks so that the tests cover batches spanning several chunks.
+        properties.getRedis().setBatchChunkSize(3);
+        meterRegistry = new SimpleMeterRegistry();
+        repository = new DnsCacheRepositoryImpl(redis.recordTemplate(), redis.template(), properties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.destroy();
+    }
+
+    @Override
+    DnsCacheRepository repository() {
+        return repository;
+    }
+
+    @Test
+    void testSetGetAndExpire() {
+        StepVerifier.create(repository.set("example.com", bytes("{}"), 120))
+                .expectNext(true)
+                .verifyComplete();
+        StepVerifier.create(repository.get("example.com").map(String::new))
+                .expectNext("{}")
+                .verifyComplete();
+        StepVerifier.create(repository.getExpire("example.com"))
+                .expectNextMatches(ttl -> ttl.compareTo(Duration.ofSeconds(110)) > 0)
+                .verifyComplete();
+    }
+
+    @Test
+    void testSetAllAndMultiGetAcrossChunks() {
+        List<DnsCacheRepository.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            entries.add(new DnsCacheRepository.Entry("host" + i + ".com", bytes("v" + i), 60 + i));
+        }
+
+        StepVerifier.create(repository.setAll(entries))
+                .expectNext(10L)
+                .verifyComplete();
+
+        Map<String, byte[]> found = repository.multiGet(List.of("host0.com", "host9.com", "missing.com", "host4.com"))
+                .block();
+        assertEquals(3, found.size());
+        assertEquals("v0", new String(found.get("host0.com")));
+        assertEquals("v9", new String(found.get("host9.com")));
+        assertEquals("v4", new String(found.get("host4.com")));
+
+        Duration ttl = repository.getExpire("host9.com").block();
+        assertTrue(ttl.compareTo(Duration.ofSeconds(60)) > 0);
+    }
+
+    @Test
+    void testDeleteAllCountsOnlyExistingKeys() {
+        repository.set("a.com", bytes("1"), 60).block();
+        repository.set("b.com", bytes("2"), 60).block();
+        repository.set("c.com", bytes("3"), 60).block();
+        repository.set("d.com", bytes("4"), 60).block();
+
+        StepVerifier.create(repository.deleteAll(List.of("a.com", "b.com", "c.com", "d.com", "e.com")))
+                .expectNext(4L)
+                .verifyComplete();
+        StepVerifier.create(repository.get("a.com"))
+                .verifyComplete();
+    }
+
+    @Test
+    void testLockIsExclusiveAndOnlyReleasedByHolder() {
+        StepVerifier.create(repository.tryLock("lock:example.com", "me", Duration.ofSeconds(5)))
+                .expectNext(true)
+                .verifyComplete();
+        StepVerifier.create(repository.tryLock("lock:example.com", "other", Duration.ofSeconds(5)))
+                .expectNext(false)
+                .verifyComplete();
+        StepVerifier.create(repository.unlock("lock:example.com", "other"))
+                .expectNext(false)
+                .verifyComplete();
+        StepVerifier.create(repository.unlock("lock:example.com", "me"))
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @Test
+    void testScanKeysOnlyVisitsPrefixedRecords() {
+        redis.template().opsForValue().set("other-app:session", "x").block();
+        repository.set("a.com", bytes("1"), 60).block();
+        repository.setManual("b.com", bytes("2"), 60).block();
+        repository.tryLock("lock:c.com", "me", Duration.ofSeconds(5)).block();
+
+        List<String> domains = repository.scanKeys().collectList().block();
+        assertEquals(Set.of("a.com", "b.com"), Set.copyOf(domains));
+        assertEquals(2, domains.size());
+        assertTrue(redis.template().hasKey("dnscache:record:a.com").block());
+    }
+
+    @Test
+    void testPagedScanEscapesPatternAndRejectsForeignCursors() {
+        repository.set("a.com", bytes("1"), 60).block();
+        repository.set("[a].com", bytes("2"), 60).block();
+
+        StepVerifier.create(repository.scanKeys(null, "[a]*", false, 100))
+                .assertNext(page -> assertEquals(List.of("[a].com"), page.keys()))
+                .verifyComplete();
+        StepVerifier.create(repository.scanKeys("not-a-cursor", "*", false, 100))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+    }
+
+    @Test
+    void testZoneIndexDropsMembersOfExpiredRecords() throws InterruptedException {
+        repository.set("old.example.com", bytes("1"), 1).block();
+        Thread.sleep(2_100);
+        // Gone from Redis, still indexed until a write to the index sweeps it.
+        StepVerifier.create(repository.scanZone("example.com")).expectNext("old.example.com").verifyComplete();
+
+        repository.set("new.example.com", bytes("2"), 60).block();
+
+        StepVerifier.create(repository.scanZone("example.com")).expectNext("new.example.com").verifyComplete();
+        assertEquals(1L, redis.template().opsForZSet().size("dnscache:{zones}:expiry").block());
+    }
+
+    @Test
+    void testZoneIndexIsWrittenInBatchesApartFromRecords() {
+        DnsProperties properties = new DnsProperties();
+        properties.getRedis().setZoneIndexFlushInterval(Duration.ofHours(1));
+        DnsCacheRepositoryImpl batching = new DnsCacheRepositoryImpl(redis.recordTemplate(), redis.template(),
+                properties, meterRegistry);
+        try {
+            batching.set("a.example.com", bytes("1"), 60).block();
+            batching.setAll(List.of(new DnsCacheRepository.Entry("b.example.com", bytes("2"), 60),
+                    new DnsCacheRepository.Entry("c.example.com", bytes("3"), 60))).block();
+            batching.delete("c.example.com").block();
+            // Records are written, the index waits for a full chunk, the interval or a reader.
+            assertEquals(0L, redis.template().opsForZSet().size("dnscache:{zones}").block());
+
+            StepVerifier.create(batching.scanZone("example.com"))
+                    .expectNext("a.example.com", "b.example.com")
+                    .verifyComplete();
+            assertEquals(1, meterRegistry.get(DnsCacheRepositoryImpl.OPERATIONS_METRIC)
+                    .tags("operation", "zoneIndex", "outcome", "success").timer().count());
+        } finally {
+            batching.destroy();
+        }
+    }
+
+    @Test
+    void testManualIndexFollowsWritesAndDeletes() {
+        repository.setManual("a.com", bytes("1"), 60).block();
+        repository.setManual("b.com", bytes("2"), 60).block();
+        repository.setManual("c.com", bytes("3"), 60).block();
+        repository.set("d.com", bytes("4"), 60).block();
+
+        assertEquals(Set.of("a.com", "b.com", "c.com"), Set.copyOf(repository.scanManualDomains().collectList().block()));
+
+        repository.delete("a.com").block();
+        repository.deleteAll(List.of("b.com", "d.com")).block();
+        assertEquals(List.of("c.com"), repository.scanManualDomains().collectList().block());
+
+        StepVerifier.create(repository.removeFromManualIndex(List.of("c.com", "x.com")))
+                .expectNext(1L)
+                .verifyComplete();
+        StepVerifier.create(repository.scanManualDomains())
+                .verifyComplete();
+        StepVerifier.create(repository.get("c.com").map(String::new))
+                .expectNext("3")
+                .verifyComplete();
+    }
+
+    @Test
+    void testClearRemovesOnlyPrefixedKeysInSteps() {
+        redis.template().opsForValue().set("other-app:session", "x").block();
+        redis.template().opsForHash().put("dnscache:overrides", "version", "3").block();
+        for (int i = 0; i < 20; i++) {
+            repository.set("host" + i + ".com", bytes("v"), 60).block();
+        }
+        repository.setManual("manual.com", bytes("m"), 60).block();
+
+        List<Long> steps = repository.clear().collectList().block();
+
+        assertTrue(steps.size() > 1);
+        // 21 records plus the manual index and the zone index with its expiry
+        assertEquals(24L, steps.stream().mapToLong(Long::longValue).sum());
+        StepVerifier.create(repository.scanKeys())
+                .verifyComplete();
+        assertTrue(redis.template().hasKey("other-app:session").block());
+        // The override rules are configuration, not cached records.
+        assertTrue(redis.template().hasKey("dnscache:overrides").block());
+    }
+
+    @Test
+    void testUpdateTtlRewritesStoredTtlAndExpiry() {
+        BinaryDnsRecordCodec codec = new BinaryDnsRecordCodec(new JsonDnsRecordCodec(new ObjectMapper()));
+        repository.setManual("bin.com", codec.encode(new DnsRecord("bin.com", "1.2.3.4", 60, true)), 60).block();
+        repository.set("json.com", bytes("{\"domain\":\"json.com\",\"ip\":\"5.6.7.8\",\"ttl\":60,\"manual\":false}"), 60)
+                .block();
+
+        StepVerifier.create(repository.updateTtl("bin.com", 86400, 100))
+                .expectNext(86400L)
+                .verifyComplete();
+        StepVerifier.create(repository.updateTtl("missing.com", 10, 100))
+                .verifyComplete();
+        assertEquals(Map.of("json.com", 200L), repository.updateTtlAll(List.of("json.com", "missing.com"), 200, 100).block());
+
+        DnsRecord binary = codec.decode("bin.com", repository.get("bin.com").block());
+        assertEquals(86400L, binary.getTtl());
+        assertEquals("1.2.3.4", binary.getIp());
+        assertTrue(binary.isManual());
+        DnsRecord json = codec.decode("json.com", repository.get("json.com").block());
+        assertEquals(200L, json.getTtl());
+        assertEquals("5.6.7.8", json.getIp());
+        // Resolved records are kept past their TTL for serving stale; manual ones expire with it.
+        assertTrue(repository.getExpire("json.com").block().compareTo(Duration.ofSeconds(290)) > 0);
+        assertTrue(repository.getExpire("bin.com").block().compareTo(Duration.ofSeconds(86400)) <= 0);
+    }
+
+    @Test
+    void testUpdateTtlKeepsEmptyValuesOfJsonNegativeAnswers() {
+        JsonDnsRecordCodec codec = new JsonDnsRecordCodec(new ObjectMapper());
+        DnsRecord negative = DnsRecord.negative("gone.com", "AAAA", DnsRecord.STATUS_NXDOMAIN, 60);
+        negative.setManual(true);
+        repository.set("gone.com/AAAA", codec.encode(negative), 60).block();
+
+        StepVerifier.create(repository.updateTtl("gone.com/AAAA", 120, 100))
+                .expectNext(120L)
+                .verifyComplete();
+
+        DnsRecord updated = codec.decode("gone.com", repository.get("gone.com/AAAA").block());
+        assertEquals(120L, updated.getTtl());
+        assertTrue(updated.getValues().isEmpty());
+        assertEquals(DnsRecord.STATUS_NXDOMAIN, updated.getStatus());
+        // Read from the stored JSON: manual records get no stale retention.
+        assertTrue(repository.getExpire("gone.com/AAAA").block().compareTo(Duration.ofSeconds(120)) <= 0);
+    }
+
+    @Test
+    void testOperationsAreTimed() {
+        repository.set("example.com", bytes("{}"), 120).block();
+        repository.get("example.com").block();
+        repository.get("missing.com").block();
+        repository.setAll(List.of(new DnsCacheRepository.Entry("a.com", bytes("{}"), 60))).block();
+        repository.scanKeys(null, "*", true, 10).block();
+        repository.removeFromManualIndex(List.of("a.com")).block();
+        repository.removeFromZoneIndex(List.of("a.com")).block();
+
+        assertEquals(2, meterRegistry.get(DnsCacheRepositoryImpl.OPERATIONS_METRIC)
+                .tags("operation", "get", "outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get(DnsCacheRepositoryImpl.OPERATIONS_METRIC)
+                .tags("operation", "set", "outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get(DnsCacheRepositoryImpl.OPERATIONS_METRIC)
+                .tags("operation", "setAll", "outcome", "success").timer().count());
+        for (String operation : List.of("scanKeys", "removeFromManualIndex", "removeFromZoneIndex")) {
+            assertEquals(1, meterRegistry.get(DnsCacheRepositoryImpl.OPERATIONS_METRIC)
+                    .tags("operation", operation, "outcome", "success").timer().count());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.zzeng.dnscache.repository;
+
+import com.zzeng.dnscache.config.RedisConfig;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * A throwaway local redis-server (binary bundled with embedded-redis) plus a template connected to it.
+ */
+class EmbeddedRedis implements AutoCloseable {
+
+    private final RedisServer server;
+    private final LettuceConnectionFactory connectionFactory;
+    private final ReactiveStringRedisTemplate template;
+    private final ReactiveRedisTemplate<String, byte[]> recordTemplate;
+    private final int port;
+
+    EmbeddedRedis() throws IOException {
+        this.port = freePort();
+        this.server = new RedisServer(port);
+        server.start();
+
+        this.connectionFactory = new LettuceConnectionFactory("localhost", port);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        this.template = new ReactiveStringRedisTemplate(connectionFactory);
+        this.recordTemplate = new RedisConfig().dnsRecordRedisTemplate(connectionFactory);
+    }
+
+    ReactiveStringRedisTemplate template() {
+        return template;
+    }
+
+    ReactiveRedisTemplate<String, byte[]> recordTemplate() {
+        return recordTemplate;
+    }
+
+    LettuceConnectionFactory connectionFactory() {
+        return connectionFactory;
+    }
+
+    int port() {
+        return port;
+    }
+
+    void flushAll() {
+        template.execute(connection -> connection.serverCommands().flushAll()).blockLast();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        connectionFactory.destroy();
+        server.stop();
+    }
+}
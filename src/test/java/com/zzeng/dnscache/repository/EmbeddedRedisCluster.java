@@ -0,0 +1,171 @@
+package com.zzeng.dnscache.repository;
+
+import com.zzeng.dnscache.config.RedisConfig;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * A throwaway Redis Cluster of local redis-server processes: {@code shards} primaries sharing the 16384 slots,
+ * each with one replica, plus templates connected to it that read as {@code readFrom} says.
+ */
+class EmbeddedRedisCluster implements AutoCloseable {
+
+    private static final int SLOTS = 16384;
+
+    private final Path dir;
+    private final List<RedisServer> servers = new ArrayList<>();
+    private final RedisClient client = RedisClient.create();
+    private final List<StatefulRedisConnection<String, String>> primaries = new ArrayList<>();
+    private final List<StatefulRedisConnection<String, String>> replicas = new ArrayList<>();
+    private final LettuceConnectionFactory connectionFactory;
+    private final ReactiveStringRedisTemplate template;
+    private final ReactiveRedisTemplate<String, byte[]> recordTemplate;
+
+    EmbeddedRedisCluster(int shards, ReadFrom readFrom) throws IOException, InterruptedException {
+        this.dir = Files.createTempDirectory("redis-cluster");
+        try {
+            for (int i = 0; i < shards * 2; i++) {
+                int port = freePort();
+                RedisServer server = RedisServer.newRedisServer()
+                        .port(port)
+                        .setting("cluster-enabled yes")
+                        .setting("cluster-config-file nodes-" + port + ".conf")
+                        .setting("cluster-node-timeout 2000")
+                        .setting("dir " + dir)
+                        .build();
+                servers.add(server);
+                server.start();
+                StatefulRedisConnection<String, String> connection = client.connect(RedisURI.create("127.0.0.1", port));
+                (i < shards ? primaries : replicas).add(connection);
+            }
+            formCluster(shards);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            close();
+            throw e;
+        }
+
+        List<String> nodes = servers.stream().map(server -> "127.0.0.1:" + server.ports().get(0)).toList();
+        this.connectionFactory = new LettuceConnectionFactory(new RedisClusterConfiguration(nodes),
+                LettuceClientConfiguration.builder().readFrom(readFrom).build());
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        this.template = new ReactiveStringRedisTemplate(connectionFactory);
+        this.recordTemplate = new RedisConfig().dnsRecordRedisTemplate(connectionFactory);
+    }
+
+    private void formCluster(int shards) throws InterruptedException {
+        for (int i = 0; i < shards; i++) {
+            int from = SLOTS * i / shards;
+            int to = SLOTS * (i + 1) / shards;
+            primaries.get(i).sync().clusterAddSlots(IntStream.range(from, to).toArray());
+        }
+        int firstPort = servers.get(0).ports().get(0);
+        for (StatefulRedisConnection<String, String> node : all()) {
+            node.sync().clusterMeet("127.0.0.1", firstPort);
+        }
+        for (int i = 0; i < shards; i++) {
+            String primaryId = primaries.get(i).sync().clusterMyId();
+            RedisCommands<String, String> replica = replicas.get(i).sync();
+            await(() -> replica.clusterNodes().contains(primaryId));
+            replica.clusterReplicate(primaryId);
+        }
+        for (StatefulRedisConnection<String, String> node : all()) {
+            await(() -> node.sync().clusterInfo().contains("cluster_state:ok")
+                    && node.sync().clusterNodes().lines().filter(line -> line.contains("slave")).count() == shards);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int attempt = 0; !condition.getAsBoolean(); attempt++) {
+            if (attempt == 200) {
+                throw new IllegalStateException("Redis Cluster did not form");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private List<StatefulRedisConnection<String, String>> all() {
+        List<StatefulRedisConnection<String, String>> all = new ArrayList<>(primaries);
+        all.addAll(replicas);
+        return all;
+    }
+
+    ReactiveStringRedisTemplate template() {
+        return template;
+    }
+
+    ReactiveRedisTemplate<String, byte[]> recordTemplate() {
+        return recordTemplate;
+    }
+
+    /**
+     * Direct connections to each primary, for looking at where keys ended up.
+     */
+    List<RedisCommands<String, String>> primaries() {
+        return primaries.stream().map(StatefulRedisConnection::sync).toList();
+    }
+
+    List<RedisCommands<String, String>> replicas() {
+        return replicas.stream().map(StatefulRedisConnection::sync).toList();
+    }
+
+    void flushAll() {
+        primaries.forEach(primary -> primary.sync().flushall());
+    }
+
+    /**
+     * A free port whose cluster bus port (10000 higher) is free as well.
+     */
+    private static int freePort() {
+        while (true) {
+            int port = ThreadLocalRandom.current().nextInt(20000, 40000);
+            if (isFree(port) && isFree(port + 10000)) {
+                return port;
+            }
+        }
+    }
+
+    private static boolean isFree(int port) {
+        try (ServerSocket socket = new ServerSocket(port)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        client.shutdown();
+        for (RedisServer server : servers) {
+            server.stop();
+        }
+        try (var files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+}
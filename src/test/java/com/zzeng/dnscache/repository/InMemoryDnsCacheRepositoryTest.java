@@ -0,0 +1,104 @@
+package com.zzeng.dnscache.repository;
+
+import com.zzeng.dnscache.config.DnsProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryDnsCacheRepositoryTest extends DnsCacheRepositoryConformanceTest {
+
+    private final List<InMemoryDnsCacheRepository> repositories = new ArrayList<>();
+    private final AtomicLong now = new AtomicLong();
+    private InMemoryDnsCacheRepository repository;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        repository = newRepository(new DnsProperties(), System::nanoTime);
+    }
+
+    @AfterEach
+    void tearDown() {
+        repositories.forEach(InMemoryDnsCacheRepository::destroy);
+    }
+
+    @Override
+    DnsCacheRepository repository() {
+        return repository;
+    }
+
+    @Test
+    void testSweepReclaimsExpiredRecords() {
+        InMemoryDnsCacheRepository repository = newRepository(new DnsProperties(), now::get);
+        repository.set("short.com", bytes("v"), 5).block();
+        repository.set("long.com", bytes("v"), 60).block();
+        long bytesOfBoth = repository.usedBytes();
+
+        advance(Duration.ofSeconds(6));
+        repository.sweep();
+
+        assertTrue(repository.usedBytes() < bytesOfBoth);
+        assertEquals(1.0, meterRegistry.get(InMemoryDnsCacheRepository.ENTRIES_METRIC).gauge().value());
+        StepVerifier.create(repository.scanKeys()).expectNext("long.com").verifyComplete();
+    }
+
+    @Test
+    void testRecordsBeyondOneTurnOfTheWheelSurviveTheSweep() {
+        InMemoryDnsCacheRepository repository = newRepository(new DnsProperties(), now::get);
+        repository.set("far.com", bytes("v"), 2_000).block();
+
+        advance(Duration.ofSeconds(1_500));
+        repository.sweep();
+        assertEquals(1.0, meterRegistry.get(InMemoryDnsCacheRepository.ENTRIES_METRIC).gauge().value());
+
+        advance(Duration.ofSeconds(501));
+        repository.sweep();
+        assertEquals(0.0, meterRegistry.get(InMemoryDnsCacheRepository.ENTRIES_METRIC).gauge().value());
+        assertEquals(0L, repository.usedBytes());
+    }
+
+    @Test
+    void testEvictsRecordsClosestToExpiryButNeverManualOnes() {
+        DnsProperties properties = new DnsProperties();
+        // Room for three of the records below, which take a little over 200 bytes each.
+        properties.getStorage().getMemory().setMaximumMemoryBytes(700);
+        InMemoryDnsCacheRepository repository = newRepository(properties, now::get);
+        String value = "x".repeat(40);
+
+        repository.setManual("m.com", bytes(value), 10).block();
+        repository.set("a.com", bytes(value), 100).block();
+        repository.set("b.com", bytes(value), 200).block();
+        repository.set("c.com", bytes(value), 300).block();
+
+        StepVerifier.create(repository.get("a.com")).verifyComplete();
+        StepVerifier.create(repository.get("m.com")).expectNextCount(1).verifyComplete();
+        StepVerifier.create(repository.multiGet(List.of("b.com", "c.com")))
+                .expectNextMatches(found -> found.size() == 2)
+                .verifyComplete();
+        assertTrue(repository.usedBytes() <= 700);
+        assertEquals(1.0, meterRegistry.get(InMemoryDnsCacheRepository.EVICTIONS_METRIC).counter().count());
+    }
+
+    private InMemoryDnsCacheRepository newRepository(DnsProperties properties, LongSupplier clock) {
+        meterRegistry = new SimpleMeterRegistry();
+        InMemoryDnsCacheRepository created = new InMemoryDnsCacheRepository(properties, CODEC, meterRegistry, clock);
+        repositories.add(created);
+        return created;
+    }
+
+    private void advance(Duration duration) {
+        now.addAndGet(TimeUnit.NANOSECONDS.convert(duration));
+    }
+}
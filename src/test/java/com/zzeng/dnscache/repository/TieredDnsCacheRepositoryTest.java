@@ -0,0 +1,108 @@
+package com.zzeng.dnscache.repository;
+
+import com.zzeng.dnscache.cache.OffHeapRecordStore;
+import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.model.DnsRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TieredDnsCacheRepositoryTest extends DnsCacheRepositoryConformanceTest {
+
+    private static EmbeddedRedis redis;
+    private DnsCacheRepositoryImpl redisRepository;
+    private TieredDnsCacheRepository repository;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeAll
+    static void startRedis() throws Exception {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() throws Exception {
+        redis.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        DnsProperties properties = new DnsProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        redisRepository = new DnsCacheRepositoryImpl(redis.recordTemplate(), redis.template(), properties, meterRegistry);
+        repository = new TieredDnsCacheRepository(redisRepository, new OffHeapRecordStore(64 * 1024, 128), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        redisRepository.destroy();
+    }
+
+    @Override
+    DnsCacheRepository repository() {
+        return repository;
+    }
+
+    @Test
+    void testReadsFromRedisAreServedOffHeapAfterwards() {
+        redisRepository.set("example.com", bytes("v1"), 120).block();
+
+        StepVerifier.create(repository.get("example.com")).expectNextCount(1).verifyComplete();
+        // Gone from Redis, but the tier still holds what was read.
+        redisRepository.delete("example.com").block();
+        StepVerifier.create(repository.get("example.com")).expectNextCount(1).verifyComplete();
+        StepVerifier.create(repository.getWithExpire("example.com"))
+                .expectNextMatches(stored -> stored.expire().compareTo(Duration.ofSeconds(110)) > 0)
+                .verifyComplete();
+
+        assertEquals(2.0, lookups("hit"));
+        assertEquals(1.0, lookups("miss"));
+    }
+
+    @Test
+    void testMultiGetFillsTheTierWithTheRedisExpiry() {
+        redisRepository.set("a.com", bytes("a"), 60).block();
+        redisRepository.set("b.com", bytes("b"), 600).block();
+
+        StepVerifier.create(repository.multiGet(List.of("a.com", "b.com", "missing.com")))
+                .expectNextMatches(found -> found.size() == 2)
+                .verifyComplete();
+        redis.flushAll();
+
+        StepVerifier.create(repository.multiGet(List.of("a.com", "b.com")))
+                .expectNextMatches(found -> found.size() == 2)
+                .verifyComplete();
+        assertTrue(repository.getExpire("b.com").block().compareTo(Duration.ofSeconds(590)) > 0);
+        assertEquals(2.0, lookups("hit"));
+    }
+
+    @Test
+    void testChangesDropTheOffHeapCopy() {
+        repository.set("a.com", CODEC.encode(new DnsRecord("a.com", "10.0.0.1", 60, false)), 60).block();
+        repository.set("b.com", bytes("b"), 60).block();
+        // Written by another node: this one only notices once its copy is dropped.
+        redisRepository.set("a.com", CODEC.encode(new DnsRecord("a.com", "10.0.0.2", 60, false)), 60).block();
+
+        repository.updateTtl("a.com", 30, 0).block();
+        repository.deleteAll(List.of("b.com")).block();
+
+        DnsRecord record = CODEC.decode("a.com", repository.get("a.com").block());
+        assertEquals("10.0.0.2", record.getIp());
+        assertEquals(30, record.getTtl());
+        StepVerifier.create(repository.get("b.com")).verifyComplete();
+    }
+
+    private double lookups(String result) {
+        return meterRegistry.get(TieredDnsCacheRepository.LOOKUPS_METRIC).tag("result", result).counter().count();
+    }
+}
@@ -0,0 +1,37 @@
+package com.zzeng.dnscache.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ZoneIndexTest {
+
+    @Test
+    void testMembersReverseLabelsAndKeepType() {
+        assertEquals("com.example.www.", ZoneIndex.member("www.example.com"));
+        assertEquals("com.example./AAAA", ZoneIndex.member("example.com/AAAA"));
+        assertEquals("localhost.", ZoneIndex.member("localhost"));
+
+        for (String key : List.of("www.example.com", "example.com/AAAA", "localhost", "a.b.c.d/MX")) {
+            assertEquals(key, ZoneIndex.key(ZoneIndex.member(key)));
+        }
+    }
+
+    @Test
+    void testZoneIsOneRangeOfTheIndex() {
+        TreeSet<String> index = new TreeSet<>();
+        for (String key : List.of("example.com", "example.com/TXT", "www.example.com", "-x.example.com",
+                "badexample.com", "example.com.evil.org", "example.co", "examplf.com")) {
+            index.add(ZoneIndex.member(key));
+        }
+
+        List<String> zone = index.subSet(ZoneIndex.from("example.com"), ZoneIndex.until("example.com")).stream()
+                .map(ZoneIndex::key)
+                .toList();
+
+        assertEquals(List.of("example.com", "-x.example.com", "example.com/TXT", "www.example.com"), zone);
+    }
+}
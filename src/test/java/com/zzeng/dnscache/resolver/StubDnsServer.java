@@ -0,0 +1,257 @@
+package com.zzeng.dnscache.resolver;
+
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.CNAMERecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal authoritative-style DNS server for tests, standing in for the public fallback servers.
+ * Answers queries from an in-memory table over UDP and TCP on the same loopback port,
+ * following CNAMEs within the table like a recursive resolver would.
+ */
+public class StubDnsServer implements AutoCloseable {
+
+    private final Map<String, List<Record>> records = new ConcurrentHashMap<>();
+    private final DatagramSocket udp;
+    private final ServerSocket tcp;
+    private final AtomicInteger udpQueries = new AtomicInteger();
+    private final AtomicInteger tcpQueries = new AtomicInteger();
+
+    private volatile boolean truncateUdp;
+    private volatile boolean silent;
+    private volatile long delayMillis;
+    private volatile SOARecord soa;
+    private volatile InetAddress defaultAddress;
+
+    public StubDnsServer() throws IOException {
+        this.udp = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        this.tcp = new ServerSocket(udp.getLocalPort(), 50, InetAddress.getLoopbackAddress());
+        startDaemon("stub-dns-udp", this::serveUdp);
+        startDaemon("stub-dns-tcp", this::serveTcp);
+    }
+
+    public StubDnsServer withA(String domain, String ip) {
+        try {
+            return withRecord(new ARecord(name(domain), DClass.IN, 60, InetAddress.getByName(ip)));
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(ip, e);
+        }
+    }
+
+    public StubDnsServer withCname(String domain, String target) {
+        return withRecord(new CNAMERecord(name(domain), DClass.IN, 60, name(target)));
+    }
+
+    public StubDnsServer withRecord(Record record) {
+        records.computeIfAbsent(normalize(record.getName().toString()), key -> new CopyOnWriteArrayList<>()).add(record);
+        return this;
+    }
+
+    /** Sets the TC bit on every UDP answer so clients must retry over TCP. */
+    /** Answers A queries for names not in the table with this address instead of NXDOMAIN. */
+    public StubDnsServer withDefaultA(String ip) {
+        try {
+            this.defaultAddress = InetAddress.getByName(ip);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(ip, e);
+        }
+        return this;
+    }
+
+    /** Sent in the authority section of negative answers, as the negative caching TTL. */
+    public StubDnsServer withSoa(String zone, long ttl, long minimum) {
+        Name origin = name(zone);
+        this.soa = new SOARecord(origin, DClass.IN, ttl, name("ns." + zone), name("hostmaster." + zone),
+                1, 3600, 600, 86400, minimum);
+        return this;
+    }
+
+    public StubDnsServer truncateUdp(boolean truncateUdp) {
+        this.truncateUdp = truncateUdp;
+        return this;
+    }
+
+    /** Drops every query without answering. */
+    public StubDnsServer silent(boolean silent) {
+        this.silent = silent;
+        return this;
+    }
+
+    /** Delays every UDP answer, to simulate a slow upstream. */
+    public StubDnsServer delay(long delayMillis) {
+        this.delayMillis = delayMillis;
+        return this;
+    }
+
+    public String address() {
+        return "127.0.0.1:" + udp.getLocalPort();
+    }
+
+    public int udpQueries() {
+        return udpQueries.get();
+    }
+
+    public int tcpQueries() {
+        return tcpQueries.get();
+    }
+
+    private void serveUdp() {
+        byte[] buffer = new byte[4096];
+        while (!udp.isClosed()) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                udp.receive(packet);
+                udpQueries.incrementAndGet();
+                if (silent) {
+                    continue;
+                }
+                Message query = new Message(Arrays.copyOf(packet.getData(), packet.getLength()));
+                Message response = answer(query);
+                if (truncateUdp) {
+                    response.getHeader().setFlag(Flags.TC);
+                    response.removeAllRecords(Section.ANSWER);
+                }
+                byte[] wire = response.toWire();
+                DatagramPacket reply = new DatagramPacket(wire, wire.length, packet.getSocketAddress());
+                long delay = delayMillis;
+                if (delay > 0) {
+                    startDaemon("stub-dns-delayed", () -> {
+                        sleep(delay);
+                        send(reply);
+                    });
+                } else {
+                    send(reply);
+                }
+            } catch (IOException e) {
+                // socket closed or malformed packet
+            }
+        }
+    }
+
+    private void serveTcp() {
+        while (!tcp.isClosed()) {
+            try (Socket socket = tcp.accept()) {
+                tcpQueries.incrementAndGet();
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                byte[] wire = new byte[in.readUnsignedShort()];
+                in.readFully(wire);
+                if (silent) {
+                    continue;
+                }
+                byte[] reply = answer(new Message(wire)).toWire();
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeShort(reply.length);
+                out.write(reply);
+                out.flush();
+            } catch (IOException e) {
+                // socket closed or client went away
+            }
+        }
+    }
+
+    private Message answer(Message query) throws IOException {
+        Message response = new Message(query.getHeader().getID());
+        response.getHeader().setFlag(Flags.QR);
+        response.getHeader().setFlag(Flags.RA);
+        Record question = query.getQuestion();
+        response.addRecord(question, Section.QUESTION);
+
+        Name name = question.getName();
+        InetAddress fallback = defaultAddress;
+        if (fallback != null && !records.containsKey(normalize(name.toString()))) {
+            if (question.getType() == Type.A) {
+                response.addRecord(new ARecord(name, DClass.IN, 60, fallback), Section.ANSWER);
+            }
+            return response;
+        }
+        response.getHeader().setRcode(records.containsKey(normalize(name.toString())) ? Rcode.NOERROR : Rcode.NXDOMAIN);
+        for (int hop = 0; hop < 8; hop++) {
+            List<Record> owned = records.getOrDefault(normalize(name.toString()), List.of());
+            List<Record> matching = owned.stream().filter(record -> record.getType() == question.getType()).toList();
+            if (!matching.isEmpty()) {
+                matching.forEach(record -> response.addRecord(record, Section.ANSWER));
+                break;
+            }
+            CNAMERecord alias = owned.stream()
+                    .filter(CNAMERecord.class::isInstance)
+                    .map(CNAMERecord.class::cast)
+                    .findFirst()
+                    .orElse(null);
+            if (alias == null) {
+                break;
+            }
+            response.addRecord(alias, Section.ANSWER);
+            name = alias.getTarget();
+        }
+        if (soa != null && response.getSection(Section.ANSWER).isEmpty()) {
+            response.addRecord(soa, Section.AUTHORITY);
+        }
+        return response;
+    }
+
+    private synchronized void send(DatagramPacket reply) {
+        try {
+            udp.send(reply);
+        } catch (IOException e) {
+            // socket closed
+        }
+    }
+
+    private static Name name(String domain) {
+        try {
+            return Name.fromString(domain, Name.root);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(domain, e);
+        }
+    }
+
+    private static String normalize(String domain) {
+        String lower = domain.toLowerCase();
+        return lower.endsWith(".") ? lower.substring(0, lower.length() - 1) : lower;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void startDaemon(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        udp.close();
+        tcp.close();
+    }
+}
@@ -0,0 +1,167 @@
+package com.zzeng.dnscache.resolver;
+
+import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.model.DnsRecord;
+import com.zzeng.dnscache.model.DnsRecordValue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.MXRecord;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpstreamDnsClientTest {
+
+    private StubDnsServer stubServer;
+    private UpstreamDnsClient upstreamDnsClient;
+    private DnsFallbackResolver resolver;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stubServer = new StubDnsServer()
+                .withA("example.com", "93.184.216.34");
+
+        DnsProperties properties = new DnsProperties();
+        properties.getUpstream().setQueryTimeout(Duration.ofMillis(500));
+        upstreamDnsClient = new UpstreamDnsClient(properties);
+        meterRegistry = new SimpleMeterRegistry();
+        resolver = new DnsFallbackResolver(upstreamDnsClient, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        upstreamDnsClient.destroy();
+        stubServer.close();
+    }
+
+    @Test
+    void testResolveOverUdp() {
+        StepVerifier.create(resolver.resolve("example.com", "A", stubServer.address()).map(UpstreamDnsClientTest::firstValue))
+                .expectNext("93.184.216.34")
+                .verifyComplete();
+
+        assertEquals(0, stubServer.tcpQueries());
+    }
+
+    @Test
+    void testManyConcurrentQueriesShareSockets() {
+        for (int i = 0; i < 200; i++) {
+            stubServer.withA("host" + i + ".example.com", "10.0.0." + (i % 250));
+        }
+
+        StepVerifier.create(Flux.range(0, 200)
+                        .flatMap(i -> resolver.resolve("host" + i + ".example.com", "A", stubServer.address())
+                                .map(UpstreamDnsClientTest::firstValue)
+                                .filter(ip -> ip.equals("10.0.0." + (i % 250))))
+                        .count())
+                .expectNext(200L)
+                .verifyComplete();
+
+        assertTrue(stubServer.udpQueries() >= 200);
+    }
+
+    @Test
+    void testTruncatedAnswerFallsBackToTcp() {
+        stubServer.truncateUdp(true);
+
+        StepVerifier.create(resolver.resolve("example.com", "A", stubServer.address()).map(UpstreamDnsClientTest::firstValue))
+                .expectNext("93.184.216.34")
+                .verifyComplete();
+
+        assertEquals(1, stubServer.tcpQueries());
+    }
+
+    @Test
+    void testNxdomainIsUnknownHost() {
+        StepVerifier.create(resolver.resolve("missing.example.com", "A", stubServer.address()))
+                .verifyError(UnknownHostException.class);
+    }
+
+    @Test
+    void testSilentServerTimesOut() {
+        stubServer.silent(true);
+
+        StepVerifier.create(resolver.resolve("example.com", "A", stubServer.address()))
+                .verifyError(UnknownHostException.class);
+    }
+
+    @Test
+    void testCnameChainIsReturnedHopByHop() throws Exception {
+        stubServer.withCname("www.example.com", "edge.example.net")
+                .withCname("edge.example.net", "example.com")
+                .withRecord(new MXRecord(Name.fromString("example.com."), DClass.IN, 120, 10, Name.fromString("mail.example.com.")));
+
+        StepVerifier.create(resolver.resolve("www.example.com", "MX", stubServer.address()))
+                .assertNext(chain -> {
+                    assertEquals(List.of("CNAME", "CNAME", "MX"), chain.stream().map(DnsRecord::getType).toList());
+                    assertEquals(List.of("www.example.com", "edge.example.net", "example.com"),
+                            chain.stream().map(DnsRecord::getDomain).toList());
+                    assertEquals("edge.example.net", chain.get(0).getIp());
+                    assertEquals("10 mail.example.com.", chain.get(2).getIp());
+                    assertEquals(120, chain.get(2).getTtl());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testAllRecordsOfTheSetAreKept() {
+        stubServer.withA("example.com", "93.184.216.35");
+
+        StepVerifier.create(resolver.resolve("example.com", "A", stubServer.address()))
+                .assertNext(chain -> {
+                    assertEquals(1, chain.size());
+                    assertEquals(List.of("93.184.216.34", "93.184.216.35"),
+                            chain.get(0).getValues().stream().map(DnsRecordValue::getData).toList());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testMissingTypeIsNegativeAnswer() {
+        StepVerifier.create(resolver.resolve("example.com", "AAAA", stubServer.address()))
+                .verifyError(NegativeAnswerException.class);
+    }
+
+    @Test
+    void testNegativeAnswerCarriesSoaTtl() {
+        stubServer.withSoa("example.com", 3600, 300);
+
+        StepVerifier.create(resolver.resolve("missing.example.com", "A", stubServer.address()))
+                .verifyErrorMatches(err -> err instanceof NegativeAnswerException negative
+                        && negative.getRcode() == Rcode.NXDOMAIN && negative.getNegativeTtl() == 300);
+        StepVerifier.create(resolver.resolve("example.com", "AAAA", stubServer.address()))
+                .verifyErrorMatches(err -> err instanceof NegativeAnswerException negative
+                        && negative.getRcode() == Rcode.NOERROR && negative.getNegativeTtl() == 300);
+    }
+
+    @Test
+    void testQueriesAreTimedPerServerAndOutcome() {
+        resolver.resolve("example.com", "A", stubServer.address()).block();
+        StepVerifier.create(resolver.resolve("example.com", "AAAA", stubServer.address()))
+                .verifyError(NegativeAnswerException.class);
+        stubServer.silent(true);
+        StepVerifier.create(resolver.resolve("example.com", "A", stubServer.address()))
+                .verifyError(UnknownHostException.class);
+
+        for (String outcome : List.of("answer", "negative", "timeout")) {
+            assertEquals(1, meterRegistry.get(DnsFallbackResolver.QUERIES_METRIC)
+                    .tags("server", stubServer.address(), "outcome", outcome).timer().count(), outcome);
+        }
+    }
+
+    private static String firstValue(List<DnsRecord> chain) {
+        return chain.get(chain.size() - 1).getIp();
+    }
+}
@@ -0,0 +1,104 @@
+package com.zzeng.dnscache.resolver;
+
+import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.model.DnsRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpstreamResolverTest {
+
+    private StubDnsServer slowServer;
+    private StubDnsServer fastServer;
+    private UpstreamDnsClient upstreamDnsClient;
+    private DnsProperties properties;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        slowServer = new StubDnsServer().withA("example.com", "10.0.0.1").delay(800);
+        fastServer = new StubDnsServer().withA("example.com", "10.0.0.2");
+
+        properties = new DnsProperties();
+        properties.setFallbackServers(List.of(slowServer.address(), fastServer.address()));
+        properties.getUpstream().setQueryTimeout(Duration.ofSeconds(2));
+        properties.getUpstream().setHedgeMaxDelay(Duration.ofMillis(50));
+        upstreamDnsClient = new UpstreamDnsClient(properties);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        upstreamDnsClient.destroy();
+        slowServer.close();
+        fastServer.close();
+    }
+
+    private UpstreamResolver resolver(DnsProperties.Upstream.Strategy strategy) {
+        properties.getUpstream().setStrategy(strategy);
+        return new UpstreamResolver(new DnsFallbackResolver(upstreamDnsClient, new SimpleMeterRegistry()), properties);
+    }
+
+    @Test
+    void testHedgedFiresNextServerWhenPrimaryIsSlow() {
+        StepVerifier.create(resolver(DnsProperties.Upstream.Strategy.HEDGED).resolve("example.com", "A").map(UpstreamResolverTest::address))
+                .expectNext("10.0.0.2")
+                .expectComplete()
+                .verify(Duration.ofMillis(500));
+    }
+
+    @Test
+    void testRaceTakesFirstAnswer() {
+        StepVerifier.create(resolver(DnsProperties.Upstream.Strategy.RACE).resolve("example.com", "A").map(UpstreamResolverTest::address))
+                .expectNext("10.0.0.2")
+                .expectComplete()
+                .verify(Duration.ofMillis(500));
+    }
+
+    @Test
+    void testSequentialWaitsForPrimary() {
+        StepVerifier.create(resolver(DnsProperties.Upstream.Strategy.SEQUENTIAL).resolve("example.com", "A").map(UpstreamResolverTest::address))
+                .expectNext("10.0.0.1")
+                .verifyComplete();
+    }
+
+    @Test
+    void testNegativeAnswerIsNotRetriedElsewhere() {
+        slowServer.delay(0);
+
+        StepVerifier.create(resolver(DnsProperties.Upstream.Strategy.SEQUENTIAL).resolve("missing.example.com", "A"))
+                .verifyError(NegativeAnswerException.class);
+
+        assertEquals(0, fastServer.udpQueries());
+    }
+
+    @Test
+    void testFailingServerIsEjectedAndReordered() {
+        slowServer.delay(0).silent(true);
+        properties.getUpstream().setQueryTimeout(Duration.ofMillis(100));
+        properties.getUpstream().setEjectConsecutiveFailures(2);
+        upstreamDnsClient.destroy();
+        upstreamDnsClient = new UpstreamDnsClient(properties);
+        UpstreamResolver resolver = resolver(DnsProperties.Upstream.Strategy.SEQUENTIAL);
+
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(resolver.resolve("example.com", "A").map(UpstreamResolverTest::address))
+                    .expectNext("10.0.0.2")
+                    .verifyComplete();
+        }
+
+        UpstreamServerStats slowStats = resolver.getServerStats().get(0);
+        assertTrue(slowStats.isEjected(System.nanoTime()));
+        assertEquals(fastServer.address(), resolver.orderedServers().get(0).getServer());
+    }
+
+    private static String address(List<DnsRecord> chain) {
+        return chain.get(chain.size() - 1).getIp();
+    }
+}
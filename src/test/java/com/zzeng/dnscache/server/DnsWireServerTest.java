@@ -0,0 +1,189 @@
+package com.zzeng.dnscache.server;
+
+import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.dto.DnsRecordResponse;
+import com.zzeng.dnscache.model.DnsRecordValue;
+import com.zzeng.dnscache.resolver.NegativeAnswerException;
+import com.zzeng.dnscache.service.DnsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import org.xbill.DNS.AAAARecord;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.CNAMERecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.MXRecord;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.Type;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.anyString;
+
+class DnsWireServerTest {
+
+    private DnsService dnsService;
+    private DnsWireServer server;
+
+    @BeforeEach
+    void setUp() {
+        dnsService = Mockito.mock(DnsService.class);
+        DnsProperties properties = new DnsProperties();
+        properties.getServer().setBindAddress("127.0.0.1");
+        properties.getServer().setPort(0);
+        server = new DnsWireServer(dnsService, properties);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void testAnswersAWithRemainingTtlAndKeepsQuestionCase() throws Exception {
+        when(dnsService.resolveWithRemainingTtl("example.com", "A"))
+                .thenReturn(Mono.just(new DnsRecordResponse("example.com", "93.184.216.34", 42)));
+
+        Message response = send(server.getUdpAddress(), false, "ExAmPle.CoM.", Type.A);
+
+        assertEquals(Rcode.NOERROR, response.getRcode());
+        assertTrue(response.getHeader().getFlag(Flags.QR));
+        assertTrue(response.getHeader().getFlag(Flags.RD));
+        assertEquals("ExAmPle.CoM.", response.getQuestion().getName().toString());
+        List<Record> answers = response.getSection(Section.ANSWER);
+        assertEquals(1, answers.size());
+        assertEquals("93.184.216.34", ((ARecord) answers.get(0)).getAddress().getHostAddress());
+        assertEquals(42, answers.get(0).getTTL());
+    }
+
+    @Test
+    void testAnswersOverTcp() throws Exception {
+        when(dnsService.resolveWithRemainingTtl("example.com", "A"))
+                .thenReturn(Mono.just(new DnsRecordResponse("example.com", "93.184.216.34", 300)));
+
+        Message response = send(server.getTcpAddress(), true, "example.com.", Type.A);
+
+        assertEquals(Rcode.NOERROR, response.getRcode());
+        assertEquals(1, response.getSection(Section.ANSWER).size());
+    }
+
+    @Test
+    void testNegativeAnswersKeepTheirRcode() throws Exception {
+        when(dnsService.resolveWithRemainingTtl("missing.example", "A")).thenReturn(Mono.error(new ResponseStatusException(
+                HttpStatus.BAD_REQUEST, "Unable to resolve domain", new NegativeAnswerException("nx", Rcode.NXDOMAIN))));
+        when(dnsService.resolveWithRemainingTtl("broken.example", "A"))
+                .thenReturn(Mono.error(new IllegalStateException("upstream down")));
+
+        assertEquals(Rcode.NXDOMAIN, send(server.getUdpAddress(), false, "missing.example.", Type.A).getRcode());
+        assertEquals(Rcode.SERVFAIL, send(server.getUdpAddress(), false, "broken.example.", Type.A).getRcode());
+    }
+
+    @Test
+    void testCachedNegativeAnswers() throws Exception {
+        DnsRecordResponse nxdomain = new DnsRecordResponse("typo.example", "A", List.of(), 300, null);
+        nxdomain.setStatus("NXDOMAIN");
+        DnsRecordResponse noData = new DnsRecordResponse("example.com", "AAAA", List.of(), 300, null);
+        noData.setStatus("NODATA");
+        when(dnsService.resolveWithRemainingTtl("typo.example", "A")).thenReturn(Mono.just(nxdomain));
+        when(dnsService.resolveWithRemainingTtl("example.com", "AAAA")).thenReturn(Mono.just(noData));
+
+        assertEquals(Rcode.NXDOMAIN, send(server.getUdpAddress(), false, "typo.example.", Type.A).getRcode());
+        Message empty = send(server.getUdpAddress(), false, "example.com.", Type.AAAA);
+        assertEquals(Rcode.NOERROR, empty.getRcode());
+        assertEquals(0, empty.getSection(Section.ANSWER).size());
+    }
+
+    @Test
+    void testAnswersAliasWithCnameChainAndRecordSet() throws Exception {
+        when(dnsService.resolveWithRemainingTtl("www.example.com", "AAAA"))
+                .thenReturn(Mono.just(new DnsRecordResponse("www.example.com", "AAAA",
+                        List.of(new DnsRecordValue("2001:db8:0:0:0:0:0:1", 60), new DnsRecordValue("2001:db8:0:0:0:0:0:2", 60)),
+                        30, List.of("edge.example.net", "example.com"))));
+
+        List<Record> answers = send(server.getUdpAddress(), false, "www.example.com.", Type.AAAA).getSection(Section.ANSWER);
+
+        assertEquals(4, answers.size());
+        assertEquals(Name.fromString("www.example.com."), answers.get(0).getName());
+        assertEquals(Name.fromString("edge.example.net."), ((CNAMERecord) answers.get(0)).getTarget());
+        assertEquals(Name.fromString("edge.example.net."), answers.get(1).getName());
+        assertEquals(Name.fromString("example.com."), ((CNAMERecord) answers.get(1)).getTarget());
+        assertEquals(Name.fromString("example.com."), answers.get(2).getName());
+        assertEquals("2001:db8:0:0:0:0:0:2", ((AAAARecord) answers.get(3)).getAddress().getHostAddress());
+        assertEquals(30, answers.get(3).getTTL());
+    }
+
+    @Test
+    void testAnswersOtherTypesFromTheirPresentationForm() throws Exception {
+        when(dnsService.resolveWithRemainingTtl("example.com", "MX"))
+                .thenReturn(Mono.just(new DnsRecordResponse("example.com", "MX",
+                        List.of(new DnsRecordValue("10 mail.example.com.", 300)), 300, null)));
+
+        List<Record> answers = send(server.getUdpAddress(), false, "example.com.", Type.MX).getSection(Section.ANSWER);
+
+        assertEquals(1, answers.size());
+        assertEquals(10, ((MXRecord) answers.get(0)).getPriority());
+        assertEquals(Name.fromString("mail.example.com."), ((MXRecord) answers.get(0)).getTarget());
+    }
+
+    @Test
+    void testLargeUdpAnswersAreTruncated() throws Exception {
+        List<DnsRecordValue> values = IntStream.range(0, 40)
+                .mapToObj(i -> new DnsRecordValue("\"record number " + i + " with some padding\"", 300))
+                .toList();
+        when(dnsService.resolveWithRemainingTtl("example.com", "TXT"))
+                .thenReturn(Mono.just(new DnsRecordResponse("example.com", "TXT", values, 300, null)));
+
+        SimpleResolver udp = new SimpleResolver(server.getUdpAddress());
+        udp.setIgnoreTruncation(true);
+        udp.setTimeout(Duration.ofSeconds(2));
+        Message truncated = udp.send(Message.newQuery(Record.newRecord(Name.fromString("example.com."), Type.TXT, DClass.IN)));
+        assertTrue(truncated.getHeader().getFlag(Flags.TC));
+        assertTrue(truncated.getSection(Section.ANSWER).size() < 40);
+
+        assertEquals(40, send(server.getTcpAddress(), true, "example.com.", Type.TXT).getSection(Section.ANSWER).size());
+    }
+
+    @Test
+    void testMetaQueriesAreNotImplemented() throws Exception {
+        Message response = send(server.getUdpAddress(), false, "example.com.", Type.ANY);
+
+        assertEquals(Rcode.NOTIMP, response.getRcode());
+        verify(dnsService, never()).resolveWithRemainingTtl(anyString(), anyString());
+    }
+
+    @Test
+    void testParseIpv4() {
+        assertEquals(0x5DB8D822L, DnsWireCodec.parseIpv4("93.184.216.34"));
+        assertEquals(0xFFFFFFFFL, DnsWireCodec.parseIpv4("255.255.255.255"));
+        assertEquals(DnsWireCodec.NO_ADDRESS, DnsWireCodec.parseIpv4("2001:db8::1"));
+        assertEquals(DnsWireCodec.NO_ADDRESS, DnsWireCodec.parseIpv4("1.2.3"));
+        assertEquals(DnsWireCodec.NO_ADDRESS, DnsWireCodec.parseIpv4("1.2.3.256"));
+        assertEquals(DnsWireCodec.NO_ADDRESS, DnsWireCodec.parseIpv4("1..3.4"));
+    }
+
+    private static Message send(InetSocketAddress address, boolean tcp, String name, int type) throws Exception {
+        SimpleResolver resolver = new SimpleResolver(address);
+        resolver.setTCP(tcp);
+        resolver.setTimeout(Duration.ofSeconds(2));
+        return resolver.send(Message.newQuery(Record.newRecord(Name.fromString(name), type, DClass.IN)));
+    }
+}
@@ -0,0 +1,143 @@
+package com.zzeng.dnscache.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zzeng.dnscache.cache.CacheSnapshotFile;
+import com.zzeng.dnscache.cache.DnsNearCache;
+import com.zzeng.dnscache.codec.BinaryDnsRecordCodec;
+import com.zzeng.dnscache.codec.DnsRecordCodec;
+import com.zzeng.dnscache.codec.JsonDnsRecordCodec;
+import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.dto.DnsRecordResponse;
+import com.zzeng.dnscache.model.DnsRecord;
+import com.zzeng.dnscache.repository.DnsCacheRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CacheSnapshotServiceTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+
+    @Mock
+    private DnsCacheRepository dnsCacheRepository;
+
+    @Mock
+    private DnsService dnsService;
+
+    @TempDir
+    Path dir;
+
+    private DnsRecordCodec codec;
+    private DnsProperties dnsProperties;
+    private DnsNearCache nearCache;
+    private CacheSnapshotService snapshotService;
+
+    @BeforeEach
+    void setUp() {
+        codec = new BinaryDnsRecordCodec(new JsonDnsRecordCodec(new ObjectMapper()));
+        dnsProperties = new DnsProperties();
+        dnsProperties.getSnapshot().setEnabled(true);
+        dnsProperties.getSnapshot().setPath(dir.resolve("snapshot.bin").toString());
+        nearCache = new DnsNearCache(dnsProperties, new SimpleMeterRegistry());
+        snapshotService = new CacheSnapshotService(nearCache, dnsCacheRepository, dnsService, codec, dnsProperties,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    void testSavesTheMostReadEntriesFirst() throws IOException {
+        nearCache.put(new DnsRecord("cold.com", "10.0.0.1", 300, false), Duration.ofSeconds(60));
+        nearCache.put(new DnsRecord("hot.com", "10.0.0.2", 300, false), Duration.ofSeconds(120));
+        nearCache.getHit("hot.com");
+        nearCache.getHit("hot.com");
+        nearCache.getHit("cold.com");
+
+        StepVerifier.create(snapshotService.save()).expectNext(2).verifyComplete();
+
+        List<CacheSnapshotFile.Entry> entries = CacheSnapshotFile.read(dir.resolve("snapshot.bin"));
+        assertEquals(List.of("hot.com", "cold.com"), entries.stream().map(CacheSnapshotFile.Entry::key).toList());
+        assertEquals(2, entries.get(0).hits());
+        long expiresIn = entries.get(0).expiresAtMillis() - NOW.toEpochMilli();
+        assertTrue(expiresIn > 115_000 && expiresIn <= 120_000, "expires in " + expiresIn);
+        assertEquals("10.0.0.2", codec.decode("hot.com", entries.get(0).value()).getIp());
+    }
+
+    @Test
+    void testWarmUpRestoresMissingEntriesAndResolvesEveryOne() throws IOException {
+        byte[] present = codec.encode(new DnsRecord("present.com", "10.0.0.1", 300, false));
+        byte[] missing = codec.encode(new DnsRecord("missing.com", "10.0.0.2", 300, false));
+        byte[] manual = codec.encode(new DnsRecord("manual.com", "10.0.0.3", 300, true));
+        byte[] expired = codec.encode(new DnsRecord("expired.com", "10.0.0.4", 300, false));
+        long now = NOW.toEpochMilli();
+        CacheSnapshotFile.write(dir.resolve("snapshot.bin"), List.of(
+                new CacheSnapshotFile.Entry("present.com", present, now + 60_000, 9),
+                new CacheSnapshotFile.Entry("missing.com", missing, now + 90_500, 5),
+                new CacheSnapshotFile.Entry("manual.com", manual, now + 30_000, 3),
+                new CacheSnapshotFile.Entry("expired.com", expired, now - 1, 2)));
+        when(dnsCacheRepository.multiGet(anyList())).thenReturn(Mono.just(Map.of("present.com", present)));
+        when(dnsCacheRepository.setAll(anyList())).thenReturn(Mono.just(1L));
+        when(dnsCacheRepository.setManual(anyString(), any(), any(Long.class))).thenReturn(Mono.just(true));
+        when(dnsService.resolveDomain(anyString(), eq(DnsRecord.TYPE_A), eq(null)))
+                .thenReturn(Mono.just(new DnsRecordResponse()));
+
+        StepVerifier.create(snapshotService.warmUp()).expectNext(4L).verifyComplete();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<DnsCacheRepository.Entry>> written = ArgumentCaptor.forClass(List.class);
+        verify(dnsCacheRepository).setAll(written.capture());
+        assertEquals(1, written.getValue().size());
+        assertEquals("missing.com", written.getValue().get(0).domain());
+        assertEquals(91, written.getValue().get(0).ttlSeconds());
+        verify(dnsCacheRepository).setManual("manual.com", manual, 30);
+        verify(dnsService).resolveDomain("expired.com", DnsRecord.TYPE_A, null);
+    }
+
+    @Test
+    void testNotReadyUntilTheWarmUpIsOver() throws IOException {
+        when(dnsCacheRepository.multiGet(anyList())).thenReturn(Mono.never());
+        CacheSnapshotFile.Entry entry = new CacheSnapshotFile.Entry("slow.com",
+                codec.encode(new DnsRecord("slow.com", "10.0.0.1", 300, false)), NOW.toEpochMilli() + 60_000, 1);
+        CacheSnapshotFile.write(dir.resolve("snapshot.bin"), List.of(entry));
+        dnsProperties.getSnapshot().setWarmUpTimeout(Duration.ofMillis(200));
+        WarmStartHealthIndicator health = new WarmStartHealthIndicator(snapshotService);
+
+        snapshotService.start();
+        assertFalse(snapshotService.isWarm());
+        assertEquals("OUT_OF_SERVICE", health.health().getStatus().getCode());
+
+        // Given up on after the timeout, rather than keeping the node out of service.
+        StepVerifier.create(Mono.delay(Duration.ofMillis(50)).repeat().takeUntil(tick -> snapshotService.isWarm()).then())
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        assertEquals("UP", health.health().getStatus().getCode());
+        snapshotService.stop();
+        verify(dnsService, never()).resolveDomain(anyString(), anyString(), any());
+    }
+}
@@ -1,20 +1,53 @@
 package com.zzeng.dnscache.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zzeng.dnscache.cache.CacheInvalidationBus;
+import com.zzeng.dnscache.cache.DnsNearCache;
+import com.zzeng.dnscache.codec.BinaryDnsRecordCodec;
+import com.zzeng.dnscache.codec.DnsRecordCodec;
+import com.zzeng.dnscache.codec.JsonDnsRecordCodec;
 import com.zzeng.dnscache.config.DnsProperties;
+import com.zzeng.dnscache.dto.CacheListRequest;
+import com.zzeng.dnscache.dto.ClearJobResponse;
+import com.zzeng.dnscache.dto.DnsRecordResponse;
+import com.zzeng.dnscache.dto.TtlUpdateResponse;
 import com.zzeng.dnscache.model.DnsRecord;
+import com.zzeng.dnscache.model.DnsRecordValue;
+import com.zzeng.dnscache.override.OverrideRuleStore;
 import com.zzeng.dnscache.repository.DnsCacheRepository;
-import com.zzeng.dnscache.util.JsonUtil;
+import com.zzeng.dnscache.resolver.NegativeAnswerException;
+import com.zzeng.dnscache.resolver.UpstreamResolver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import org.xbill.DNS.Rcode;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 
 @ExtendWith(MockitoExtension.class)
@@ -23,22 +56,35 @@ class DnsServiceImplTest {
     @Mock
     private DnsCacheRepository dnsCacheRepository;
 
+    @Mock
+    private UpstreamResolver upstreamResolver;
+
+    @Mock
+    private CacheInvalidationBus invalidationBus;
+
+    @Mock
+    private OverrideRuleStore overrideRules;
+
     // We'll create and assign these ourselves:
-    private ObjectMapper objectMapper;
+    private DnsRecordCodec codec;
     private DnsProperties dnsProperties;
+    private DnsNearCache nearCache;
+    private SimpleMeterRegistry meterRegistry;
 
-    @InjectMocks
     private DnsServiceImpl dnsServiceImpl;
 
+    // Resolved records stay in Redis this long past their TTL.
+    private static final Duration STALE_WINDOW = Duration.ofDays(1);
+
     @BeforeEach
     void setUp() {
-        objectMapper = new ObjectMapper();
+        codec = new BinaryDnsRecordCodec(new JsonDnsRecordCodec(new ObjectMapper()));
         dnsProperties = new DnsProperties();
         dnsProperties.setTtl(300L);
+        meterRegistry = new SimpleMeterRegistry();
+        nearCache = new DnsNearCache(dnsProperties, meterRegistry);
 
-        // Because we used @InjectMocks, dnsServiceImpl will have the dnsCacheRepository injected
-        // We can manually set other constructor args if needed:
-        dnsServiceImpl = new DnsServiceImpl(dnsCacheRepository, objectMapper, dnsProperties);
+        dnsServiceImpl = new DnsServiceImpl(dnsCacheRepository, nearCache, invalidationBus, overrideRules, upstreamResolver, codec, dnsProperties, meterRegistry);
     }
 
     @Test
@@ -46,14 +92,14 @@ class DnsServiceImplTest {
         String domain = "example.com";
         DnsRecord record = new DnsRecord(domain, "93.184.216.34", 300L, false);
 
-        // The repository returns JSON strings
-        String json = JsonUtil.safeSerialize(record, objectMapper).block();
+        // The repository returns encoded records
+        byte[] value = codec.encode(record);
 
         // Mock the repository call
-        when(dnsCacheRepository.get(eq(domain))).thenReturn(Mono.just(json));
+        when(dnsCacheRepository.get(eq(domain))).thenReturn(Mono.just(value));
 
         // Now call the service method
-        Mono<?> result = dnsServiceImpl.getCachedRecord(domain);
+        Mono<?> result = dnsServiceImpl.getCachedRecord(domain, "A");
 
         // StepVerifier to validate the Mono
         StepVerifier.create(result)
@@ -64,5 +110,419 @@ class DnsServiceImplTest {
                 .verifyComplete();
     }
 
+    @Test
+    void testResolveDomainServedFromNearCacheAfterRedisHit() {
+        String domain = "example.com";
+        DnsRecord record = new DnsRecord(domain, "93.184.216.34", 300L, false);
+        byte[] value = codec.encode(record);
+
+        when(dnsCacheRepository.getWithExpire(eq(domain)))
+                .thenReturn(Mono.just(new DnsCacheRepository.Stored(value, Duration.ofSeconds(120).plus(STALE_WINDOW))));
+
+        StepVerifier.create(dnsServiceImpl.resolveDomain(domain))
+                .expectNextMatches(response -> "93.184.216.34".equals(response.getIp()))
+                .verifyComplete();
+        StepVerifier.create(dnsServiceImpl.resolveDomain(domain))
+                .expectNextMatches(response -> "93.184.216.34".equals(response.getIp()))
+                .verifyComplete();
+
+        verify(dnsCacheRepository, times(1)).getWithExpire(domain);
+    }
+
+    @Test
+    void testResolveWithRemainingTtlReportsTimeLeftInRedisAndNearCache() {
+        String domain = "example.com";
+        byte[] value = codec.encode(new DnsRecord(domain, "93.184.216.34", 300L, false));
+
+        when(dnsCacheRepository.getWithExpire(eq(domain)))
+                .thenReturn(Mono.just(new DnsCacheRepository.Stored(value, Duration.ofSeconds(120).plus(STALE_WINDOW))));
+
+        StepVerifier.create(dnsServiceImpl.resolveWithRemainingTtl(domain))
+                .expectNextMatches(response -> response.getTtl() == 120)
+                .verifyComplete();
+        StepVerifier.create(dnsServiceImpl.resolveWithRemainingTtl(domain))
+                .expectNextMatches(response -> response.getTtl() <= 120 && response.getTtl() >= 118)
+                .verifyComplete();
+
+        verify(dnsCacheRepository, times(1)).getWithExpire(domain);
+    }
+
+    @Test
+    void testDeleteCachedRecordInvalidatesNearCache() {
+        String domain = "example.com";
+        nearCache.put(new DnsRecord(domain, "93.184.216.34", 300L, false), Duration.ofSeconds(120));
+        when(dnsCacheRepository.delete(eq(domain))).thenReturn(Mono.just(true));
+
+        StepVerifier.create(dnsServiceImpl.deleteCachedRecord(domain, "a"))
+                .expectNext(true)
+                .verifyComplete();
+
+        assertNull(nearCache.getIfPresent(domain));
+        verify(invalidationBus).publish(List.of(domain));
+    }
+
+    @Test
+    void testClearCacheTellsOtherNodesToFlush() {
+        when(dnsCacheRepository.clear()).thenReturn(Flux.just(2L, 1L));
+
+        StepVerifier.create(dnsServiceImpl.clearCache()).expectNext("Deleted 3 entries.").verifyComplete();
+
+        verify(invalidationBus).publishAll();
+    }
+
+    @Test
+    void testResolveBatchResolvesOnlyMissesAndWritesThemBackTogether() {
+        DnsRecord cached = new DnsRecord("a.com", "1.1.1.1", 300L, false);
+        byte[] value = codec.encode(cached);
+
+        when(dnsCacheRepository.multiGetWithExpire(eq(List.of("a.com", "b.com", "c.com", "a.com/CNAME", "b.com/CNAME", "c.com/CNAME"))))
+                .thenReturn(Mono.just(Map.of("a.com",
+                        new DnsCacheRepository.Stored(value, Duration.ofSeconds(200).plus(STALE_WINDOW)))));
+        when(upstreamResolver.resolve("b.com", "A")).thenReturn(Mono.just(List.of(new DnsRecord("b.com", "2.2.2.2", 60L, false))));
+        when(upstreamResolver.resolve("c.com", "A")).thenReturn(Mono.just(List.of(new DnsRecord("c.com", "3.3.3.3", 60L, false))));
+        when(dnsCacheRepository.setAll(anyList())).thenReturn(Mono.just(2L));
+
+        StepVerifier.create(dnsServiceImpl.resolveBatch(List.of("a.com", "b.com", "c.com", "a.com"), null)
+                        .map(DnsRecordResponse::getIp)
+                        .collectList())
+                .expectNextMatches(ips -> ips.size() == 3 && ips.containsAll(List.of("1.1.1.1", "2.2.2.2", "3.3.3.3")))
+                .verifyComplete();
+
+        verify(dnsCacheRepository, times(1)).setAll(anyList());
+        verify(dnsCacheRepository, never()).getWithExpire(anyString());
+        // The expiry came with the value.
+        verify(dnsCacheRepository, never()).getExpire(anyString());
+        assertEquals(1, lookups("hit"));
+        assertEquals(2, lookups("miss"));
+    }
+
+    @Test
+    void testOverrideRulesAnswerBeforeTheCache() {
+        when(overrideRules.find(anyString(), eq("A"))).thenReturn(null);
+        when(overrideRules.find("app.internal.corp", "A")).thenReturn(new DnsRecord("app.internal.corp", "A",
+                List.of(new DnsRecordValue("10.0.0.7", 60L)), 60L, true));
+        when(dnsCacheRepository.multiGetWithExpire(eq(List.of("b.com", "b.com/CNAME")))).thenReturn(Mono.just(Map.of()));
+        when(upstreamResolver.resolve("b.com", "A")).thenReturn(Mono.just(List.of(new DnsRecord("b.com", "2.2.2.2", 60L, false))));
+        when(dnsCacheRepository.setAll(anyList())).thenReturn(Mono.just(1L));
+
+        StepVerifier.create(dnsServiceImpl.resolveDomain("app.internal.corp"))
+                .expectNextMatches(response -> "10.0.0.7".equals(response.getIp()))
+                .verifyComplete();
+        StepVerifier.create(dnsServiceImpl.resolveBatch(List.of("app.internal.corp", "b.com"), null)
+                        .map(DnsRecordResponse::getIp)
+                        .collectList())
+                .expectNext(List.of("10.0.0.7", "2.2.2.2"))
+                .verifyComplete();
+
+        verify(dnsCacheRepository, never()).getWithExpire(anyString());
+        verify(upstreamResolver, never()).resolve("app.internal.corp", "A");
+        assertEquals(2, lookups("override"));
+        assertEquals(1, lookups("miss"));
+    }
+
+    @Test
+    void testCacheListingPagesWithFiltersAndOpaqueCursor() {
+        DnsRecord longLived = new DnsRecord("a.com", "1.1.1.1", 300L, false);
+        DnsRecord shortLived = new DnsRecord("b.com", "2.2.2.2", 30L, false);
+        String cursor = Base64.getUrlEncoder().withoutPadding().encodeToString("7".getBytes(StandardCharsets.UTF_8));
+
+        // The first step finds nothing passing the domain filter, so the page goes on to the next.
+        when(dnsCacheRepository.scanKeys(eq("7"), eq("*.com*"), eq(false), eq(2)))
+                .thenReturn(Mono.just(new DnsCacheRepository.KeyPage(List.of("x.org"), "12")));
+        when(dnsCacheRepository.scanKeys(eq("12"), eq("*.com*"), eq(false), eq(2)))
+                .thenReturn(Mono.just(new DnsCacheRepository.KeyPage(List.of("a.com", "b.com", "a.com"), "40")));
+        when(dnsCacheRepository.multiGet(eq(List.of("a.com", "b.com"))))
+                .thenReturn(Mono.just(Map.of("a.com", codec.encode(longLived), "b.com", codec.encode(shortLived))));
+
+        CacheListRequest request = new CacheListRequest();
+        request.setCursor(cursor);
+        request.setLimit(2);
+        request.setDomain("*.com");
+        request.setMinTtl(60L);
+        CachePage page = dnsServiceImpl.listCachedRecords(request).block();
+
+        assertNotNull(page);
+        assertEquals("40", new String(Base64.getUrlDecoder().decode(page.nextCursor()), StandardCharsets.UTF_8));
+        StepVerifier.create(page.records())
+                .expectNextMatches(response -> response.getDomain().equals("a.com"))
+                .verifyComplete();
+    }
+
+    @Test
+    void testCacheListingRejectsForeignCursors() {
+        when(dnsCacheRepository.scanKeys(eq("bogus"), eq("*"), eq(false), eq(100)))
+                .thenReturn(Mono.error(new IllegalArgumentException("Not a cursor")));
+        CacheListRequest request = new CacheListRequest();
+
+        request.setCursor("%%%");
+        StepVerifier.create(dnsServiceImpl.listCachedRecords(request))
+                .expectErrorMatches(e -> e instanceof ResponseStatusException status
+                        && status.getStatusCode() == HttpStatus.BAD_REQUEST)
+                .verify();
+
+        request.setCursor(Base64.getUrlEncoder().encodeToString("bogus".getBytes(StandardCharsets.UTF_8)));
+        StepVerifier.create(dnsServiceImpl.listCachedRecords(request))
+                .expectErrorMatches(e -> e instanceof ResponseStatusException status
+                        && status.getStatusCode() == HttpStatus.BAD_REQUEST)
+                .verify();
+    }
+
+    @Test
+    void testZoneRecordsSkipApexForWildcardAndPruneExpiredKeys() {
+        DnsRecord www = new DnsRecord("www.example.com", "1.1.1.1", 300L, false);
+
+        when(dnsCacheRepository.scanZone(eq("example.com")))
+                .thenReturn(Flux.just("example.com", "example.com/AAAA", "old.example.com", "www.example.com"));
+        when(dnsCacheRepository.multiGet(eq(List.of("old.example.com", "www.example.com"))))
+                .thenReturn(Mono.just(Map.of("www.example.com", codec.encode(www))));
+        when(dnsCacheRepository.removeFromZoneIndex(eq(List.of("old.example.com")))).thenReturn(Mono.just(1L));
+
+        StepVerifier.create(dnsServiceImpl.getZoneRecords("*.example.com."))
+                .expectNextMatches(response -> response.getDomain().equals("www.example.com"))
+                .verifyComplete();
+        verify(dnsCacheRepository).removeFromZoneIndex(eq(List.of("old.example.com")));
+    }
+
+    @Test
+    void testZoneTtlUpdateReportsDomainAndTypeOfEachRecord() {
+        List<String> keys = List.of("example.com", "www.example.com/AAAA");
+        when(dnsCacheRepository.scanZone(eq("example.com"))).thenReturn(Flux.fromIterable(keys));
+        when(dnsCacheRepository.updateTtlAll(eq(keys), eq(600L), eq(STALE_WINDOW.getSeconds())))
+                .thenReturn(Mono.just(Map.of("example.com", 600L, "www.example.com/AAAA", 600L)));
+
+        StepVerifier.create(dnsServiceImpl.updateZoneTTL("example.com", 600L))
+                .expectNext(new TtlUpdateResponse("example.com", "A", 600L))
+                .expectNext(new TtlUpdateResponse("www.example.com", "AAAA", 600L))
+                .verifyComplete();
+    }
+
+    @Test
+    void testDeleteZoneDeletesIndexedKeysAndInvalidatesThem() {
+        when(dnsCacheRepository.scanZone(eq("example.com"))).thenReturn(Flux.just("example.com", "www.example.com"));
+        when(dnsCacheRepository.deleteAll(eq(List.of("example.com", "www.example.com")))).thenReturn(Mono.just(2L));
+
+        StepVerifier.create(dnsServiceImpl.deleteZone("example.com"))
+                .expectNext("Deleted 2 entries.")
+                .verifyComplete();
+        verify(invalidationBus).publish(List.of("example.com", "www.example.com"));
+
+        StepVerifier.create(dnsServiceImpl.deleteZone("*.*.com"))
+                .expectErrorMatches(e -> e instanceof ResponseStatusException status
+                        && status.getStatusCode() == HttpStatus.BAD_REQUEST)
+                .verify();
+    }
+
+    @Test
+    void testDeleteAllManualEntriesOnlyTouchesIndexedDomains() {
+        DnsRecord manual = new DnsRecord("a.com", "1.1.1.1", 300L, true);
+        DnsRecord replaced = new DnsRecord("b.com", "2.2.2.2", 300L, false);
+
+        when(dnsCacheRepository.scanManualDomains()).thenReturn(Flux.just("a.com", "b.com", "c.com"));
+        when(dnsCacheRepository.multiGet(eq(List.of("a.com", "b.com", "c.com"))))
+                .thenReturn(Mono.just(Map.of("a.com", codec.encode(manual), "b.com", codec.encode(replaced))));
+        when(dnsCacheRepository.deleteAll(eq(List.of("a.com")))).thenReturn(Mono.just(1L));
+        when(dnsCacheRepository.removeFromManualIndex(eq(List.of("b.com", "c.com")))).thenReturn(Mono.just(2L));
+
+        StepVerifier.create(dnsServiceImpl.deleteAllManualEntries())
+                .expectNext("Deleted 1 manual entries.")
+                .verifyComplete();
+
+        verify(dnsCacheRepository, never()).scanKeys();
+    }
+
+    @Test
+    void testClearJobReportsProgressAndIsNotStartedTwice() {
+        Sinks.Many<Long> steps = Sinks.many().unicast().onBackpressureBuffer();
+        when(dnsCacheRepository.clear()).thenReturn(steps.asFlux());
+
+        ClearJobResponse started = dnsServiceImpl.startClearJob().block();
+        assertEquals("RUNNING", started.getStatus());
+        assertEquals(started.getId(), dnsServiceImpl.startClearJob().block().getId());
+
+        steps.tryEmitNext(500L);
+        steps.tryEmitNext(120L);
+        assertEquals(620L, dnsServiceImpl.getClearJob(started.getId()).block().getDeleted());
+
+        steps.tryEmitComplete();
+        ClearJobResponse finished = dnsServiceImpl.getClearJob(started.getId()).block();
+        assertEquals("COMPLETED", finished.getStatus());
+        assertNotNull(finished.getFinishedAt());
+        verify(dnsCacheRepository, times(1)).clear();
+    }
+
+    @Test
+    void testCnameChainIsCachedPerHopAndFollowedFromCache() {
+        DnsRecord alias = new DnsRecord("www.example.com", "CNAME",
+                List.of(new DnsRecordValue("example.com", 30L)), 30L, false);
+        DnsRecord target = new DnsRecord("example.com", "AAAA",
+                List.of(new DnsRecordValue("2001:db8:0:0:0:0:0:1", 120L), new DnsRecordValue("2001:db8:0:0:0:0:0:2", 120L)),
+                120L, false);
+        when(dnsCacheRepository.getWithExpire(anyString())).thenReturn(Mono.empty());
+        when(upstreamResolver.resolve("www.example.com", "AAAA")).thenReturn(Mono.just(List.of(alias, target)));
+        when(dnsCacheRepository.setAll(anyList())).thenReturn(Mono.just(2L));
+
+        StepVerifier.create(dnsServiceImpl.resolveDomain("www.example.com", "aaaa", null))
+                .assertNext(response -> {
+                    assertEquals("www.example.com", response.getDomain());
+                    assertEquals("AAAA", response.getType());
+                    assertEquals(List.of("example.com"), response.getCnames());
+                    assertEquals(2, response.getValues().size());
+                    // The chain lives as long as its shortest-lived hop.
+                    assertEquals(30L, response.getTtl());
+                })
+                .verifyComplete();
+
+        ArgumentCaptor<List<DnsCacheRepository.Entry>> stored = ArgumentCaptor.captor();
+        verify(dnsCacheRepository).setAll(stored.capture());
+        assertEquals(List.of("www.example.com/CNAME", "example.com/AAAA"),
+                stored.getValue().stream().map(DnsCacheRepository.Entry::domain).toList());
+
+        // Both hops are now in the near-cache: neither alias needs another upstream lookup.
+        StepVerifier.create(dnsServiceImpl.resolveDomain("www.example.com", "AAAA", null))
+                .expectNextMatches(response -> response.getCnames().equals(List.of("example.com")))
+                .verifyComplete();
+        StepVerifier.create(dnsServiceImpl.resolveDomain("example.com", "AAAA", null))
+                .expectNextMatches(response -> response.getCnames() == null && response.getValues().size() == 2)
+                .verifyComplete();
+        verify(upstreamResolver, times(1)).resolve(anyString(), anyString());
+    }
+
+    @Test
+    void testUnknownTypeIsRejected() {
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> dnsServiceImpl.resolveDomain("example.com", "NOPE", null));
+        assertEquals(HttpStatus.BAD_REQUEST, error.getStatusCode());
+    }
+
+    @Test
+    void testUpstreamTtlsAreClampedToThePolicyBounds() {
+        when(dnsCacheRepository.getWithExpire(anyString())).thenReturn(Mono.empty());
+        when(upstreamResolver.resolve("short.com", "A")).thenReturn(Mono.just(List.of(new DnsRecord("short.com", "1.1.1.1", 1L, false))));
+        when(upstreamResolver.resolve("long.com", "A")).thenReturn(Mono.just(List.of(new DnsRecord("long.com", "2.2.2.2", 864000L, false))));
+        when(upstreamResolver.resolve("explicit.com", "A")).thenReturn(Mono.just(List.of(new DnsRecord("explicit.com", "3.3.3.3", 600L, false))));
+        when(dnsCacheRepository.setAll(anyList())).thenReturn(Mono.just(1L));
+
+        StepVerifier.create(dnsServiceImpl.resolveDomain("short.com"))
+                .expectNextMatches(response -> response.getTtl() == 5)
+                .verifyComplete();
+        StepVerifier.create(dnsServiceImpl.resolveDomain("long.com"))
+                .expectNextMatches(response -> response.getTtl() == 86400)
+                .verifyComplete();
+        // An explicit TTL from the caller is used as is.
+        StepVerifier.create(dnsServiceImpl.resolveDomain("explicit.com", "A", 1L))
+                .expectNextMatches(response -> response.getTtl() == 1)
+                .verifyComplete();
+
+        ArgumentCaptor<List<DnsCacheRepository.Entry>> stored = ArgumentCaptor.captor();
+        verify(dnsCacheRepository, times(3)).setAll(stored.capture());
+        assertEquals(5 + STALE_WINDOW.getSeconds(), stored.getAllValues().get(0).get(0).ttlSeconds());
+    }
+
+    @Test
+    void testStaleRecordIsServedWhenUpstreamFails() {
+        String domain = "example.com";
+        byte[] value = codec.encode(new DnsRecord(domain, "93.184.216.34", 300L, false));
+
+        // Expired 100 seconds ago, still within the stale window.
+        when(dnsCacheRepository.getWithExpire(eq(domain)))
+                .thenReturn(Mono.just(new DnsCacheRepository.Stored(value, STALE_WINDOW.minusSeconds(100))));
+        when(upstreamResolver.resolve(domain, "A")).thenReturn(Mono.error(new IllegalStateException("SERVFAIL")));
+
+        StepVerifier.create(dnsServiceImpl.resolveDomain(domain))
+                .assertNext(response -> {
+                    assertEquals("93.184.216.34", response.getIp());
+                    assertEquals(30L, response.getTtl());
+                })
+                .verifyComplete();
+        // The failed refresh is not retried until the recheck interval has passed.
+        StepVerifier.create(dnsServiceImpl.resolveDomain(domain))
+                .expectNextMatches(response -> response.getTtl() == 30)
+                .verifyComplete();
+        verify(upstreamResolver, times(1)).resolve(domain, "A");
+        assertEquals(2, lookups("stale"));
+        assertEquals(0, lookups("miss"));
+    }
+
+    @Test
+    void testRecordRequestedLateInItsTtlIsRefreshedAhead() {
+        String domain = "example.com";
+        byte[] value = codec.encode(new DnsRecord(domain, "93.184.216.34", 300L, false));
+
+        // 30 of 300 seconds left: past the 80% refresh-ahead point.
+        when(dnsCacheRepository.getWithExpire(eq(domain)))
+                .thenReturn(Mono.just(new DnsCacheRepository.Stored(value, Duration.ofSeconds(30).plus(STALE_WINDOW))));
+        when(upstreamResolver.resolve(domain, "A")).thenReturn(Mono.just(List.of(new DnsRecord(domain, "93.184.216.35", 300L, false))));
+        when(dnsCacheRepository.setAll(anyList())).thenReturn(Mono.just(1L));
+
+        StepVerifier.create(dnsServiceImpl.resolveDomain(domain))
+                .expectNextMatches(response -> "93.184.216.34".equals(response.getIp()) && response.getTtl() == 300)
+                .verifyComplete();
+
+        verify(dnsCacheRepository, times(1)).setAll(anyList());
+        StepVerifier.create(dnsServiceImpl.resolveDomain(domain))
+                .expectNextMatches(response -> "93.184.216.35".equals(response.getIp()))
+                .verifyComplete();
+        verify(upstreamResolver, times(1)).resolve(domain, "A");
+    }
+
+    @Test
+    void testNxdomainIsCachedWithSoaTtlAndReportedDistinctly() {
+        when(dnsCacheRepository.getWithExpire(anyString())).thenReturn(Mono.empty());
+        when(upstreamResolver.resolve("typo.example", "A"))
+                .thenReturn(Mono.error(new NegativeAnswerException("nx", Rcode.NXDOMAIN, 900)));
+        when(dnsCacheRepository.setAll(anyList())).thenReturn(Mono.just(1L));
+
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.create(dnsServiceImpl.resolveDomain("typo.example"))
+                    .assertNext(response -> {
+                        assertEquals("NXDOMAIN", response.getStatus());
+                        assertEquals(List.of(), response.getValues());
+                        assertNull(response.getIp());
+                        assertEquals(900L, response.getTtl());
+                    })
+                    .verifyComplete();
+        }
+
+        verify(upstreamResolver, times(1)).resolve("typo.example", "A");
+        assertEquals(1.0, meterRegistry.counter("dns.negative.answers", "status", "NXDOMAIN", "source", "upstream").count());
+        assertEquals(2.0, meterRegistry.counter("dns.negative.answers", "status", "NXDOMAIN", "source", "cache").count());
+    }
+
+    @Test
+    void testNoDataWithoutSoaUsesTheConfiguredNegativeTtl() {
+        when(dnsCacheRepository.getWithExpire(anyString())).thenReturn(Mono.empty());
+        when(upstreamResolver.resolve("example.com", "AAAA"))
+                .thenReturn(Mono.error(new NegativeAnswerException("no data", Rcode.NOERROR)));
+        when(dnsCacheRepository.setAll(anyList())).thenReturn(Mono.just(1L));
+
+        StepVerifier.create(dnsServiceImpl.resolveDomain("example.com", "AAAA", 600L))
+                .expectNextMatches(response -> "NODATA".equals(response.getStatus()) && response.getTtl() == 60)
+                .verifyComplete();
+
+        ArgumentCaptor<List<DnsCacheRepository.Entry>> stored = ArgumentCaptor.captor();
+        verify(dnsCacheRepository).setAll(stored.capture());
+        DnsCacheRepository.Entry entry = stored.getValue().get(0);
+        assertEquals("example.com/AAAA", entry.domain());
+        assertEquals("NODATA", codec.decode(entry.domain(), entry.value()).getStatus());
+    }
+
+    @Test
+    void testNegativeAnswersAreErrorsWhenNegativeCachingIsOff() {
+        dnsProperties.getTtlPolicy().setNegativeCachingEnabled(false);
+        dnsServiceImpl = new DnsServiceImpl(dnsCacheRepository, nearCache, invalidationBus, overrideRules, upstreamResolver, codec, dnsProperties, meterRegistry);
+        when(dnsCacheRepository.getWithExpire(anyString())).thenReturn(Mono.empty());
+        when(upstreamResolver.resolve("typo.example", "A"))
+                .thenReturn(Mono.error(new NegativeAnswerException("nx", Rcode.NXDOMAIN, 900)));
+
+        StepVerifier.create(dnsServiceImpl.resolveDomain("typo.example"))
+                .verifyErrorMatches(err -> err instanceof ResponseStatusException rse
+                        && rse.getStatusCode() == HttpStatus.BAD_REQUEST);
+        verify(dnsCacheRepository, never()).setAll(anyList());
+    }
+
     // Add more tests: test TTL update, test record not found, etc.
-}
\ No newline at end of file
+
+    private double lookups(String result) {
+        return meterRegistry.get(DnsServiceImpl.LOOKUPS_METRIC).tag("result", result).counter().count();
+    }
+}
@@ -0,0 +1,58 @@
+package com.zzeng.dnscache.util;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SingleFlightTest {
+
+    @Test
+    void testConcurrentCallersShareOneExecution() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+        Sinks.One<String> upstream = Sinks.one();
+
+        Mono<String> first = singleFlight.execute("example.com", () -> {
+            executions.incrementAndGet();
+            return upstream.asMono();
+        });
+        Mono<String> second = singleFlight.execute("example.com", () -> {
+            executions.incrementAndGet();
+            return upstream.asMono();
+        });
+
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> upstream.tryEmitValue("93.184.216.34"))
+                .expectNextMatches(t -> t.getT1().equals("93.184.216.34") && t.getT2().equals("93.184.216.34"))
+                .verifyComplete();
+
+        assertEquals(1, executions.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void testFailureIsNotCachedAfterCompletion() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+
+        StepVerifier.create(singleFlight.execute("bad.example", () -> {
+                    executions.incrementAndGet();
+                    return Mono.error(new IllegalStateException("upstream down"));
+                }))
+                .verifyError(IllegalStateException.class);
+
+        StepVerifier.create(singleFlight.execute("bad.example", () -> {
+                    executions.incrementAndGet();
+                    return Mono.just("1.2.3.4");
+                }))
+                .expectNext("1.2.3.4")
+                .verifyComplete();
+
+        assertEquals(2, executions.get());
+    }
+}